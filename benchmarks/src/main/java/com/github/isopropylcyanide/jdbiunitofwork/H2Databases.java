@@ -0,0 +1,35 @@
+package com.github.isopropylcyanide.jdbiunitofwork;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+/**
+ * Creates in memory H2 databases backed by a connection pool, so that the benchmarks measure
+ * the handle managers, the proxies and the listeners against a real {@link DBI} while keeping
+ * the cost of the database itself low and stable.
+ */
+public final class H2Databases {
+
+    /**
+     * Large enough for every thread of the most concurrent benchmark to hold a handle at once
+     */
+    public static final int MAX_CONNECTIONS = 128;
+
+    private H2Databases() {
+    }
+
+    /**
+     * @param name the name of the in memory database, which is kept until the JVM exits
+     * @return a pooled data source for the database with a single row {@code counter} table
+     */
+    public static JdbcConnectionPool create(String name) {
+        JdbcConnectionPool dataSource = JdbcConnectionPool.create("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        dataSource.setMaxConnections(MAX_CONNECTIONS);
+        try (Handle handle = new DBI(dataSource).open()) {
+            handle.execute("create table if not exists counter (id int primary key, hits bigint not null)");
+            handle.execute("merge into counter key (id) values (1, 0)");
+        }
+        return dataSource;
+    }
+}
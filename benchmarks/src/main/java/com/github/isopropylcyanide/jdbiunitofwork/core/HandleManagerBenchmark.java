@@ -0,0 +1,86 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import com.github.isopropylcyanide.jdbiunitofwork.H2Databases;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a request worth of handle management, i.e. obtaining the handle a few times and
+ * clearing it, for the request scoped and the linked handle managers as the number of
+ * concurrent requests grows.
+ * <br><br>
+ * Each operation borrows a connection from the pool of an in memory H2 database, which is sized
+ * so that no thread ever waits for one. A growing gap between the managers under contention
+ * points at the shared state of the linked manager.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandleManagerBenchmark {
+
+    private static final int GETS_PER_REQUEST = 4;
+
+    @Param({"request", "linked"})
+    private String manager;
+
+    private JdbiHandleManager handleManager;
+
+    @Setup
+    public void setUp() {
+        DBI dbi = new DBI(H2Databases.create("handle_manager"));
+        switch (manager) {
+            case "request":
+                this.handleManager = JdbiUnitOfWorkProvider.withDefault(dbi).getHandleManager();
+                break;
+            case "linked":
+                this.handleManager = JdbiUnitOfWorkProvider.withLinked(dbi).getHandleManager();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown handle manager " + manager);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Handle oneThread() {
+        return getAndClear();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Handle eightThreads() {
+        return getAndClear();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Handle sixtyFourThreads() {
+        return getAndClear();
+    }
+
+    private Handle getAndClear() {
+        Handle handle = null;
+        for (int i = 0; i < GETS_PER_REQUEST; i++) {
+            handle = handleManager.get();
+        }
+        handleManager.clear();
+        return handle;
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import com.github.isopropylcyanide.jdbiunitofwork.H2Databases;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of {@link ManagedHandleInvocationHandler#invoke} against an in memory
+ * H2 database, compared with calling the same SQL object attached once to the handle.
+ * <br><br>
+ * Every thread opens its handle once per trial, as a request would on its first DAO call, so
+ * that the difference between both benchmarks is the cost of the invocation handler alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ManagedHandleInvocationHandlerBenchmark {
+
+    private JdbiHandleManager handleManager;
+
+    private ManagedHandleInvocationHandler<CounterDao> handler;
+
+    private Method method;
+
+    private CounterDao attached;
+
+    private final Object[] args = {1};
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        DBI dbi = new DBI(H2Databases.create("invocation_handler"));
+        this.handleManager = JdbiUnitOfWorkProvider.withDefault(dbi).getHandleManager();
+        this.handler = new ManagedHandleInvocationHandler<>(handleManager, CounterDao.class);
+        this.method = CounterDao.class.getMethod("getHits", int.class);
+        this.attached = handleManager.get().attach(CounterDao.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        handleManager.clear();
+    }
+
+    @Benchmark
+    public Object invocationHandler() throws Throwable {
+        return handler.invoke(null, method, args);
+    }
+
+    @Benchmark
+    public long attachedSqlObject() {
+        return attached.getHits(1);
+    }
+
+    public interface CounterDao {
+
+        @SqlQuery("select hits from counter where id = :id")
+        long getHits(@Bind("id") int id);
+    }
+}
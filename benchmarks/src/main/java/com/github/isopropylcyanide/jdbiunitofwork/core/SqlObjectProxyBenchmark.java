@@ -0,0 +1,97 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import com.google.common.reflect.Reflection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of calling a SQL object through the reflective proxy handed out by the
+ * {@link JdbiUnitOfWorkProvider} against the class generated for it by the annotation processor.
+ * <br><br>
+ * The handle manager attaches an in memory implementation so that only the dispatch overhead of
+ * either proxy is measured, not the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlObjectProxyBenchmark {
+
+    private SampleDao reflectiveProxy;
+
+    private SampleDao generatedProxy;
+
+    private long id;
+
+    @Setup
+    public void setUp() {
+        JdbiHandleManager handleManager = new AttachingHandleManager(new InMemorySampleDao());
+        this.reflectiveProxy = Reflection.newProxy(SampleDao.class, new ManagedHandleInvocationHandler<>(handleManager, SampleDao.class));
+        this.generatedProxy = GeneratedSqlObjectProxy.newInstance(SampleDao.class, handleManager);
+        if (generatedProxy == null) {
+            throw new IllegalStateException("No proxy was generated for " + SampleDao.class.getName() + ". Compile with the processor");
+        }
+    }
+
+    @Benchmark
+    public String reflectiveProxy() {
+        return reflectiveProxy.findName(id++, "prefix");
+    }
+
+    @Benchmark
+    public String generatedProxy() {
+        return generatedProxy.findName(id++, "prefix");
+    }
+
+    public interface SampleDao {
+
+        @SqlQuery("select :prefix || name from users where id = :id")
+        String findName(@Bind("id") long id, @Bind("prefix") String prefix);
+    }
+
+    private static class InMemorySampleDao implements SampleDao {
+
+        @Override
+        public String findName(long id, String prefix) {
+            return prefix;
+        }
+    }
+
+    private static class AttachingHandleManager implements JdbiHandleManager {
+
+        private final SampleDao attached;
+
+        AttachingHandleManager(SampleDao attached) {
+            this.attached = attached;
+        }
+
+        @Override
+        public Handle get() {
+            throw new UnsupportedOperationException("Only attaching is supported");
+        }
+
+        @Override
+        public <T> T attach(Class<T> sqlObjectType) {
+            return sqlObjectType.cast(attached);
+        }
+
+        @Override
+        public void clear() {
+        }
+    }
+}
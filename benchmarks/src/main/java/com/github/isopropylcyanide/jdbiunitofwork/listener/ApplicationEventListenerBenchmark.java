@@ -0,0 +1,76 @@
+package com.github.isopropylcyanide.jdbiunitofwork.listener;
+
+import com.github.isopropylcyanide.jdbiunitofwork.H2Databases;
+import com.github.isopropylcyanide.jdbiunitofwork.core.JdbiUnitOfWorkProvider;
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.internal.monitoring.RequestEventImpl;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.jdbi.v2.DBI;
+
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead {@link JdbiUnitOfWorkApplicationEventListener#onRequest} adds to every
+ * request Jersey serves, for an excluded path, a {@code GET} and a {@code POST} request.
+ * <br><br>
+ * The request events are built once, as Jersey would, so that only the listener is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApplicationEventListenerBenchmark {
+
+    @Param({"excluded", "GET", "POST"})
+    private String request;
+
+    @Param({"10"})
+    private int excludedPaths;
+
+    private JdbiUnitOfWorkApplicationEventListener listener;
+
+    private RequestEvent event;
+
+    @Setup
+    public void setUp() {
+        JdbiUnitOfWorkProvider provider = JdbiUnitOfWorkProvider.withDefault(new DBI(H2Databases.create("event_listener")));
+        Set<String> excluded = new HashSet<>();
+        for (int i = 0; i < excludedPaths; i++) {
+            excluded.add(ExcludedPathMatcher.PREFIX + "internal/probe" + i);
+        }
+        this.listener = new JdbiUnitOfWorkApplicationEventListener(provider, excluded);
+
+        boolean isExcluded = request.equals("excluded");
+        String path = isExcluded ? "internal/probe0/health" : "api/v1/accounts/42";
+        String method = isExcluded ? "GET" : request;
+        ContainerRequest containerRequest = new ContainerRequest(URI.create("http://localhost/"),
+                URI.create("http://localhost/" + path), method, null, new MapPropertiesDelegate());
+        this.event = new RequestEventImpl.Builder()
+                .setContainerRequest(containerRequest)
+                .setExtendedUriInfo(containerRequest.getUriInfo())
+                .build(RequestEvent.Type.START);
+    }
+
+    @Benchmark
+    public RequestEventListener onRequest() {
+        return listener.onRequest(event);
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.isopropylcyanide.jdbiunitofwork.listener;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of deciding whether a request path is excluded as the number of excluded
+ * entries grows. The compiled {@link ExcludedPathMatcher} is expected to stay flat, whereas the
+ * stream based substring scan it replaced grows linearly with the number of entries.
+ * <br><br>
+ * The request path is never excluded, which is the common case and the worst case for both
+ * approaches as every candidate needs to be ruled out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExcludedPathMatcherBenchmark {
+
+    @Param({"1", "10", "100", "500"})
+    private int excludedPaths;
+
+    @Param({"contains", "prefix", "glob"})
+    private String kind;
+
+    private final String path = "api/v1/accounts/42/transactions";
+
+    private Set<String> legacyExcludedPaths;
+
+    private ExcludedPathMatcher matcher;
+
+    @Setup
+    public void setUp() {
+        Set<String> compiledExcludedPaths = new HashSet<>();
+        this.legacyExcludedPaths = new HashSet<>();
+        for (int i = 0; i < excludedPaths; i++) {
+            String excludedPath = "api/v1/internal/probe" + i;
+            legacyExcludedPaths.add(excludedPath);
+            switch (kind) {
+                case "prefix":
+                    compiledExcludedPaths.add(ExcludedPathMatcher.PREFIX + excludedPath);
+                    break;
+                case "glob":
+                    compiledExcludedPaths.add(ExcludedPathMatcher.GLOB + "api/v1/internal/*/probe" + i);
+                    break;
+                default:
+                    compiledExcludedPaths.add(excludedPath);
+            }
+        }
+        this.matcher = ExcludedPathMatcher.compile(compiledExcludedPaths);
+    }
+
+    @Benchmark
+    public boolean compiledMatcher() {
+        return matcher.matches(path);
+    }
+
+    @Benchmark
+    public boolean streamContains() {
+        return legacyExcludedPaths.stream().anyMatch(path::contains);
+    }
+}
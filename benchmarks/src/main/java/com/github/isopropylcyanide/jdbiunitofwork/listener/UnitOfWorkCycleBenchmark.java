@@ -0,0 +1,86 @@
+package com.github.isopropylcyanide.jdbiunitofwork.listener;
+
+import com.github.isopropylcyanide.jdbiunitofwork.H2Databases;
+import com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager;
+import com.github.isopropylcyanide.jdbiunitofwork.core.JdbiUnitOfWorkProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a full unit of work as the listener drives it for a transactional resource method:
+ * begin, the DAO calls of the resource method, commit and the termination of the handle, against
+ * an in memory H2 database.
+ * <br><br>
+ * The unit of work either updates and reads a row through the DAO proxy or makes no DAO call at
+ * all, which shows what deferring the begin saves for resource methods not touching the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UnitOfWorkCycleBenchmark {
+
+    @Param({"false", "true"})
+    private boolean deferBegin;
+
+    private JdbiTransactionAspect aspect;
+
+    private CounterDao counterDao;
+
+    @Setup
+    public void setUp() {
+        JdbiUnitOfWorkProvider provider = JdbiUnitOfWorkProvider.withDefault(new DBI(H2Databases.create("unit_of_work")), deferBegin);
+        JdbiHandleManager handleManager = provider.getHandleManager();
+        this.aspect = new JdbiTransactionAspect(handleManager);
+        this.counterDao = (CounterDao) provider.getWrappedInstanceForDaoClass(CounterDao.class);
+    }
+
+    @Benchmark
+    public long withDaoCalls() {
+        aspect.begin();
+        try {
+            counterDao.increment(1);
+            long hits = counterDao.getHits(1);
+            aspect.commit();
+            return hits;
+        } finally {
+            aspect.terminateHandle();
+        }
+    }
+
+    @Benchmark
+    public void withoutDaoCalls() {
+        aspect.begin();
+        try {
+            aspect.commit();
+        } finally {
+            aspect.terminateHandle();
+        }
+    }
+
+    public interface CounterDao {
+
+        @SqlUpdate("update counter set hits = hits + 1 where id = :id")
+        int increment(@Bind("id") int id);
+
+        @SqlQuery("select hits from counter where id = :id")
+        long getHits(@Bind("id") int id);
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import com.github.isopropylcyanide.jdbiunitofwork.H2Databases;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.jdbi.v2.DBI;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the thread local handle manager with the scoped value one when serving
+ * {@value #REQUESTS} concurrent requests, each on a virtual thread of its own, against an in
+ * memory H2 database. Every request obtains its handle a few times and clears it.
+ * <br><br>
+ * The reported time is per request. Only compiled when building on Java 25 or later.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(VirtualThreadHandleManagerBenchmark.REQUESTS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VirtualThreadHandleManagerBenchmark {
+
+    static final int REQUESTS = 10_000;
+
+    private static final int GETS_PER_REQUEST = 4;
+
+    @Param({"threadLocal", "scopedValue"})
+    private String manager;
+
+    private JdbiHandleManager handleManager;
+
+    @Setup
+    public void setUp() {
+        DBI dbi = new DBI(H2Databases.create("virtual_threads"));
+        switch (manager) {
+            case "threadLocal" -> this.handleManager = JdbiUnitOfWorkProvider.withDefault(dbi).getHandleManager();
+            case "scopedValue" -> this.handleManager = JdbiUnitOfWorkProvider.withScopedValue(dbi).getHandleManager();
+            default -> throw new IllegalArgumentException("Unknown handle manager " + manager);
+        }
+    }
+
+    @Benchmark
+    public void requests() throws InterruptedException, ExecutionException {
+        List<Future<?>> requests = new ArrayList<>(REQUESTS);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < REQUESTS; i++) {
+                requests.add(executor.submit(() -> handleManager.runInScope(this::serve)));
+            }
+        }
+        for (Future<?> request : requests) {
+            request.get();
+        }
+    }
+
+    private void serve() {
+        try {
+            for (int i = 0; i < GETS_PER_REQUEST; i++) {
+                handleManager.get();
+            }
+        } finally {
+            handleManager.clear();
+        }
+    }
+}
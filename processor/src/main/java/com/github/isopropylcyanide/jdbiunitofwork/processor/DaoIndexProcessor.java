@@ -0,0 +1,164 @@
+package com.github.isopropylcyanide.jdbiunitofwork.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * An annotation processor which records every interface and abstract class declaring a method
+ * annotated with a Jdbi {@code @SqlQuery}, {@code @SqlUpdate}, {@code @SqlBatch} or
+ * {@code @SqlCall} in the index file {@value #DAO_INDEX}, one binary class name per line.
+ * <br><br>
+ * At runtime, the {@code JdbiUnitOfWorkProvider} reads the index to find the DAO classes of
+ * a package instead of scanning the classpath.
+ * <br><br>
+ * With the option {@code -A}{@value #GENERATE_PROXIES}{@code =true}, a delegating class is also
+ * generated for every DAO interface through the {@link DaoProxyGenerator}. The provider then uses
+ * it in place of a reflective proxy.
+ *
+ * @implNote An incremental compilation only hands the processor the sources being recompiled.
+ * The entries of an existing index are therefore kept, unless their type no longer exists or has
+ * just been recompiled, in which case it is only indexed if it is still a DAO.
+ */
+@SupportedAnnotationTypes({
+        DaoIndexProcessor.SQL_QUERY,
+        DaoIndexProcessor.SQL_UPDATE,
+        DaoIndexProcessor.SQL_BATCH,
+        DaoIndexProcessor.SQL_CALL
+})
+public class DaoIndexProcessor extends AbstractProcessor {
+
+    /**
+     * The location of the index, which must be kept in line with the runtime {@code DaoIndex}
+     */
+    public static final String DAO_INDEX = "META-INF/jdbi-unitofwork/dao-classes";
+
+    /**
+     * The processor option enabling the generation of DAO proxy classes
+     */
+    public static final String GENERATE_PROXIES = "jdbi.unitofwork.generateProxies";
+
+    static final String SQL_QUERY = "org.skife.jdbi.v2.sqlobject.SqlQuery";
+    static final String SQL_UPDATE = "org.skife.jdbi.v2.sqlobject.SqlUpdate";
+    static final String SQL_BATCH = "org.skife.jdbi.v2.sqlobject.SqlBatch";
+    static final String SQL_CALL = "org.skife.jdbi.v2.sqlobject.SqlCall";
+
+    private final Set<String> daoClassNames = new TreeSet<>();
+    private final Set<String> compiledClassNames = new HashSet<>();
+
+    @Override
+    public Set<String> getSupportedOptions() {
+        return Collections.singleton(GENERATE_PROXIES);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeIndex();
+            return false;
+        }
+        for (Element rootElement : roundEnv.getRootElements()) {
+            collectCompiledClassNames(rootElement);
+        }
+        for (TypeElement annotation : annotations) {
+            for (Element method : roundEnv.getElementsAnnotatedWith(annotation)) {
+                Element enclosing = method.getEnclosingElement();
+                if (isDaoType(enclosing)) {
+                    addDaoType((TypeElement) enclosing);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void addDaoType(TypeElement dao) {
+        boolean added = daoClassNames.add(processingEnv.getElementUtils().getBinaryName(dao).toString());
+        if (added && Boolean.parseBoolean(processingEnv.getOptions().get(GENERATE_PROXIES))) {
+            new DaoProxyGenerator(processingEnv).generate(dao);
+        }
+    }
+
+    private void collectCompiledClassNames(Element element) {
+        if (element.getKind().isClass() || element.getKind().isInterface()) {
+            compiledClassNames.add(processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+            for (Element enclosed : element.getEnclosedElements()) {
+                collectCompiledClassNames(enclosed);
+            }
+        }
+    }
+
+    private boolean isDaoType(Element element) {
+        if (element.getKind() == ElementKind.INTERFACE) {
+            return true;
+        }
+        return element.getKind() == ElementKind.CLASS && element.getModifiers().contains(Modifier.ABSTRACT);
+    }
+
+    private void writeIndex() {
+        Set<String> index = new TreeSet<>(daoClassNames);
+        index.addAll(readExistingIndex());
+        if (index.isEmpty()) {
+            return;
+        }
+        try {
+            FileObject indexFile = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", DAO_INDEX);
+            try (Writer writer = new OutputStreamWriter(indexFile.openOutputStream(), StandardCharsets.UTF_8)) {
+                for (String daoClassName : index) {
+                    writer.write(daoClassName);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write " + DAO_INDEX + ": " + ex.getMessage());
+        }
+    }
+
+    private Set<String> readExistingIndex() {
+        Set<String> existing = new TreeSet<>();
+        try {
+            FileObject indexFile = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", DAO_INDEX);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(indexFile.openInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String daoClassName = line.trim();
+                    if (isStillDaoType(daoClassName)) {
+                        existing.add(daoClassName);
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException ex) {
+            // No index has been written by an earlier compilation
+        }
+        return existing;
+    }
+
+    private boolean isStillDaoType(String daoClassName) {
+        if (daoClassName.isEmpty() || compiledClassNames.contains(daoClassName)) {
+            return false;
+        }
+        return processingEnv.getElementUtils().getTypeElement(daoClassName.replace('$', '.')) != null;
+    }
+}
@@ -0,0 +1,195 @@
+package com.github.isopropylcyanide.jdbiunitofwork.processor;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Generates a concrete class for a DAO interface, which implements every method by attaching the
+ * DAO through a {@code JdbiHandleManager} and calling the same method on the attached instance.
+ * <br><br>
+ * The generated class is named after the binary name of the DAO with every {@code $} doubled and
+ * suffixed with {@value #SUFFIX}, e.g. {@code Outer$$SampleDao_JdbiUnitOfWorkProxy}, and lives in
+ * the package of the DAO. Doubling keeps the names of nested DAOs, such as {@code Outer.SampleDao},
+ * apart from those of top level DAOs, such as {@code Outer_SampleDao}. The {@code JdbiUnitOfWorkProvider} looks it up by that name.
+ */
+class DaoProxyGenerator {
+
+    static final String SUFFIX = "_JdbiUnitOfWorkProxy";
+    private static final String HANDLE_MANAGER = "com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager";
+
+    private final ProcessingEnvironment processingEnv;
+    private final Elements elements;
+    private final Types types;
+
+    DaoProxyGenerator(ProcessingEnvironment processingEnv) {
+        this.processingEnv = processingEnv;
+        this.elements = processingEnv.getElementUtils();
+        this.types = processingEnv.getTypeUtils();
+    }
+
+    void generate(TypeElement dao) {
+        if (!canGenerate(dao)) {
+            return;
+        }
+        PackageElement pkg = elements.getPackageOf(dao);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String binaryName = elements.getBinaryName(dao).toString();
+        String proxyName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)).replace("$", "$$") + SUFFIX;
+        String qualifiedProxyName = packageName.isEmpty() ? proxyName : packageName + "." + proxyName;
+
+        try {
+            JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(qualifiedProxyName, dao);
+            try (Writer writer = sourceFile.openWriter()) {
+                writer.write(render(dao, packageName, proxyName));
+            }
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to generate " + qualifiedProxyName + ": " + ex.getMessage(), dao);
+        }
+    }
+
+    private boolean canGenerate(TypeElement dao) {
+        String reason = null;
+        if (dao.getKind() != ElementKind.INTERFACE) {
+            reason = "it is not an interface";
+        } else if (!dao.getTypeParameters().isEmpty()) {
+            reason = "it declares type parameters";
+        } else if (!isAccessibleFromPackage(dao)) {
+            reason = "it is not accessible from its package";
+        }
+        if (reason != null) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "No proxy is generated for " + dao.getQualifiedName() + " as " + reason, dao);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isAccessibleFromPackage(TypeElement dao) {
+        for (Element element = dao; element.getKind() != ElementKind.PACKAGE; element = element.getEnclosingElement()) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String render(TypeElement dao, String packageName, String proxyName) {
+        String daoName = dao.getQualifiedName().toString();
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("@javax.annotation.processing.Generated(\"").append(DaoIndexProcessor.class.getName()).append("\")\n")
+                .append("public final class ").append(proxyName).append(" implements ").append(daoName).append(" {\n\n")
+                .append("    private final ").append(HANDLE_MANAGER).append(" handleManager;\n\n")
+                .append("    public ").append(proxyName).append("(").append(HANDLE_MANAGER).append(" handleManager) {\n")
+                .append("        this.handleManager = handleManager;\n")
+                .append("    }\n");
+
+        DeclaredType daoType = (DeclaredType) dao.asType();
+        for (ExecutableElement method : getDelegatedMethods(dao)) {
+            renderMethod(source, daoName, method, (ExecutableType) types.asMemberOf(daoType, method));
+        }
+        source.append("\n    @Override\n")
+                .append("    public String toString() {\n")
+                .append("        return \"Proxy[").append(dao.getSimpleName()).append("]\";\n")
+                .append("    }\n")
+                .append("}\n");
+        return source.toString();
+    }
+
+    private void renderMethod(StringBuilder source, String daoName, ExecutableElement method, ExecutableType methodType) {
+        source.append("\n    @Override\n    public ");
+        List<? extends TypeParameterElement> typeParameters = method.getTypeParameters();
+        if (!typeParameters.isEmpty()) {
+            source.append(typeParameters.stream().map(this::renderTypeParameter).collect(Collectors.joining(", ", "<", "> ")));
+        }
+        source.append(methodType.getReturnType()).append(' ').append(method.getSimpleName()).append('(');
+
+        List<? extends VariableElement> parameters = method.getParameters();
+        List<? extends TypeMirror> parameterTypes = methodType.getParameterTypes();
+        List<String> parameterNames = new ArrayList<>();
+        for (int i = 0; i < parameters.size(); i++) {
+            String parameterName = parameters.get(i).getSimpleName().toString();
+            TypeMirror parameterType = parameterTypes.get(i);
+            if (i > 0) {
+                source.append(", ");
+            }
+            if (method.isVarArgs() && i == parameters.size() - 1) {
+                source.append(((ArrayType) parameterType).getComponentType()).append("...");
+            } else {
+                source.append(parameterType);
+            }
+            source.append(' ').append(parameterName);
+            parameterNames.add(parameterName);
+        }
+        source.append(')');
+        if (!methodType.getThrownTypes().isEmpty()) {
+            source.append(methodType.getThrownTypes().stream().map(TypeMirror::toString).collect(Collectors.joining(", ", " throws ", "")));
+        }
+        source.append(" {\n        ");
+        if (methodType.getReturnType().getKind() != TypeKind.VOID) {
+            source.append("return ");
+        }
+        source.append("this.handleManager.attach(").append(daoName).append(".class).")
+                .append(method.getSimpleName()).append('(').append(String.join(", ", parameterNames)).append(");\n")
+                .append("    }\n");
+    }
+
+    private String renderTypeParameter(TypeParameterElement typeParameter) {
+        List<String> bounds = typeParameter.getBounds().stream()
+                .map(TypeMirror::toString)
+                .filter(bound -> !bound.equals(Object.class.getName()))
+                .collect(Collectors.toList());
+        return bounds.isEmpty() ? typeParameter.getSimpleName().toString() : typeParameter.getSimpleName() + " extends " + String.join(" & ", bounds);
+    }
+
+    /**
+     * @return every instance method the DAO declares or inherits from its super interfaces, once
+     * per signature. Methods inherited from {@link Object} are left to the generated class itself
+     */
+    private List<ExecutableElement> getDelegatedMethods(TypeElement dao) {
+        Map<String, ExecutableElement> methods = new LinkedHashMap<>();
+        for (Element member : elements.getAllMembers(dao)) {
+            if (member.getKind() != ElementKind.METHOD || member.getModifiers().contains(Modifier.STATIC)
+                    || member.getModifiers().contains(Modifier.PRIVATE)
+                    || member.getEnclosingElement().getKind() != ElementKind.INTERFACE) {
+                continue;
+            }
+            ExecutableElement method = (ExecutableElement) member;
+            String signature = method.getSimpleName() + method.getParameters().stream()
+                    .map(parameter -> types.erasure(parameter.asType()).toString())
+                    .collect(Collectors.joining(",", "(", ")"));
+            methods.merge(signature, method, this::mostSpecific);
+        }
+        return new ArrayList<>(methods.values());
+    }
+
+    private ExecutableElement mostSpecific(ExecutableElement method, ExecutableElement other) {
+        TypeMirror declaringType = method.getEnclosingElement().asType();
+        TypeMirror otherDeclaringType = other.getEnclosingElement().asType();
+        return types.isSubtype(types.erasure(otherDeclaringType), types.erasure(declaringType)) ? other : method;
+    }
+}
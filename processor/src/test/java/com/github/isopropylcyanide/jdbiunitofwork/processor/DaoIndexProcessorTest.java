@@ -0,0 +1,183 @@
+package com.github.isopropylcyanide.jdbiunitofwork.processor;
+
+import com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.skife.jdbi.v2.Handle;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DaoIndexProcessorTest {
+
+    private Path classOutput;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.classOutput = Files.createTempDirectory("dao-index");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(classOutput)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testIndexContainsInterfacesAndAbstractClassesWithJdbiMethods() throws IOException {
+        compile(
+                source("sample.QueryDao", "package sample; public interface QueryDao { @org.skife.jdbi.v2.sqlobject.SqlQuery(\"select 1\") int one(); }"),
+                source("sample.UpdateDao", "package sample; public abstract class UpdateDao { @org.skife.jdbi.v2.sqlobject.SqlUpdate(\"delete\") public abstract void delete(); }"),
+                source("sample.Outer", "package sample; public class Outer { public interface BatchDao { @org.skife.jdbi.v2.sqlobject.SqlBatch(\"insert\") void insert(java.util.List<String> s); } }"),
+                source("sample.NotADao", "package sample; public interface NotADao { int one(); }")
+        );
+        assertEquals(Arrays.asList("sample.Outer$BatchDao", "sample.QueryDao", "sample.UpdateDao"), readIndex());
+    }
+
+    @Test
+    public void testIndexIsNotWrittenWithoutDaoClasses() {
+        compile(source("sample.NotADao", "package sample; public interface NotADao { int one(); }"));
+        assertFalse(Files.exists(classOutput.resolve(DaoIndexProcessor.DAO_INDEX)));
+    }
+
+    @Test
+    public void testIncrementalCompilationKeepsExistingEntriesThatAreStillDaoClasses() throws IOException {
+        compile(
+                source("sample.QueryDao", "package sample; public interface QueryDao { @org.skife.jdbi.v2.sqlobject.SqlQuery(\"select 1\") int one(); }"),
+                source("sample.CallDao", "package sample; public interface CallDao { @org.skife.jdbi.v2.sqlobject.SqlCall(\"call\") void call(); }")
+        );
+        compile(
+                source("sample.CallDao", "package sample; public interface CallDao { void call(); }"),
+                source("sample.UpdateDao", "package sample; public interface UpdateDao { @org.skife.jdbi.v2.sqlobject.SqlUpdate(\"delete\") void delete(); }")
+        );
+        assertEquals(Arrays.asList("sample.QueryDao", "sample.UpdateDao"), readIndex());
+    }
+
+    @Test
+    public void testProxiesAreNotGeneratedByDefault() {
+        compile(source("sample.QueryDao", "package sample; public interface QueryDao { @org.skife.jdbi.v2.sqlobject.SqlQuery(\"select 1\") int one(); }"));
+        assertFalse(Files.exists(classOutput.resolve("sample/QueryDao" + DaoProxyGenerator.SUFFIX + ".class")));
+    }
+
+    @Test
+    public void testGeneratedProxyDelegatesEveryMethodToAttachedDao() throws Exception {
+        compileGeneratingProxies(
+                source("sample.Base", "package sample; public interface Base<T> { T find(long id); default String describe() { return \"base\"; } }"),
+                source("sample.Outer", "package sample; public class Outer { public interface UserDao extends Base<String> {"
+                        + " @org.skife.jdbi.v2.sqlobject.SqlQuery(\"select\") java.util.List<String> names(String... prefixes);"
+                        + " @org.skife.jdbi.v2.sqlobject.SqlUpdate(\"update\") void touch(long id) throws java.io.IOException;"
+                        + " <E extends Comparable<E>> E max(java.util.List<E> values); } }")
+        );
+
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{classOutput.toUri().toURL()}, getClass().getClassLoader())) {
+            Class<?> daoType = classLoader.loadClass("sample.Outer$UserDao");
+            Class<?> proxyType = classLoader.loadClass("sample.Outer$$UserDao" + DaoProxyGenerator.SUFFIX);
+            List<String> calls = new ArrayList<>();
+            Object attached = Proxy.newProxyInstance(classLoader, new Class[]{daoType}, (proxy, method, args) -> {
+                calls.add(method.getName() + (args == null ? "[]" : Arrays.deepToString(args)));
+                return method.getName().equals("find") ? "found" : method.getName().equals("describe") ? "attached" : null;
+            });
+            JdbiHandleManager handleManager = new JdbiHandleManager() {
+                @Override
+                public Handle get() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public <T> T attach(Class<T> sqlObjectType) {
+                    assertSame(daoType, sqlObjectType);
+                    return sqlObjectType.cast(attached);
+                }
+
+                @Override
+                public void clear() {
+                }
+            };
+            Object dao = proxyType.getConstructor(JdbiHandleManager.class).newInstance(handleManager);
+
+            assertTrue(daoType.isInstance(dao));
+            assertEquals("found", daoType.getMethod("find", long.class).invoke(dao, 7L));
+            assertEquals("attached", daoType.getMethod("describe").invoke(dao));
+            daoType.getMethod("names", String[].class).invoke(dao, (Object) new String[]{"a", "b"});
+            daoType.getMethod("touch", long.class).invoke(dao, 3L);
+            daoType.getMethod("max", List.class).invoke(dao, Collections.singletonList(1));
+            assertEquals("Proxy[UserDao]", dao.toString());
+            assertEquals(Arrays.asList("find[7]", "describe[]", "names[[a, b]]", "touch[3]", "max[[1]]"), calls);
+        }
+    }
+
+    @Test
+    public void testProxiesOfNestedAndTopLevelDaosOfTheSameNameDoNotCollide() {
+        compileGeneratingProxies(
+                source("sample.Outer", "package sample; public class Outer { public interface Dao { @org.skife.jdbi.v2.sqlobject.SqlUpdate(\"delete\") void delete(); } }"),
+                source("sample.Outer_Dao", "package sample; public interface Outer_Dao { @org.skife.jdbi.v2.sqlobject.SqlUpdate(\"delete\") void delete(); }")
+        );
+        assertTrue(Files.exists(classOutput.resolve("sample/Outer$$Dao" + DaoProxyGenerator.SUFFIX + ".class")));
+        assertTrue(Files.exists(classOutput.resolve("sample/Outer_Dao" + DaoProxyGenerator.SUFFIX + ".class")));
+    }
+
+    @Test
+    public void testProxiesAreNotGeneratedForAbstractClassesOrGenericInterfaces() {
+        compileGeneratingProxies(
+                source("sample.UpdateDao", "package sample; public abstract class UpdateDao { @org.skife.jdbi.v2.sqlobject.SqlUpdate(\"delete\") public abstract void delete(); }"),
+                source("sample.GenericDao", "package sample; public interface GenericDao<T> { @org.skife.jdbi.v2.sqlobject.SqlQuery(\"select\") T find(); }")
+        );
+        assertFalse(Files.exists(classOutput.resolve("sample/UpdateDao" + DaoProxyGenerator.SUFFIX + ".class")));
+        assertFalse(Files.exists(classOutput.resolve("sample/GenericDao" + DaoProxyGenerator.SUFFIX + ".class")));
+    }
+
+    private void compileGeneratingProxies(JavaFileObject... sources) {
+        compile(Collections.singletonList("-A" + DaoIndexProcessor.GENERATE_PROXIES + "=true"), sources);
+    }
+
+    private void compile(JavaFileObject... sources) {
+        compile(Collections.emptyList(), sources);
+    }
+
+    private void compile(List<String> processorOptions, JavaFileObject... sources) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        String classPath = System.getProperty("java.class.path") + java.io.File.pathSeparator + classOutput;
+        List<String> options = new ArrayList<>(Arrays.asList("-d", classOutput.toString(), "-classpath", classPath));
+        options.addAll(processorOptions);
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, null, options, null, Arrays.asList(sources));
+        task.setProcessors(Collections.singletonList(new DaoIndexProcessor()));
+        assertTrue(task.call());
+    }
+
+    private List<String> readIndex() throws IOException {
+        return Files.readAllLines(classOutput.resolve(DaoIndexProcessor.DAO_INDEX), StandardCharsets.UTF_8);
+    }
+
+    private static JavaFileObject source(String className, String code) {
+        URI uri = URI.create("string:///" + className.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension);
+        return new SimpleJavaFileObject(uri, JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.isopropylcyanide.jdbiunitofwork;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * When annotating a {@code SqlQuery} method of a DAO, caches its results across requests, keyed by
+ * the arguments it is invoked with, when the provider of the DAO caches annotated queries.
+ * <br><br>
+ * A result served from the cache does not need a handle, so a request reading nothing but cached
+ * results never checks a connection out. The results are dropped once a unit of work writing to
+ * any of the declared tables commits, or once they expire.
+ * <br><br>
+ * Meant for lookup tables which are read far more often than they are written, such as country
+ * codes or feature flags. Cached results are shared by every request and must not be modified.
+ */
+@Target(METHOD)
+@Retention(RUNTIME)
+@Documented
+public @interface JdbiCacheable {
+
+    /**
+     * @return the tables the query reads from, whose writes invalidate its cached results. Tables
+     * are told apart by their name alone, whatever their schema, quotes or case
+     */
+    String[] tables();
+
+    /**
+     * @return the number of results cached for the query, beyond which the least recently used
+     * ones are evicted
+     */
+    long maximumSize() default 1000;
+
+    /**
+     * @return the number of seconds a result stays cached after being read from the database
+     */
+    long expireAfterSeconds() default 300;
+}
@@ -1,5 +1,7 @@
 package com.github.isopropylcyanide.jdbiunitofwork;
 
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+
 import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
@@ -14,9 +16,64 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
  * A transaction will automatically {@code begin} before the resource method is invoked,
  * {@code commit} if the method returned without throwing any exception and {@code rollback}
  * if an exception was thrown.
+ * <br><br>
+ * A unit of work failing with a transient SQLState, such as a serialization failure or a deadlock,
+ * may be retried by declaring more than one {@link #maxAttempts() attempt}. The transaction is then
+ * rolled back, a new handle is opened and the resource method is invoked again with the same
+ * arguments after a jittered backoff. Retries require the invocation handler provider of the
+ * application event listener to be registered with Jersey, and only apply to non GET requests.
+ * The resource method must have no side effects beyond the database for retries to be safe.
+ * <br><br>
+ * The transaction runs at the driver's default isolation level in read write mode, unless told
+ * otherwise through {@link #isolation()} and {@link #readOnly()}. Both are applied to the handle
+ * before the transaction begins and restored once it commits or rolls back, before the handle goes
+ * back to the pool.
  */
 @Target(METHOD)
 @Retention(RUNTIME)
 @Documented
 public @interface JdbiUnitOfWork {
+
+    /**
+     * @return the isolation level of the transaction. The default of
+     * {@link TransactionIsolationLevel#UNKNOWN} keeps the isolation level of the connection
+     */
+    TransactionIsolationLevel isolation() default TransactionIsolationLevel.UNKNOWN;
+
+    /**
+     * @return whether the transaction only reads. The connection of a read only transaction is
+     * marked read only as a hint to the driver, the transaction is not routed to a read replica
+     */
+    boolean readOnly() default false;
+
+    /**
+     * @return the number of seconds the transaction may run for, counted from its begin. Every
+     * statement is given the time left as its query timeout, and fails once none is left. The
+     * default of zero never times out
+     */
+    int timeoutSeconds() default 0;
+
+    /**
+     * @return the number of times the resource method is invoked before a retryable failure is
+     * given up on. The default of one never retries
+     */
+    int maxAttempts() default 1;
+
+    /**
+     * @return the backoff in milliseconds before the first retry, doubled for every further one.
+     * The actual backoff is drawn at random up to it, so that conflicting requests do not retry in
+     * lock step
+     */
+    long backoffMillis() default 50;
+
+    /**
+     * @return the upper bound in milliseconds of the backoff before any retry
+     */
+    long maxBackoffMillis() default 1000;
+
+    /**
+     * @return the SQLStates which are retried, or their classes when given as a prefix. Defaults
+     * to serialization failures and deadlocks
+     */
+    String[] retryableSqlStates() default {"40001", "40P01"};
 }
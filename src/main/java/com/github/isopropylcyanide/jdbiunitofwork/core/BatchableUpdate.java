@@ -0,0 +1,100 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
+import org.skife.jdbi.v2.PreparedBatchPart;
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlStatementCustomizingAnnotation;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+
+import javax.annotation.Nullable;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link SqlUpdate} method of a SQL object whose invocations can be run as a JDBC batch
+ * rather than one at a time, as their outcome is not returned to the caller.
+ * <br><br>
+ * A method qualifies if it returns {@code void}, declares its SQL inline and binds each of its
+ * parameters by name with {@link Bind} and its default binder. Statements customized by any other
+ * annotation, on the method or on the type declaring it, and parameters bound in any other way,
+ * such as by a {@link Bind#binder()} of their own or with {@code BindBean}, are left to Jdbi, as
+ * running them in a batch would skip the customization.
+ */
+final class BatchableUpdate {
+
+    private static final Pattern BINDING_NAME = Pattern.compile("\\w+");
+    private static final String DEFAULT_BINDER = "org.skife.jdbi.v2.sqlobject.DefaultObjectBinder";
+
+    private final String sql;
+    private final String[] bindingNames;
+
+    private BatchableUpdate(String sql, String[] bindingNames) {
+        this.sql = sql;
+        this.bindingNames = bindingNames;
+    }
+
+    /**
+     * @return the batchable update of the method, or {@code null} if its invocations must be run
+     * one at a time
+     */
+    @Nullable
+    static BatchableUpdate of(Method method) {
+        SqlUpdate sqlUpdate = method.getAnnotation(SqlUpdate.class);
+        if (sqlUpdate == null || sqlUpdate.value().isEmpty() || method.getReturnType() != void.class) {
+            return null;
+        }
+        if (customizesStatements(method) || customizesStatements(method.getDeclaringClass())) {
+            return null;
+        }
+        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        String[] bindingNames = new String[parameterAnnotations.length];
+        for (int i = 0; i < parameterAnnotations.length; i++) {
+            if (parameterAnnotations[i].length != 1 || !(parameterAnnotations[i][0] instanceof Bind)) {
+                return null;
+            }
+            Bind bind = (Bind) parameterAnnotations[i][0];
+            String name = bind.value();
+            if (!BINDING_NAME.matcher(name).matches() || !sqlUpdate.value().contains(":" + name)
+                    || !bind.binder().getName().equals(DEFAULT_BINDER)) {
+                return null;
+            }
+            bindingNames[i] = name;
+        }
+        return new BatchableUpdate(sqlUpdate.value(), bindingNames);
+    }
+
+    private static boolean customizesStatements(AnnotatedElement element) {
+        for (Annotation annotation : element.getAnnotations()) {
+            if (annotation.annotationType().isAnnotationPresent(SqlStatementCustomizingAnnotation.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs the update once for each of the given argument arrays, as a single JDBC batch
+     *
+     * @param handle    the handle running the batch
+     * @param arguments the arguments of every invocation, in the order they were made
+     */
+    void execute(Handle handle, List<Object[]> arguments) {
+        PreparedBatch batch = handle.prepareBatch(sql);
+        for (Object[] args : arguments) {
+            PreparedBatchPart part = batch.add();
+            for (int i = 0; i < bindingNames.length; i++) {
+                part.bind(bindingNames[i], args[i]);
+            }
+        }
+        batch.execute();
+    }
+
+    @Override
+    public String toString() {
+        return sql;
+    }
+}
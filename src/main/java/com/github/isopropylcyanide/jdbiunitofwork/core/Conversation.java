@@ -0,0 +1,228 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.skife.jdbi.v2.Handle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * The state of a unit of work shared by the thread which started it, its owner, and every
+ * thread it was propagated to by the {@link LinkedRequestScopedJdbiHandleManager}.
+ * <br><br>
+ * A conversation is carried as an object from the submitting thread to the threads running its
+ * tasks, so that finding the handle of a unit of work never involves parsing thread names or
+ * looking up a shared map.
+ * <br><br>
+ * The owner and every task it was propagated to are participants of the conversation, which is
+ * reference counted. The owner holds a reference from the start, every propagated task retains
+ * one until it is done and the owner releases its own once it clears the unit of work. Threads
+ * bound to the conversation for as long as they live, such as those of a thread factory, share it
+ * without holding a reference. The conversation is closed, along with its handle, when the last
+ * participant releases it. A closed conversation never hands out a handle again, even to threads
+ * which still carry it.
+ * <br><br>
+ * The owner commits once the other participants are done, see {@link #awaitOtherParticipants(int)},
+ * so that the outcome of the commit is known to it. A conversation whose transaction is rolled
+ * back while other participants still hold a reference never hands out its handle again either,
+ * so that they fail rather than carry on outside of any transaction.
+ * <br><br>
+ * A conversation detached from its owner, such as that of an asynchronous request, is owned in
+ * turn by every thread completing it.
+ */
+final class Conversation {
+
+    private static final Logger log = LoggerFactory.getLogger(Conversation.class);
+
+    private final long id;
+    private volatile long ownerThreadId;
+    private final AtomicInteger participants = new AtomicInteger(1);
+    private final AtomicInteger boundThreads = new AtomicInteger();
+    private volatile ManagedHandle managedHandle;
+    private Consumer<Handle> deferredBegin;
+    private boolean closed;
+    private volatile boolean rolledBack;
+    private SingleWriterExecutor writer;
+
+    Conversation(long id) {
+        this.id = id;
+        this.ownerThreadId = Thread.currentThread().getId();
+    }
+
+    long getId() {
+        return id;
+    }
+
+    boolean isOwnedByCurrentThread() {
+        return ownerThreadId == Thread.currentThread().getId();
+    }
+
+    /**
+     * Makes the current thread the owner of the conversation
+     */
+    void transferToCurrentThread() {
+        this.ownerThreadId = Thread.currentThread().getId();
+    }
+
+    /**
+     * @return whether participants other than the owner still hold a reference
+     */
+    boolean hasOtherParticipants() {
+        return participants.get() > 1;
+    }
+
+    /**
+     * @return whether other threads may use the handle of the conversation, i.e. whether other
+     * participants hold a reference or threads are bound to it
+     */
+    boolean isShared() {
+        return hasOtherParticipants() || boundThreads.get() > 0;
+    }
+
+    /**
+     * Tells the conversation of a thread bound to it without holding a reference, which must be
+     * told of again through {@link #unbindThread()} once it is done
+     */
+    void bindThread() {
+        boundThreads.incrementAndGet();
+    }
+
+    void unbindThread() {
+        boundThreads.decrementAndGet();
+    }
+
+    /**
+     * Adds a participant to the conversation
+     *
+     * @return {@code true} if a reference was retained, {@code false} if the conversation is
+     * already closed, in which case no reference must be released
+     */
+    boolean retain() {
+        for (; ; ) {
+            int current = participants.get();
+            if (current == 0) {
+                return false;
+            }
+            if (participants.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes a participant from the conversation, closing it if it was the last one
+     */
+    void release() {
+        if (participants.decrementAndGet() == 0) {
+            close();
+            return;
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the participants other than the owner have released their reference
+     *
+     * @param heldByCurrentThread the references held by the calling thread itself, such as by the
+     *                            propagated task it runs, which it must not wait for
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    void awaitOtherParticipants(int heldByCurrentThread) throws InterruptedException {
+        synchronized (this) {
+            while (participants.get() > 1 + heldByCurrentThread) {
+                wait();
+            }
+        }
+    }
+
+    /**
+     * Refuses the handle to every thread from now on, as its transaction is being rolled back
+     */
+    synchronized void markRolledBack() {
+        rolledBack = true;
+    }
+
+    /**
+     * @return the executor serializing the SQL object invocations of the conversation
+     */
+    synchronized SingleWriterExecutor getWriter() {
+        if (writer == null) {
+            writer = new SingleWriterExecutor();
+        }
+        return writer;
+    }
+
+    @Nullable
+    ManagedHandle peek() {
+        return managedHandle;
+    }
+
+    /**
+     * @param opener  opens a new managed handle when the conversation has none
+     * @param mayOpen whether a handle may be opened even if no begin has been deferred
+     * @return the handle of the conversation, opening it and running a deferred begin against it
+     * if needed, or {@code null} if no handle is open and none may be opened
+     */
+    @Nullable
+    ManagedHandle getManagedHandle(Supplier<ManagedHandle> opener, boolean mayOpen) {
+        ManagedHandle current = managedHandle;
+        if (current != null && !rolledBack) {
+            return current;
+        }
+        synchronized (this) {
+            if (rolledBack) {
+                throw new IllegalStateException(String.format("Transaction of conversation [%s] was rolled back. Its handle is no longer handed out", id));
+            }
+            if (!closed && managedHandle == null && (mayOpen || deferredBegin != null)) {
+                ManagedHandle opened = opener.get();
+                Consumer<Handle> begin = deferredBegin;
+                deferredBegin = null;
+                if (begin != null) {
+                    try {
+                        begin.accept(opened.getHandle());
+                    } catch (RuntimeException ex) {
+                        opened.close();
+                        throw ex;
+                    }
+                }
+                managedHandle = opened;
+            }
+            return managedHandle;
+        }
+    }
+
+    synchronized boolean deferBegin(Consumer<Handle> begin) {
+        if (closed || managedHandle != null) {
+            return false;
+        }
+        deferredBegin = begin;
+        return true;
+    }
+
+    synchronized boolean discardDeferredBegin() {
+        if (deferredBegin == null) {
+            return false;
+        }
+        deferredBegin = null;
+        return true;
+    }
+
+    private void close() {
+        ManagedHandle current;
+        synchronized (this) {
+            closed = true;
+            current = managedHandle;
+            managedHandle = null;
+            deferredBegin = null;
+        }
+        if (current != null) {
+            current.close();
+            log.debug("Closed handle [{}] of conversation [{}] on Thread Id [{}]", current.getHandle().hashCode(), id, Thread.currentThread().getId());
+        }
+    }
+}
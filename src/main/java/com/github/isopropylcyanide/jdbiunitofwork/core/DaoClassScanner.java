@@ -0,0 +1,71 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.reflections.Reflections;
+import org.reflections.scanners.Scanners;
+import org.reflections.util.ConfigurationBuilder;
+import org.reflections.util.FilterBuilder;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
+import org.skife.jdbi.v2.sqlobject.SqlCall;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Finds the DAO classes, i.e. classes with at least one method annotated with {@link SqlQuery},
+ * {@link SqlUpdate}, {@link SqlBatch} or {@link SqlCall}, in a set of packages.
+ * <br><br>
+ * All packages and all four annotations are covered by a single scan of the classpath. Nothing is
+ * kept once the scan is over, so that the scanned classes, and the class loaders they come from,
+ * are not held for the lifetime of the application. The scan can be skipped altogether through
+ * the index generated by the annotation processor, see {@link DaoIndex}.
+ */
+final class DaoClassScanner {
+
+    private static final Logger log = LoggerFactory.getLogger(DaoClassScanner.class);
+
+    private DaoClassScanner() {
+    }
+
+    /**
+     * @param packages the packages to scan, including their sub packages
+     * @param parallel whether the classpath is scanned in parallel using the common fork join pool
+     * @return the unmodifiable set of DAO classes found within the packages
+     */
+    static Set<Class<?>> scan(Collection<String> packages, boolean parallel) {
+        return scan(new HashSet<>(packages), parallel);
+    }
+
+    private static Set<Class<?>> scan(Set<String> packages, boolean parallel) {
+        if (packages.isEmpty()) {
+            return Collections.emptySet();
+        }
+        long start = System.nanoTime();
+        ConfigurationBuilder configuration = new ConfigurationBuilder()
+                .setScanners(Scanners.MethodsAnnotated)
+                .setParallel(parallel);
+
+        FilterBuilder inputFilter = new FilterBuilder();
+        for (String pkg : packages) {
+            configuration.forPackage(pkg);
+            inputFilter.includePackage(pkg);
+        }
+        Reflections reflections = new Reflections(configuration.filterInputsBy(inputFilter));
+
+        Set<Class<?>> daoClasses = new HashSet<>();
+        for (Class<? extends Annotation> annotation : Set.of(SqlQuery.class, SqlUpdate.class, SqlBatch.class, SqlCall.class)) {
+            for (Method method : reflections.getMethodsAnnotatedWith(annotation)) {
+                daoClasses.add(method.getDeclaringClass());
+            }
+        }
+        log.info("Scanned [{}] DAO classes in packages {} in [{}] ms", daoClasses.size(), packages, (System.nanoTime() - start) / 1_000_000);
+        return Collections.unmodifiableSet(daoClasses);
+    }
+}
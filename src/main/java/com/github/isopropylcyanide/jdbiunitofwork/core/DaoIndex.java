@@ -0,0 +1,128 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The index of DAO classes generated at compile time by the
+ * {@code dropwizard-jdbi-unitofwork-processor} annotation processor. Every jar or class folder
+ * compiled with the processor contributes an index file at {@value #LOCATION}, listing the
+ * binary names of its DAO classes.
+ * <br><br>
+ * Looking DAO classes up in the index avoids scanning the classpath at startup. Packages for
+ * which no DAO class is indexed are left to the {@link DaoClassScanner}, and so are packages also
+ * found in jars or class folders which contribute no index file, since the DAO classes these hold
+ * would otherwise be missed.
+ *
+ * @implNote A package is only found in the jars listing a directory entry for it, which most build
+ * tools write. DAO classes of an unindexed jar without such entries are still missed.
+ */
+final class DaoIndex {
+
+    static final String LOCATION = "META-INF/jdbi-unitofwork/dao-classes";
+
+    private static final Logger log = LoggerFactory.getLogger(DaoIndex.class);
+
+    private final ClassLoader classLoader;
+    private final Set<String> daoClassNames;
+    private final Set<String> indexedRoots;
+
+    private DaoIndex(ClassLoader classLoader, Set<String> daoClassNames, Set<String> indexedRoots) {
+        this.classLoader = classLoader;
+        this.daoClassNames = daoClassNames;
+        this.indexedRoots = indexedRoots;
+    }
+
+    static DaoIndex load(ClassLoader classLoader) {
+        Set<String> daoClassNames = new HashSet<>();
+        Set<String> indexedRoots = new HashSet<>();
+        try {
+            Enumeration<URL> indexFiles = classLoader.getResources(LOCATION);
+            while (indexFiles.hasMoreElements()) {
+                URL indexFile = indexFiles.nextElement();
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(indexFile.openStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (!line.trim().isEmpty()) {
+                            daoClassNames.add(line.trim());
+                        }
+                    }
+                }
+                indexedRoots.add(rootOf(indexFile, LOCATION));
+                log.debug("Loaded DAO index from [{}]", indexFile);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to read the DAO index " + LOCATION, ex);
+        }
+        return new DaoIndex(classLoader, Collections.unmodifiableSet(daoClassNames), Collections.unmodifiableSet(indexedRoots));
+    }
+
+    boolean isEmpty() {
+        return daoClassNames.isEmpty();
+    }
+
+    /**
+     * @param pkg the package to look up, including its sub packages
+     * @return the indexed DAO classes within the package, empty if none of them is indexed
+     * @throws IllegalStateException if an indexed DAO class cannot be loaded, meaning the index is stale
+     */
+    Set<Class<?>> getDaoClasses(String pkg) {
+        String prefix = pkg + ".";
+        Set<Class<?>> daoClasses = new HashSet<>();
+        for (String daoClassName : daoClassNames) {
+            if (daoClassName.startsWith(prefix)) {
+                daoClasses.add(loadClass(daoClassName));
+            }
+        }
+        return daoClasses;
+    }
+
+    /**
+     * @param pkg the package to look up
+     * @return the jars and class folders holding the package which contribute no index file, and
+     * whose DAO classes within the package the index therefore cannot tell of
+     */
+    Set<String> getUnindexedRoots(String pkg) {
+        String path = pkg.replace('.', '/');
+        Set<String> unindexedRoots = new HashSet<>();
+        try {
+            Enumeration<URL> packageDirectories = classLoader.getResources(path);
+            while (packageDirectories.hasMoreElements()) {
+                String root = rootOf(packageDirectories.nextElement(), path);
+                if (!indexedRoots.contains(root)) {
+                    unindexedRoots.add(root);
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to look up the classpath roots of package " + pkg, ex);
+        }
+        return unindexedRoots;
+    }
+
+    private static String rootOf(URL resource, String name) {
+        String url = resource.toString();
+        if (url.endsWith("/")) {
+            url = url.substring(0, url.length() - 1);
+        }
+        return url.endsWith(name) ? url.substring(0, url.length() - name.length()) : url;
+    }
+
+    private Class<?> loadClass(String daoClassName) {
+        try {
+            return Class.forName(daoClassName, false, classLoader);
+        } catch (ClassNotFoundException ex) {
+            throw new IllegalStateException(String.format("Indexed DAO class [%s] was not found. The index at %s is stale", daoClassName, LOCATION), ex);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+/**
+ * The scope of a unit of work detached from the thread which started it through
+ * {@link JdbiHandleManager#detachScope()}, so that the unit of work can be completed from another
+ * thread, such as the one resuming an asynchronous request. The scope keeps its handle, along with
+ * any transaction begun or deferred on it, until it is cleared from within {@link #run(Runnable)}.
+ */
+@FunctionalInterface
+public interface DetachedScope {
+
+    /**
+     * Runs a task within the detached scope, which is bound to the calling thread for as long as
+     * the task runs. The scope the calling thread had before is restored afterwards, and whatever
+     * the task left in the detached scope, such as a handle it opened, is kept for the next task.
+     * Tasks run within the same scope must not overlap.
+     *
+     * @param task the task to run within the detached scope
+     */
+    void run(Runnable task);
+}
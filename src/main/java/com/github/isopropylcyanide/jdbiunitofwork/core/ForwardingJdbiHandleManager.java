@@ -0,0 +1,174 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.skife.jdbi.v2.Handle;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+
+/**
+ * A {@link JdbiHandleManager} which forwards every call to another handle manager. Decorators
+ * extend it and override only the methods they enhance.
+ * <br><br>
+ * It tells the handle manager it wraps of itself, so that decorators keeping state per handle can
+ * release it by overriding {@link #closing(Handle)}, whichever thread ends up closing the handle.
+ * Only the handle managers of this package tell their decorators of the handles they open and
+ * close, see {@link #peek()}.
+ */
+public abstract class ForwardingJdbiHandleManager implements InternalJdbiHandleManager {
+
+    private final JdbiHandleManager delegate;
+
+    protected ForwardingJdbiHandleManager(JdbiHandleManager delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate handle manager cannot be null");
+        }
+        this.delegate = delegate;
+        if (delegate instanceof InternalJdbiHandleManager) {
+            ((InternalJdbiHandleManager) delegate).decoratedBy(this);
+        }
+    }
+
+    protected JdbiHandleManager delegate() {
+        return delegate;
+    }
+
+    @Override
+    public Handle get() {
+        return delegate.get();
+    }
+
+    @Override
+    public <T> T attach(Class<T> sqlObjectType) {
+        return delegate.attach(sqlObjectType);
+    }
+
+    /**
+     * Called right before a handle opened by the handle manager it wraps is closed, on whichever
+     * thread closes it. Decorators keeping state per handle override it to release that state
+     */
+    @Override
+    public void closing(Handle handle) {
+        if (delegate instanceof InternalJdbiHandleManager) {
+            ((InternalJdbiHandleManager) delegate).closing(handle);
+        }
+    }
+
+    @Override
+    public void decoratedBy(InternalJdbiHandleManager decorator) {
+        if (delegate instanceof InternalJdbiHandleManager) {
+            ((InternalJdbiHandleManager) delegate).decoratedBy(decorator);
+        }
+    }
+
+    /**
+     * @return the handle tied with the current scope, without opening one, so that decorators can
+     * tell whether a call opened it. Returns {@code null} if none has been opened, or if the
+     * handle manager it wraps does not tell
+     */
+    @Override
+    @Nullable
+    public Handle peek() {
+        return InternalJdbiHandleManager.peek(delegate);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+
+    @Override
+    public boolean deferBegin(Consumer<Handle> begin) {
+        return delegate.deferBegin(begin);
+    }
+
+    @Override
+    public boolean discardDeferredBegin() {
+        return delegate.discardDeferredBegin();
+    }
+
+    @Override
+    public void beforeCommit(Handle handle) {
+        delegate.beforeCommit(handle);
+    }
+
+    @Override
+    public void beforeRollback(Handle handle) {
+        delegate.beforeRollback(handle);
+    }
+
+    @Override
+    public void flushBufferedStatements(Handle handle) {
+        delegate.flushBufferedStatements(handle);
+    }
+
+    @Override
+    public void discardBufferedStatements(Handle handle) {
+        delegate.discardBufferedStatements(handle);
+    }
+
+    @Override
+    public void afterCommit(Handle handle) {
+        delegate.afterCommit(handle);
+    }
+
+    @Override
+    @Nullable
+    public Executor getSqlObjectExecutor() {
+        return InternalJdbiHandleManager.getSqlObjectExecutor(delegate);
+    }
+
+    @Override
+    public void enterScope() {
+        delegate.enterScope();
+    }
+
+    @Override
+    @Nullable
+    public DetachedScope detachScope() {
+        return delegate.detachScope();
+    }
+
+    @Override
+    public void markReadOnly() {
+        delegate.markReadOnly();
+    }
+
+    @Override
+    public void runInScope(Runnable task) {
+        delegate.runInScope(task);
+    }
+
+    @Override
+    public boolean requiresScope() {
+        return delegate.requiresScope();
+    }
+
+    @Override
+    public <T> T callInScope(Callable<T> task) throws Exception {
+        return delegate.callInScope(task);
+    }
+
+    @Override
+    public ThreadFactory createThreadFactory() {
+        return delegate.createThreadFactory();
+    }
+
+    @Override
+    public ExecutorService propagating(ExecutorService executorService) {
+        return delegate.propagating(executorService);
+    }
+
+    @Override
+    public Executor propagating(Executor executor) {
+        return delegate.propagating(executor);
+    }
+
+    @Override
+    public String getConversationId() {
+        return delegate.getConversationId();
+    }
+}
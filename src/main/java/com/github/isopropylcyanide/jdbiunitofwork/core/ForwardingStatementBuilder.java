@@ -0,0 +1,135 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.skife.jdbi.v2.DefaultStatementBuilder;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.StatementBuilder;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * A {@link StatementBuilder} which forwards every call to another statement builder. Statement
+ * builders changing how the statements of a handle are created extend it and override only the
+ * methods they enhance.
+ * <br><br>
+ * Every statement builder set on a {@link Handle} through {@link #wrap(Handle, Function)} wraps the
+ * one the handle uses at that point rather than replacing it, be it the one the {@code DBI} created
+ * the handle with or one wrapped around it since, and is taken off with {@link #unwrap(Handle)}.
+ * Wrapping and unwrapping are meant to happen on the thread using the handle.
+ *
+ * @implNote A {@link Handle} does not tell which statement builder it uses, so it is read from the
+ * field of the handle holding it. Should a handle hold none, it is taken as using a
+ * {@link DefaultStatementBuilder}, and a statement builder wrapped around it is always taken off.
+ */
+public abstract class ForwardingStatementBuilder implements StatementBuilder {
+
+    private static final ClassValue<Optional<Field>> STATEMENT_BUILDER_FIELDS = new ClassValue<Optional<Field>>() {
+        @Override
+        protected Optional<Field> computeValue(Class<?> handleType) {
+            for (Class<?> type = handleType; type != null; type = type.getSuperclass()) {
+                for (Field field : type.getDeclaredFields()) {
+                    if (field.getType() == StatementBuilder.class && !Modifier.isStatic(field.getModifiers())) {
+                        return accessible(field);
+                    }
+                }
+            }
+            return Optional.empty();
+        }
+    };
+
+    private final StatementBuilder delegate;
+
+    protected ForwardingStatementBuilder(StatementBuilder delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate statement builder cannot be null");
+        }
+        this.delegate = delegate;
+    }
+
+    /**
+     * Sets on the handle a statement builder wrapping the one it uses
+     *
+     * @param handle   the handle whose statements are to be created by the returned builder
+     * @param wrapping creates the statement builder from the one the handle uses
+     * @param <B>      the type of the statement builder
+     * @return the statement builder set on the handle
+     */
+    public static <B extends ForwardingStatementBuilder> B wrap(Handle handle, Function<StatementBuilder, B> wrapping) {
+        StatementBuilder current = statementBuilderOf(handle);
+        B statementBuilder = wrapping.apply(current == null ? new DefaultStatementBuilder() : current);
+        handle.setStatementBuilder(statementBuilder);
+        return statementBuilder;
+    }
+
+    /**
+     * Sets the statement builder this one wraps back on the handle, unless another one was wrapped
+     * around this one since, in which case both are left in place
+     *
+     * @param handle the handle this statement builder was set on
+     * @return {@code true} if the statement builder was taken off the handle
+     */
+    public boolean unwrap(Handle handle) {
+        StatementBuilder current = statementBuilderOf(handle);
+        if (current != null && current != this) {
+            return false;
+        }
+        handle.setStatementBuilder(delegate);
+        return true;
+    }
+
+    /**
+     * @return the statement builder the handle uses, or {@code null} if it cannot be told
+     */
+    static StatementBuilder statementBuilderOf(Handle handle) {
+        Optional<Field> field = STATEMENT_BUILDER_FIELDS.get(handle.getClass());
+        if (!field.isPresent()) {
+            return null;
+        }
+        try {
+            return (StatementBuilder) field.get().get(handle);
+        } catch (IllegalAccessException ex) {
+            return null;
+        }
+    }
+
+    private static Optional<Field> accessible(Field field) {
+        try {
+            field.setAccessible(true);
+            return Optional.of(field);
+        } catch (RuntimeException ex) {
+            return Optional.empty();
+        }
+    }
+
+    protected StatementBuilder delegate() {
+        return delegate;
+    }
+
+    @Override
+    public PreparedStatement create(Connection conn, String sql, StatementContext ctx) throws SQLException {
+        return delegate.create(conn, sql, ctx);
+    }
+
+    @Override
+    public CallableStatement createCall(Connection conn, String sql, StatementContext ctx) throws SQLException {
+        return delegate.createCall(conn, sql, ctx);
+    }
+
+    @Override
+    public void close(Connection conn, String sql, Statement stmt) throws SQLException {
+        delegate.close(conn, sql, stmt);
+    }
+
+    @Override
+    public void close(Connection conn) {
+        delegate.close(conn);
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Looks up the delegating class generated at compile time for a SQL object by the
+ * {@code dropwizard-jdbi-unitofwork-processor} annotation processor, when run with
+ * {@code -Ajdbi.unitofwork.generateProxies=true}.
+ * <br><br>
+ * A generated class implements every method of the SQL object by attaching it through the
+ * {@link JdbiHandleManager} and calling the attached instance directly. Unlike a reflective
+ * proxy, calls go through neither {@link java.lang.reflect.Proxy} dispatch nor an argument array.
+ */
+final class GeneratedSqlObjectProxy {
+
+    static final String SUFFIX = "_JdbiUnitOfWorkProxy";
+
+    private GeneratedSqlObjectProxy() {
+    }
+
+    /**
+     * @return the binary name of the class generated for the SQL object, which is named after the
+     * binary name of the SQL object with every {@code $} doubled, so that nested and top level SQL
+     * objects never share a name, and lives in its package
+     */
+    static String nameOf(Class<?> sqlObjectType) {
+        String packageName = sqlObjectType.getPackageName();
+        String binaryName = sqlObjectType.getName();
+        if (packageName.isEmpty()) {
+            return binaryName.replace("$", "$$") + SUFFIX;
+        }
+        return packageName + "." + binaryName.substring(packageName.length() + 1).replace("$", "$$") + SUFFIX;
+    }
+
+    /**
+     * @return an instance of the class generated for the SQL object bound to the handle manager,
+     * or {@code null} if no class has been generated for it
+     */
+    @Nullable
+    static <T> T newInstance(Class<T> sqlObjectType, JdbiHandleManager handleManager) {
+        String proxyName = nameOf(sqlObjectType);
+        try {
+            Class<?> proxyClass = Class.forName(proxyName, true, sqlObjectType.getClassLoader());
+            return sqlObjectType.cast(proxyClass.getConstructor(JdbiHandleManager.class).newInstance(handleManager));
+
+        } catch (ClassNotFoundException ex) {
+            return null;
+        } catch (InvocationTargetException ex) {
+            throw new IllegalStateException(String.format("Generated proxy [%s] could not be created", proxyName), ex.getCause());
+        } catch (ReflectiveOperationException | ClassCastException ex) {
+            throw new IllegalStateException(String.format("Generated proxy [%s] does not match SQL object [%s]", proxyName, sqlObjectType.getName()), ex);
+        }
+    }
+}
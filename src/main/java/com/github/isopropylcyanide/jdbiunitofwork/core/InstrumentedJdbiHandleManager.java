@@ -0,0 +1,91 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.skife.jdbi.v2.Handle;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A {@link JdbiHandleManager} decorator recording the lifecycle of the handles opened by another
+ * handle manager in a {@link MetricRegistry}
+ * <ul>
+ * <li>{@code acquisition}: a timer of the calls that had to open a new handle for their scope,
+ * i.e. the time spent checking a connection out, and beginning a deferred transaction if any</li>
+ * <li>{@code hold}: a timer of how long handles stayed open, from being opened until being closed</li>
+ * <li>{@code open}: a counter of the handles currently open</li>
+ * </ul>
+ * Metrics are named after the given prefix, e.g. {@code orders.acquisition}, so that the handle
+ * managers of several databases are recorded apart in the same registry. They are named after
+ * {@link JdbiHandleManager} by default, e.g. {@code ...core.JdbiHandleManager.acquisition}.
+ *
+ * @implNote The decorator relies on {@link #peek()} to tell whether a handle
+ * was opened by a call, and on {@link #closing(Handle)} to tell when it is closed,
+ * which may be well after its scope was cleared when other threads share it. Nothing is recorded
+ * for handle managers which do not support them.
+ */
+public class InstrumentedJdbiHandleManager extends ForwardingJdbiHandleManager {
+
+    private final Timer acquisition;
+    private final Timer hold;
+    private final Counter openHandles;
+    private final Map<Handle, Long> openedAt = new ConcurrentHashMap<>();
+
+    public InstrumentedJdbiHandleManager(JdbiHandleManager delegate, MetricRegistry metricRegistry) {
+        this(delegate, metricRegistry, MetricRegistry.name(JdbiHandleManager.class));
+    }
+
+    public InstrumentedJdbiHandleManager(JdbiHandleManager delegate, MetricRegistry metricRegistry, String name) {
+        super(delegate);
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Metric name prefix cannot be empty");
+        }
+        this.acquisition = metricRegistry.timer(MetricRegistry.name(name, "acquisition"));
+        this.hold = metricRegistry.timer(MetricRegistry.name(name, "hold"));
+        this.openHandles = metricRegistry.counter(MetricRegistry.name(name, "open"));
+    }
+
+    @Override
+    public Handle get() {
+        return opening(super::get);
+    }
+
+    @Override
+    public <T> T attach(Class<T> sqlObjectType) {
+        return opening(() -> super.attach(sqlObjectType));
+    }
+
+    @Override
+    public void closing(Handle handle) {
+        released(handle);
+        super.closing(handle);
+    }
+
+    private <T> T opening(Supplier<T> call) {
+        if (peek() != null) {
+            return call.get();
+        }
+        long start = System.nanoTime();
+        T result = call.get();
+        long end = System.nanoTime();
+
+        Handle handle = peek();
+        if (handle != null && openedAt.putIfAbsent(handle, end) == null) {
+            acquisition.update(end - start, TimeUnit.NANOSECONDS);
+            openHandles.inc();
+        }
+        return result;
+    }
+
+    private void released(Handle handle) {
+        Long opened = openedAt.remove(handle);
+        if (opened != null) {
+            hold.update(System.nanoTime() - opened, TimeUnit.NANOSECONDS);
+            openHandles.dec();
+        }
+    }
+}
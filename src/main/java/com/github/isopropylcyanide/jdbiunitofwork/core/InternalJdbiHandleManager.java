@@ -0,0 +1,76 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.skife.jdbi.v2.Handle;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.Executor;
+
+/**
+ * The hooks the handle managers of this package and the decorators wrapping them use between
+ * themselves, kept out of {@link JdbiHandleManager} as callers have no use for them. A handle
+ * manager implemented elsewhere is taken as providing none of them, in which case decorators
+ * cannot tell which calls open a handle nor are told of the handles being closed.
+ */
+interface InternalJdbiHandleManager extends JdbiHandleManager {
+
+    /**
+     * Provide a way to look at the handle tied with the current scope without opening one.
+     * This lets decorators, such as {@link InstrumentedJdbiHandleManager}, tell whether a call
+     * to {@link #get()} opened a new handle or reused the one of the scope.
+     *
+     * @return the handle tied with the current scope, or {@code null} if none has been opened.
+     * Returns {@code null} by default
+     */
+    @Nullable
+    default Handle peek() {
+        return null;
+    }
+
+    /**
+     * Provide a way to serialize the SQL object invocations of the current scope, when its handle
+     * is shared by threads which could otherwise run statements on it concurrently. Invocations
+     * run on the returned executor one at a time, while the calling threads wait for them.
+     * Implementations returning an executor open the handle of the scope, if needed, before
+     * returning it, so that it is opened on behalf of the calling thread.
+     *
+     * @return the executor running the SQL object invocations of the current scope, or
+     * {@code null} if they may run right away on the calling thread. Returns {@code null} by default
+     */
+    @Nullable
+    default Executor getSqlObjectExecutor() {
+        return null;
+    }
+
+    /**
+     * Provide a way to act on a handle right before it is closed, such as by releasing what was
+     * kept for it. Handle managers closing the handles they open call it on the outermost decorator
+     * they were told of through {@link #decoratedBy(InternalJdbiHandleManager)}, on whichever thread
+     * closes the handle, which need not be the one clearing its scope. Does nothing by default.
+     *
+     * @param handle the handle about to be closed
+     */
+    default void closing(Handle handle) {
+    }
+
+    /**
+     * Provide a way for a handle manager to be told of the decorator wrapping it, which is what
+     * {@link ForwardingJdbiHandleManager} does on creation. Decorators pass it on to the handle
+     * manager they wrap, so that the innermost one tells the outermost decorator of the handles it
+     * closes through {@link #closing(Handle)}. The last decorator told of wins. Does nothing by
+     * default, in which case decorators are never told of closing handles.
+     *
+     * @param decorator the decorator wrapping this handle manager
+     */
+    default void decoratedBy(InternalJdbiHandleManager decorator) {
+    }
+
+    @Nullable
+    static Handle peek(JdbiHandleManager handleManager) {
+        return handleManager instanceof InternalJdbiHandleManager ? ((InternalJdbiHandleManager) handleManager).peek() : null;
+    }
+
+    @Nullable
+    static Executor getSqlObjectExecutor(JdbiHandleManager handleManager) {
+        return handleManager instanceof InternalJdbiHandleManager ? ((InternalJdbiHandleManager) handleManager).getSqlObjectExecutor() : null;
+    }
+}
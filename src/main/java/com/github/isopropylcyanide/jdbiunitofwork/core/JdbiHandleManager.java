@@ -2,7 +2,12 @@ package com.github.isopropylcyanide.jdbiunitofwork.core;
 
 import org.skife.jdbi.v2.Handle;
 
+import javax.annotation.Nullable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
 
 /**
  * A {@link JdbiHandleManager} is used to provide the lifecycle of a {@link Handle} with respect
@@ -17,11 +22,169 @@ public interface JdbiHandleManager {
      */
     Handle get();
 
+    /**
+     * Provide a way to get a SQL object attached to the handle returned by {@link #get()}.
+     * Implementations that scope a handle across multiple invocations may cache the attached
+     * instance for as long as the handle stays open, instead of attaching it again every time.
+     *
+     * @param sqlObjectType the SQL object type to attach
+     * @param <T>           the type of the SQL object
+     * @return an instance of the SQL object attached to the handle tied with a specific scope
+     */
+    default <T> T attach(Class<T> sqlObjectType) {
+        return get().attach(sqlObjectType);
+    }
+
     /**
      * Provide a way to clear the handle rendering it useless for the other methods
      */
     void clear();
 
+    /**
+     * Provide a way to defer beginning a transaction until a handle is actually needed. If the
+     * implementation supports it and no handle has been opened in the current scope yet, the
+     * given action is remembered and run against the handle on the first subsequent {@link #get()}
+     * instead of checking a connection out right away.
+     *
+     * @param begin the action beginning a transaction on a freshly opened handle
+     * @return {@code true} if the action was deferred, {@code false} if the caller must begin
+     * the transaction right away. Returns {@code false} by default
+     */
+    default boolean deferBegin(Consumer<Handle> begin) {
+        return false;
+    }
+
+    /**
+     * Provide a way to discard a begin deferred through {@link #deferBegin(Consumer)} which has
+     * not been run yet. This allows the caller to skip committing or rolling back a transaction
+     * for which no handle was ever opened.
+     *
+     * @return {@code true} if a pending begin was discarded, i.e. no handle was opened in the
+     * current scope since the begin was deferred. Returns {@code false} by default
+     */
+    default boolean discardDeferredBegin() {
+        return false;
+    }
+
+    /**
+     * Provide a way to veto the commit of the transaction of a handle, such as one which was
+     * marked rollback only, by throwing. The transaction is then rolled back instead. Implementations
+     * sharing the handle with other threads may also hold the commit here until these are done with
+     * it, so that the caller commits whatever they did and learns of its outcome. Does nothing by
+     * default.
+     *
+     * @param handle the handle whose transaction is about to be committed
+     */
+    default void beforeCommit(Handle handle) {
+    }
+
+    /**
+     * Provide a way to act on the transaction of a handle about to be rolled back, such as by
+     * refusing the handle to the other threads sharing it, which would otherwise carry on outside of
+     * any transaction. Does nothing by default.
+     *
+     * @param handle the handle whose transaction is about to be rolled back
+     */
+    default void beforeRollback(Handle handle) {
+    }
+
+    /**
+     * Provide a way to run the statements buffered for a handle, such as by a write behind
+     * decorator, before its transaction is committed. Failures surface here rather than from the
+     * SQL object invocations which buffered the statements. Does nothing by default.
+     *
+     * @param handle the handle whose transaction is about to be committed
+     */
+    default void flushBufferedStatements(Handle handle) {
+    }
+
+    /**
+     * Provide a way to drop the statements buffered for a handle without running them, before
+     * its transaction is rolled back. Does nothing by default.
+     *
+     * @param handle the handle whose transaction is about to be rolled back
+     */
+    default void discardBufferedStatements(Handle handle) {
+    }
+
+    /**
+     * Provide a way to act on the transaction of a handle having been committed, such as by
+     * invalidating what was cached from the tables it wrote to. Does nothing by default.
+     *
+     * @param handle the handle whose transaction was committed
+     */
+    default void afterCommit(Handle handle) {
+    }
+
+    /**
+     * Provide a way to act on a unit of work, such as a request, starting on the calling thread
+     * before it requests any handle. A handle still open for the thread by then was left over by
+     * earlier work which never cleared it, and may be told as leaked. Does nothing by default.
+     */
+    default void enterScope() {
+    }
+
+    /**
+     * Provide a way to detach the scope of the calling thread, along with its handle and any
+     * transaction begun or deferred on it, so that the unit of work can be completed from another
+     * thread, such as the one resuming an asynchronous request. The calling thread is left without
+     * a scope, as if it had been cleared, while the handle stays open until the detached scope is
+     * cleared from within {@link DetachedScope#run(Runnable)}.
+     *
+     * @return the detached scope, or {@code null} if the implementation cannot detach it from the
+     * calling thread. Returns {@code null} by default
+     */
+    @Nullable
+    default DetachedScope detachScope() {
+        return null;
+    }
+
+    /**
+     * Provide a way to hint that the current scope only reads from the database, such as while
+     * serving a request outside of a transaction. Implementations may then open the handle of
+     * the scope from a read replica. The hint applies until the scope is cleared.
+     * Does nothing by default.
+     */
+    default void markReadOnly() {
+    }
+
+    /**
+     * Provide a way to run a unit of work, such as a whole request, within a scope of its own.
+     * Implementations which cannot scope a handle to the running thread alone, such as the one
+     * binding it through a {@code ScopedValue}, only provide a handle to the code run through
+     * this method and the tasks it forks. Runs the task right away by default.
+     *
+     * @param task the unit of work
+     */
+    default void runInScope(Runnable task) {
+        task.run();
+    }
+
+    /**
+     * Provide a way to tell whether handles are only provided to the code run through
+     * {@link #runInScope(Runnable)}, in which case units of work cannot be begun or ended from
+     * outside of it, such as from the request events of Jersey.
+     *
+     * @return {@code true} if every unit of work must be run through {@link #runInScope(Runnable)}.
+     * Returns {@code false} by default
+     */
+    default boolean requiresScope() {
+        return false;
+    }
+
+    /**
+     * Provide a way to run a unit of work returning a result within a scope of its own, as
+     * described in {@link #runInScope(Runnable)}. Calls the task right away by default.
+     *
+     * @param task the unit of work
+     * @param <T>  the type of the result
+     * @return the result of the task
+     * @throws Exception if the task throws
+     */
+    default <T> T callInScope(Callable<T> task) throws Exception {
+        return task.call();
+    }
+
     /**
      * Provide a thread factory for the caller with some identity represented by the
      * {@link #getConversationId()}. This can be used by the caller to create multiple threads,
@@ -36,6 +199,32 @@ public interface JdbiHandleManager {
         throw new UnsupportedOperationException("Thread factory creation is not supported");
     }
 
+    /**
+     * Provide a way to hand the unit of work of the caller over to the tasks of an executor
+     * service. Every task captures the scope of the thread submitting it and runs within that
+     * scope, whichever thread of the executor service runs it, after which the scope the running
+     * thread had before is restored.
+     *
+     * @param executorService the executor service running the tasks
+     * @return an executor service propagating the scope of the submitter to its tasks
+     * @throws UnsupportedOperationException by default
+     */
+    default ExecutorService propagating(ExecutorService executorService) {
+        throw new UnsupportedOperationException("Scope propagation is not supported");
+    }
+
+    /**
+     * Provide a way to hand the unit of work of the caller over to the tasks of an executor,
+     * as described in {@link #propagating(ExecutorService)}.
+     *
+     * @param executor the executor running the tasks
+     * @return an executor propagating the scope of the submitter to its tasks
+     * @throws UnsupportedOperationException by default
+     */
+    default Executor propagating(Executor executor) {
+        throw new UnsupportedOperationException("Scope propagation is not supported");
+    }
+
     /**
      * Provide a unique identifier for the conversation with a handle. No two identifiers
      * should co exist at once during the application lifecycle or else handle corruption
@@ -1,9 +1,8 @@
 package com.github.isopropylcyanide.jdbiunitofwork.core;
 
-import com.google.common.collect.Sets;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Throwables;
 import com.google.common.reflect.Reflection;
-import org.reflections.Reflections;
-import org.reflections.scanners.Scanners;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.sqlobject.SqlBatch;
 import org.skife.jdbi.v2.sqlobject.SqlCall;
@@ -12,32 +11,167 @@ import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.Collection;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ScheduledExecutorService;
 
 @SuppressWarnings({"UnstableApiUsage", "rawtypes", "unchecked"})
-public class JdbiUnitOfWorkProvider {
+public class JdbiUnitOfWorkProvider implements Closeable {
 
     private final Logger log = LoggerFactory.getLogger(JdbiUnitOfWorkProvider.class);
     private final JdbiHandleManager handleManager;
+    private final boolean generatedProxies;
+    private final List<SqlObjectInterceptor> interceptors;
 
     private JdbiUnitOfWorkProvider(JdbiHandleManager handleManager) {
+        this(handleManager, true);
+    }
+
+    private JdbiUnitOfWorkProvider(JdbiHandleManager handleManager, boolean generatedProxies) {
+        this(handleManager, generatedProxies, Collections.emptyList());
+    }
+
+    private JdbiUnitOfWorkProvider(JdbiHandleManager handleManager, boolean generatedProxies, List<SqlObjectInterceptor> interceptors) {
         this.handleManager = handleManager;
+        this.generatedProxies = generatedProxies;
+        this.interceptors = interceptors;
     }
 
     public static JdbiUnitOfWorkProvider withDefault(DBI dbi) {
-        JdbiHandleManager handleManager = new RequestScopedJdbiHandleManager(dbi);
+        return withDefault(dbi, false);
+    }
+
+    /**
+     * withDefault creates a provider whose handles are scoped to the requesting thread.
+     * <p>
+     * With {@code deferBegin} set, a unit of work only opens a handle and begins its transaction
+     * on the first DAO invocation, so that a request which never reaches the database does not
+     * hold a connection. Commit and rollback are skipped when no handle was opened.
+     *
+     * @param dbi        the dbi instance used to open handles
+     * @param deferBegin whether beginning a transaction is deferred until the first DAO invocation
+     * @return the provider
+     */
+    public static JdbiUnitOfWorkProvider withDefault(DBI dbi, boolean deferBegin) {
+        JdbiHandleManager handleManager = new RequestScopedJdbiHandleManager(dbi, deferBegin);
         return new JdbiUnitOfWorkProvider(handleManager);
     }
 
     public static JdbiUnitOfWorkProvider withLinked(DBI dbi) {
-        JdbiHandleManager handleManager = new LinkedRequestScopedJdbiHandleManager(dbi);
+        return withLinked(dbi, false);
+    }
+
+    /**
+     * withLinked creates a provider whose handles are shared between the requesting thread and
+     * the threads created from {@link JdbiHandleManager#createThreadFactory()} or running the
+     * tasks submitted to an executor wrapped by {@link JdbiHandleManager#propagating(java.util.concurrent.ExecutorService)}.
+     * <p>
+     * {@code deferBegin} behaves as described in {@link #withDefault(DBI, boolean)}
+     *
+     * @param dbi        the dbi instance used to open handles
+     * @param deferBegin whether beginning a transaction is deferred until the first DAO invocation
+     * @return the provider
+     */
+    public static JdbiUnitOfWorkProvider withLinked(DBI dbi, boolean deferBegin) {
+        JdbiHandleManager handleManager = new LinkedRequestScopedJdbiHandleManager(dbi, deferBegin);
+        return new JdbiUnitOfWorkProvider(handleManager);
+    }
+
+    public static JdbiUnitOfWorkProvider withSerializedLinked(DBI dbi) {
+        return withSerializedLinked(dbi, false);
+    }
+
+    /**
+     * withSerializedLinked creates a provider whose handles are shared as described in
+     * {@link #withLinked(DBI, boolean)}, except that the DAO invocations of the threads sharing a
+     * handle are run one at a time, as a JDBC connection is not meant to run concurrent statements.
+     * The threads keep doing the rest of their work in parallel.
+     * <p>
+     * DAOs are always proxied reflectively by this provider, as the classes generated at compile
+     * time do not serialize their invocations.
+     *
+     * @param dbi        the dbi instance used to open handles
+     * @param deferBegin whether beginning a transaction is deferred until the first DAO invocation
+     * @return the provider
+     */
+    public static JdbiUnitOfWorkProvider withSerializedLinked(DBI dbi, boolean deferBegin) {
+        JdbiHandleManager handleManager = new LinkedRequestScopedJdbiHandleManager(dbi, deferBegin, true);
+        return new JdbiUnitOfWorkProvider(handleManager, false);
+    }
+
+    public static JdbiUnitOfWorkProvider withScopedValue(DBI dbi) {
+        return withScopedValue(dbi, false);
+    }
+
+    /**
+     * withScopedValue creates a provider whose handles are bound to a unit of work through a
+     * {@code ScopedValue}, which suits requests served on virtual threads. Every request must be
+     * run through {@link JdbiHandleManager#runInScope(Runnable)}, and tasks forked from it through
+     * a {@code StructuredTaskScope} share its handle.
+     * <p>
+     * {@code deferBegin} behaves as described in {@link #withDefault(DBI, boolean)}
+     *
+     * @param dbi        the dbi instance used to open handles
+     * @param deferBegin whether beginning a transaction is deferred until the first DAO invocation
+     * @return the provider
+     * @throws UnsupportedOperationException if running on a Java version older than 25
+     * @implNote The handle manager is only compiled into the Java 25 section of the multi release
+     * jar, so it is looked up once the runtime is known to support it.
+     */
+    public static JdbiUnitOfWorkProvider withScopedValue(DBI dbi, boolean deferBegin) {
+        int feature = Runtime.version().feature();
+        if (feature < 25) {
+            throw new UnsupportedOperationException("Scoped value handle manager requires Java 25 or later, running on Java " + feature);
+        }
+        JdbiHandleManager handleManager;
+        try {
+            handleManager = (JdbiHandleManager) Class.forName(JdbiUnitOfWorkProvider.class.getPackage().getName() + ".ScopedValueJdbiHandleManager")
+                    .getDeclaredConstructor(DBI.class, boolean.class)
+                    .newInstance(dbi, deferBegin);
+        } catch (InvocationTargetException ex) {
+            Throwables.propagateIfPossible(ex.getCause());
+            throw new IllegalStateException("Unable to create the scoped value handle manager", ex.getCause());
+        } catch (ReflectiveOperationException ex) {
+            throw new UnsupportedOperationException("Scoped value handle manager is missing from the classpath. Is the jar still a multi release one?", ex);
+        }
+        return new JdbiUnitOfWorkProvider(handleManager);
+    }
+
+    public static JdbiUnitOfWorkProvider withReplicas(DBI primary, List<DBI> replicas) {
+        return withReplicas(primary, replicas, ReplicaSelector.roundRobin());
+    }
+
+    /**
+     * withReplicas creates a provider whose handles are scoped to the requesting thread, as with
+     * {@link #withDefault(DBI)}. Requests served outside of a transaction, such as {@code GET}
+     * requests, open their handle from one of the replicas. Everything else, including all
+     * {@link com.github.isopropylcyanide.jdbiunitofwork.JdbiUnitOfWork} methods, uses the primary.
+     *
+     * @param primary         the dbi instance used for transactions and writes
+     * @param replicas        the non empty list of dbi instances used for read only requests
+     * @param replicaSelector the strategy picking a replica for every read only handle
+     * @return the provider
+     */
+    public static JdbiUnitOfWorkProvider withReplicas(DBI primary, List<DBI> replicas, ReplicaSelector replicaSelector) {
+        if (replicas == null || replicas.isEmpty()) {
+            throw new IllegalArgumentException("Replica DBI list cannot be null or empty");
+        }
+        if (replicaSelector == null) {
+            throw new IllegalArgumentException("Replica selector cannot be null");
+        }
+        List<DBI> replicaList = Collections.unmodifiableList(new ArrayList<>(replicas));
+        JdbiHandleManager handleManager = new ReplicaRoutingJdbiHandleManager(primary, replicaList, replicaSelector);
         return new JdbiUnitOfWorkProvider(handleManager);
     }
 
@@ -45,6 +179,199 @@ public class JdbiUnitOfWorkProvider {
         return handleManager;
     }
 
+    /**
+     * instrumented creates a provider whose handle manager records the lifecycle of its handles
+     * in the given registry, as described in {@link InstrumentedJdbiHandleManager}. Proxies must
+     * be generated from the returned provider for their handles to be recorded.
+     * <p>
+     * Metrics are named after {@link JdbiHandleManager}, so that only one provider may be
+     * instrumented this way per registry. See {@link #instrumented(MetricRegistry, String)}
+     * to instrument the providers of several databases.
+     *
+     * @param metricRegistry the registry recording the handle metrics
+     * @return the provider
+     */
+    public JdbiUnitOfWorkProvider instrumented(MetricRegistry metricRegistry) {
+        return instrumented(metricRegistry, MetricRegistry.name(JdbiHandleManager.class));
+    }
+
+    /**
+     * instrumented creates a provider whose handle manager records the lifecycle of its handles
+     * in the given registry, under metrics named after the given prefix, e.g. {@code orders.hold}.
+     *
+     * @param metricRegistry the registry recording the handle metrics
+     * @param name           the prefix of the metric names, telling this provider apart from
+     *                       others recorded in the same registry
+     * @return the provider
+     */
+    public JdbiUnitOfWorkProvider instrumented(MetricRegistry metricRegistry, String name) {
+        if (metricRegistry == null) {
+            throw new IllegalArgumentException("Metric registry cannot be null");
+        }
+        return new JdbiUnitOfWorkProvider(new InstrumentedJdbiHandleManager(handleManager, metricRegistry, name), generatedProxies, interceptors);
+    }
+
+    /**
+     * batchingWrites creates a provider whose DAOs buffer the {@code void} {@link SqlUpdate}
+     * methods invoked within a transaction and run them as JDBC batches of up to the given size,
+     * as described in {@link WriteBehindJdbiHandleManager}. Buffered statements are run before
+     * any other DAO method is invoked on the handle and before the transaction is committed,
+     * where their failures then surface.
+     * <p>
+     * DAOs are always proxied reflectively by the returned provider, as the classes generated at
+     * compile time do not buffer their invocations.
+     *
+     * @param batchSize the number of buffered statements run as one batch
+     * @return the provider
+     */
+    public JdbiUnitOfWorkProvider batchingWrites(int batchSize) {
+        WriteBehindJdbiHandleManager writeBehind = new WriteBehindJdbiHandleManager(handleManager, batchSize);
+        return new JdbiUnitOfWorkProvider(writeBehind, generatedProxies, intercepting(writeBehind, false));
+    }
+
+    /**
+     * cachingQueries creates a provider whose DAOs cache the results of their {@link SqlQuery}
+     * methods for as long as the handle of the unit of work stays open, as described in
+     * {@link QueryCachingJdbiHandleManager}. Invoking the same method with the same arguments
+     * again then returns the same result without a round trip, until a DAO writes to a table it
+     * read from. The hits and misses of the cache are counted in the given registry.
+     * <p>
+     * The cache sees every DAO invocation before statements are buffered by
+     * {@link #batchingWrites(int)}, whichever of them is applied first. DAOs are always proxied
+     * reflectively by the returned provider.
+     *
+     * @param metricRegistry the registry counting the hits and misses of the cache
+     * @return the provider
+     */
+    public JdbiUnitOfWorkProvider cachingQueries(MetricRegistry metricRegistry) {
+        if (metricRegistry == null) {
+            throw new IllegalArgumentException("Metric registry cannot be null");
+        }
+        QueryCachingJdbiHandleManager queryCaching = new QueryCachingJdbiHandleManager(handleManager, metricRegistry);
+        return new JdbiUnitOfWorkProvider(queryCaching, generatedProxies, intercepting(queryCaching, true));
+    }
+
+    /**
+     * cachingAnnotatedQueries creates a provider whose DAOs cache the results of their
+     * {@link com.github.isopropylcyanide.jdbiunitofwork.JdbiCacheable} methods across requests, as
+     * described in {@link SharedQueryCachingJdbiHandleManager}. A result found in the cache is
+     * returned without opening a handle, so a request reading nothing but cached results never
+     * checks a connection out. The hits and misses of the cache are counted in the given registry.
+     * <p>
+     * The cache sees every DAO invocation before statements are buffered by
+     * {@link #batchingWrites(int)}, whichever of them is applied first. DAOs are always proxied
+     * reflectively by the returned provider.
+     *
+     * @param metricRegistry the registry counting the hits and misses of the cache
+     * @return the provider
+     */
+    public JdbiUnitOfWorkProvider cachingAnnotatedQueries(MetricRegistry metricRegistry) {
+        if (metricRegistry == null) {
+            throw new IllegalArgumentException("Metric registry cannot be null");
+        }
+        SharedQueryCachingJdbiHandleManager sharedQueryCaching = new SharedQueryCachingJdbiHandleManager(handleManager, metricRegistry);
+        return new JdbiUnitOfWorkProvider(sharedQueryCaching, generatedProxies, intercepting(sharedQueryCaching, true));
+    }
+
+    /**
+     * countingStatements creates a provider counting the statements prepared on the handle of every
+     * unit of work, along with its DAO calls and the time spent in them, keyed by DAO method, as
+     * described in {@link StatementCountingJdbiHandleManager}. A unit of work preparing more
+     * statements than the budget, or invoking the same {@link SqlQuery} method with more distinct
+     * arguments than the threshold, is warned of and counted in the given registry, so that N+1
+     * patterns are caught in load tests.
+     * <p>
+     * Statements are counted as the handle prepares them, so results served by
+     * {@link #cachingQueries(MetricRegistry)} count none and writes buffered by
+     * {@link #batchingWrites(int)} count once per batch. DAOs are always proxied reflectively by
+     * the returned provider.
+     *
+     * @param statementBudget        the number of statements a unit of work may prepare
+     * @param repeatedQueryThreshold the number of distinct arguments a query may be invoked with
+     * @param metricRegistry         the registry counting the warnings
+     * @return the provider
+     */
+    public JdbiUnitOfWorkProvider countingStatements(int statementBudget, int repeatedQueryThreshold, MetricRegistry metricRegistry) {
+        if (metricRegistry == null) {
+            throw new IllegalArgumentException("Metric registry cannot be null");
+        }
+        StatementCountingJdbiHandleManager counting = new StatementCountingJdbiHandleManager(handleManager, statementBudget, repeatedQueryThreshold, metricRegistry);
+        return new JdbiUnitOfWorkProvider(counting, generatedProxies, intercepting(counting, false));
+    }
+
+    /**
+     * watchingTransactions creates a provider whose handle manager watches for transactions kept
+     * open longer than the given budget, counted from their begin, as described in
+     * {@link TransactionWatchdogJdbiHandleManager}. The statement such a unit of work is running is
+     * cancelled and its transaction marked rollback only, so that a single slow request cannot hold
+     * a pooled connection for minutes. Handles used outside of a transaction, such as those of
+     * {@code GET} requests, are left alone. Handles are checked in the background on the given
+     * scheduler, whose lifecycle is left to the caller, until the provider is closed. Exceeded
+     * budgets are counted in the given registry.
+     *
+     * @param budget         the longest a transaction may be kept open for
+     * @param scheduler      the scheduler running the checks
+     * @param metricRegistry the registry counting the exceeded budgets
+     * @return the provider
+     */
+    public JdbiUnitOfWorkProvider watchingTransactions(Duration budget, ScheduledExecutorService scheduler, MetricRegistry metricRegistry) {
+        if (budget == null || scheduler == null || metricRegistry == null) {
+            throw new IllegalArgumentException("Budget, scheduler and metric registry cannot be null");
+        }
+        JdbiHandleManager watchdog = new TransactionWatchdogJdbiHandleManager(handleManager, budget, scheduler, metricRegistry);
+        return new JdbiUnitOfWorkProvider(watchdog, generatedProxies, interceptors);
+    }
+
+    /**
+     * detectingLeaks creates a provider whose handle manager detects the handles which are never
+     * cleared, as described in {@link LeakDetectingJdbiHandleManager}. A handle still open when the
+     * next request starts on its thread, or once its thread is gone, is closed and counted as
+     * leaked. A handle open for longer than the threshold is reported as suspected of being leaked.
+     * Reports carry the stack trace of the acquisition for one in every {@code stackTraceSampling}
+     * handles opened, and for none if it is zero. Handles are checked until the provider is closed.
+     *
+     * @param threshold          the age over which a handle is suspected of being leaked
+     * @param stackTraceSampling one in how many acquisitions capture their stack trace
+     * @param scheduler          the scheduler running the checks, whose lifecycle is left to the caller
+     * @param metricRegistry     the registry counting the leaked and suspected handles
+     * @return the provider
+     */
+    public JdbiUnitOfWorkProvider detectingLeaks(Duration threshold, int stackTraceSampling, ScheduledExecutorService scheduler,
+                                                 MetricRegistry metricRegistry) {
+        if (threshold == null || scheduler == null || metricRegistry == null) {
+            throw new IllegalArgumentException("Threshold, scheduler and metric registry cannot be null");
+        }
+        JdbiHandleManager leakDetecting = new LeakDetectingJdbiHandleManager(handleManager, threshold, stackTraceSampling, scheduler, metricRegistry);
+        return new JdbiUnitOfWorkProvider(leakDetecting, generatedProxies, interceptors);
+    }
+
+    /**
+     * close stops the checks scheduled by {@link #watchingTransactions(Duration, ScheduledExecutorService, MetricRegistry)}
+     * and {@link #detectingLeaks(Duration, int, ScheduledExecutorService, MetricRegistry)}, for this
+     * provider and the ones it was created from. The schedulers and the handles still open are left
+     * to their owners.
+     */
+    @Override
+    public void close() {
+        JdbiHandleManager manager = handleManager;
+        while (manager instanceof ForwardingJdbiHandleManager) {
+            if (manager instanceof Closeable) {
+                try {
+                    ((Closeable) manager).close();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+            manager = ((ForwardingJdbiHandleManager) manager).delegate();
+        }
+    }
+
+    private List<SqlObjectInterceptor> intercepting(SqlObjectInterceptor interceptor, boolean first) {
+        List<SqlObjectInterceptor> chain = new ArrayList<>(interceptors);
+        chain.add(first ? 0 : chain.size(), interceptor);
+        return Collections.unmodifiableList(chain);
+    }
+
     /**
      * getWrappedInstanceForDaoClass generates a proxy instance of the dao class for which
      * the jdbi unit of work aspect would be wrapped around with.
@@ -53,6 +380,10 @@ public class JdbiUnitOfWorkProvider {
      * as passing a list of packages is easier than passing each instance individually.
      * <p>
      * This method however may be used in case the classpath scanning is disabled.
+     * <p>
+     * If a proxy class has been generated for the dao class at compile time by the
+     * {@code dropwizard-jdbi-unitofwork-processor} annotation processor, an instance of it is
+     * returned instead of a reflective proxy.
      * If the original class is null or contains no relevant JDBI annotations, this method throws an
      * exception
      *
@@ -77,8 +408,15 @@ public class JdbiUnitOfWorkProvider {
             throw new IllegalArgumentException(String.format("Class [%s] has no method annotated with a Jdbi SQL Object", daoClass.getSimpleName()));
         }
 
+        boolean generated = generatedProxies && interceptors.isEmpty();
+        Object generatedInstance = generated ? GeneratedSqlObjectProxy.newInstance(daoClass, handleManager) : null;
+        if (generatedInstance != null) {
+            log.info("Binding class [{}] with generated proxy [{}] ", daoClass.getSimpleName(), generatedInstance.getClass().getSimpleName());
+            return generatedInstance;
+        }
         log.info("Binding class [{}] with proxy handler [{}] ", daoClass.getSimpleName(), handleManager.getClass().getSimpleName());
-        ManagedHandleInvocationHandler handler = new ManagedHandleInvocationHandler<>(handleManager, daoClass);
+        SqlObjectDispatchTable dispatchTable = SqlObjectDispatchTable.of(daoClass);
+        ManagedHandleInvocationHandler handler = new ManagedHandleInvocationHandler<>(handleManager, daoClass, dispatchTable, interceptors);
         Object proxiedInstance = Reflection.newProxy(daoClass, handler);
         return daoClass.cast(proxiedInstance);
     }
@@ -96,14 +434,30 @@ public class JdbiUnitOfWorkProvider {
      * @return the map mapping dao classes to its initialised proxies
      */
     public Map<? extends Class, Object> getWrappedInstanceForDaoPackage(List<String> daoPackages) {
+        return getWrappedInstanceForDaoPackage(daoPackages, true);
+    }
+
+    /**
+     * getWrappedInstanceForDaoPackage behaves as {@link #getWrappedInstanceForDaoPackage(List)}.
+     * <p>
+     * DAO classes compiled with the {@code dropwizard-jdbi-unitofwork-processor} annotation processor
+     * are looked up from the index it generates, without scanning the classpath. Packages with
+     * no indexed DAO class are scanned instead.
+     * <p>
+     * All packages to be scanned are scanned for DAO classes in a single pass over the classpath, which can be
+     * spread across the common fork join pool with {@code parallelScan}. The DAO classes found
+     * are not remembered, so every call scans the packages again.
+     *
+     * @param daoPackages  the list of packages that contain the DAO classes
+     * @param parallelScan whether the classpath is scanned in parallel
+     * @return the map mapping dao classes to its initialised proxies
+     */
+    public Map<? extends Class, Object> getWrappedInstanceForDaoPackage(List<String> daoPackages, boolean parallelScan) {
         if (daoPackages == null) {
             throw new IllegalArgumentException("DAO Class package list cannot be null");
         }
 
-        Set<? extends Class<?>> allDaoClasses = daoPackages.stream()
-                .map(this::getDaoClassesForPackage)
-                .flatMap(Collection::stream)
-                .collect(Collectors.toSet());
+        Set<Class<?>> allDaoClasses = getDaoClassesForPackages(daoPackages, parallelScan);
 
         Map<Class, Object> classInstanceMap = new HashMap<>();
         for (Class klass : allDaoClasses) {
@@ -114,16 +468,33 @@ public class JdbiUnitOfWorkProvider {
         return classInstanceMap;
     }
 
-    private Set<? extends Class<?>> getDaoClassesForPackage(String pkg) {
-        Set<Method> daoClasses = new HashSet<>();
-
-        Sets.SetView<Method> union = Sets.union(daoClasses, new Reflections(pkg, Scanners.MethodsAnnotated).getMethodsAnnotatedWith(SqlQuery.class));
-        union = Sets.union(union, new Reflections(pkg, Scanners.MethodsAnnotated).getMethodsAnnotatedWith(SqlUpdate.class));
-        union = Sets.union(union, new Reflections(pkg, Scanners.MethodsAnnotated).getMethodsAnnotatedWith(SqlBatch.class));
-        union = Sets.union(union, new Reflections(pkg, Scanners.MethodsAnnotated).getMethodsAnnotatedWith(SqlCall.class));
+    private Set<Class<?>> getDaoClassesForPackages(List<String> daoPackages, boolean parallelScan) {
+        DaoIndex daoIndex = DaoIndex.load(getClassLoader());
+        Set<Class<?>> daoClasses = new HashSet<>();
+        List<String> unindexedPackages = new ArrayList<>();
+        for (String pkg : daoPackages) {
+            Set<Class<?>> indexedDaoClasses = daoIndex.getDaoClasses(pkg);
+            if (indexedDaoClasses.isEmpty()) {
+                unindexedPackages.add(pkg);
+                continue;
+            }
+            Set<String> unindexedRoots = daoIndex.getUnindexedRoots(pkg);
+            if (unindexedRoots.isEmpty()) {
+                daoClasses.addAll(indexedDaoClasses);
+            } else {
+                log.warn("DAO classes of package [{}] are indexed, but the package is also found in {} which contribute no DAO index. Scanning it instead", pkg, unindexedRoots);
+                unindexedPackages.add(pkg);
+            }
+        }
+        if (!unindexedPackages.isEmpty()) {
+            log.info("No DAO class is indexed for packages {}. Scanning the classpath", unindexedPackages);
+            daoClasses.addAll(DaoClassScanner.scan(unindexedPackages, parallelScan));
+        }
+        return daoClasses;
+    }
 
-        return union.stream()
-                .map(Method::getDeclaringClass)
-                .collect(Collectors.toSet());
+    private ClassLoader getClassLoader() {
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        return contextClassLoader != null ? contextClassLoader : JdbiUnitOfWorkProvider.class.getClassLoader();
     }
 }
@@ -0,0 +1,247 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import org.skife.jdbi.v2.Handle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A {@link JdbiHandleManager} decorator detecting the handles opened by another handle manager
+ * which are never cleared, such as those opened by a DAO used on an excluded path or by a scheduled
+ * job. Every acquisition records the thread opening the handle and its age, along with the stack
+ * trace of the call site for one in every {@code stackTraceSampling} acquisitions.
+ * <ul>
+ * <li>a handle still open when a new unit of work enters the scope of its thread, see
+ * {@link #enterScope()}, is leaked. It is rolled back if in a transaction, cleared and counted as
+ * {@code ...core.JdbiHandleManager.leaks.leaked}</li>
+ * <li>a handle confined to a thread which is no longer alive is leaked. It is closed from the
+ * background, telling the outermost decorator of it first, and counted as leaked as well</li>
+ * <li>a handle open for longer than the threshold is suspected of being leaked. It is reported once
+ * and counted as {@code ...core.JdbiHandleManager.leaks.suspected}, but left open as its thread may
+ * still be using it</li>
+ * </ul>
+ * Handles are checked in the background on the given scheduler, several times per threshold, until
+ * the decorator is closed. Every report carries the acquisition stack trace if it was sampled.
+ * <br><br>
+ * Only the handles of a {@link RequestScopedJdbiHandleManager} are confined to the thread opening
+ * them. Those of a linked handle manager are shared by every thread the unit of work was propagated
+ * to, and closed by the last of them, so that the thread which happened to open the handle may be
+ * gone while the others still use it. Those of a scope detached for an asynchronous request move
+ * over to the thread completing it. Neither are closed for having outlived the thread opening them.
+ *
+ * @implNote Like {@link InstrumentedJdbiHandleManager}, the decorator relies on
+ * {@link #peek()} to tell whether a handle was opened by a call. Capturing a stack
+ * trace costs a few microseconds, which sampling keeps off most acquisitions.
+ */
+final class LeakDetectingJdbiHandleManager extends ForwardingJdbiHandleManager implements Closeable {
+
+    private final Logger log = LoggerFactory.getLogger(LeakDetectingJdbiHandleManager.class);
+    private final long thresholdNanos;
+    private final int stackTraceSampling;
+    private final Counter leaked;
+    private final Counter suspected;
+    private final Map<Handle, Acquisition> acquisitions = new ConcurrentHashMap<>();
+    private final ScheduledFuture<?> checks;
+    private final boolean threadConfined;
+    private volatile InternalJdbiHandleManager decorator = this;
+
+    LeakDetectingJdbiHandleManager(JdbiHandleManager delegate, Duration threshold, int stackTraceSampling,
+                                   ScheduledExecutorService scheduler, MetricRegistry metricRegistry) {
+        super(delegate);
+        if (threshold.isNegative() || threshold.isZero()) {
+            throw new IllegalArgumentException("Threshold must be positive, was " + threshold);
+        }
+        if (stackTraceSampling < 0) {
+            throw new IllegalArgumentException("Stack trace sampling cannot be negative, was " + stackTraceSampling);
+        }
+        this.thresholdNanos = threshold.toNanos();
+        this.stackTraceSampling = stackTraceSampling;
+        this.leaked = metricRegistry.counter(MetricRegistry.name(JdbiHandleManager.class, "leaks", "leaked"));
+        this.suspected = metricRegistry.counter(MetricRegistry.name(JdbiHandleManager.class, "leaks", "suspected"));
+        this.threadConfined = confinesHandlesToThreads(delegate);
+        long period = Math.max(TimeUnit.MILLISECONDS.toNanos(10), thresholdNanos / 4);
+        this.checks = scheduler.scheduleWithFixedDelay(this::check, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Handle get() {
+        return opening(super::get);
+    }
+
+    @Override
+    public <T> T attach(Class<T> sqlObjectType) {
+        return opening(() -> super.attach(sqlObjectType));
+    }
+
+    @Override
+    public void enterScope() {
+        Handle handle = peek();
+        if (handle != null) {
+            report("was still open when a new unit of work started on its thread", handle, acquisitions.get(handle));
+            leaked.inc();
+            rollback(handle);
+            clear();
+        }
+        super.enterScope();
+    }
+
+    @Override
+    @Nullable
+    public DetachedScope detachScope() {
+        Handle handle = peek();
+        DetachedScope detached = super.detachScope();
+        if (detached == null) {
+            return null;
+        }
+        release(handle);
+        return task -> detached.run(() -> {
+            try {
+                task.run();
+            } finally {
+                release(peek());
+            }
+        });
+    }
+
+    @Override
+    public void closing(Handle handle) {
+        acquisitions.remove(handle);
+        super.closing(handle);
+    }
+
+    @Override
+    public void decoratedBy(InternalJdbiHandleManager decorator) {
+        this.decorator = decorator;
+        super.decoratedBy(decorator);
+    }
+
+    /**
+     * Stops checking the handles. Those open by then are left to their units of work
+     */
+    @Override
+    public void close() {
+        checks.cancel(false);
+    }
+
+    /**
+     * Closes the handles whose thread is no longer alive and reports those open for longer than
+     * the threshold
+     */
+    void check() {
+        long now = System.nanoTime();
+        for (Map.Entry<Handle, Acquisition> entry : acquisitions.entrySet()) {
+            Handle handle = entry.getKey();
+            Acquisition acquisition = entry.getValue();
+            if (acquisition.confined && !acquisition.thread.isAlive()) {
+                if (acquisitions.remove(handle, acquisition)) {
+                    report("outlived its thread", handle, acquisition);
+                    leaked.inc();
+                    close(handle);
+                }
+            } else if (!acquisition.reported && now - acquisition.openedAt > thresholdNanos) {
+                acquisition.reported = true;
+                report("is suspected of being leaked", handle, acquisition);
+                suspected.inc();
+            }
+        }
+    }
+
+    private <T> T opening(Supplier<T> call) {
+        if (peek() != null) {
+            return call.get();
+        }
+        T result = call.get();
+        Handle handle = peek();
+        if (handle != null && !acquisitions.containsKey(handle)) {
+            acquisitions.putIfAbsent(handle, new Acquisition(System.nanoTime(), Thread.currentThread(), sampleStackTrace(), threadConfined));
+        }
+        return result;
+    }
+
+    /**
+     * Releases a handle from the thread which opened it, once it may be used by another one
+     */
+    private void release(@Nullable Handle handle) {
+        Acquisition acquisition = handle == null ? null : acquisitions.get(handle);
+        if (acquisition != null) {
+            acquisition.confined = false;
+        }
+    }
+
+    private static boolean confinesHandlesToThreads(JdbiHandleManager handleManager) {
+        while (handleManager instanceof ForwardingJdbiHandleManager) {
+            handleManager = ((ForwardingJdbiHandleManager) handleManager).delegate();
+        }
+        return handleManager instanceof RequestScopedJdbiHandleManager;
+    }
+
+    @Nullable
+    private Throwable sampleStackTrace() {
+        if (stackTraceSampling == 0 || ThreadLocalRandom.current().nextInt(stackTraceSampling) != 0) {
+            return null;
+        }
+        return new Throwable("Handle acquired here");
+    }
+
+    private void report(String what, Handle handle, @Nullable Acquisition acquisition) {
+        if (acquisition == null) {
+            log.warn("Handle [{}] {}", handle.hashCode(), what);
+            return;
+        }
+        long age = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - acquisition.openedAt);
+        if (acquisition.site == null) {
+            log.warn("Handle [{}] opened by thread [{}] [{}] ms ago {}. Its acquisition was not sampled", handle.hashCode(), acquisition.thread.getName(), age, what);
+        } else {
+            log.warn("Handle [{}] opened by thread [{}] [{}] ms ago {}", handle.hashCode(), acquisition.thread.getName(), age, what, acquisition.site);
+        }
+    }
+
+    private void rollback(Handle handle) {
+        try {
+            if (handle.isInTransaction()) {
+                handle.rollback();
+            }
+        } catch (Exception ex) {
+            log.warn("Unable to roll back leaked handle [{}]", handle.hashCode(), ex);
+        }
+    }
+
+    private void close(Handle handle) {
+        rollback(handle);
+        try {
+            decorator.closing(handle);
+            handle.close();
+        } catch (Exception ex) {
+            log.warn("Unable to close leaked handle [{}]", handle.hashCode(), ex);
+        }
+    }
+
+    private static final class Acquisition {
+
+        private final long openedAt;
+        private final Thread thread;
+        @Nullable
+        private final Throwable site;
+        private volatile boolean reported;
+        private volatile boolean confined;
+
+        Acquisition(long openedAt, Thread thread, @Nullable Throwable site, boolean confined) {
+            this.openedAt = openedAt;
+            this.thread = thread;
+            this.site = site;
+            this.confined = confined;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.skife.jdbi.v2.DBI;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This implementation hands out the replica with the fewest handles open from it at the time of
+ * selection, which keeps slow replicas from piling up requests.
+ *
+ * @implNote The count is read and incremented without a lock, so concurrent selections may pick the
+ * same replica. The imbalance is corrected by the following selections.
+ */
+class LeastOutstandingHandlesReplicaSelector implements ReplicaSelector {
+
+    private final Map<DBI, AtomicInteger> outstandingHandles = new ConcurrentHashMap<>();
+
+    @Override
+    public DBI select(List<DBI> replicas) {
+        DBI selected = null;
+        AtomicInteger selectedCount = null;
+        for (DBI replica : replicas) {
+            AtomicInteger count = outstandingHandles.computeIfAbsent(replica, key -> new AtomicInteger());
+            if (selectedCount == null || count.get() < selectedCount.get()) {
+                selected = replica;
+                selectedCount = count;
+            }
+        }
+        selectedCount.incrementAndGet();
+        return selected;
+    }
+
+    @Override
+    public void release(DBI replica) {
+        AtomicInteger count = outstandingHandles.get(replica);
+        if (count != null) {
+            count.decrementAndGet();
+        }
+    }
+
+    int getOutstandingHandles(DBI replica) {
+        AtomicInteger count = outstandingHandles.get(replica);
+        return count == null ? 0 : count.get();
+    }
+}
@@ -7,93 +7,370 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
- * This implementation provides a handle scoped to a thread and all other threads Y spawned from X
- * All Y threads must follow a particular name format extracted from the conversation id
- * This is one of the ways the manager can know of the grouping and establish re-usability of
- * handles across such grouped threads.
+ * This implementation provides a handle scoped to a thread X and all other threads Y that X
+ * hands work to, either through the threads created from {@link #createThreadFactory()} or
+ * through an executor wrapped by {@link #propagating(ExecutorService)}.
+ * <br><br>
+ * The unit of work of X is carried to Y as a {@link Conversation} object captured when the
+ * thread is created or the task is submitted, and restored around the task. Finding the handle
+ * therefore neither depends on the names of the threads nor on a lookup in a shared map, and
+ * keeps working when a thread pool renames its threads.
  * <br><br>
  * It can be used to service requests where only a single handle instance has to be used by multiple
- * threads that are spawned with the specified name format from an initial thread. Use this only
- * when you have complete control over the threads you create. The threads must not run once the
- * parent thread is returned to the pool or else the handles will be invalid or in other words
- * parent thread must block on the results of children.
+ * threads that are spawned from an initial thread.
+ * <br><br>
+ * The handle is reference counted. Every task submitted to a propagating executor holds a
+ * reference to the conversation until it is done, and the parent holds one until it clears the
+ * handle, which is only closed once the last of them is done. A parent committing its transaction
+ * waits for its children to be done first, see {@link #beforeCommit(Handle)}, so that the commit
+ * covers whatever they did and its failure is reported to the parent. A parent rolling back does
+ * not wait, but its children are refused the handle from then on, see {@link #beforeRollback(Handle)}.
+ * <br><br>
+ * A thread factory cannot tell the tasks run by the threads of a pool apart, so the threads it
+ * creates carry the conversation without holding a reference to it. The parent must wait for the
+ * work it handed to them before clearing the handle, after which they are refused the handle.
  *
  * <br>
  * It relies on the fact that the {@code Jdbi.Handle} is inherently thread safe and can be used to service
  * dao requests between multiple threads.
- * Note: Not suitable when you can not set the name format for the newly spawned threads.
+ * <br><br>
+ * When created with {@code deferBegin}, a transaction requested before any handle is opened is
+ * only begun once the first handle is obtained for the conversation, either by the parent
+ * thread or by any of the threads it handed work to.
+ * <br><br>
+ * When created with {@code serializeSqlObjects}, the SQL object invocations of a conversation
+ * are run one at a time through a {@link SingleWriterExecutor} while other participants share
+ * its handle, so that statements never run concurrently on the underlying connection. The
+ * threads keep running the rest of their work in parallel. Using the handle directly, rather
+ * than through SQL objects, is not serialized.
+ * <br><br>
+ * The conversation of the parent thread can be detached from it through {@link #detachScope()},
+ * so that a thread completing an asynchronous request takes the place of the parent. The threads
+ * it was propagated to keep sharing its handle meanwhile, and are waited for by the commit as usual.
  **/
-class LinkedRequestScopedJdbiHandleManager implements JdbiHandleManager {
+class LinkedRequestScopedJdbiHandleManager implements InternalJdbiHandleManager {
 
     private final Logger log = LoggerFactory.getLogger(LinkedRequestScopedJdbiHandleManager.class);
-    private final Map<String, Handle> parentThreadHandleMap = new ConcurrentHashMap<>();
+    private final AtomicLong conversationIds = new AtomicLong();
     private final DBI dbi;
+    private final boolean deferBegin;
+    private final boolean serializeSqlObjects;
+    private volatile InternalJdbiHandleManager decorator = this;
+
+    @SuppressWarnings("ThreadLocalUsage")
+    private final ThreadLocal<Conversation> conversation = new ThreadLocal<>();
+
+    @SuppressWarnings("ThreadLocalUsage")
+    private final ThreadLocal<Integer> retainedByThread = new ThreadLocal<>();
 
     public LinkedRequestScopedJdbiHandleManager(DBI dbi) {
+        this(dbi, false);
+    }
+
+    public LinkedRequestScopedJdbiHandleManager(DBI dbi, boolean deferBegin) {
+        this(dbi, deferBegin, false);
+    }
+
+    public LinkedRequestScopedJdbiHandleManager(DBI dbi, boolean deferBegin, boolean serializeSqlObjects) {
         this.dbi = dbi;
+        this.deferBegin = deferBegin;
+        this.serializeSqlObjects = serializeSqlObjects;
     }
 
     @Override
     public Handle get() {
-        String parent = substringBetween(Thread.currentThread().getName());
-        Handle handle;
-        if (parent == null) {
-            handle = getHandle();
-            log.debug("Owner of handle [{}] : Parent Thread Id [{}]", handle.hashCode(), Thread.currentThread().getId());
+        return getManagedHandle().getHandle();
+    }
 
-        } else {
-            handle = parentThreadHandleMap.get(parent);
-            if (handle == null) {
-                throw new IllegalStateException(String.format("Handle to be reused in child thread [%s] is null for parent thread [%s]", Thread.currentThread().getId(), parent));
-            }
-            log.debug("Reusing parent thread handle [{}] for [{}]", handle.hashCode(), Thread.currentThread().getId());
+    @Override
+    public <T> T attach(Class<T> sqlObjectType) {
+        return getManagedHandle().attach(sqlObjectType);
+    }
+
+    @Override
+    @Nullable
+    public Handle peek() {
+        Conversation current = conversation.get();
+        ManagedHandle managedHandle = current == null ? null : current.peek();
+        return managedHandle == null ? null : managedHandle.getHandle();
+    }
+
+    /**
+     * Invocations are only serialized while other threads share the conversation. The parent
+     * alone runs them right away, as no other thread may then use the handle
+     */
+    @Override
+    @Nullable
+    public Executor getSqlObjectExecutor() {
+        if (!serializeSqlObjects) {
+            return null;
+        }
+        Conversation current = getConversation();
+        if (!current.isShared()) {
+            return null;
+        }
+        getManagedHandle();
+        return current.getWriter();
+    }
+
+    @Override
+    public boolean deferBegin(Consumer<Handle> begin) {
+        if (!deferBegin || !getConversation().deferBegin(begin)) {
+            return false;
+        }
+        log.debug("Deferred begin until a handle is opened for parent thread [{}]", Thread.currentThread().getId());
+        return true;
+    }
+
+    /**
+     * A deferred begin is never discarded while other participants may still open the handle,
+     * so that the caller commits or rolls back whatever they do
+     */
+    @Override
+    public boolean discardDeferredBegin() {
+        Conversation current = conversation.get();
+        if (current == null || current.hasOtherParticipants() || !current.discardDeferredBegin()) {
+            return false;
+        }
+        log.debug("Discarded deferred begin for parent thread [{}]", Thread.currentThread().getId());
+        return true;
+    }
+
+    /**
+     * Waits for the tasks the parent propagated the conversation to before it commits. A thread
+     * running one of these tasks while owning the conversation, such as one completing it once
+     * detached, does not wait for itself. Does nothing in child threads
+     *
+     * @throws IllegalStateException if the parent is interrupted while waiting, which rolls the
+     *                               transaction back
+     */
+    @Override
+    public void beforeCommit(Handle handle) {
+        Conversation current = conversation.get();
+        if (current == null || !current.isOwnedByCurrentThread() || !current.hasOtherParticipants()) {
+            return;
+        }
+        log.debug("Waiting for the other participants of conversation [{}] before committing", current.getId());
+        try {
+            current.awaitOtherParticipants(retainedByCurrentThread());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(String.format("Interrupted while waiting for the other participants of conversation [%s] to commit", current.getId()), ex);
         }
-        return handle;
     }
 
+    /**
+     * Refuses the handle to every participant of the conversation from now on, so that children
+     * still running fail rather than run their statements outside of the transaction
+     */
+    @Override
+    public void beforeRollback(Handle handle) {
+        Conversation current = conversation.get();
+        if (current != null) {
+            current.markRolledBack();
+        }
+    }
+
+    /**
+     * Releases the reference of the parent thread to its conversation. The handle is closed right
+     * away unless other participants still hold a reference. Does nothing in child threads
+     */
     @Override
     public void clear() {
-        String parent = getConversationId();
-        Handle handle = parentThreadHandleMap.get(parent);
-        if (handle != null) {
-            handle.close();
-            log.debug("Closed handle Thread Id [{}] has handle id [{}]", Thread.currentThread().getId(), handle.hashCode());
+        Conversation current = conversation.get();
+        if (current == null || !current.isOwnedByCurrentThread()) {
+            return;
+        }
+        conversation.remove();
+        current.release();
+        log.debug("Clearing conversation [{}] for parent thread [{}] ", current.getId(), Thread.currentThread().getId());
+    }
 
-            parentThreadHandleMap.remove(parent);
-            log.debug("Clearing handle member for parent thread [{}] ", Thread.currentThread().getId());
+    /**
+     * Only the parent thread can detach the conversation. Child threads get {@code null}
+     */
+    @Override
+    @Nullable
+    public DetachedScope detachScope() {
+        Conversation current = conversation.get();
+        if (current != null && !current.isOwnedByCurrentThread()) {
+            return null;
         }
+        DetachedConversation detached = new DetachedConversation(getConversation());
+        conversation.remove();
+        log.debug("Detached conversation [{}] from parent thread [{}]", detached.detached.getId(), Thread.currentThread().getId());
+        return detached;
+    }
+
+    @Override
+    public void decoratedBy(InternalJdbiHandleManager decorator) {
+        this.decorator = decorator;
     }
 
     @Override
     public ThreadFactory createThreadFactory() {
-        String threadName = String.format("[%s]-%%d", getConversationId());
-        return new ThreadFactoryBuilder().setNameFormat(threadName).build();
+        Conversation current = getConversation();
+        String threadName = String.format("[%s]-%%d", current.getId());
+        ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat(threadName).build();
+        return runnable -> threadFactory.newThread(() -> runBound(current, runnable));
+    }
+
+    @Override
+    public ExecutorService propagating(ExecutorService executorService) {
+        return new PropagatingExecutorService(executorService, this::propagate, task -> ((PropagatedTask) task).release());
+    }
+
+    @Override
+    public Executor propagating(Executor executor) {
+        return command -> {
+            PropagatedTask task = propagate(command);
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException ex) {
+                task.release();
+                throw ex;
+            }
+        };
     }
 
-    private Handle getHandle() {
-        String threadIdentity = getConversationId();
-        if (parentThreadHandleMap.containsKey(threadIdentity)) {
-            return parentThreadHandleMap.get(threadIdentity);
+    /**
+     * @return the id of the conversation of the current thread, which is shared by every thread
+     * it handed work to
+     */
+    @Override
+    public String getConversationId() {
+        return String.valueOf(getConversation().getId());
+    }
+
+    private PropagatedTask propagate(Runnable task) {
+        return new PropagatedTask(getConversation(), task);
+    }
+
+    /**
+     * Runs the whole life of a thread created from the thread factory within the conversation,
+     * without holding a reference to it
+     */
+    private void runBound(Conversation bound, Runnable runnable) {
+        conversation.set(bound);
+        bound.bindThread();
+        try {
+            runnable.run();
+        } finally {
+            bound.unbindThread();
+            conversation.remove();
         }
-        Handle handle = dbi.open();
-        parentThreadHandleMap.putIfAbsent(threadIdentity, handle);
-        return handle;
     }
 
-    @Nullable
-    private String substringBetween(String threadName) {
-        final int start = threadName.indexOf("[");
-        if (start != -1) {
-            final int end = threadName.indexOf("]", start + "[".length());
-            if (end != -1) {
-                return threadName.substring(start + "[".length(), end);
+    /**
+     * @return the references the calling thread holds to the conversation it carries, through the
+     * propagated tasks it is running
+     */
+    private int retainedByCurrentThread() {
+        Integer retained = retainedByThread.get();
+        return retained == null ? 0 : retained;
+    }
+
+    private Conversation getConversation() {
+        Conversation current = conversation.get();
+        if (current == null) {
+            current = new Conversation(conversationIds.incrementAndGet());
+            conversation.set(current);
+        }
+        return current;
+    }
+
+    private ManagedHandle getManagedHandle() {
+        Conversation current = getConversation();
+        boolean owner = current.isOwnedByCurrentThread();
+        ManagedHandle managedHandle = current.getManagedHandle(this::open, owner);
+        if (managedHandle == null) {
+            throw new IllegalStateException(String.format("Handle to be reused in child thread [%s] is null for conversation [%s]", Thread.currentThread().getId(), current.getId()));
+        }
+        if (owner) {
+            log.debug("Owner of handle [{}] : Parent Thread Id [{}]", managedHandle.getHandle().hashCode(), Thread.currentThread().getId());
+        } else {
+            log.debug("Reusing conversation [{}] handle [{}] for [{}]", current.getId(), managedHandle.getHandle().hashCode(), Thread.currentThread().getId());
+        }
+        return managedHandle;
+    }
+
+    private ManagedHandle open() {
+        return new ManagedHandle(dbi.open(), handle -> decorator.closing(handle));
+    }
+
+    /**
+     * A task running within the conversation captured on submission, which it holds a reference
+     * to until it is done. The reference is released at most once, so that a task discarded
+     * before it runs may still be run later on, albeit without a reference.
+     */
+    private final class PropagatedTask implements Runnable {
+
+        private final Conversation propagated;
+        private final Runnable task;
+        private final AtomicBoolean retained;
+
+        PropagatedTask(Conversation propagated, Runnable task) {
+            this.propagated = propagated;
+            this.task = task;
+            this.retained = new AtomicBoolean(propagated.retain());
+        }
+
+        @Override
+        public void run() {
+            Conversation previous = RequestScopedJdbiHandleManager.swap(conversation, propagated);
+            int retained = (previous == propagated ? retainedByCurrentThread() : 0) + (this.retained.get() ? 1 : 0);
+            Integer previousRetained = RequestScopedJdbiHandleManager.swap(retainedByThread, retained);
+            try {
+                task.run();
+            } finally {
+                RequestScopedJdbiHandleManager.swap(conversation, previous);
+                RequestScopedJdbiHandleManager.swap(retainedByThread, previousRetained);
+                release();
+            }
+        }
+
+        void release() {
+            if (retained.compareAndSet(true, false)) {
+                propagated.release();
+            }
+        }
+    }
+
+    /**
+     * A conversation detached from its parent thread. Every thread running a task within it owns
+     * it for as long as the task runs. A conversation the task leaves on the thread, if any, is
+     * detached again once it is done
+     */
+    private final class DetachedConversation implements DetachedScope {
+
+        private Conversation detached;
+
+        DetachedConversation(Conversation detached) {
+            this.detached = detached;
+        }
+
+        @Override
+        public void run(Runnable task) {
+            Conversation previous = RequestScopedJdbiHandleManager.swap(conversation, detached);
+            Integer previousRetained = previous == detached ? retainedByThread.get() : RequestScopedJdbiHandleManager.swap(retainedByThread, null);
+            if (detached != null) {
+                detached.transferToCurrentThread();
+            }
+            try {
+                task.run();
+            } finally {
+                detached = RequestScopedJdbiHandleManager.swap(conversation, previous);
+                RequestScopedJdbiHandleManager.swap(retainedByThread, previousRetained);
             }
         }
-        return null;
     }
 }
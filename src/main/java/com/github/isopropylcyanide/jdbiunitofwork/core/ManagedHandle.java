@@ -0,0 +1,68 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.skife.jdbi.v2.Handle;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Holds a {@link Handle} scoped by a {@link JdbiHandleManager} together with the SQL objects
+ * attached to it during the unit of work.
+ * <br><br>
+ * Attaching a SQL object builds a new Jdbi proxy each time. As attaching a handle to a class is
+ * idempotent, the first attached instance for a class is cached and reused until the handle is
+ * closed, at which point the cache is released along with it.
+ * <br><br>
+ * An optional callback is run right before the handle is closed, for the decorators of the owner
+ * to release what they kept for it, and another once it is closed, for the owner to release
+ * whatever it had reserved for it.
+ */
+final class ManagedHandle {
+
+    private final Handle handle;
+    private final Consumer<Handle> closing;
+    private final Runnable onClose;
+    private final Map<Class<?>, Object> attachedSqlObjects = new ConcurrentHashMap<>();
+
+    ManagedHandle(Handle handle) {
+        this(handle, h -> {
+        });
+    }
+
+    ManagedHandle(Handle handle, Consumer<Handle> closing) {
+        this(handle, closing, () -> {
+        });
+    }
+
+    ManagedHandle(Handle handle, Consumer<Handle> closing, Runnable onClose) {
+        this.handle = handle;
+        this.closing = closing;
+        this.onClose = onClose;
+    }
+
+    Handle getHandle() {
+        return handle;
+    }
+
+    <T> T attach(Class<T> sqlObjectType) {
+        Object sqlObject = attachedSqlObjects.get(sqlObjectType);
+        if (sqlObject == null) {
+            sqlObject = attachedSqlObjects.computeIfAbsent(sqlObjectType, handle::attach);
+        }
+        return sqlObjectType.cast(sqlObject);
+    }
+
+    void close() {
+        attachedSqlObjects.clear();
+        try {
+            closing.accept(handle);
+        } finally {
+            try {
+                handle.close();
+            } finally {
+                onClose.run();
+            }
+        }
+    }
+}
@@ -1,12 +1,15 @@
 package com.github.isopropylcyanide.jdbiunitofwork.core;
 
-import org.skife.jdbi.v2.Handle;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 
 /**
  * Implementation of {@link InvocationHandler} that attaches the underlying class to a handle
@@ -14,6 +17,19 @@ import java.lang.reflect.Method;
  * <br><br>
  * Note: Attaching a handle to a class is an idempotent operation. If a handle {@literal H}
  * is attached to a class, attaching {@literal H} to the same class again serves no purpose.
+ * The attachment is therefore obtained through {@link JdbiHandleManager#attach(Class)} which
+ * lets scoped implementations reuse the instance attached earlier in the same unit of work.
+ * <br><br>
+ * Invocations are forwarded to the attached instance through a {@link SqlObjectDispatchTable}
+ * built once for the underlying class, rather than through reflection.
+ * <br><br>
+ * If the handle manager shares the handle of the current scope between threads and provides an
+ * executor for SQL object invocations through {@code getSqlObjectExecutor()},
+ * invocations are run on it, one at a time, and the calling thread waits for their outcome.
+ * <br><br>
+ * Invocations may be intercepted by a chain of {@link SqlObjectInterceptor} before reaching the
+ * attached instance. The chain runs along with the invocation, on the executor if any. Every
+ * interceptor validates the underlying class when the handler is created.
  * <br><br>
  * Also delegates {@link Object#toString} to the real object instead of the proxy which is
  * helpful for debugging
@@ -24,10 +40,25 @@ public class ManagedHandleInvocationHandler<T> implements InvocationHandler {
     private static final Object[] NO_ARGS = {};
     private final JdbiHandleManager handleManager;
     private final Class<T> underlying;
+    private final SqlObjectDispatchTable dispatchTable;
+    private final List<SqlObjectInterceptor> interceptors;
 
     public ManagedHandleInvocationHandler(JdbiHandleManager handleManager, Class<T> underlying) {
+        this(handleManager, underlying, SqlObjectDispatchTable.of(underlying));
+    }
+
+    ManagedHandleInvocationHandler(JdbiHandleManager handleManager, Class<T> underlying, SqlObjectDispatchTable dispatchTable) {
+        this(handleManager, underlying, dispatchTable, Collections.emptyList());
+    }
+
+    ManagedHandleInvocationHandler(JdbiHandleManager handleManager, Class<T> underlying, SqlObjectDispatchTable dispatchTable, List<SqlObjectInterceptor> interceptors) {
         this.handleManager = handleManager;
         this.underlying = underlying;
+        this.dispatchTable = dispatchTable;
+        this.interceptors = interceptors;
+        for (SqlObjectInterceptor interceptor : interceptors) {
+            interceptor.validate(underlying);
+        }
     }
 
     /**
@@ -48,16 +79,76 @@ public class ManagedHandleInvocationHandler<T> implements InvocationHandler {
         return handleInvocation(method, args);
     }
 
-    private Object handleInvocation(Method method, Object[] args) throws IllegalAccessException, InvocationTargetException {
-        Handle handle = handleManager.get();
-        log.debug("{}.{} [{}] Thread Id [{}] with handle id [{}]", method.getDeclaringClass().getSimpleName(), method.getName(), underlying.getSimpleName(), Thread.currentThread().getId(), handle.hashCode());
+    private Object handleInvocation(Method method, Object[] args) throws Throwable {
+        Executor executor = InternalJdbiHandleManager.getSqlObjectExecutor(handleManager);
+        if (executor == null) {
+            return intercept(method, args);
+        }
+        SerializedInvocation invocation = new SerializedInvocation(this, method, args);
+        executor.execute(invocation);
+        return invocation.await();
+    }
+
+    private Object intercept(Method method, Object[] args) throws Throwable {
+        if (interceptors.isEmpty()) {
+            return invokeAttached(method, args);
+        }
+        return new SqlObjectInvocation(this, underlying, method, args, interceptors).proceed();
+    }
+
+    Object invokeAttached(Method method, Object[] args) throws Throwable {
+        Object dao = handleManager.attach(underlying);
+        log.debug("{}.{} [{}] Thread Id [{}] with attached instance [{}]", method.getDeclaringClass().getSimpleName(), method.getName(), underlying.getSimpleName(), Thread.currentThread().getId(), System.identityHashCode(dao));
 
-        Object dao = handle.attach(underlying);
-        return method.invoke(dao, args);
+        return dispatchTable.invoke(dao, method, args);
     }
 
     @Override
     public String toString() {
         return "Proxy[" + underlying.getSimpleName() + "]";
     }
+
+    /**
+     * An invocation run by the executor of the handle manager, which hands its outcome over to
+     * the calling thread
+     */
+    private static final class SerializedInvocation implements Runnable {
+
+        private final ManagedHandleInvocationHandler<?> handler;
+        private final Method method;
+        private final Object[] args;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private Object result;
+        private Throwable failure;
+
+        SerializedInvocation(ManagedHandleInvocationHandler<?> handler, Method method, Object[] args) {
+            this.handler = handler;
+            this.method = method;
+            this.args = args;
+        }
+
+        @Override
+        public void run() {
+            try {
+                result = handler.intercept(method, args);
+            } catch (Throwable ex) {
+                failure = ex;
+            } finally {
+                done.countDown();
+            }
+        }
+
+        Object await() throws Throwable {
+            Uninterruptibles.awaitUninterruptibly(done);
+            if (failure != null) {
+                throw failure;
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return handler + "." + method.getName();
+        }
+    }
 }
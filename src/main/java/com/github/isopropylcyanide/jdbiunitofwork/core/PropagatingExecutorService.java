@@ -0,0 +1,74 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * An {@link ExecutorService} which decorates every task on submission, before handing it to
+ * another executor service. As every submission method of an {@link AbstractExecutorService}
+ * ends up in {@link #execute(Runnable)}, decorating it covers them all.
+ * <br><br>
+ * Decorated tasks which will never run, as they were rejected or drained by
+ * {@link #shutdownNow()}, are discarded so that the decoration may release whatever it captured.
+ */
+final class PropagatingExecutorService extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+    private final UnaryOperator<Runnable> propagation;
+    private final Consumer<Runnable> discard;
+
+    /**
+     * @param delegate    the executor service running the tasks
+     * @param propagation decorates a task on the submitting thread, so that it may capture the
+     *                    context of the submitter and restore it around the task
+     * @param discard     releases what a decorated task captured, when it will never run
+     */
+    PropagatingExecutorService(ExecutorService delegate, UnaryOperator<Runnable> propagation, Consumer<Runnable> discard) {
+        this.delegate = delegate;
+        this.propagation = propagation;
+        this.discard = discard;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        Runnable decorated = propagation.apply(command);
+        try {
+            delegate.execute(decorated);
+        } catch (RejectedExecutionException ex) {
+            discard.accept(decorated);
+            throw ex;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> neverRun = delegate.shutdownNow();
+        neverRun.forEach(discard);
+        return neverRun;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link JdbiHandleManager} decorator which caches the results of the {@link SqlQuery} methods
+ * invoked on the handle of a scope, so that invoking the same method with the same arguments
+ * again within the unit of work does not make another round trip.
+ * <br><br>
+ * Only queries whose tables can be told by {@link SqlTables} are cached. A query which may write,
+ * such as one with a {@code RETURNING} clause, is taken as a write instead. The cache of a handle
+ * is invalidated by every other SQL object method invoked on it. The results read from the table
+ * written by a {@code SqlUpdate} or {@code SqlBatch} method are dropped, as told by
+ * {@link SqlTables}. The whole cache is dropped when the table written by a statement cannot be
+ * told, and for any other method, such as a {@code SqlCall}. The cache is discarded along with the
+ * handle once it is closed.
+ * <br><br>
+ * The hits and misses of the cache are counted in a {@link MetricRegistry} as
+ * {@code ...core.JdbiHandleManager.queryCache.hits} and {@code ...queryCache.misses}.
+ *
+ * @implNote Results are shared by every invocation hitting the cache and must not be modified.
+ * Statements run directly through the {@link Handle} rather than through SQL objects do not
+ * invalidate the cache. Queries returning an {@link Iterator} are never cached.
+ */
+final class QueryCachingJdbiHandleManager extends ForwardingJdbiHandleManager implements SqlObjectInterceptor {
+
+    private static final Object NULL_RESULT = new Object();
+
+    private final Logger log = LoggerFactory.getLogger(QueryCachingJdbiHandleManager.class);
+    private final Counter hits;
+    private final Counter misses;
+    private final Map<Method, Statement> statements = new ConcurrentHashMap<>();
+    private final Map<Handle, Map<QueryKey, CachedResult>> caches = new ConcurrentHashMap<>();
+
+    QueryCachingJdbiHandleManager(JdbiHandleManager delegate, MetricRegistry metricRegistry) {
+        super(delegate);
+        this.hits = metricRegistry.counter(MetricRegistry.name(JdbiHandleManager.class, "queryCache", "hits"));
+        this.misses = metricRegistry.counter(MetricRegistry.name(JdbiHandleManager.class, "queryCache", "misses"));
+    }
+
+    @Override
+    public Object intercept(SqlObjectInvocation invocation) throws Throwable {
+        Statement statement = statements.computeIfAbsent(invocation.getMethod(), Statement::of);
+        if (statement.passThrough) {
+            return invocation.proceed();
+        }
+        if (!statement.cacheable) {
+            Handle handle = peek();
+            if (handle != null) {
+                invalidate(handle, statement.tables);
+            }
+            return invocation.proceed();
+        }
+        QueryKey key = new QueryKey(invocation.getMethod(), invocation.getArguments());
+        CachedResult cached = lookup(peek(), key);
+        if (cached != null) {
+            hits.inc();
+            return cached.result == NULL_RESULT ? null : cached.result;
+        }
+        misses.inc();
+        Object result = invocation.proceed();
+
+        Handle handle = peek();
+        if (handle != null) {
+            caches.computeIfAbsent(handle, h -> new ConcurrentHashMap<>())
+                    .put(key, new CachedResult(result == null ? NULL_RESULT : result, statement.tables));
+        }
+        return result;
+    }
+
+    @Override
+    public void closing(Handle handle) {
+        caches.remove(handle);
+        super.closing(handle);
+    }
+
+    @Nullable
+    private CachedResult lookup(@Nullable Handle handle, QueryKey key) {
+        Map<QueryKey, CachedResult> cache = handle == null ? null : caches.get(handle);
+        return cache == null ? null : cache.get(key);
+    }
+
+    private void invalidate(Handle handle, @Nullable Set<String> writtenTables) {
+        Map<QueryKey, CachedResult> cache = caches.get(handle);
+        if (cache == null) {
+            return;
+        }
+        if (writtenTables == null) {
+            cache.clear();
+            log.debug("Invalidated the query cache of handle [{}]", handle.hashCode());
+            return;
+        }
+        cache.values().removeIf(cached -> !Collections.disjoint(cached.tables, writtenTables));
+        log.debug("Invalidated the queries of tables {} cached for handle [{}]", writtenTables, handle.hashCode());
+    }
+
+    /**
+     * How a SQL object method relates to the cache. The tables are those read by a cacheable
+     * query, or written by any other method, and are {@code null} if they cannot be told
+     */
+    private static final class Statement {
+
+        private final boolean passThrough;
+        private final boolean cacheable;
+        @Nullable
+        private final Set<String> tables;
+
+        private Statement(boolean passThrough, boolean cacheable, @Nullable Set<String> tables) {
+            this.passThrough = passThrough;
+            this.cacheable = cacheable;
+            this.tables = tables;
+        }
+
+        static Statement of(Method method) {
+            if (method.getDeclaringClass() == Object.class) {
+                return new Statement(true, false, null);
+            }
+            SqlQuery sqlQuery = method.getAnnotation(SqlQuery.class);
+            if (sqlQuery != null && !SqlTables.writes(sqlQuery.value())) {
+                Set<String> tables = SqlTables.readBy(sqlQuery.value());
+                boolean cacheable = tables != null && method.getReturnType() != void.class && !Iterator.class.isAssignableFrom(method.getReturnType());
+                return new Statement(!cacheable, cacheable, tables);
+            }
+            return new Statement(false, false, SqlTables.writtenBy(method));
+        }
+    }
+
+    private static final class CachedResult {
+
+        private final Object result;
+        private final Set<String> tables;
+
+        CachedResult(Object result, Set<String> tables) {
+            this.result = result;
+            this.tables = tables;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Identifies the result of a query by the SQL object method invoked and its arguments. Array
+ * arguments are compared by their content.
+ */
+final class QueryKey {
+
+    private final Method method;
+    private final Object[] args;
+    private final int hashCode;
+
+    QueryKey(Method method, Object[] args) {
+        this.method = method;
+        this.args = args.clone();
+        this.hashCode = 31 * method.hashCode() + Arrays.deepHashCode(this.args);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof QueryKey)) {
+            return false;
+        }
+        QueryKey other = (QueryKey) o;
+        return method.equals(other.method) && Arrays.deepEquals(args, other.args);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return method.getName() + Arrays.deepToString(args);
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.skife.jdbi.v2.DBI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * This implementation gets a new handle which is scoped to the thread requesting the handle, just
+ * like {@link RequestScopedJdbiHandleManager}. Scopes marked read only through {@link #markReadOnly()}
+ * before their handle is opened get a handle from one of the replicas, picked by a
+ * {@link ReplicaSelector}. All other scopes, such as those of a transaction, get a handle from the
+ * primary. The read only mark of a scope is carried along when it is detached through
+ * {@link #detachScope()}.
+ *
+ * @apiNote Replicas are usually behind the primary. A read only scope may not see the writes made
+ * by a transaction which committed just before it started.
+ */
+class ReplicaRoutingJdbiHandleManager extends RequestScopedJdbiHandleManager {
+
+    private final Logger log = LoggerFactory.getLogger(ReplicaRoutingJdbiHandleManager.class);
+    private final List<DBI> replicas;
+    private final ReplicaSelector replicaSelector;
+
+    @SuppressWarnings("ThreadLocalUsage")
+    private final ThreadLocal<Boolean> readOnly = new ThreadLocal<>();
+
+    public ReplicaRoutingJdbiHandleManager(DBI primary, List<DBI> replicas, ReplicaSelector replicaSelector) {
+        super(primary);
+        this.replicas = replicas;
+        this.replicaSelector = replicaSelector;
+    }
+
+    @Override
+    public void markReadOnly() {
+        readOnly.set(Boolean.TRUE);
+    }
+
+    @Override
+    public void clear() {
+        readOnly.remove();
+        super.clear();
+    }
+
+    @Override
+    public DetachedScope detachScope() {
+        Boolean[] detachedReadOnly = {readOnly.get()};
+        readOnly.remove();
+        DetachedScope detached = super.detachScope();
+        return task -> detached.run(() -> {
+            Boolean previous = swap(readOnly, detachedReadOnly[0]);
+            try {
+                task.run();
+            } finally {
+                detachedReadOnly[0] = swap(readOnly, previous);
+            }
+        });
+    }
+
+    @Override
+    ManagedHandle open() {
+        if (readOnly.get() == null) {
+            return super.open();
+        }
+        DBI replica = replicaSelector.select(replicas);
+        try {
+            ManagedHandle managedHandle = manage(replica.open(), () -> replicaSelector.release(replica));
+            log.debug("Opened replica handle [{}] for Thread Id [{}]", managedHandle.getHandle().hashCode(), Thread.currentThread().getId());
+            return managedHandle;
+
+        } catch (RuntimeException ex) {
+            replicaSelector.release(replica);
+            throw ex;
+        }
+    }
+}
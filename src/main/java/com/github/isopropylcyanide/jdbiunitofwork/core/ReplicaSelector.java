@@ -0,0 +1,43 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.skife.jdbi.v2.DBI;
+
+import java.util.List;
+
+/**
+ * A {@link ReplicaSelector} picks the replica {@link DBI} a read only scope opens its handle from.
+ * Every replica handed out through {@link #select(List)} is handed back through {@link #release(DBI)}
+ * once the handle opened from it is closed.
+ */
+public interface ReplicaSelector {
+
+    /**
+     * Provide a way to pick the replica the next handle is opened from
+     *
+     * @param replicas the non empty list of replicas to choose from
+     * @return one of the given replicas
+     */
+    DBI select(List<DBI> replicas);
+
+    /**
+     * Provide a way to learn about a handle opened from the selected replica being closed
+     *
+     * @param replica the replica previously returned by {@link #select(List)}
+     */
+    default void release(DBI replica) {
+    }
+
+    /**
+     * @return a selector cycling through the replicas in order
+     */
+    static ReplicaSelector roundRobin() {
+        return new RoundRobinReplicaSelector();
+    }
+
+    /**
+     * @return a selector picking the replica with the fewest handles currently open from it
+     */
+    static ReplicaSelector leastOutstandingHandles() {
+        return new LeastOutstandingHandlesReplicaSelector();
+    }
+}
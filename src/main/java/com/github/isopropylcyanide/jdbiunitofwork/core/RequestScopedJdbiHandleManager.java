@@ -5,46 +5,185 @@ import org.skife.jdbi.v2.Handle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+import java.util.function.Consumer;
+
 /**
  * This implementation gets a new handle which is scoped to the thread requesting the handle.
  * <br><br>
  * It can be used to service requests which interact with multiple SQL objects as part of a common
  * transaction. All such SQL objects will be attached to the common handle.
+ * <br><br>
+ * When created with {@code deferBegin}, a transaction requested before any handle is opened is
+ * only begun once the first handle is obtained on the thread, so that requests which never touch
+ * the database do not check out a connection.
+ * <br><br>
+ * The handle of the thread, along with a begin still deferred, can be detached from it through
+ * {@link #detachScope()}, so that a thread completing an asynchronous request takes it over.
  *
  * @apiNote Not suitable for requests which spawn new threads from the requesting thread as the scoped
  * handle is not preserved. This implementation, therefore, does not support thread factory creation
  */
-class RequestScopedJdbiHandleManager implements JdbiHandleManager {
+class RequestScopedJdbiHandleManager implements InternalJdbiHandleManager {
 
     private final Logger log = LoggerFactory.getLogger(RequestScopedJdbiHandleManager.class);
     private final DBI dbi;
+    private final boolean deferBegin;
+    private volatile InternalJdbiHandleManager decorator = this;
 
     @SuppressWarnings("ThreadLocalUsage")
-    private final ThreadLocal<Handle> threadLocal = new ThreadLocal<>();
+    private final ThreadLocal<ManagedHandle> threadLocal = new ThreadLocal<>();
+
+    @SuppressWarnings("ThreadLocalUsage")
+    private final ThreadLocal<Consumer<Handle>> deferredBegin = new ThreadLocal<>();
 
     public RequestScopedJdbiHandleManager(DBI dbi) {
+        this(dbi, false);
+    }
+
+    public RequestScopedJdbiHandleManager(DBI dbi, boolean deferBegin) {
         this.dbi = dbi;
+        this.deferBegin = deferBegin;
     }
 
     @Override
     public Handle get() {
-        if (threadLocal.get() == null) {
-            threadLocal.set(dbi.open());
-        }
-        Handle handle = threadLocal.get();
+        Handle handle = getManagedHandle().getHandle();
         log.debug("handle [{}] : Thread Id [{}]", handle.hashCode(), Thread.currentThread().getId());
         return handle;
     }
 
+    @Override
+    public <T> T attach(Class<T> sqlObjectType) {
+        return getManagedHandle().attach(sqlObjectType);
+    }
+
+    @Override
+    @Nullable
+    public Handle peek() {
+        ManagedHandle managedHandle = threadLocal.get();
+        return managedHandle == null ? null : managedHandle.getHandle();
+    }
+
+    @Override
+    public boolean deferBegin(Consumer<Handle> begin) {
+        if (!deferBegin || threadLocal.get() != null) {
+            return false;
+        }
+        deferredBegin.set(begin);
+        log.debug("Deferred begin until a handle is opened for Thread Id [{}]", Thread.currentThread().getId());
+        return true;
+    }
+
+    @Override
+    public boolean discardDeferredBegin() {
+        if (deferredBegin.get() == null) {
+            return false;
+        }
+        deferredBegin.remove();
+        log.debug("Discarded deferred begin for Thread Id [{}]", Thread.currentThread().getId());
+        return true;
+    }
+
     @Override
     public void clear() {
-        Handle handle = threadLocal.get();
-        if (handle != null) {
-            handle.close();
-            log.debug("Closed handle Thread Id [{}] has handle id [{}]", Thread.currentThread().getId(), handle.hashCode());
+        deferredBegin.remove();
+        ManagedHandle managedHandle = threadLocal.get();
+        if (managedHandle != null) {
+            managedHandle.close();
+            log.debug("Closed handle Thread Id [{}] has handle id [{}]", Thread.currentThread().getId(), managedHandle.getHandle().hashCode());
 
             threadLocal.remove();
             log.debug("Clearing handle member for thread [{}] ", Thread.currentThread().getId());
         }
     }
+
+    @Override
+    public DetachedScope detachScope() {
+        DetachedHandle detached = new DetachedHandle(threadLocal.get(), deferredBegin.get());
+        threadLocal.remove();
+        deferredBegin.remove();
+        log.debug("Detached handle scope from Thread Id [{}]", Thread.currentThread().getId());
+        return detached;
+    }
+
+    @Override
+    public void decoratedBy(InternalJdbiHandleManager decorator) {
+        this.decorator = decorator;
+    }
+
+    private ManagedHandle getManagedHandle() {
+        ManagedHandle managedHandle = threadLocal.get();
+        if (managedHandle == null) {
+            managedHandle = open();
+            threadLocal.set(managedHandle);
+            runDeferredBegin(managedHandle.getHandle());
+        }
+        return managedHandle;
+    }
+
+    ManagedHandle open() {
+        return manage(dbi.open(), () -> {
+        });
+    }
+
+    /**
+     * @param onClose run once the handle is closed
+     * @return the handle, telling the outermost decorator of it being closed
+     */
+    ManagedHandle manage(Handle handle, Runnable onClose) {
+        return new ManagedHandle(handle, closing -> decorator.closing(closing), onClose);
+    }
+
+    /**
+     * Binds a value to the calling thread, removing it if {@code null}
+     *
+     * @return the value the calling thread had before
+     */
+    @Nullable
+    static <T> T swap(ThreadLocal<T> threadLocal, @Nullable T value) {
+        T previous = threadLocal.get();
+        if (value == null) {
+            threadLocal.remove();
+        } else {
+            threadLocal.set(value);
+        }
+        return previous;
+    }
+
+    private void runDeferredBegin(Handle handle) {
+        Consumer<Handle> begin = deferredBegin.get();
+        if (begin != null) {
+            deferredBegin.remove();
+            try {
+                begin.accept(handle);
+            } catch (RuntimeException ex) {
+                clear();
+                throw ex;
+            }
+        }
+    }
+
+    private final class DetachedHandle implements DetachedScope {
+
+        private ManagedHandle managedHandle;
+        private Consumer<Handle> begin;
+
+        DetachedHandle(@Nullable ManagedHandle managedHandle, @Nullable Consumer<Handle> begin) {
+            this.managedHandle = managedHandle;
+            this.begin = begin;
+        }
+
+        @Override
+        public void run(Runnable task) {
+            ManagedHandle previousHandle = swap(threadLocal, managedHandle);
+            Consumer<Handle> previousBegin = swap(deferredBegin, begin);
+            try {
+                task.run();
+            } finally {
+                managedHandle = swap(threadLocal, previousHandle);
+                begin = swap(deferredBegin, previousBegin);
+            }
+        }
+    }
 }
@@ -0,0 +1,21 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.skife.jdbi.v2.DBI;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This implementation hands out the replicas in turn, regardless of how many handles are
+ * currently open from each of them.
+ */
+class RoundRobinReplicaSelector implements ReplicaSelector {
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Override
+    public DBI select(List<DBI> replicas) {
+        int index = Math.floorMod(counter.getAndIncrement(), replicas.size());
+        return replicas.get(index);
+    }
+}
@@ -0,0 +1,207 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.isopropylcyanide.jdbiunitofwork.JdbiCacheable;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link JdbiHandleManager} decorator which caches the results of the {@link JdbiCacheable}
+ * methods of SQL objects across units of work. A result found in the cache is returned without
+ * looking at the handle of the scope, let alone opening one. The tables told by the annotation
+ * are normalized as by {@link SqlTables}, so that they may be qualified by their schema or quoted.
+ * A SQL object whose cacheable methods are not queries, or may write, fails its proxy creation.
+ * <br><br>
+ * Every other SQL object method invoked is taken as a write to the table told by {@link SqlTables},
+ * or to any table if it cannot be told, unless it is a query which does not write. The results read from the tables
+ * written within a transaction are dropped once the transaction commits, see
+ * {@link #afterCommit(Handle)}, and right away for writes made outside of a transaction. The tables
+ * written are forgotten once the transaction rolls back or its handle closes. A unit of
+ * work which wrote to the tables of a cached query reads them from its own handle until it ends,
+ * so that it sees its own writes and does not share them with others before they are committed.
+ * <br><br>
+ * The hits and misses of the cache are counted in a {@link MetricRegistry} as
+ * {@code ...core.JdbiHandleManager.sharedQueryCache.hits} and {@code ...sharedQueryCache.misses}.
+ *
+ * @implNote Statements run directly through the {@link Handle} rather than through SQL objects,
+ * as well as writes made by other applications, do not invalidate the cache. The results of
+ * such writes are only seen once the cached results expire.
+ */
+final class SharedQueryCachingJdbiHandleManager extends ForwardingJdbiHandleManager implements SqlObjectInterceptor {
+
+    private static final String ANY_TABLE = "*";
+    private static final Set<String> ANY_TABLES = Collections.singleton(ANY_TABLE);
+    private static final Object NULL_RESULT = new Object();
+
+    private final Logger log = LoggerFactory.getLogger(SharedQueryCachingJdbiHandleManager.class);
+    private final Counter hits;
+    private final Counter misses;
+    private final Map<Method, Optional<SharedCache>> sharedCaches = new ConcurrentHashMap<>();
+    private final Map<Method, Set<String>> writtenTables = new ConcurrentHashMap<>();
+    private final Map<Handle, Set<String>> uncommittedTables = new ConcurrentHashMap<>();
+
+    SharedQueryCachingJdbiHandleManager(JdbiHandleManager delegate, MetricRegistry metricRegistry) {
+        super(delegate);
+        this.hits = metricRegistry.counter(MetricRegistry.name(JdbiHandleManager.class, "sharedQueryCache", "hits"));
+        this.misses = metricRegistry.counter(MetricRegistry.name(JdbiHandleManager.class, "sharedQueryCache", "misses"));
+    }
+
+    @Override
+    public Object intercept(SqlObjectInvocation invocation) throws Throwable {
+        Method method = invocation.getMethod();
+        if (method.getDeclaringClass() == Object.class) {
+            return invocation.proceed();
+        }
+        SharedCache sharedCache = sharedCaches.computeIfAbsent(method, SharedCache::of).orElse(null);
+        if (sharedCache != null) {
+            return read(sharedCache, invocation);
+        }
+        SqlQuery sqlQuery = method.getAnnotation(SqlQuery.class);
+        if (sqlQuery != null && !SqlTables.writes(sqlQuery.value())) {
+            return invocation.proceed();
+        }
+        Object result = invocation.proceed();
+        written(writtenTables.computeIfAbsent(method, m -> {
+            Set<String> tables = SqlTables.writtenBy(m);
+            return tables == null ? ANY_TABLES : tables;
+        }));
+        return result;
+    }
+
+    @Override
+    public void validate(Class<?> sqlObjectType) {
+        for (Method method : sqlObjectType.getMethods()) {
+            sharedCaches.computeIfAbsent(method, SharedCache::of);
+        }
+    }
+
+    @Override
+    public void afterCommit(Handle handle) {
+        Set<String> tables = uncommittedTables.remove(handle);
+        if (tables != null) {
+            invalidate(tables);
+        }
+        super.afterCommit(handle);
+    }
+
+    @Override
+    public void beforeRollback(Handle handle) {
+        uncommittedTables.remove(handle);
+        super.beforeRollback(handle);
+    }
+
+    @Override
+    public void closing(Handle handle) {
+        uncommittedTables.remove(handle);
+        super.closing(handle);
+    }
+
+    private Object read(SharedCache sharedCache, SqlObjectInvocation invocation) throws Throwable {
+        Handle handle = peek();
+        Set<String> uncommitted = handle == null ? null : uncommittedTables.get(handle);
+        if (uncommitted != null && sharedCache.readsAnyOf(uncommitted)) {
+            return invocation.proceed();
+        }
+        QueryKey key = new QueryKey(invocation.getMethod(), invocation.getArguments());
+        Object cached = sharedCache.cache.getIfPresent(key);
+        if (cached != null) {
+            hits.inc();
+            return cached == NULL_RESULT ? null : cached;
+        }
+        misses.inc();
+        long generation = sharedCache.generation();
+        Object result = invocation.proceed();
+        sharedCache.put(key, result == null ? NULL_RESULT : result, generation);
+        return result;
+    }
+
+    private void written(Set<String> tables) {
+        Handle handle = peek();
+        if (handle == null || !handle.isInTransaction()) {
+            invalidate(tables);
+            return;
+        }
+        uncommittedTables.computeIfAbsent(handle, h -> ConcurrentHashMap.newKeySet()).addAll(tables);
+    }
+
+    private void invalidate(Set<String> tables) {
+        for (Optional<SharedCache> sharedCache : sharedCaches.values()) {
+            if (sharedCache.isPresent() && sharedCache.get().readsAnyOf(tables)) {
+                sharedCache.get().invalidate();
+            }
+        }
+        log.debug("Invalidated the shared query caches of tables {}", tables);
+    }
+
+    /**
+     * The cache of a {@link JdbiCacheable} method. Its generation is bumped whenever it is
+     * invalidated, so that a result read before an invalidation is not cached after it
+     */
+    private static final class SharedCache {
+
+        private final Set<String> tables;
+        private final Cache<QueryKey, Object> cache;
+        private long generation;
+
+        private SharedCache(Set<String> tables, Cache<QueryKey, Object> cache) {
+            this.tables = tables;
+            this.cache = cache;
+        }
+
+        static Optional<SharedCache> of(Method method) {
+            JdbiCacheable cacheable = method.getAnnotation(JdbiCacheable.class);
+            if (cacheable == null) {
+                return Optional.empty();
+            }
+            SqlQuery sqlQuery = method.getAnnotation(SqlQuery.class);
+            if (sqlQuery == null) {
+                throw new IllegalStateException(String.format("Method [%s] is annotated with @JdbiCacheable but is not a @SqlQuery", method.getName()));
+            }
+            if (SqlTables.writes(sqlQuery.value())) {
+                throw new IllegalStateException(String.format("Method [%s] is annotated with @JdbiCacheable but its query may write", method.getName()));
+            }
+            Set<String> tables = new HashSet<>();
+            for (String table : cacheable.tables()) {
+                tables.add(SqlTables.normalize(table));
+            }
+            Cache<QueryKey, Object> cache = CacheBuilder.newBuilder()
+                    .maximumSize(cacheable.maximumSize())
+                    .expireAfterWrite(cacheable.expireAfterSeconds(), TimeUnit.SECONDS)
+                    .build();
+            return Optional.of(new SharedCache(Collections.unmodifiableSet(tables), cache));
+        }
+
+        boolean readsAnyOf(Set<String> writtenTables) {
+            return writtenTables.contains(ANY_TABLE) || !Collections.disjoint(tables, writtenTables);
+        }
+
+        synchronized long generation() {
+            return generation;
+        }
+
+        synchronized void put(QueryKey key, Object result, long readAt) {
+            if (generation == readAt) {
+                cache.put(key, result);
+            }
+        }
+
+        synchronized void invalidate() {
+            generation++;
+            cache.invalidateAll();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An {@link Executor} which runs its tasks one at a time, in the order they were submitted,
+ * without a thread of its own.
+ * <br><br>
+ * A submitting thread which finds the executor idle becomes its writer and runs every queued
+ * task, including those submitted by other threads meanwhile, until the queue is drained.
+ * Submitting threads finding a writer at work only queue their task and return, so that no
+ * lock is ever held by the callers. A caller needing the result of its task must wait for it.
+ * <br><br>
+ * As a task may run on any submitting thread, a task failing is only logged, rather than
+ * failing the unrelated caller which happened to run it. Tasks are expected to hand their
+ * outcome over to their submitter themselves.
+ */
+final class SingleWriterExecutor implements Executor {
+
+    private static final Logger log = LoggerFactory.getLogger(SingleWriterExecutor.class);
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean writing = new AtomicBoolean();
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        while (!tasks.isEmpty() && writing.compareAndSet(false, true)) {
+            try {
+                Runnable next;
+                while ((next = tasks.poll()) != null) {
+                    run(next);
+                }
+            } finally {
+                writing.set(false);
+            }
+        }
+    }
+
+    private void run(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException ex) {
+            log.error("Task [{}] failed on Thread Id [{}]", task, Thread.currentThread().getId(), ex);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A dispatch table built once per SQL object type which maps each of its methods to a
+ * {@link MethodHandle} that is pre-bound to accept the target instance and the argument array
+ * handed over by the proxy.
+ * <br><br>
+ * Invoking through the table avoids the reflective {@link Method#invoke} on every call, lets the
+ * JIT inline the call site and propagates exceptions thrown by the attached instance as they are
+ * instead of wrapping them in an {@link InvocationTargetException}.
+ *
+ * @implNote Methods that are not part of the table, such as those declared on {@link Object}, or
+ * that cannot be unreflected due to access restrictions fall back to reflective dispatch.
+ */
+final class SqlObjectDispatchTable {
+
+    private static final Logger log = LoggerFactory.getLogger(SqlObjectDispatchTable.class);
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    private final Map<Method, MethodHandle> invokers;
+
+    private SqlObjectDispatchTable(Map<Method, MethodHandle> invokers) {
+        this.invokers = invokers;
+    }
+
+    static SqlObjectDispatchTable of(Class<?> sqlObjectType) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        Map<Method, MethodHandle> invokers = new HashMap<>();
+        for (Method method : sqlObjectType.getMethods()) {
+            try {
+                method.setAccessible(true);
+                MethodHandle invoker = lookup.unreflect(method)
+                        .asSpreader(Object[].class, method.getParameterCount())
+                        .asType(INVOKER_TYPE);
+                invokers.put(method, invoker);
+
+            } catch (IllegalAccessException | RuntimeException ex) {
+                log.debug("Method [{}] of [{}] will be dispatched reflectively: {}", method.getName(), sqlObjectType.getSimpleName(), ex.getMessage());
+            }
+        }
+        return new SqlObjectDispatchTable(Collections.unmodifiableMap(invokers));
+    }
+
+    Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        MethodHandle invoker = invokers.get(method);
+        if (invoker == null) {
+            return invokeReflectively(target, method, args);
+        }
+        return (Object) invoker.invokeExact(target, args);
+    }
+
+    private Object invokeReflectively(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+}
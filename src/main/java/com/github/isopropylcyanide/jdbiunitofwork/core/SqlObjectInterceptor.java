@@ -0,0 +1,30 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+/**
+ * Intercepts the SQL object invocations of a {@link ManagedHandleInvocationHandler} before they
+ * reach the instance attached to the handle of the current scope.
+ * <br><br>
+ * Interceptors are chained in the order they were configured. Each of them either proceeds with
+ * the invocation through {@link SqlObjectInvocation#proceed()} or completes it on its own,
+ * such as by returning a result it already knows.
+ */
+interface SqlObjectInterceptor {
+
+    /**
+     * @param invocation the invocation being intercepted
+     * @return the result of the invocation
+     * @throws Throwable whatever the invocation throws, unwrapped
+     */
+    Object intercept(SqlObjectInvocation invocation) throws Throwable;
+
+    /**
+     * Checks a SQL object type before a proxy intercepted by this interceptor is created for it, so
+     * that a method the interceptor cannot serve fails the creation rather than its invocations.
+     * Accepts every type by default.
+     *
+     * @param sqlObjectType the SQL object type to check
+     * @throws IllegalStateException if a method of the type cannot be intercepted
+     */
+    default void validate(Class<?> sqlObjectType) {
+    }
+}
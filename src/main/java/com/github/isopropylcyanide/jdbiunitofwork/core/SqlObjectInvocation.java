@@ -0,0 +1,53 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * A SQL object invocation passed along a chain of {@link SqlObjectInterceptor}, which ends with
+ * the instance attached to the handle of the current scope.
+ * <br><br>
+ * An invocation is handed to one interceptor at a time, on a single thread. Every interceptor
+ * must therefore proceed at most once.
+ */
+final class SqlObjectInvocation {
+
+    private final ManagedHandleInvocationHandler<?> handler;
+    private final Class<?> sqlObjectType;
+    private final Method method;
+    private final Object[] args;
+    private final List<SqlObjectInterceptor> interceptors;
+    private int next;
+
+    SqlObjectInvocation(ManagedHandleInvocationHandler<?> handler, Class<?> sqlObjectType, Method method, Object[] args, List<SqlObjectInterceptor> interceptors) {
+        this.handler = handler;
+        this.sqlObjectType = sqlObjectType;
+        this.method = method;
+        this.args = args;
+        this.interceptors = interceptors;
+    }
+
+    Class<?> getSqlObjectType() {
+        return sqlObjectType;
+    }
+
+    Method getMethod() {
+        return method;
+    }
+
+    Object[] getArguments() {
+        return args;
+    }
+
+    /**
+     * @return the result of handing the invocation to the next interceptor of the chain, or to
+     * the attached instance once every interceptor has proceeded
+     * @throws Throwable whatever the invocation throws, unwrapped
+     */
+    Object proceed() throws Throwable {
+        if (next < interceptors.size()) {
+            return interceptors.get(next++).intercept(this);
+        }
+        return handler.invokeAttached(method, args);
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the tables a SQL statement reads from or writes to, as far as it can be told from the
+ * text of the statement alone.
+ * <br><br>
+ * The statement is not parsed. Tables are picked after the keywords introducing them, which
+ * covers the statements SQL objects usually declare. Whenever the tables of a statement cannot
+ * be told, such as for a call, a statement starting with a common table expression or a query
+ * listing its tables with commas, the statement is reported as unknown and callers are expected
+ * to assume it may touch any table. A query is told apart from a write by its keywords only, so
+ * that one returning what it inserted or writing from a common table expression is a write.
+ */
+final class SqlTables {
+
+    private static final String TABLE = "([\\w.\"`\\[\\]]+)";
+    private static final Pattern READ_KEYWORD = Pattern.compile("\\b(?:from|join)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern READ = Pattern.compile("(?:from|join)\\s*(?:\\(|" + TABLE + "(\\s*\\(|(?:\\s+(?:as\\s+)?\\w+)?\\s*,)?)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern WRITE_KEYWORD = Pattern.compile("\\b(?:insert|update|delete|merge|returning)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Set<String> NOT_TABLES = Set.of("lateral", "only", "table", "unnest", "select");
+    private static final Pattern WRITE = Pattern.compile("^\\s*(?:insert\\s+into|update|delete\\s+from|merge\\s+into|replace\\s+into)\\s+" + TABLE, Pattern.CASE_INSENSITIVE);
+
+    private SqlTables() {
+    }
+
+    /**
+     * @param sql the text of a query
+     * @return the tables the query reads from, or {@code null} if they cannot be told, such as
+     * when the query writes, lists tables with commas, or reads from something else than a table
+     * or a subquery after any of its {@code FROM} or {@code JOIN} keywords
+     */
+    @Nullable
+    static Set<String> readBy(String sql) {
+        if (writes(sql)) {
+            return null;
+        }
+        Set<String> tables = new HashSet<>();
+        Matcher keyword = READ_KEYWORD.matcher(sql);
+        Matcher read = READ.matcher(sql);
+        while (keyword.find()) {
+            read.region(keyword.start(), sql.length());
+            if (!read.lookingAt() || read.group(2) != null) {
+                return null;
+            }
+            if (read.group(1) != null) {
+                String table = normalize(read.group(1));
+                if (NOT_TABLES.contains(table)) {
+                    return null;
+                }
+                tables.add(table);
+            }
+        }
+        return tables.isEmpty() ? null : Collections.unmodifiableSet(tables);
+    }
+
+    /**
+     * @param sql the text of a statement
+     * @return whether the statement may write, i.e. mentions any keyword of a write, including
+     * a {@code RETURNING} clause or a locking {@code FOR UPDATE} read
+     */
+    static boolean writes(String sql) {
+        return WRITE_KEYWORD.matcher(sql).find();
+    }
+
+    /**
+     * @param sql the text of an insert, update, delete or merge statement
+     * @return the table the statement writes to, or {@code null} if it cannot be told
+     */
+    @Nullable
+    static String writtenBy(String sql) {
+        Matcher matcher = WRITE.matcher(sql);
+        return matcher.find() ? normalize(matcher.group(1)) : null;
+    }
+
+    /**
+     * @param method a SQL object method which is not a query, or a query which {@link #writes(String)}
+     * @return the tables written by the method, or {@code null} if they cannot be told, such as
+     * for a {@code SqlCall} or a method run by the SQL object itself
+     */
+    @Nullable
+    static Set<String> writtenBy(Method method) {
+        SqlUpdate sqlUpdate = method.getAnnotation(SqlUpdate.class);
+        SqlBatch sqlBatch = method.getAnnotation(SqlBatch.class);
+        SqlQuery sqlQuery = method.getAnnotation(SqlQuery.class);
+        String sql = sqlUpdate != null ? sqlUpdate.value() : sqlBatch != null ? sqlBatch.value() : sqlQuery != null ? sqlQuery.value() : "";
+        String table = writtenBy(sql);
+        return table == null ? null : Collections.singleton(table);
+    }
+
+    /**
+     * Tables are told apart by their name alone, so that a table referred to with and without its
+     * schema is still the same table
+     */
+    static String normalize(String table) {
+        String name = table.substring(table.lastIndexOf('.') + 1);
+        return name.replaceAll("[\"`\\[\\]]", "").toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,213 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.tweak.StatementBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A {@link JdbiHandleManager} decorator counting the statements created on the handle of every
+ * unit of work, along with the DAO methods invoked on it and the time spent in them, keyed by DAO
+ * method. It warns of
+ * <ul>
+ * <li>a unit of work creating more statements than its budget, counted in a {@link MetricRegistry}
+ * as {@code ...core.JdbiHandleManager.statements.budgetExceeded}</li>
+ * <li>a unit of work invoking the same {@link SqlQuery} method with more distinct arguments than
+ * the threshold, the telltale sign of an N+1 pattern, counted as
+ * {@code ...core.JdbiHandleManager.statements.repeatedQueries}</li>
+ * </ul>
+ * Each warning is logged once per unit of work, and once per method for repeated queries. The
+ * statements and DAO calls of every unit of work are logged at debug level once its handle is
+ * closed.
+ *
+ * @implNote Statements are counted through a statement builder wrapped around the one of the
+ * handle once it is opened, see {@link ForwardingStatementBuilder}. Every statement prepared on the
+ * handle is counted, including those run directly through the {@link Handle}, while a DAO call
+ * served by a query cache or buffered by a write behind decorator counts none, and a batch counts
+ * as a single statement. DAO calls are counted as they reach the decorator, and nothing is counted
+ * without a handle scoped across invocations.
+ */
+final class StatementCountingJdbiHandleManager extends ForwardingJdbiHandleManager implements SqlObjectInterceptor {
+
+    private final Logger log = LoggerFactory.getLogger(StatementCountingJdbiHandleManager.class);
+    private final int statementBudget;
+    private final int repeatedQueryThreshold;
+    private final Counter budgetExceeded;
+    private final Counter repeatedQueries;
+    private final Map<Handle, UnitOfWorkStatements> statements = new ConcurrentHashMap<>();
+
+    StatementCountingJdbiHandleManager(JdbiHandleManager delegate, int statementBudget, int repeatedQueryThreshold,
+                                       MetricRegistry metricRegistry) {
+        super(delegate);
+        if (statementBudget < 1 || repeatedQueryThreshold < 1) {
+            throw new IllegalArgumentException(String.format("Statement budget [%d] and repeated query threshold [%d] must be positive",
+                    statementBudget, repeatedQueryThreshold));
+        }
+        this.statementBudget = statementBudget;
+        this.repeatedQueryThreshold = repeatedQueryThreshold;
+        this.budgetExceeded = metricRegistry.counter(MetricRegistry.name(JdbiHandleManager.class, "statements", "budgetExceeded"));
+        this.repeatedQueries = metricRegistry.counter(MetricRegistry.name(JdbiHandleManager.class, "statements", "repeatedQueries"));
+    }
+
+    @Override
+    public Handle get() {
+        return opening(super::get);
+    }
+
+    @Override
+    public <T> T attach(Class<T> sqlObjectType) {
+        return opening(() -> super.attach(sqlObjectType));
+    }
+
+    @Override
+    public Object intercept(SqlObjectInvocation invocation) throws Throwable {
+        if (invocation.getMethod().getDeclaringClass() == Object.class) {
+            return invocation.proceed();
+        }
+        long start = System.nanoTime();
+        try {
+            return invocation.proceed();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            Handle handle = peek();
+            if (handle != null) {
+                record(handle, invocation, elapsed);
+            }
+        }
+    }
+
+    @Override
+    public void closing(Handle handle) {
+        UnitOfWorkStatements unitOfWork = statements.remove(handle);
+        if (unitOfWork != null && log.isDebugEnabled()) {
+            log.debug("Unit of work of handle [{}] {}", handle.hashCode(), unitOfWork.summary());
+        }
+        super.closing(handle);
+    }
+
+    private <T> T opening(Supplier<T> call) {
+        if (peek() != null) {
+            return call.get();
+        }
+        T result = call.get();
+        Handle handle = peek();
+        if (handle != null && !statements.containsKey(handle)) {
+            UnitOfWorkStatements unitOfWork = new UnitOfWorkStatements();
+            if (statements.putIfAbsent(handle, unitOfWork) == null) {
+                ForwardingStatementBuilder.wrap(handle, statementBuilder -> new CountingStatementBuilder(statementBuilder, handle, unitOfWork));
+            }
+        }
+        return result;
+    }
+
+    private void created(Handle handle, UnitOfWorkStatements unitOfWork) {
+        synchronized (unitOfWork) {
+            unitOfWork.statements++;
+            if (unitOfWork.statements == statementBudget + 1) {
+                budgetExceeded.inc();
+                log.warn("Unit of work of handle [{}] exceeded its statement budget: budget=[{}] {}", handle.hashCode(), statementBudget, unitOfWork.summary());
+            }
+        }
+    }
+
+    private void record(Handle handle, SqlObjectInvocation invocation, long elapsed) {
+        UnitOfWorkStatements unitOfWork = statements.computeIfAbsent(handle, h -> new UnitOfWorkStatements());
+        String name = invocation.getSqlObjectType().getSimpleName() + "." + invocation.getMethod().getName();
+        Method method = invocation.getMethod();
+        boolean distinctQuery = method.isAnnotationPresent(SqlQuery.class) && method.getParameterCount() > 0;
+        QueryKey key = distinctQuery ? new QueryKey(method, invocation.getArguments()) : null;
+
+        synchronized (unitOfWork) {
+            unitOfWork.daoCalls++;
+            unitOfWork.nanos += elapsed;
+            MethodStatements methodStatements = unitOfWork.methods.computeIfAbsent(name, n -> new MethodStatements());
+            methodStatements.count++;
+            methodStatements.nanos += elapsed;
+
+            if (key != null && methodStatements.distinctArguments.size() <= repeatedQueryThreshold
+                    && methodStatements.distinctArguments.add(key)
+                    && methodStatements.distinctArguments.size() == repeatedQueryThreshold + 1) {
+                repeatedQueries.inc();
+                log.warn("Unit of work of handle [{}] repeated a query with varying arguments: query=[{}] distinctArguments=[{}] threshold=[{}] {}",
+                        handle.hashCode(), name, methodStatements.distinctArguments.size(), repeatedQueryThreshold, unitOfWork.summary());
+            }
+        }
+    }
+
+    /**
+     * The statements created on the handle of a unit of work and the DAO calls invoked on it.
+     * Guarded by its own monitor, as the handle may be shared by the threads of a linked unit of work
+     */
+    private static final class UnitOfWorkStatements {
+
+        private final Map<String, MethodStatements> methods = new LinkedHashMap<>();
+        private int statements;
+        private int daoCalls;
+        private long nanos;
+
+        synchronized String summary() {
+            StringBuilder summary = new StringBuilder()
+                    .append("statements=[").append(statements).append("] daoCalls=[").append(daoCalls)
+                    .append("] daoTimeMs=[").append(TimeUnit.NANOSECONDS.toMillis(nanos)).append("] methods={");
+            String separator = "";
+            for (Map.Entry<String, MethodStatements> entry : methods.entrySet()) {
+                summary.append(separator).append(entry.getKey())
+                        .append("=[").append(entry.getValue().count).append(", ")
+                        .append(TimeUnit.NANOSECONDS.toMillis(entry.getValue().nanos)).append(" ms]");
+                separator = ", ";
+            }
+            return summary.append('}').toString();
+        }
+    }
+
+    private static final class MethodStatements {
+
+        private final Set<QueryKey> distinctArguments = new HashSet<>();
+        private int count;
+        private long nanos;
+    }
+
+    /**
+     * Counts every statement created on the handle of a unit of work
+     */
+    private final class CountingStatementBuilder extends ForwardingStatementBuilder {
+
+        private final Handle handle;
+        private final UnitOfWorkStatements unitOfWork;
+
+        CountingStatementBuilder(StatementBuilder delegate, Handle handle, UnitOfWorkStatements unitOfWork) {
+            super(delegate);
+            this.handle = handle;
+            this.unitOfWork = unitOfWork;
+        }
+
+        @Override
+        public PreparedStatement create(Connection conn, String sql, StatementContext ctx) throws SQLException {
+            created(handle, unitOfWork);
+            return super.create(conn, sql, ctx);
+        }
+
+        @Override
+        public CallableStatement createCall(Connection conn, String sql, StatementContext ctx) throws SQLException {
+            created(handle, unitOfWork);
+            return super.createCall(conn, sql, ctx);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.StatementBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A {@link JdbiHandleManager} decorator watching the handles opened by another handle manager for
+ * transactions kept open longer than a budget, counted from their begin. Handles used outside of a
+ * transaction, such as those of {@code GET} requests, are never acted upon however long they are
+ * held. The handles are checked in the background on the given scheduler, several times per
+ * budget. A unit of work whose transaction is found over its budget
+ * <ul>
+ * <li>has the statement it is running, if any, cancelled, which fails it with a {@link SQLException}</li>
+ * <li>is marked rollback only, so that no further statement is created on its handle and its commit
+ * is vetoed through {@link #beforeCommit(Handle)}, which rolls it back instead</li>
+ * <li>is logged and counted in a {@link MetricRegistry} as {@code ...core.JdbiHandleManager.watchdog.exceeded}</li>
+ * </ul>
+ * The handle itself is left to be cleared by its unit of work as usual, so that the connection is
+ * returned to the pool as soon as the request fails rather than being closed under it. The checks
+ * stop once the decorator is closed.
+ *
+ * @implNote Statements are tracked through a statement builder wrapped around the one of the handle
+ * once it is opened, see {@link ForwardingStatementBuilder}, so that it tracks the statements of a
+ * transaction declaring a timeout of its own as well, whichever of them is set first. The begin of a
+ * transaction is taken as the first statement created on its connection with auto commit off, or
+ * the first check finding the handle in a transaction, whichever comes first. It is forgotten once
+ * the transaction commits or rolls back. Like
+ * {@link InstrumentedJdbiHandleManager}, the decorator relies on {@link #peek()}
+ * to tell whether a handle was opened by a call.
+ */
+final class TransactionWatchdogJdbiHandleManager extends ForwardingJdbiHandleManager implements Closeable {
+
+    private static final long NOT_BEGUN = Long.MIN_VALUE;
+
+    private final Logger log = LoggerFactory.getLogger(TransactionWatchdogJdbiHandleManager.class);
+    private final long budgetNanos;
+    private final Counter exceeded;
+    private final Map<Handle, WatchedUnitOfWork> watched = new ConcurrentHashMap<>();
+    private final ScheduledFuture<?> checks;
+
+    TransactionWatchdogJdbiHandleManager(JdbiHandleManager delegate, Duration budget, ScheduledExecutorService scheduler,
+                                         MetricRegistry metricRegistry) {
+        super(delegate);
+        if (budget.isNegative() || budget.isZero()) {
+            throw new IllegalArgumentException("Budget must be positive, was " + budget);
+        }
+        this.budgetNanos = budget.toNanos();
+        this.exceeded = metricRegistry.counter(MetricRegistry.name(JdbiHandleManager.class, "watchdog", "exceeded"));
+        long period = Math.max(TimeUnit.MILLISECONDS.toNanos(10), budgetNanos / 4);
+        this.checks = scheduler.scheduleWithFixedDelay(this::check, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Handle get() {
+        return opening(super::get);
+    }
+
+    @Override
+    public <T> T attach(Class<T> sqlObjectType) {
+        return opening(() -> super.attach(sqlObjectType));
+    }
+
+    /**
+     * Vetoes the commit once the handle manager it decorates is ready to commit, as it may wait
+     * for other threads sharing the handle meanwhile
+     */
+    @Override
+    public void beforeCommit(Handle handle) {
+        super.beforeCommit(handle);
+        WatchedUnitOfWork unitOfWork = watched.get(handle);
+        if (unitOfWork != null && unitOfWork.rollbackOnly) {
+            throw new IllegalStateException(String.format("Transaction of handle [%s] exceeded its budget of [%d] ms and was marked rollback only",
+                    handle.hashCode(), TimeUnit.NANOSECONDS.toMillis(budgetNanos)));
+        }
+    }
+
+    @Override
+    public void afterCommit(Handle handle) {
+        ended(handle);
+        super.afterCommit(handle);
+    }
+
+    @Override
+    public void beforeRollback(Handle handle) {
+        ended(handle);
+        super.beforeRollback(handle);
+    }
+
+    @Override
+    public void closing(Handle handle) {
+        watched.remove(handle);
+        super.closing(handle);
+    }
+
+    /**
+     * Stops checking the handles. Those over their budget by then are left alone
+     */
+    @Override
+    public void close() {
+        checks.cancel(false);
+    }
+
+    /**
+     * Cancels the statements and marks rollback only the units of work whose transaction exceeded
+     * its budget. Each unit of work is acted upon once
+     */
+    void check() {
+        long now = System.nanoTime();
+        for (Map.Entry<Handle, WatchedUnitOfWork> entry : watched.entrySet()) {
+            WatchedUnitOfWork unitOfWork = entry.getValue();
+            if (unitOfWork.rollbackOnly) {
+                continue;
+            }
+            long beganAt = unitOfWork.beganAt;
+            if (beganAt == NOT_BEGUN) {
+                if (isInTransaction(entry.getKey())) {
+                    unitOfWork.began(now);
+                }
+            } else if (now - beganAt > budgetNanos) {
+                exceeded(entry.getKey(), unitOfWork, now - beganAt);
+            }
+        }
+    }
+
+    private void ended(Handle handle) {
+        WatchedUnitOfWork unitOfWork = watched.get(handle);
+        if (unitOfWork != null) {
+            unitOfWork.beganAt = NOT_BEGUN;
+        }
+    }
+
+    private boolean isInTransaction(Handle handle) {
+        try {
+            return handle.isInTransaction();
+        } catch (RuntimeException ex) {
+            log.debug("Unable to tell whether handle [{}] is in a transaction", handle.hashCode(), ex);
+            return false;
+        }
+    }
+
+    private void exceeded(Handle handle, WatchedUnitOfWork unitOfWork, long elapsed) {
+        unitOfWork.rollbackOnly = true;
+        exceeded.inc();
+        Statement statement = unitOfWork.inFlight;
+        log.warn("Unit of work of thread [{}] kept the transaction of handle [{}] open for [{}] ms, over its budget of [{}] ms. Marked rollback only, cancelling [{}]",
+                unitOfWork.threadName, handle.hashCode(), TimeUnit.NANOSECONDS.toMillis(elapsed),
+                TimeUnit.NANOSECONDS.toMillis(budgetNanos), statement == null ? "no statement" : unitOfWork.inFlightSql);
+        if (statement == null) {
+            return;
+        }
+        try {
+            statement.cancel();
+        } catch (SQLException ex) {
+            log.warn("Unable to cancel the statement of handle [{}]", handle.hashCode(), ex);
+        }
+    }
+
+    private <T> T opening(Supplier<T> call) {
+        if (peek() != null) {
+            return call.get();
+        }
+        T result = call.get();
+        Handle handle = peek();
+        if (handle != null && !watched.containsKey(handle)) {
+            WatchedUnitOfWork unitOfWork = new WatchedUnitOfWork(Thread.currentThread().getName());
+            if (watched.putIfAbsent(handle, unitOfWork) == null) {
+                ForwardingStatementBuilder.wrap(handle, statementBuilder -> new WatchedStatementBuilder(statementBuilder, unitOfWork));
+            }
+        }
+        return result;
+    }
+
+    private static final class WatchedUnitOfWork {
+
+        private final String threadName;
+        private volatile long beganAt = NOT_BEGUN;
+        private volatile boolean rollbackOnly;
+        private volatile Statement inFlight;
+        private volatile String inFlightSql;
+
+        WatchedUnitOfWork(String threadName) {
+            this.threadName = threadName;
+        }
+
+        synchronized void began(long now) {
+            if (beganAt == NOT_BEGUN) {
+                beganAt = now;
+            }
+        }
+    }
+
+    /**
+     * Records the statement a unit of work is running so that it can be cancelled, and refuses
+     * to create any once the unit of work is marked rollback only
+     */
+    private static final class WatchedStatementBuilder extends ForwardingStatementBuilder {
+
+        private final WatchedUnitOfWork unitOfWork;
+
+        WatchedStatementBuilder(StatementBuilder delegate, WatchedUnitOfWork unitOfWork) {
+            super(delegate);
+            this.unitOfWork = unitOfWork;
+        }
+
+        @Override
+        public PreparedStatement create(Connection conn, String sql, StatementContext ctx) throws SQLException {
+            checkNotRollbackOnly(conn);
+            return inFlight(super.create(conn, sql, ctx), sql);
+        }
+
+        @Override
+        public CallableStatement createCall(Connection conn, String sql, StatementContext ctx) throws SQLException {
+            checkNotRollbackOnly(conn);
+            return inFlight(super.createCall(conn, sql, ctx), sql);
+        }
+
+        @Override
+        public void close(Connection conn, String sql, Statement stmt) throws SQLException {
+            if (unitOfWork.inFlight == stmt) {
+                unitOfWork.inFlight = null;
+            }
+            super.close(conn, sql, stmt);
+        }
+
+        private <S extends Statement> S inFlight(S statement, String sql) {
+            unitOfWork.inFlightSql = sql;
+            unitOfWork.inFlight = statement;
+            return statement;
+        }
+
+        private void checkNotRollbackOnly(Connection conn) throws SQLException {
+            if (unitOfWork.rollbackOnly) {
+                throw new SQLException("The unit of work exceeded its budget and was marked rollback only");
+            }
+            if (unitOfWork.beganAt == NOT_BEGUN && !conn.getAutoCommit()) {
+                unitOfWork.began(System.nanoTime());
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.skife.jdbi.v2.Handle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link JdbiHandleManager} decorator which buffers the invocations of {@link BatchableUpdate}
+ * methods made within a transaction, and runs them as JDBC batches instead of making a round
+ * trip for each of them.
+ * <br><br>
+ * Buffered invocations are run, in the order they were made, once
+ * <ul>
+ * <li>as many invocations as the batch size have been buffered for the handle</li>
+ * <li>any other SQL object method is invoked on the handle, such as a query which must see them</li>
+ * <li>the transaction is about to be committed, see {@link #flushBufferedStatements(Handle)}</li>
+ * </ul>
+ * Consecutive invocations of the same method are run as one batch. The buffer of a handle is
+ * dropped when its transaction is rolled back or the handle is closed, so the statements of a
+ * transaction still commit or roll back together. Invocations made outside of a transaction are
+ * run right away, as they would otherwise commit on their own at an unknown time.
+ * <br><br>
+ * The decorator never opens a handle on its own. The first invocation of a deferred transaction
+ * therefore opens the handle and runs right away, while the next ones are buffered.
+ *
+ * @implNote Statements run directly through the {@link Handle} rather than through SQL objects
+ * do not flush the buffer, and may therefore run before invocations made earlier.
+ */
+final class WriteBehindJdbiHandleManager extends ForwardingJdbiHandleManager implements SqlObjectInterceptor {
+
+    private final Logger log = LoggerFactory.getLogger(WriteBehindJdbiHandleManager.class);
+    private final int batchSize;
+    private final Map<Method, Optional<BatchableUpdate>> batchableUpdates = new ConcurrentHashMap<>();
+    private final Map<Handle, List<BufferedInvocation>> buffers = new ConcurrentHashMap<>();
+
+    WriteBehindJdbiHandleManager(JdbiHandleManager delegate, int batchSize) {
+        super(delegate);
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public Object intercept(SqlObjectInvocation invocation) throws Throwable {
+        Handle handle = peek();
+        if (handle == null) {
+            return invocation.proceed();
+        }
+        BatchableUpdate update = batchableUpdates
+                .computeIfAbsent(invocation.getMethod(), method -> Optional.ofNullable(BatchableUpdate.of(method)))
+                .orElse(null);
+        if (update != null && handle.isInTransaction()) {
+            buffer(handle, new BufferedInvocation(update, invocation.getArguments()));
+            return null;
+        }
+        List<BufferedInvocation> buffer = buffers.get(handle);
+        if (buffer != null) {
+            flush(handle, buffer);
+        }
+        return invocation.proceed();
+    }
+
+    @Override
+    public void flushBufferedStatements(Handle handle) {
+        List<BufferedInvocation> buffer = buffers.remove(handle);
+        if (buffer != null) {
+            flush(handle, buffer);
+        }
+        super.flushBufferedStatements(handle);
+    }
+
+    @Override
+    public void discardBufferedStatements(Handle handle) {
+        List<BufferedInvocation> buffer = buffers.remove(handle);
+        if (buffer != null) {
+            log.debug("Discarded [{}] buffered statements of handle [{}]", buffer.size(), handle.hashCode());
+        }
+        super.discardBufferedStatements(handle);
+    }
+
+    @Override
+    public void closing(Handle handle) {
+        List<BufferedInvocation> buffer = buffers.remove(handle);
+        if (buffer != null && !buffer.isEmpty()) {
+            log.warn("Discarded [{}] buffered statements of handle [{}] closed without committing them", buffer.size(), handle.hashCode());
+        }
+        super.closing(handle);
+    }
+
+    private void buffer(Handle handle, BufferedInvocation invocation) {
+        List<BufferedInvocation> buffer = buffers.computeIfAbsent(handle, h -> new ArrayList<>());
+        synchronized (buffer) {
+            buffer.add(invocation);
+            if (buffer.size() >= batchSize) {
+                flush(handle, buffer);
+            }
+        }
+    }
+
+    private void flush(Handle handle, List<BufferedInvocation> buffer) {
+        synchronized (buffer) {
+            try {
+                int start = 0;
+                while (start < buffer.size()) {
+                    BatchableUpdate update = buffer.get(start).update;
+                    List<Object[]> arguments = new ArrayList<>();
+                    int end = start;
+                    while (end < buffer.size() && buffer.get(end).update == update) {
+                        arguments.add(buffer.get(end).args);
+                        end++;
+                    }
+                    update.execute(handle, arguments);
+                    log.debug("Flushed [{}] buffered invocations of [{}] on handle [{}]", arguments.size(), update, handle.hashCode());
+                    start = end;
+                }
+            } finally {
+                buffer.clear();
+            }
+        }
+    }
+
+    private static final class BufferedInvocation {
+
+        private final BatchableUpdate update;
+        private final Object[] args;
+
+        BufferedInvocation(BatchableUpdate update, Object[] args) {
+            this.update = update;
+            this.args = args;
+        }
+    }
+}
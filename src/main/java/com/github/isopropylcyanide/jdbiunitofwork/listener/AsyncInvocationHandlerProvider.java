@@ -0,0 +1,339 @@
+package com.github.isopropylcyanide.jdbiunitofwork.listener;
+
+import com.github.isopropylcyanide.jdbiunitofwork.core.DetachedScope;
+import org.glassfish.jersey.server.model.Invocable;
+import org.glassfish.jersey.server.spi.internal.ResourceMethodInvocationHandlerProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.ws.rs.GET;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.container.TimeoutHandler;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Provides Jersey with the invocation handler of every asynchronous resource method, i.e. one
+ * returning a {@link CompletionStage} or taking a {@link Suspended} {@link AsyncResponse}. The unit
+ * of work of such a method outlives the request thread, which returns as soon as the method has
+ * handed its work over to another executor. The handler therefore
+ * <ul>
+ * <li>begins the transaction of the method, if it is annotated with
+ * {@link com.github.isopropylcyanide.jdbiunitofwork.JdbiUnitOfWork}, before invoking it</li>
+ * <li>detaches the unit of work from the request thread once the method returns, see
+ * {@link JdbiTransactionAspect#detachScope()}</li>
+ * <li>commits the transaction when the returned stage completes or the response is resumed, or
+ * rolls it back if either fails or the response is cancelled, on the thread completing it</li>
+ * <li>completes the stage, or resumes the response, only then, so that a failed commit is
+ * reported to the client rather than a success</li>
+ * </ul>
+ * A unit of work completed before the method returns is completed on the request thread. A response
+ * completed without going through the handler, such as one which timed out, is rolled back once
+ * the request is over. The resource methods handled are recorded in the {@link UnitOfWorkPolicies}
+ * so that the request listeners leave their transaction alone.
+ *
+ * @implNote The handle of the unit of work is only visible to the other threads which are handed
+ * the unit of work, such as through the {@code propagating} executors of a linked handle manager.
+ * A handle manager which cannot detach its scope, such as one binding the handle through a
+ * {@code ScopedValue}, completes the unit of work when the method returns, as for synchronous
+ * methods. Returning a {@link CompletionStage} requires a Jersey version supporting it.
+ * Asynchronous resource methods are never retried.
+ */
+final class AsyncInvocationHandlerProvider implements ResourceMethodInvocationHandlerProvider {
+
+    private static final Consumer<Throwable> IGNORED = failure -> {
+    };
+
+    private final Logger log = LoggerFactory.getLogger(AsyncInvocationHandlerProvider.class);
+    private final JdbiTransactionAspect transactionAspect;
+    private final UnitOfWorkPolicies policies;
+
+    AsyncInvocationHandlerProvider(JdbiTransactionAspect transactionAspect, UnitOfWorkPolicies policies) {
+        this.transactionAspect = transactionAspect;
+        this.policies = policies;
+    }
+
+    static boolean isAsync(Method method) {
+        return CompletionStage.class.isAssignableFrom(method.getReturnType()) || suspendedParameter(method) >= 0;
+    }
+
+    @Override
+    @Nullable
+    public InvocationHandler create(Invocable invocable) {
+        Method definitionMethod = invocable.getDefinitionMethod();
+        if (!isAsync(definitionMethod)) {
+            return null;
+        }
+        boolean get = definitionMethod.isAnnotationPresent(GET.class);
+        UnitOfWorkPolicy policy = get ? UnitOfWorkPolicy.NON_TRANSACTIONAL : UnitOfWorkPolicy.of(definitionMethod);
+        if (!get) {
+            policies.handleOnInvocation(definitionMethod);
+        }
+        int suspendedParameter = suspendedParameter(definitionMethod);
+        log.debug("Completing the unit of work of [{}.{}] asynchronously", definitionMethod.getDeclaringClass().getSimpleName(), definitionMethod.getName());
+        return (resource, method, args) -> invoke(policy, suspendedParameter, resource, method, args);
+    }
+
+    private Object invoke(UnitOfWorkPolicy policy, int suspendedParameter, Object resource, Method method, Object[] args) throws Throwable {
+        AsyncUnitOfWork unitOfWork = new AsyncUnitOfWork(policy);
+        if (policy.isTransactional()) {
+            transactionAspect.begin(policy);
+        }
+        Object result;
+        try {
+            if (suspendedParameter >= 0) {
+                args = args.clone();
+                args[suspendedParameter] = new UnitOfWorkAsyncResponse((AsyncResponse) args[suspendedParameter], unitOfWork);
+            }
+            result = method.invoke(resource, args);
+            if (result instanceof CompletionStage) {
+                result = completing((CompletionStage<?>) result, unitOfWork);
+            }
+        } catch (Throwable ex) {
+            unitOfWork.complete(ex, IGNORED);
+            unitOfWork.detach();
+            throw ex;
+        }
+        if (result == null && suspendedParameter < 0) {
+            unitOfWork.complete(null, IGNORED);
+        }
+        unitOfWork.detach();
+        return result;
+    }
+
+    private static CompletionStage<Object> completing(CompletionStage<?> stage, AsyncUnitOfWork unitOfWork) {
+        CompletableFuture<Object> completion = new CompletableFuture<>();
+        stage.whenComplete((value, stageFailure) -> unitOfWork.complete(stageFailure, failure -> {
+            if (failure == null) {
+                completion.complete(value);
+            } else {
+                completion.completeExceptionally(failure);
+            }
+        }));
+        return completion;
+    }
+
+    private static int suspendedParameter(Method method) {
+        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        for (int i = 0; i < parameterAnnotations.length; i++) {
+            for (Annotation annotation : parameterAnnotations[i]) {
+                if (annotation instanceof Suspended && method.getParameterTypes()[i] == AsyncResponse.class) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The unit of work of a single invocation. It is completed at most once, either on the request
+     * thread while it is still bound to it, or within its detached scope on the thread completing
+     * it. A completion requested by another thread before the request thread detached the unit of
+     * work is left to the request thread, which runs it once the method returns.
+     */
+    private final class AsyncUnitOfWork {
+
+        private final UnitOfWorkPolicy policy;
+        private final Thread requestThread = Thread.currentThread();
+        private boolean bound = true;
+        private boolean completed;
+        private DetachedScope detached;
+        private Runnable pendingCompletion;
+
+        AsyncUnitOfWork(UnitOfWorkPolicy policy) {
+            this.policy = policy;
+        }
+
+        /**
+         * Commits the unit of work, or rolls it back if it failed, then hands the outcome over
+         *
+         * @param failure the failure of the unit of work, {@code null} if it succeeded
+         * @param then    accepts the failure of the unit of work, or that of its commit, and
+         *                {@code null} if it was committed
+         */
+        void complete(@Nullable Throwable failure, Consumer<Throwable> then) {
+            boolean completedBefore;
+            DetachedScope scope;
+            synchronized (this) {
+                completedBefore = completed;
+                completed = true;
+                if (!completedBefore && bound && Thread.currentThread() != requestThread) {
+                    pendingCompletion = () -> then.accept(end(failure));
+                    return;
+                }
+                scope = detached;
+            }
+            if (completedBefore) {
+                then.accept(failure);
+                return;
+            }
+            if (scope == null) {
+                then.accept(end(failure));
+                return;
+            }
+            Throwable[] outcome = new Throwable[1];
+            scope.run(() -> outcome[0] = end(failure));
+            then.accept(outcome[0]);
+        }
+
+        /**
+         * Detaches the unit of work from the request thread once the method returned, unless it was
+         * completed meanwhile, in which case a completion left to the request thread is run
+         */
+        void detach() {
+            Runnable completion;
+            synchronized (this) {
+                completion = pendingCompletion;
+                pendingCompletion = null;
+                if (!completed) {
+                    detached = transactionAspect.detachScope();
+                    if (detached == null) {
+                        log.debug("Unit of work of [{}] cannot be detached from the request thread by its handle manager. Completing it as the method returns", policy.getName());
+                        completed = true;
+                        completion = () -> end(null);
+                    }
+                }
+                bound = false;
+            }
+            if (completion != null) {
+                completion.run();
+            }
+        }
+
+        /**
+         * Rolls back a failed transaction, which terminates its handle, or commits it and then
+         * terminates its handle
+         */
+        @Nullable
+        private Throwable end(@Nullable Throwable failure) {
+            if (policy.isTransactional() && failure != null) {
+                try {
+                    transactionAspect.rollback(policy);
+                } catch (RuntimeException ex) {
+                    failure.addSuppressed(ex);
+                }
+                return failure;
+            }
+            try {
+                if (policy.isTransactional()) {
+                    transactionAspect.commit(policy);
+                }
+                return failure;
+            } catch (RuntimeException ex) {
+                return ex;
+            } finally {
+                transactionAspect.terminateHandle();
+            }
+        }
+    }
+
+    /**
+     * Completes the unit of work before the response it wraps is resumed or cancelled. A response
+     * completed without it is rolled back once the request is over
+     */
+    private static final class UnitOfWorkAsyncResponse implements AsyncResponse {
+
+        private final AsyncResponse delegate;
+        private final AsyncUnitOfWork unitOfWork;
+
+        UnitOfWorkAsyncResponse(AsyncResponse delegate, AsyncUnitOfWork unitOfWork) {
+            this.delegate = delegate;
+            this.unitOfWork = unitOfWork;
+            delegate.register((CompletionCallback) throwable -> unitOfWork.complete(
+                    throwable == null ? new CancellationException("Response completed without resuming the unit of work") : throwable, IGNORED));
+        }
+
+        @Override
+        public boolean resume(Object response) {
+            boolean[] resumed = {true};
+            unitOfWork.complete(null, failure -> resumed[0] = failure == null ? delegate.resume(response) : delegate.resume(failure));
+            return resumed[0];
+        }
+
+        @Override
+        public boolean resume(Throwable response) {
+            boolean[] resumed = {true};
+            unitOfWork.complete(response, failure -> resumed[0] = delegate.resume(failure));
+            return resumed[0];
+        }
+
+        @Override
+        public boolean cancel() {
+            return cancel(delegate::cancel);
+        }
+
+        @Override
+        public boolean cancel(int retryAfter) {
+            return cancel(() -> delegate.cancel(retryAfter));
+        }
+
+        @Override
+        public boolean cancel(Date retryAfter) {
+            return cancel(() -> delegate.cancel(retryAfter));
+        }
+
+        @Override
+        public boolean isSuspended() {
+            return delegate.isSuspended();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return delegate.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return delegate.isDone();
+        }
+
+        @Override
+        public boolean setTimeout(long time, TimeUnit unit) {
+            return delegate.setTimeout(time, unit);
+        }
+
+        @Override
+        public void setTimeoutHandler(TimeoutHandler handler) {
+            delegate.setTimeoutHandler(asyncResponse -> handler.handleTimeout(this));
+        }
+
+        @Override
+        public Collection<Class<?>> register(Class<?> callback) {
+            return delegate.register(callback);
+        }
+
+        @Override
+        public Map<Class<?>, Collection<Class<?>>> register(Class<?> callback, Class<?>... callbacks) {
+            return delegate.register(callback, callbacks);
+        }
+
+        @Override
+        public Collection<Class<?>> register(Object callback) {
+            return delegate.register(callback);
+        }
+
+        @Override
+        public Map<Class<?>, Collection<Class<?>>> register(Object callback, Object... callbacks) {
+            return delegate.register(callback, callbacks);
+        }
+
+        private boolean cancel(BooleanSupplier cancel) {
+            boolean[] cancelled = {true};
+            unitOfWork.complete(new CancellationException("Response cancelled"), failure -> cancelled[0] = cancel.getAsBoolean());
+            return cancelled[0];
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.github.isopropylcyanide.jdbiunitofwork.listener;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+
+/**
+ * A matcher compiled once from the set of excluded paths, which decides whether a request path
+ * is excluded without allocating and in time proportional to the length of the path rather
+ * than to the number of excluded entries.
+ * <br><br>
+ * Paths are matched as told by {@link javax.ws.rs.core.UriInfo#getPath()}, relative to the base
+ * URI of the application and so without a leading slash. Every entry may be qualified by one of
+ * the following kinds
+ * <ul>
+ * <li>{@code exact:healthcheck} matches the path {@code healthcheck} only</li>
+ * <li>{@code prefix:admin/} matches every path starting with {@code admin/}</li>
+ * <li>{@code glob:api/*}{@code /ping} matches paths against a glob where {@code ?} matches a
+ * single character, {@code *} matches any characters within a path segment and {@code **} matches
+ * any characters across path segments</li>
+ * </ul>
+ * A leading slash of a qualified entry is ignored, so that {@code exact:/healthcheck} matches the
+ * path {@code healthcheck} as well. Unqualified entries match every path that contains them, which
+ * is how excluded paths have always been matched.
+ *
+ * @implNote Exact, prefix and glob entries share a trie keyed by their literal prefix, so that
+ * only the globs whose literal prefix matches the path are ever evaluated. Unqualified entries
+ * are compiled into an Aho-Corasick automaton, which finds any of them in a single pass over
+ * the path. The wildcards of a glob are matched by simulating every position of the glob at once,
+ * in time proportional to the length of the path times that of the glob, whatever the number of
+ * wildcards.
+ */
+final class ExcludedPathMatcher {
+
+    static final String EXACT = "exact:";
+    static final String PREFIX = "prefix:";
+    static final String GLOB = "glob:";
+
+    private final Node trie = new Node();
+    private final Node automaton = new Node();
+
+    private ExcludedPathMatcher() {
+    }
+
+    static ExcludedPathMatcher compile(Collection<String> excludedPaths) {
+        ExcludedPathMatcher matcher = new ExcludedPathMatcher();
+        for (String excludedPath : excludedPaths) {
+            if (excludedPath.startsWith(EXACT)) {
+                matcher.trie.insert(excludedPath, relative(excludedPath, EXACT), excludedPath.length()).exact = true;
+
+            } else if (excludedPath.startsWith(PREFIX)) {
+                matcher.trie.insert(excludedPath, relative(excludedPath, PREFIX), excludedPath.length()).prefix = true;
+
+            } else if (excludedPath.startsWith(GLOB)) {
+                String glob = excludedPath.substring(relative(excludedPath, GLOB));
+                int literalPrefixLength = literalPrefixLength(glob);
+                matcher.trie.insert(glob, 0, literalPrefixLength).addGlob(new Glob(glob, literalPrefixLength));
+
+            } else {
+                matcher.automaton.insert(excludedPath, 0, excludedPath.length()).prefix = true;
+            }
+        }
+        matcher.automaton.linkFailures();
+        return matcher;
+    }
+
+    boolean matches(String path) {
+        return matchesTrie(path) || matchesAutomaton(path);
+    }
+
+    private boolean matchesTrie(String path) {
+        Node node = trie;
+        for (int i = 0; ; i++) {
+            if (node.prefix || (i == path.length() && node.exact) || node.matchesGlob(path, i)) {
+                return true;
+            }
+            if (i == path.length() || (node = node.child(path.charAt(i))) == null) {
+                return false;
+            }
+        }
+    }
+
+    private boolean matchesAutomaton(String path) {
+        Node node = automaton;
+        if (node.prefix) {
+            return true;
+        }
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            Node next;
+            while ((next = node.child(c)) == null && node != automaton) {
+                node = node.failure;
+            }
+            node = next == null ? automaton : next;
+            if (node.prefix) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int relative(String excludedPath, String kind) {
+        int from = kind.length();
+        return excludedPath.startsWith("/", from) ? from + 1 : from;
+    }
+
+    private static int literalPrefixLength(String glob) {
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                return i;
+            }
+        }
+        return glob.length();
+    }
+
+    /**
+     * The wildcards of a glob, following its literal prefix. Every position of the glob is a bit
+     * of a {@code long}, set while the characters of the path read so far can have led to it, so
+     * that matching a path allocates nothing and never backtracks.
+     */
+    private static final class Glob {
+
+        private static final char ANY = 0;
+        private static final char STAR = 1;
+        private static final char DOUBLE_STAR = 2;
+        private static final char LITERAL = 3;
+
+        private final char[] kinds;
+        private final char[] literals;
+
+        Glob(String glob, int from) {
+            int length = 0;
+            char[] kinds = new char[glob.length() - from];
+            char[] literals = new char[glob.length() - from];
+            for (int i = from; i < glob.length(); i++, length++) {
+                char c = glob.charAt(i);
+                if (c == '*') {
+                    boolean acrossSegments = i + 1 < glob.length() && glob.charAt(i + 1) == '*';
+                    kinds[length] = acrossSegments ? DOUBLE_STAR : STAR;
+                    i += acrossSegments ? 1 : 0;
+                } else {
+                    kinds[length] = c == '?' ? ANY : LITERAL;
+                    literals[length] = c;
+                }
+            }
+            if (length >= Long.SIZE) {
+                throw new IllegalArgumentException("Glob [" + glob + "] has more than " + (Long.SIZE - 1) + " characters past its literal prefix");
+            }
+            this.kinds = Arrays.copyOf(kinds, length);
+            this.literals = Arrays.copyOf(literals, length);
+        }
+
+        boolean matches(String path, int offset) {
+            long positions = closure(1L);
+            for (int p = offset; p < path.length() && positions != 0; p++) {
+                char c = path.charAt(p);
+                long next = 0;
+                for (int g = 0; g < kinds.length; g++) {
+                    if ((positions & (1L << g)) == 0) {
+                        continue;
+                    }
+                    switch (kinds[g]) {
+                        case LITERAL:
+                            next |= c == literals[g] ? 1L << (g + 1) : 0;
+                            break;
+                        case ANY:
+                            next |= c != '/' ? 1L << (g + 1) : 0;
+                            break;
+                        case STAR:
+                            next |= c != '/' ? 1L << g : 0;
+                            break;
+                        default:
+                            next |= 1L << g;
+                    }
+                }
+                positions = closure(next);
+            }
+            return (positions & (1L << kinds.length)) != 0;
+        }
+
+        /**
+         * @return the positions along with those reached by a wildcard matching nothing
+         */
+        private long closure(long positions) {
+            for (int g = 0; g < kinds.length; g++) {
+                if ((positions & (1L << g)) != 0 && (kinds[g] == STAR || kinds[g] == DOUBLE_STAR)) {
+                    positions |= 1L << (g + 1);
+                }
+            }
+            return positions;
+        }
+    }
+
+    /**
+     * A node shared by the trie and the automaton. Children are kept in arrays sorted by their
+     * label so that looking one up is a binary search without boxing the character.
+     * In the automaton, {@link #prefix} marks a node at which some entry ends, either itself
+     * or through its failure links.
+     */
+    private static final class Node {
+
+        private char[] labels = new char[0];
+        private Node[] children = new Node[0];
+        private Glob[] globs = new Glob[0];
+        private Node failure;
+        private boolean exact;
+        private boolean prefix;
+
+        private Node child(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            return index < 0 ? null : children[index];
+        }
+
+        private Node insert(String key, int from, int to) {
+            Node node = this;
+            for (int i = from; i < to; i++) {
+                node = node.childOrCreate(key.charAt(i));
+            }
+            return node;
+        }
+
+        private Node childOrCreate(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insertAt = -index - 1;
+            Node child = new Node();
+
+            char[] newLabels = new char[labels.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, insertAt);
+            System.arraycopy(labels, insertAt, newLabels, insertAt + 1, labels.length - insertAt);
+            newLabels[insertAt] = label;
+
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            newChildren[insertAt] = child;
+
+            this.labels = newLabels;
+            this.children = newChildren;
+            return child;
+        }
+
+        private void addGlob(Glob glob) {
+            globs = Arrays.copyOf(globs, globs.length + 1);
+            globs[globs.length - 1] = glob;
+        }
+
+        private boolean matchesGlob(String path, int offset) {
+            for (Glob glob : globs) {
+                if (glob.matches(path, offset)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void linkFailures() {
+            Deque<Node> queue = new ArrayDeque<>();
+            for (Node child : children) {
+                child.failure = this;
+                queue.add(child);
+            }
+            while (!queue.isEmpty()) {
+                Node node = queue.poll();
+                for (int i = 0; i < node.labels.length; i++) {
+                    Node child = node.children[i];
+                    Node fallback = node.failure;
+                    Node target;
+                    while ((target = fallback.child(node.labels[i])) == null && fallback != this) {
+                        fallback = fallback.failure;
+                    }
+                    child.failure = target == null ? this : target;
+                    child.prefix |= child.failure.prefix;
+                    queue.add(child);
+                }
+            }
+        }
+    }
+}
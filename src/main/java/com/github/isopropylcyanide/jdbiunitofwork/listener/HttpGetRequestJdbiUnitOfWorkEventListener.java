@@ -12,15 +12,28 @@ import org.slf4j.LoggerFactory;
  * upon successful start and end of request marked by Jersey request monitoring events
  * {@code RESOURCE_METHOD_START} and {@code FINISHED} respectively
  * <br><br>
+ * The handle manager is told of the request entering its scope upon {@code MATCHING_START}, before
+ * any resource code gets to open a handle. As the request is not served in a transaction, the scope
+ * is also marked read only then. This lets the
+ * handle manager route the request to a read replica, if it has any.
+ * <br><br>
+ * The listener holds no per request state and a single instance is shared by all requests.
+ * <br><br>
  * For creating a transaction context, see {@link NonHttpGetRequestJdbiUnitOfWorkEventListener}
  */
 class HttpGetRequestJdbiUnitOfWorkEventListener implements RequestEventListener {
 
     private final Logger log = LoggerFactory.getLogger(HttpGetRequestJdbiUnitOfWorkEventListener.class);
+    private final JdbiHandleManager handleManager;
     private final JdbiTransactionAspect transactionAspect;
 
     HttpGetRequestJdbiUnitOfWorkEventListener(JdbiHandleManager handleManager) {
-        this.transactionAspect = new JdbiTransactionAspect(handleManager);
+        this(handleManager, new JdbiTransactionAspect(handleManager));
+    }
+
+    HttpGetRequestJdbiUnitOfWorkEventListener(JdbiHandleManager handleManager, JdbiTransactionAspect transactionAspect) {
+        this.handleManager = handleManager;
+        this.transactionAspect = transactionAspect;
     }
 
     @Override
@@ -28,7 +41,11 @@ class HttpGetRequestJdbiUnitOfWorkEventListener implements RequestEventListener
         RequestEvent.Type type = event.getType();
         log.debug("Handling GET Request Event {} {}", type, Thread.currentThread().getId());
 
-        if (type == RequestEvent.Type.FINISHED) {
+        if (type == RequestEvent.Type.MATCHING_START) {
+            handleManager.enterScope();
+            handleManager.markReadOnly();
+
+        } else if (type == RequestEvent.Type.FINISHED) {
             transactionAspect.terminateHandle();
         }
     }
@@ -0,0 +1,139 @@
+package com.github.isopropylcyanide.jdbiunitofwork.listener;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.isopropylcyanide.jdbiunitofwork.core.DetachedScope;
+import com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link JdbiTransactionAspect} recording the transactions of every resource method in a
+ * {@link MetricRegistry}. The timers are named after {@link JdbiTransactionAspect} and the
+ * {@link UnitOfWorkPolicy#getName() name} of the resource method, e.g.
+ * {@code ...listener.JdbiTransactionAspect.AppResource.create.commit}
+ * <ul>
+ * <li>{@code transaction}: the duration of transactions, from begin until commit or rollback</li>
+ * <li>{@code commit}: the count and latency of commits</li>
+ * <li>{@code rollback}: the count and latency of rollbacks</li>
+ * </ul>
+ * The handles themselves are recorded by wrapping the handle manager of the provider, see
+ * {@link com.github.isopropylcyanide.jdbiunitofwork.core.JdbiUnitOfWorkProvider#instrumented(MetricRegistry)}
+ *
+ * @implNote A transaction is timed from the thread beginning it until the same thread commits or
+ * rolls it back, which is how Jersey reports the request events of synchronous resource methods.
+ * The start of the transaction of an asynchronous resource method is detached along with its unit
+ * of work, so that it is timed until the thread completing it commits or rolls it back.
+ */
+public class InstrumentedJdbiTransactionAspect extends JdbiTransactionAspect {
+
+    private final MetricRegistry metricRegistry;
+    private final Map<String, TransactionTimers> timers = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("ThreadLocalUsage")
+    private final ThreadLocal<Long> beganAt = new ThreadLocal<>();
+
+    public InstrumentedJdbiTransactionAspect(JdbiHandleManager handleManager, MetricRegistry metricRegistry) {
+        super(handleManager);
+        this.metricRegistry = metricRegistry;
+    }
+
+    @Override
+    public void begin(UnitOfWorkPolicy policy) {
+        beganAt.set(System.nanoTime());
+        try {
+            super.begin(policy);
+        } catch (RuntimeException ex) {
+            beganAt.remove();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void commit(UnitOfWorkPolicy policy) {
+        TransactionTimers transactionTimers = getTimers(policy);
+        long start = System.nanoTime();
+        try {
+            super.commit(policy);
+        } finally {
+            long end = System.nanoTime();
+            transactionTimers.commit.update(end - start, TimeUnit.NANOSECONDS);
+            completed(transactionTimers, end);
+        }
+    }
+
+    @Override
+    public void rollback(UnitOfWorkPolicy policy) {
+        TransactionTimers transactionTimers = getTimers(policy);
+        long start = System.nanoTime();
+        try {
+            super.rollback(policy);
+        } finally {
+            long end = System.nanoTime();
+            transactionTimers.rollback.update(end - start, TimeUnit.NANOSECONDS);
+            completed(transactionTimers, end);
+        }
+    }
+
+    @Override
+    @Nullable
+    public DetachedScope detachScope() {
+        DetachedScope detached = super.detachScope();
+        if (detached == null) {
+            return null;
+        }
+        AtomicReference<Long> detachedBeganAt = new AtomicReference<>(beganAt.get());
+        beganAt.remove();
+        return task -> detached.run(() -> {
+            Long previous = beganAt.get();
+            set(detachedBeganAt.get());
+            try {
+                task.run();
+            } finally {
+                detachedBeganAt.set(beganAt.get());
+                set(previous);
+            }
+        });
+    }
+
+    private void set(@Nullable Long began) {
+        if (began == null) {
+            beganAt.remove();
+        } else {
+            beganAt.set(began);
+        }
+    }
+
+    private void completed(TransactionTimers transactionTimers, long end) {
+        Long began = beganAt.get();
+        if (began != null) {
+            beganAt.remove();
+            transactionTimers.transaction.update(end - began, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private TransactionTimers getTimers(UnitOfWorkPolicy policy) {
+        TransactionTimers transactionTimers = timers.get(policy.getName());
+        if (transactionTimers == null) {
+            transactionTimers = timers.computeIfAbsent(policy.getName(), TransactionTimers::new);
+        }
+        return transactionTimers;
+    }
+
+    private class TransactionTimers {
+
+        private final Timer transaction;
+        private final Timer commit;
+        private final Timer rollback;
+
+        TransactionTimers(String unitOfWork) {
+            this.transaction = metricRegistry.timer(MetricRegistry.name(JdbiTransactionAspect.class, unitOfWork, "transaction"));
+            this.commit = metricRegistry.timer(MetricRegistry.name(JdbiTransactionAspect.class, unitOfWork, "commit"));
+            this.rollback = metricRegistry.timer(MetricRegistry.name(JdbiTransactionAspect.class, unitOfWork, "rollback"));
+        }
+    }
+}
@@ -1,13 +1,39 @@
 package com.github.isopropylcyanide.jdbiunitofwork.listener;
 
+import com.github.isopropylcyanide.jdbiunitofwork.core.DetachedScope;
 import com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager;
 import org.skife.jdbi.v2.Handle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
 /**
  * An aspect providing low level operations around a {@link Handle}
  * This is inspired from Dropwizard's Unit of work aspect used to manage handles for hibernate.
+ * <br><br>
+ * If the {@link JdbiHandleManager} supports deferring the begin of a transaction, {@link #begin()}
+ * only marks the transaction as requested and the handle is opened and begun on first use. Commit
+ * and rollback are then no-ops if no handle was ever opened. Likewise, a handle manager sharing
+ * the handle with other threads may hold the commit until the last of them is done with it.
+ * The {@link JdbiHandleManager} may veto a commit, which then rolls back. Statements buffered by it
+ * are flushed right before a commit and discarded before a rollback, and it is told before any
+ * rollback and once a commit succeeded.
+ * <br><br>
+ * The aspect keeps no state of its own, as the handle of every request is scoped by the
+ * {@link JdbiHandleManager}. A single instance can therefore be shared by concurrent requests.
+ * The only exception are the {@link TransactionSettings} replaced on a handle by a policy, which
+ * are kept until its transaction commits or rolls back and are then restored.
+ * <br><br>
+ * The request listeners call the overloads taking the {@link UnitOfWorkPolicy} of the resource
+ * method being served, which subclasses such as {@link InstrumentedJdbiTransactionAspect} may
+ * override to act on it. The isolation level, read only mode and timeout of the policy are
+ * applied to the handle before the transaction begins, even if the begin is deferred. A read only
+ * policy is a hint given to the connection alone, the transaction still runs on the handle it was
+ * given, as a read replica may lag behind writes it must see.
  *
  * @see <a href="https://github.com/dropwizard/dropwizard/blob/master/dropwizard-hibernate/src/main/java/io/dropwizard/hibernate/UnitOfWorkAspect.java">
  * Unit Of Work Aspect</a>
@@ -16,54 +42,136 @@ public class JdbiTransactionAspect {
 
     private final Logger log = LoggerFactory.getLogger(JdbiTransactionAspect.class);
     private final JdbiHandleManager handleManager;
+    private final Map<Handle, TransactionSettings> transactionSettings = new ConcurrentHashMap<>();
 
     public JdbiTransactionAspect(JdbiHandleManager handleManager) {
         this.handleManager = handleManager;
     }
 
     public void begin() {
-        try {
-            Handle handle = handleManager.get();
-            handle.begin();
-            log.debug("Begin Transaction Thread Id [{}] has handle id [{}] Transaction {} Level {}", Thread.currentThread().getId(), handle.hashCode(), handle.isInTransaction(), handle.getTransactionIsolationLevel());
-
-        } catch (Exception ex) {
-            handleManager.clear();
-            throw ex;
-        }
+        beginWith(this::begin);
     }
 
     public void commit() {
+        if (handleManager.discardDeferredBegin()) {
+            log.debug("No handle was opened during the transaction for Thread Id [{}]. Nothing to commit", Thread.currentThread().getId());
+            return;
+        }
         Handle handle = handleManager.get();
         if (handle == null) {
             log.debug("Handle was found to be null during commit for Thread Id [{}]. It might have already been closed", Thread.currentThread().getId());
             return;
         }
-        try {
-            handle.commit();
-            log.debug("Performing commit Thread Id [{}] has handle id [{}] Transaction {} Level {}", Thread.currentThread().getId(), handle.hashCode(), handle.isInTransaction(), handle.getTransactionIsolationLevel());
-
-        } catch (Exception ex) {
-            handle.rollback();
-            throw ex;
-        }
+        commit(handle);
     }
 
     public void rollback() {
+        if (handleManager.discardDeferredBegin()) {
+            log.debug("No handle was opened during the transaction for Thread Id [{}]. Nothing to rollback", Thread.currentThread().getId());
+            terminateHandle();
+            return;
+        }
         Handle handle = handleManager.get();
         if (handle == null) {
             log.debug("Handle was found to be null during rollback for [{}]", Thread.currentThread().getId());
             return;
         }
         try {
+            handleManager.beforeRollback(handle);
+            handleManager.discardBufferedStatements(handle);
             handle.rollback();
             log.debug("Performed rollback on Thread Id [{}] has handle id [{}] Transaction {} Level {}", Thread.currentThread().getId(), handle.hashCode(), handle.isInTransaction(), handle.getTransactionIsolationLevel());
         } finally {
+            restoreSettings(handle);
             terminateHandle();
         }
     }
 
+    public void begin(UnitOfWorkPolicy policy) {
+        if (!policy.hasTransactionSettings()) {
+            begin();
+            return;
+        }
+        beginWith(handle -> begin(handle, policy));
+    }
+
+    public void commit(UnitOfWorkPolicy policy) {
+        commit();
+    }
+
+    public void rollback(UnitOfWorkPolicy policy) {
+        rollback();
+    }
+
+    public void enterScope() {
+        handleManager.enterScope();
+    }
+
+    /**
+     * Detaches the unit of work of the calling thread, so that it can be committed or rolled back
+     * from the thread completing an asynchronous resource method, see {@link DetachedScope}
+     *
+     * @return the detached unit of work, or {@code null} if the handle manager cannot detach it
+     */
+    @Nullable
+    public DetachedScope detachScope() {
+        return handleManager.detachScope();
+    }
+
     public void terminateHandle() {
         handleManager.clear();
     }
+
+    private void beginWith(Consumer<Handle> begin) {
+        if (handleManager.deferBegin(begin)) {
+            log.debug("Deferred begin of Transaction Thread Id [{}] until a handle is requested", Thread.currentThread().getId());
+            return;
+        }
+        try {
+            begin.accept(handleManager.get());
+        } catch (Exception ex) {
+            handleManager.clear();
+            throw ex;
+        }
+    }
+
+    private void commit(Handle handle) {
+        try {
+            handleManager.beforeCommit(handle);
+            handleManager.flushBufferedStatements(handle);
+            handle.commit();
+            log.debug("Performing commit Thread Id [{}] has handle id [{}] Transaction {} Level {}", Thread.currentThread().getId(), handle.hashCode(), handle.isInTransaction(), handle.getTransactionIsolationLevel());
+
+        } catch (Exception ex) {
+            handleManager.beforeRollback(handle);
+            handleManager.discardBufferedStatements(handle);
+            handle.rollback();
+            throw ex;
+        } finally {
+            restoreSettings(handle);
+        }
+        handleManager.afterCommit(handle);
+    }
+
+    private void begin(Handle handle, UnitOfWorkPolicy policy) {
+        transactionSettings.put(handle, TransactionSettings.apply(handle, policy));
+        try {
+            begin(handle);
+        } catch (RuntimeException ex) {
+            restoreSettings(handle);
+            throw ex;
+        }
+    }
+
+    private void restoreSettings(Handle handle) {
+        TransactionSettings settings = transactionSettings.remove(handle);
+        if (settings != null) {
+            settings.restore(handle);
+        }
+    }
+
+    private void begin(Handle handle) {
+        handle.begin();
+        log.debug("Begin Transaction Thread Id [{}] has handle id [{}] Transaction {} Level {}", Thread.currentThread().getId(), handle.hashCode(), handle.isInTransaction(), handle.getTransactionIsolationLevel());
+    }
 }
@@ -1,15 +1,19 @@
 package com.github.isopropylcyanide.jdbiunitofwork.listener;
 
+import com.codahale.metrics.MetricRegistry;
+import com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager;
 import com.github.isopropylcyanide.jdbiunitofwork.core.JdbiUnitOfWorkProvider;
 import org.glassfish.jersey.server.monitoring.ApplicationEvent;
 import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
 import org.glassfish.jersey.server.monitoring.RequestEvent;
 import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.glassfish.jersey.server.spi.internal.ResourceMethodInvocationHandlerProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import javax.ws.rs.HttpMethod;
+import java.lang.reflect.InvocationHandler;
 import java.util.Set;
 
 /**
@@ -22,37 +26,116 @@ import java.util.Set;
  * <br><br>
  * Non {@code HttpMethod.GET} requests are assumed to be in a transaction boundary and are routed
  * to {@link NonHttpGetRequestJdbiUnitOfWorkEventListener}
+ * <br><br>
+ * Once the application has finished initialising, the unit of work policy of every resource method
+ * in the resource model is resolved up front so that requests do not inspect annotations
+ * <br><br>
+ * The request listeners and the transaction aspect they share keep no per request state. They are
+ * created once along with this listener, so that serving a request allocates nothing for the unit
+ * of work bookkeeping
+ * <br><br>
+ * Resource methods declaring retries through {@code JdbiUnitOfWork#maxAttempts()} are retried, and
+ * asynchronous resource methods have their unit of work completed along with their response, by the
+ * {@link #getInvocationHandlerProvider() invocation handler provider}, which has to be registered with
+ * Jersey along with this listener
+ * <br><br>
+ * Handle managers which only provide handles within {@link JdbiHandleManager#runInScope(Runnable)},
+ * as told by {@link JdbiHandleManager#requiresScope()}, cannot have the unit of work of a request
+ * begun and ended from its events. The invocation handler provider then runs every resource method
+ * within a scope of its own, see {@link ScopingInvocationHandlerProvider}, and no request listener
+ * is established. It must be registered with Jersey for such handle managers to serve any request
  *
  * @implNote For requests that never not require a connection with the database, such as ELB health
  * checks or computate only use cases, opening and closing a handle is redundant and wasteful
- * Such request URIs should be added in the set of {@link #excludedPaths}
+ * Such request URIs should be added in the set of excluded paths, which is compiled once into an
+ * {@link ExcludedPathMatcher}. Entries can be qualified as {@code exact:}, {@code prefix:} or
+ * {@code glob:} and unqualified entries match any request path containing them
  */
 public class JdbiUnitOfWorkApplicationEventListener implements ApplicationEventListener {
 
     private final Logger log = LoggerFactory.getLogger(JdbiUnitOfWorkApplicationEventListener.class);
-    private final JdbiUnitOfWorkProvider unitOfWorkProvider;
-    private final Set<String> excludedPaths;
+    private final ExcludedPathMatcher excludedPathMatcher;
+    private final UnitOfWorkPolicies policies = new UnitOfWorkPolicies();
+    private final HttpGetRequestJdbiUnitOfWorkEventListener httpGetRequestListener;
+    private final NonHttpGetRequestJdbiUnitOfWorkEventListener nonHttpGetRequestListener;
+    private final ResourceMethodInvocationHandlerProvider invocationHandlerProvider;
+    private final boolean scoped;
 
     public JdbiUnitOfWorkApplicationEventListener(JdbiUnitOfWorkProvider unitOfWorkProvider, Set<String> excludedPaths) {
-        this.unitOfWorkProvider = unitOfWorkProvider;
-        this.excludedPaths = excludedPaths;
+        this(unitOfWorkProvider, excludedPaths, new JdbiTransactionAspect(unitOfWorkProvider.getHandleManager()));
+    }
+
+    /**
+     * Creates a listener whose transactions are recorded in the given registry for every resource
+     * method, see {@link InstrumentedJdbiTransactionAspect}
+     *
+     * @param unitOfWorkProvider the provider whose handle manager serves the requests
+     * @param excludedPaths      the request paths for which no handle is managed
+     * @param metricRegistry     the registry recording the transaction metrics
+     */
+    public JdbiUnitOfWorkApplicationEventListener(JdbiUnitOfWorkProvider unitOfWorkProvider, Set<String> excludedPaths,
+                                                  MetricRegistry metricRegistry) {
+        this(unitOfWorkProvider, excludedPaths, new InstrumentedJdbiTransactionAspect(unitOfWorkProvider.getHandleManager(), metricRegistry));
+    }
+
+    private JdbiUnitOfWorkApplicationEventListener(JdbiUnitOfWorkProvider unitOfWorkProvider, Set<String> excludedPaths,
+                                                   JdbiTransactionAspect transactionAspect) {
+        JdbiHandleManager handleManager = unitOfWorkProvider.getHandleManager();
+        this.excludedPathMatcher = ExcludedPathMatcher.compile(excludedPaths);
+        this.httpGetRequestListener = new HttpGetRequestJdbiUnitOfWorkEventListener(handleManager, transactionAspect);
+        this.nonHttpGetRequestListener = new NonHttpGetRequestJdbiUnitOfWorkEventListener(transactionAspect, policies);
+        AsyncInvocationHandlerProvider asyncProvider = new AsyncInvocationHandlerProvider(transactionAspect, policies);
+        RetryingInvocationHandlerProvider retryingProvider = new RetryingInvocationHandlerProvider(transactionAspect, policies);
+        ResourceMethodInvocationHandlerProvider provider = invocable -> {
+            InvocationHandler handler = asyncProvider.create(invocable);
+            return handler == null ? retryingProvider.create(invocable) : handler;
+        };
+        this.scoped = handleManager.requiresScope();
+        this.invocationHandlerProvider = scoped ? new ScopingInvocationHandlerProvider(handleManager, transactionAspect, provider) : provider;
+    }
+
+    /**
+     * Returns the provider of the invocation handlers retrying the units of work of resource methods
+     * which declare more than one attempt, and completing those of asynchronous resource methods
+     * when their response is resumed or their stage completes. It shares the transaction aspect of
+     * this listener and has to be bound by the application, e.g.
+     * <pre>{@code
+     * environment.jersey().register(new AbstractBinder() {
+     *     protected void configure() {
+     *         bind(listener.getInvocationHandlerProvider()).to(ResourceMethodInvocationHandlerProvider.class);
+     *     }
+     * });
+     * }</pre>
+     * Resource methods declaring retries are served in a single attempt as long as it is not bound,
+     * and asynchronous ones have their unit of work completed as soon as they return. When the handle
+     * manager {@link JdbiHandleManager#requiresScope() requires a scope}, it also runs every resource
+     * method within one, and no resource method is provided with a handle as long as it is not bound.
+     *
+     * @return the retrying invocation handler provider
+     */
+    public ResourceMethodInvocationHandlerProvider getInvocationHandlerProvider() {
+        return invocationHandlerProvider;
     }
 
     @Override
     public void onEvent(ApplicationEvent event) {
-        log.debug("Received Application event {}", event.getType());
+        ApplicationEvent.Type type = event.getType();
+        log.debug("Received Application event {}", type);
+
+        if (type == ApplicationEvent.Type.INITIALIZATION_FINISHED) {
+            policies.register(event.getResourceModel());
+        }
     }
 
     @Override
     @Nullable
     public RequestEventListener onRequest(RequestEvent event) {
-        String path = event.getUriInfo().getPath();
-        if (excludedPaths.stream().anyMatch(path::contains)) {
+        if (scoped || excludedPathMatcher.matches(event.getUriInfo().getPath())) {
             return null;
         }
         if (event.getContainerRequest().getMethod().equals(HttpMethod.GET)) {
-            return new HttpGetRequestJdbiUnitOfWorkEventListener(unitOfWorkProvider.getHandleManager());
+            return httpGetRequestListener;
         }
-        return new NonHttpGetRequestJdbiUnitOfWorkEventListener(unitOfWorkProvider.getHandleManager());
+        return nonHttpGetRequestListener;
     }
 }
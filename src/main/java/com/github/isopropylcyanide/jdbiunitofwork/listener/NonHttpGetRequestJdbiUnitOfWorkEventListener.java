@@ -2,7 +2,6 @@ package com.github.isopropylcyanide.jdbiunitofwork.listener;
 
 import com.github.isopropylcyanide.jdbiunitofwork.JdbiUnitOfWork;
 import com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager;
-import org.glassfish.jersey.server.model.ResourceMethod;
 import org.glassfish.jersey.server.monitoring.RequestEvent;
 import org.glassfish.jersey.server.monitoring.RequestEventListener;
 import org.slf4j.Logger;
@@ -13,18 +12,35 @@ import org.slf4j.LoggerFactory;
  * a transaction context if and only if the resource method is annotated with {@link JdbiUnitOfWork}
  * <br><br>
  * It is responsible for initialising and terminating handles as well as calling appropriate
- * transaction methods based on theJersey request monitoring events
+ * transaction methods based on theJersey request monitoring events {@code MATCHING_START},
  * {@code RESOURCE_METHOD_START}, {@code RESP_FILTERS_START}, {@code ON_EXCEPTION} and {@code FINISHED}
  * <br><br>
+ * Whether the matched resource method is transactional is looked up from the {@link UnitOfWorkPolicies}
+ * resolved when the application started. The transaction of a resource method retried by the
+ * {@link RetryingInvocationHandlerProvider}, or completed asynchronously through the
+ * {@link AsyncInvocationHandlerProvider}, is left to them, so the listener only terminates its handle
+ * <br><br>
+ * The listener holds no per request state and a single instance is shared by all requests.
+ * <br><br>
  * For creating a access context without transactions, see {@link HttpGetRequestJdbiUnitOfWorkEventListener}
  */
 class NonHttpGetRequestJdbiUnitOfWorkEventListener implements RequestEventListener {
 
     private final Logger log = LoggerFactory.getLogger(NonHttpGetRequestJdbiUnitOfWorkEventListener.class);
     private final JdbiTransactionAspect transactionAspect;
+    private final UnitOfWorkPolicies policies;
 
     NonHttpGetRequestJdbiUnitOfWorkEventListener(JdbiHandleManager handleManager) {
-        this.transactionAspect = new JdbiTransactionAspect(handleManager);
+        this(handleManager, new UnitOfWorkPolicies());
+    }
+
+    NonHttpGetRequestJdbiUnitOfWorkEventListener(JdbiHandleManager handleManager, UnitOfWorkPolicies policies) {
+        this(new JdbiTransactionAspect(handleManager), policies);
+    }
+
+    NonHttpGetRequestJdbiUnitOfWorkEventListener(JdbiTransactionAspect transactionAspect, UnitOfWorkPolicies policies) {
+        this.transactionAspect = transactionAspect;
+        this.policies = policies;
     }
 
     @Override
@@ -33,46 +49,44 @@ class NonHttpGetRequestJdbiUnitOfWorkEventListener implements RequestEventListen
         String httpMethod = event.getContainerRequest().getMethod();
 
         log.debug("Handling {} Request Event {} {}", httpMethod, type, Thread.currentThread().getId());
-        boolean isTransactional = isTransactional(event);
 
-        if (type == RequestEvent.Type.RESOURCE_METHOD_START) {
-            initialise(isTransactional);
+        if (type == RequestEvent.Type.MATCHING_START) {
+            transactionAspect.enterScope();
+
+        } else if (type == RequestEvent.Type.RESOURCE_METHOD_START) {
+            initialise(getPolicy(event));
 
         } else if (type == RequestEvent.Type.RESP_FILTERS_START) {
-            commit(isTransactional);
+            commit(getPolicy(event));
 
         } else if (type == RequestEvent.Type.ON_EXCEPTION) {
-            rollback(isTransactional);
+            rollback(getPolicy(event));
 
         } else if (type == RequestEvent.Type.FINISHED) {
             transactionAspect.terminateHandle();
         }
     }
 
-    private void commit(boolean isTransactional) {
-        if (isTransactional) {
-            transactionAspect.commit();
+    private void commit(UnitOfWorkPolicy policy) {
+        if (policy.isTransactional()) {
+            transactionAspect.commit(policy);
         }
     }
 
-    private void rollback(boolean isTransactional) {
-        if (isTransactional) {
-            transactionAspect.rollback();
+    private void rollback(UnitOfWorkPolicy policy) {
+        if (policy.isTransactional()) {
+            transactionAspect.rollback(policy);
         }
     }
 
-    private void initialise(boolean isTransactional) {
-        if (isTransactional) {
-            transactionAspect.begin();
+    private void initialise(UnitOfWorkPolicy policy) {
+        if (policy.isTransactional()) {
+            transactionAspect.begin(policy);
         }
     }
 
-    private boolean isTransactional(RequestEvent event) {
-        ResourceMethod method = event.getUriInfo().getMatchedResourceMethod();
-        if (method != null) {
-            JdbiUnitOfWork annotation = method.getInvocable().getDefinitionMethod().getAnnotation(JdbiUnitOfWork.class);
-            return annotation != null;
-        }
-        return false;
+    private UnitOfWorkPolicy getPolicy(RequestEvent event) {
+        UnitOfWorkPolicy policy = policies.get(event.getUriInfo().getMatchedResourceMethod());
+        return policy.isHandledOnInvocation() ? UnitOfWorkPolicy.NON_TRANSACTIONAL : policy;
     }
 }
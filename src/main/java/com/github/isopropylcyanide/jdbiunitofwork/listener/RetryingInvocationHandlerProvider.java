@@ -0,0 +1,112 @@
+package com.github.isopropylcyanide.jdbiunitofwork.listener;
+
+import com.github.isopropylcyanide.jdbiunitofwork.JdbiUnitOfWork;
+import org.glassfish.jersey.server.model.Invocable;
+import org.glassfish.jersey.server.spi.internal.ResourceMethodInvocationHandlerProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.ws.rs.GET;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Provides Jersey with the invocation handler of every resource method whose {@link JdbiUnitOfWork}
+ * declares more than one attempt. The handler owns the whole transaction of such a method, from
+ * begin until commit, so that a retryable failure of either the method or the commit can be rolled
+ * back and the method invoked again on a new handle after a jittered backoff.
+ * <br><br>
+ * The resource methods handled are recorded in the {@link UnitOfWorkPolicies} so that the request
+ * listeners leave their transaction alone, and only terminate their handle once the request is
+ * finished. Resource methods which are not retried are left to the default invocation handler.
+ * <br><br>
+ * A failure which is not retryable, or the last retryable one, is rethrown to Jersey as it would
+ * have been by the resource method, after the transaction is rolled back.
+ *
+ * @implNote The provider is registered with Jersey through a binder, see
+ * {@link JdbiUnitOfWorkApplicationEventListener#getInvocationHandlerProvider()}. Resource methods of
+ * GET requests are never retried, as they are not served in a transaction, and neither are
+ * asynchronous ones, whose transaction completes after the method returned.
+ */
+final class RetryingInvocationHandlerProvider implements ResourceMethodInvocationHandlerProvider {
+
+    private final Logger log = LoggerFactory.getLogger(RetryingInvocationHandlerProvider.class);
+    private final JdbiTransactionAspect transactionAspect;
+    private final UnitOfWorkPolicies policies;
+
+    RetryingInvocationHandlerProvider(JdbiTransactionAspect transactionAspect, UnitOfWorkPolicies policies) {
+        this.transactionAspect = transactionAspect;
+        this.policies = policies;
+    }
+
+    @Override
+    @Nullable
+    public InvocationHandler create(Invocable invocable) {
+        Method definitionMethod = invocable.getDefinitionMethod();
+        UnitOfWorkPolicy policy = UnitOfWorkPolicy.of(definitionMethod);
+        if (!policy.isRetried() || definitionMethod.isAnnotationPresent(GET.class)) {
+            return null;
+        }
+        if (AsyncInvocationHandlerProvider.isAsync(definitionMethod)) {
+            log.warn("Unit of work of asynchronous [{}] cannot be retried, serving it in a single attempt", policy.getName());
+            return null;
+        }
+        policies.handleOnInvocation(definitionMethod);
+        log.debug("Retrying the unit of work of [{}] up to [{}] times", policy.getName(), policy.getMaxAttempts());
+        return (resource, method, args) -> invoke(policy, resource, method, args);
+    }
+
+    private Object invoke(UnitOfWorkPolicy policy, Object resource, Method method, Object[] args) throws Throwable {
+        for (int attempt = 1; ; attempt++) {
+            transactionAspect.begin(policy);
+            Object result;
+            try {
+                result = method.invoke(resource, args);
+            } catch (InvocationTargetException ex) {
+                rollback(policy, ex.getCause());
+                if (!shouldRetry(policy, attempt, ex.getCause())) {
+                    throw ex;
+                }
+                continue;
+            } catch (Throwable ex) {
+                rollback(policy, ex);
+                throw ex;
+            }
+            try {
+                transactionAspect.commit(policy);
+                return result;
+            } catch (RuntimeException ex) {
+                transactionAspect.terminateHandle();
+                if (!shouldRetry(policy, attempt, ex)) {
+                    throw new InvocationTargetException(ex);
+                }
+            }
+        }
+    }
+
+    private void rollback(UnitOfWorkPolicy policy, Throwable failure) {
+        try {
+            transactionAspect.rollback(policy);
+        } catch (RuntimeException ex) {
+            failure.addSuppressed(ex);
+        }
+    }
+
+    private boolean shouldRetry(UnitOfWorkPolicy policy, int attempt, Throwable failure) {
+        if (attempt >= policy.getMaxAttempts() || !policy.isRetryable(failure)) {
+            return false;
+        }
+        long backoffMillis = policy.getBackoffMillis(attempt);
+        log.debug("Retrying [{}] after attempt [{}] failed, backing off for [{}] ms", policy.getName(), attempt, backoffMillis, failure);
+        try {
+            Thread.sleep(backoffMillis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            failure.addSuppressed(ex);
+            return false;
+        }
+        return true;
+    }
+}
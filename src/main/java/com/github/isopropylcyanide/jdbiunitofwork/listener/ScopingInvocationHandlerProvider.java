@@ -0,0 +1,110 @@
+package com.github.isopropylcyanide.jdbiunitofwork.listener;
+
+import com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager;
+import org.glassfish.jersey.server.model.Invocable;
+import org.glassfish.jersey.server.spi.internal.ResourceMethodInvocationHandlerProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.ws.rs.GET;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Provides Jersey with the invocation handler of every resource method when the handle manager only
+ * provides handles within {@link JdbiHandleManager#runInScope(Runnable)}, as told by
+ * {@link JdbiHandleManager#requiresScope()}. The request events of Jersey are fired outside of any
+ * such scope, so the handler takes over the whole unit of work of the method from the request
+ * listeners. Within a scope of its own, it
+ * <ul>
+ * <li>enters the scope and marks it read only for {@link GET} requests, as the request listener would</li>
+ * <li>hands the method over to the invocation handler of another provider, such as one retrying it,
+ * or else begins its transaction, invokes it and commits, or rolls back if it fails</li>
+ * <li>terminates the handle of the scope once the method returns</li>
+ * </ul>
+ * A failed commit is rethrown to Jersey as if the resource method had thrown it.
+ *
+ * @implNote Response filters and writers run after the scope is over, so the entity returned by
+ * the resource method must not lazily read from the database.
+ */
+final class ScopingInvocationHandlerProvider implements ResourceMethodInvocationHandlerProvider {
+
+    private final Logger log = LoggerFactory.getLogger(ScopingInvocationHandlerProvider.class);
+    private final JdbiHandleManager handleManager;
+    private final JdbiTransactionAspect transactionAspect;
+    private final ResourceMethodInvocationHandlerProvider delegate;
+
+    ScopingInvocationHandlerProvider(JdbiHandleManager handleManager, JdbiTransactionAspect transactionAspect,
+                                     ResourceMethodInvocationHandlerProvider delegate) {
+        this.handleManager = handleManager;
+        this.transactionAspect = transactionAspect;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public InvocationHandler create(Invocable invocable) {
+        Method definitionMethod = invocable.getDefinitionMethod();
+        boolean get = definitionMethod.isAnnotationPresent(GET.class);
+        UnitOfWorkPolicy policy = get ? UnitOfWorkPolicy.NON_TRANSACTIONAL : UnitOfWorkPolicy.of(definitionMethod);
+        InvocationHandler handler = delegate.create(invocable);
+        log.debug("Running the unit of work of [{}.{}] within a scope of its own", definitionMethod.getDeclaringClass().getSimpleName(), definitionMethod.getName());
+        return (resource, method, args) -> {
+            Object[] result = new Object[1];
+            Throwable[] failure = new Throwable[1];
+            handleManager.runInScope(() -> {
+                try {
+                    result[0] = invokeInScope(get, policy, handler, resource, method, args);
+                } catch (Throwable ex) {
+                    failure[0] = ex;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            return result[0];
+        };
+    }
+
+    private Object invokeInScope(boolean get, UnitOfWorkPolicy policy, @Nullable InvocationHandler handler,
+                                 Object resource, Method method, Object[] args) throws Throwable {
+        transactionAspect.enterScope();
+        if (get) {
+            handleManager.markReadOnly();
+        }
+        try {
+            if (handler != null) {
+                return handler.invoke(resource, method, args);
+            }
+            if (!policy.isTransactional()) {
+                return method.invoke(resource, args);
+            }
+            return invokeInTransaction(policy, resource, method, args);
+        } finally {
+            transactionAspect.terminateHandle();
+        }
+    }
+
+    private Object invokeInTransaction(UnitOfWorkPolicy policy, Object resource, Method method, Object[] args) throws Throwable {
+        transactionAspect.begin(policy);
+        Object result;
+        try {
+            result = method.invoke(resource, args);
+        } catch (Throwable ex) {
+            Throwable failure = ex instanceof InvocationTargetException ? ex.getCause() : ex;
+            try {
+                transactionAspect.rollback(policy);
+            } catch (RuntimeException rollbackFailure) {
+                failure.addSuppressed(rollbackFailure);
+            }
+            throw ex;
+        }
+        try {
+            transactionAspect.commit(policy);
+        } catch (RuntimeException ex) {
+            throw new InvocationTargetException(ex);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,139 @@
+package com.github.isopropylcyanide.jdbiunitofwork.listener;
+
+import com.github.isopropylcyanide.jdbiunitofwork.core.ForwardingStatementBuilder;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+import org.skife.jdbi.v2.tweak.StatementBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The settings a {@link UnitOfWorkPolicy} applied to the handle of a transaction, along with those
+ * they replaced so that they can be restored once the transaction is over, before the handle goes
+ * back to the pool.
+ * <ul>
+ * <li>the isolation level, if the policy declares one</li>
+ * <li>the read only mode of the connection, if the policy is read only</li>
+ * <li>a statement builder giving every statement the time left before the transaction times out as
+ * its query timeout, if the policy declares a timeout</li>
+ * </ul>
+ *
+ * @implNote The isolation level and the read only mode cannot be changed in the middle of a
+ * transaction by most drivers, so they are applied before the handle begins it. The statement
+ * builder wraps the one set on the handle through a {@link ForwardingStatementBuilder}, which is set
+ * back once the transaction is over. If another one was wrapped around it meanwhile, it stops
+ * giving statements a query timeout instead.
+ */
+final class TransactionSettings {
+
+    private final Logger log = LoggerFactory.getLogger(TransactionSettings.class);
+    private final TransactionIsolationLevel replacedIsolation;
+    private final boolean readOnly;
+    private TimeoutStatementBuilder timeoutStatementBuilder;
+
+    private TransactionSettings(TransactionIsolationLevel replacedIsolation, boolean readOnly) {
+        this.replacedIsolation = replacedIsolation;
+        this.readOnly = readOnly;
+    }
+
+    static TransactionSettings apply(Handle handle, UnitOfWorkPolicy policy) {
+        TransactionIsolationLevel replacedIsolation = TransactionIsolationLevel.UNKNOWN;
+        if (policy.getIsolation() != TransactionIsolationLevel.UNKNOWN) {
+            replacedIsolation = handle.getTransactionIsolationLevel();
+            handle.setTransactionIsolation(policy.getIsolation());
+        }
+        TransactionSettings settings = new TransactionSettings(replacedIsolation, policy.isReadOnly());
+        try {
+            if (settings.readOnly) {
+                handle.getConnection().setReadOnly(true);
+            }
+        } catch (SQLException ex) {
+            settings.restore(handle);
+            throw new IllegalStateException("Unable to mark the connection of " + policy.getName() + " read only", ex);
+        }
+        if (policy.getTimeoutSeconds() > 0) {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(policy.getTimeoutSeconds());
+            settings.timeoutStatementBuilder = ForwardingStatementBuilder.wrap(handle,
+                    replaced -> new TimeoutStatementBuilder(replaced, policy.getName(), policy.getTimeoutSeconds(), deadline));
+        }
+        return settings;
+    }
+
+    /**
+     * Restores the settings replaced on the handle. A failure to restore any of them is logged
+     * rather than thrown, as the transaction is already over by then
+     */
+    void restore(Handle handle) {
+        if (timeoutStatementBuilder != null && !timeoutStatementBuilder.unwrap(handle)) {
+            timeoutStatementBuilder.expired = true;
+        }
+        try {
+            if (readOnly) {
+                handle.getConnection().setReadOnly(false);
+            }
+            if (replacedIsolation != TransactionIsolationLevel.UNKNOWN) {
+                handle.setTransactionIsolation(replacedIsolation);
+            }
+        } catch (Exception ex) {
+            log.warn("Unable to restore the settings of handle [{}]", handle.hashCode(), ex);
+        }
+    }
+
+    /**
+     * Creates the statements of a transaction with the time left before it times out as their
+     * query timeout, rounded up to the second, and fails to create any once no time is left. Once
+     * the transaction is over, statements are created by the statement builder it wraps alone
+     */
+    static final class TimeoutStatementBuilder extends ForwardingStatementBuilder {
+
+        private final String name;
+        private final int timeoutSeconds;
+        private final long deadline;
+        private volatile boolean expired;
+
+        TimeoutStatementBuilder(StatementBuilder delegate, String name, int timeoutSeconds, long deadline) {
+            super(delegate);
+            this.name = name;
+            this.timeoutSeconds = timeoutSeconds;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public PreparedStatement create(Connection conn, String sql, StatementContext ctx) throws SQLException {
+            if (expired) {
+                return super.create(conn, sql, ctx);
+            }
+            int queryTimeout = queryTimeout();
+            PreparedStatement statement = super.create(conn, sql, ctx);
+            statement.setQueryTimeout(queryTimeout);
+            return statement;
+        }
+
+        @Override
+        public CallableStatement createCall(Connection conn, String sql, StatementContext ctx) throws SQLException {
+            if (expired) {
+                return super.createCall(conn, sql, ctx);
+            }
+            int queryTimeout = queryTimeout();
+            CallableStatement statement = super.createCall(conn, sql, ctx);
+            statement.setQueryTimeout(queryTimeout);
+            return statement;
+        }
+
+        private int queryTimeout() throws SQLTimeoutException {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                throw new SQLTimeoutException("The transaction of " + name + " timed out after " + timeoutSeconds + " seconds");
+            }
+            return (int) Math.max(1, (left + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+}
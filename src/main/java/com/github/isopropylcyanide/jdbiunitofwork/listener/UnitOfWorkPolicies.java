@@ -0,0 +1,81 @@
+package com.github.isopropylcyanide.jdbiunitofwork.listener;
+
+import org.glassfish.jersey.server.model.Resource;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.server.model.ResourceModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable lookup from every {@link ResourceMethod} of the application to its resolved
+ * {@link UnitOfWorkPolicy}. The lookup is built once, when the application has finished
+ * initialising, so that handling a request event costs a single identity map lookup.
+ *
+ * @implNote Resource methods that are not part of the resource model known at initialisation,
+ * such as those of resources returned by sub resource locators, are resolved on every lookup.
+ * <br><br>
+ * The policies of the resource methods whose unit of work is owned by their invocation handler,
+ * such as those retried by the {@link RetryingInvocationHandlerProvider} or completed
+ * asynchronously through the {@link AsyncInvocationHandlerProvider}, are marked as
+ * {@link UnitOfWorkPolicy#isHandledOnInvocation() handled on invocation} in place of the request
+ * listeners. Invocation handlers may be created before or after the lookup is built, so the
+ * methods they handle are remembered until then, and the lookup is rebuilt for those told of later.
+ */
+class UnitOfWorkPolicies {
+
+    private final Logger log = LoggerFactory.getLogger(UnitOfWorkPolicies.class);
+    private volatile Map<ResourceMethod, UnitOfWorkPolicy> policies = Collections.emptyMap();
+    private final Set<Method> handledOnInvocation = ConcurrentHashMap.newKeySet();
+
+    synchronized void register(ResourceModel resourceModel) {
+        Map<ResourceMethod, UnitOfWorkPolicy> resolvedPolicies = new IdentityHashMap<>();
+        for (Resource resource : resourceModel.getResources()) {
+            register(resource, resolvedPolicies);
+        }
+        this.policies = Collections.unmodifiableMap(resolvedPolicies);
+        log.info("Resolved unit of work policies for [{}] resource methods", resolvedPolicies.size());
+    }
+
+    UnitOfWorkPolicy get(@Nullable ResourceMethod resourceMethod) {
+        if (resourceMethod == null) {
+            return UnitOfWorkPolicy.NON_TRANSACTIONAL;
+        }
+        UnitOfWorkPolicy policy = policies.get(resourceMethod);
+        if (policy == null) {
+            return resolve(resourceMethod);
+        }
+        return policy;
+    }
+
+    synchronized void handleOnInvocation(Method definitionMethod) {
+        if (!handledOnInvocation.add(definitionMethod)) {
+            return;
+        }
+        Map<ResourceMethod, UnitOfWorkPolicy> resolvedPolicies = new IdentityHashMap<>(policies);
+        resolvedPolicies.replaceAll((resourceMethod, policy) ->
+                resourceMethod.getInvocable().getDefinitionMethod().equals(definitionMethod) ? policy.handledOnInvocation() : policy);
+        this.policies = Collections.unmodifiableMap(resolvedPolicies);
+    }
+
+    private UnitOfWorkPolicy resolve(ResourceMethod resourceMethod) {
+        UnitOfWorkPolicy policy = UnitOfWorkPolicy.of(resourceMethod);
+        return handledOnInvocation.contains(resourceMethod.getInvocable().getDefinitionMethod()) ? policy.handledOnInvocation() : policy;
+    }
+
+    private void register(Resource resource, Map<ResourceMethod, UnitOfWorkPolicy> resolvedPolicies) {
+        for (ResourceMethod resourceMethod : resource.getAllMethods()) {
+            resolvedPolicies.put(resourceMethod, resolve(resourceMethod));
+        }
+        for (Resource childResource : resource.getChildResources()) {
+            register(childResource, resolvedPolicies);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.github.isopropylcyanide.jdbiunitofwork.listener;
+
+import com.github.isopropylcyanide.jdbiunitofwork.JdbiUnitOfWork;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The unit of work policy resolved for a resource method, i.e. whether it is to be wrapped in a
+ * transaction context, the settings of the transaction and how it is retried, as declared through {@link JdbiUnitOfWork}.
+ * <br><br>
+ * Policies are resolved once per resource method by {@link UnitOfWorkPolicies} so that serving
+ * a request does not have to inspect annotations again.
+ */
+public final class UnitOfWorkPolicy {
+
+    static final UnitOfWorkPolicy NON_TRANSACTIONAL = new UnitOfWorkPolicy("", null, false);
+
+    private static final String[] NO_SQL_STATES = new String[0];
+
+    private final String name;
+    private final boolean transactional;
+    private final TransactionIsolationLevel isolation;
+    private final boolean readOnly;
+    private final int timeoutSeconds;
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final long maxBackoffMillis;
+    private final String[] retryableSqlStates;
+    private final JdbiUnitOfWork annotation;
+    private final boolean handledOnInvocation;
+
+    private UnitOfWorkPolicy(String name, JdbiUnitOfWork annotation, boolean handledOnInvocation) {
+        this.name = name;
+        this.transactional = annotation != null;
+        this.isolation = annotation == null ? TransactionIsolationLevel.UNKNOWN : annotation.isolation();
+        this.readOnly = annotation != null && annotation.readOnly();
+        this.timeoutSeconds = annotation == null ? 0 : Math.max(0, annotation.timeoutSeconds());
+        this.maxAttempts = annotation == null ? 1 : Math.max(1, annotation.maxAttempts());
+        this.backoffMillis = annotation == null ? 0 : Math.max(0, annotation.backoffMillis());
+        this.maxBackoffMillis = annotation == null ? 0 : Math.max(0, annotation.maxBackoffMillis());
+        this.retryableSqlStates = annotation == null ? NO_SQL_STATES : annotation.retryableSqlStates().clone();
+        this.annotation = annotation;
+        this.handledOnInvocation = handledOnInvocation;
+    }
+
+    static UnitOfWorkPolicy of(ResourceMethod resourceMethod) {
+        return of(resourceMethod.getInvocable().getDefinitionMethod());
+    }
+
+    static UnitOfWorkPolicy of(Method method) {
+        JdbiUnitOfWork annotation = method.getAnnotation(JdbiUnitOfWork.class);
+        String name = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+        return new UnitOfWorkPolicy(name, annotation, false);
+    }
+
+    /**
+     * @return the same policy, whose unit of work is owned by the invocation handler of the
+     * resource method rather than by the request listeners
+     */
+    UnitOfWorkPolicy handledOnInvocation() {
+        return handledOnInvocation ? this : new UnitOfWorkPolicy(name, annotation, true);
+    }
+
+    /**
+     * @return the name of the resource method the policy applies to, in the form
+     * {@code ResourceClass.method}. Empty for requests that matched no resource method
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return whether the resource method is wrapped in a transaction context
+     */
+    public boolean isTransactional() {
+        return transactional;
+    }
+
+    /**
+     * @return the isolation level of the transaction, {@link TransactionIsolationLevel#UNKNOWN}
+     * if that of the connection is kept
+     */
+    public TransactionIsolationLevel getIsolation() {
+        return isolation;
+    }
+
+    /**
+     * @return whether the transaction only reads
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * @return the number of seconds the transaction may run for, zero if it never times out
+     */
+    public int getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    /**
+     * @return whether the transaction is run with settings other than those of the connection
+     */
+    boolean hasTransactionSettings() {
+        return isolation != TransactionIsolationLevel.UNKNOWN || readOnly || timeoutSeconds > 0;
+    }
+
+    /**
+     * @return the number of times the resource method is invoked before a retryable failure is
+     * given up on
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @return whether the unit of work is owned by the invocation handler of the resource method,
+     * in which case the request listeners leave its transaction alone
+     */
+    boolean isHandledOnInvocation() {
+        return handledOnInvocation;
+    }
+
+    boolean isRetried() {
+        return transactional && maxAttempts > 1;
+    }
+
+    /**
+     * @return whether the failure, or any of its causes, is a {@link SQLException} whose SQLState
+     * starts with any of the retryable SQLStates
+     */
+    boolean isRetryable(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException && isRetryable(((SQLException) cause).getSQLState())) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the backoff before the given retry, drawn at random up to the exponential backoff
+     * capped by the maximum backoff
+     */
+    long getBackoffMillis(int retry) {
+        long ceiling = backoffMillis;
+        for (int i = 1; i < retry && ceiling < maxBackoffMillis; i++) {
+            ceiling <<= 1;
+        }
+        ceiling = Math.min(ceiling, maxBackoffMillis);
+        return ceiling == 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private boolean isRetryable(String sqlState) {
+        if (sqlState == null) {
+            return false;
+        }
+        for (String retryableSqlState : retryableSqlStates) {
+            if (!retryableSqlState.isEmpty() && sqlState.startsWith(retryableSqlState)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "UnitOfWorkPolicy[" + name + ", transactional=" + transactional + ", maxAttempts=" + maxAttempts + "]";
+    }
+}
@@ -0,0 +1,187 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+/**
+ * This implementation binds the handle of a unit of work through a {@link ScopedValue} rather
+ * than a {@link ThreadLocal}. A scope is bound by {@link #runInScope(Runnable)} or
+ * {@link #callInScope(Callable)}, and the handle is opened lazily on the first {@link #get()}
+ * within it.
+ * <br><br>
+ * It suits requests served on virtual threads. The scope is released as soon as the unit of work
+ * returns, rather than lingering in a per thread map, and tasks forked from within the scope
+ * through a {@code StructuredTaskScope} inherit it, so that they share the handle of the unit of
+ * work without relying on thread names as the {@link LinkedRequestScopedJdbiHandleManager} does.
+ * Forked tasks must complete before the unit of work returns, which a structured task scope
+ * guarantees.
+ * <br><br>
+ * When created with {@code deferBegin}, a transaction requested before any handle is opened is
+ * only begun once the first handle is obtained within the scope.
+ *
+ * @apiNote Every unit of work must be run through {@link #runInScope(Runnable)}, which the invocation
+ * handler provider of the Jersey application event listener does for every resource method, as told
+ * by {@link #requiresScope()}. Obtaining a handle outside of a scope fails
+ */
+class ScopedValueJdbiHandleManager implements InternalJdbiHandleManager {
+
+    private final Logger log = LoggerFactory.getLogger(ScopedValueJdbiHandleManager.class);
+    private final ScopedValue<UnitOfWorkScope> scope = ScopedValue.newInstance();
+    private final DBI dbi;
+    private final boolean deferBegin;
+    private volatile InternalJdbiHandleManager decorator = this;
+
+    ScopedValueJdbiHandleManager(DBI dbi, boolean deferBegin) {
+        this.dbi = dbi;
+        this.deferBegin = deferBegin;
+    }
+
+    @Override
+    public void runInScope(Runnable task) {
+        if (scope.isBound()) {
+            task.run();
+            return;
+        }
+        ScopedValue.where(scope, new UnitOfWorkScope()).run(task);
+    }
+
+    @Override
+    public boolean requiresScope() {
+        return true;
+    }
+
+    @Override
+    public <T> T callInScope(Callable<T> task) throws Exception {
+        if (scope.isBound()) {
+            return task.call();
+        }
+        return ScopedValue.where(scope, new UnitOfWorkScope()).call(task::call);
+    }
+
+    @Override
+    public Handle get() {
+        Handle handle = getManagedHandle().getHandle();
+        log.debug("handle [{}] : Thread Id [{}]", handle.hashCode(), Thread.currentThread().threadId());
+        return handle;
+    }
+
+    @Override
+    public <T> T attach(Class<T> sqlObjectType) {
+        return getManagedHandle().attach(sqlObjectType);
+    }
+
+    @Override
+    @Nullable
+    public Handle peek() {
+        UnitOfWorkScope current = currentScope();
+        if (current == null) {
+            return null;
+        }
+        synchronized (current) {
+            return current.managedHandle == null ? null : current.managedHandle.getHandle();
+        }
+    }
+
+    @Override
+    public boolean deferBegin(Consumer<Handle> begin) {
+        UnitOfWorkScope current = getScope();
+        synchronized (current) {
+            if (!deferBegin || current.managedHandle != null) {
+                return false;
+            }
+            current.deferredBegin = begin;
+        }
+        log.debug("Deferred begin until a handle is opened for Thread Id [{}]", Thread.currentThread().threadId());
+        return true;
+    }
+
+    @Override
+    public boolean discardDeferredBegin() {
+        UnitOfWorkScope current = currentScope();
+        if (current == null) {
+            return false;
+        }
+        synchronized (current) {
+            if (current.deferredBegin == null) {
+                return false;
+            }
+            current.deferredBegin = null;
+        }
+        log.debug("Discarded deferred begin for Thread Id [{}]", Thread.currentThread().threadId());
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        UnitOfWorkScope current = currentScope();
+        if (current == null) {
+            return;
+        }
+        ManagedHandle managedHandle;
+        synchronized (current) {
+            current.deferredBegin = null;
+            managedHandle = current.managedHandle;
+            current.managedHandle = null;
+        }
+        if (managedHandle != null) {
+            managedHandle.close();
+            log.debug("Closed handle Thread Id [{}] has handle id [{}]", Thread.currentThread().threadId(), managedHandle.getHandle().hashCode());
+        }
+    }
+
+    @Override
+    public void decoratedBy(InternalJdbiHandleManager decorator) {
+        this.decorator = decorator;
+    }
+
+    @Nullable
+    private UnitOfWorkScope currentScope() {
+        return scope.isBound() ? scope.get() : null;
+    }
+
+    private UnitOfWorkScope getScope() {
+        if (!scope.isBound()) {
+            throw new IllegalStateException(String.format("No unit of work scope is bound for Thread Id [%s]. Run the unit of work through runInScope", Thread.currentThread().threadId()));
+        }
+        return scope.get();
+    }
+
+    private ManagedHandle getManagedHandle() {
+        UnitOfWorkScope current = getScope();
+        synchronized (current) {
+            if (current.managedHandle == null) {
+                ManagedHandle managedHandle = new ManagedHandle(dbi.open(), handle -> decorator.closing(handle));
+                Consumer<Handle> begin = current.deferredBegin;
+                current.deferredBegin = null;
+                if (begin != null) {
+                    try {
+                        begin.accept(managedHandle.getHandle());
+                    } catch (RuntimeException ex) {
+                        managedHandle.close();
+                        throw ex;
+                    }
+                }
+                current.managedHandle = managedHandle;
+            }
+            return current.managedHandle;
+        }
+    }
+
+    /**
+     * The state of a unit of work, shared by the thread which bound it and every task forked
+     * from it. Access is guarded by the instance itself, which no longer pins a virtual thread
+     * to its carrier from Java 24 onwards
+     */
+    private static final class UnitOfWorkScope {
+
+        private ManagedHandle managedHandle;
+
+        private Consumer<Handle> deferredBegin;
+    }
+}
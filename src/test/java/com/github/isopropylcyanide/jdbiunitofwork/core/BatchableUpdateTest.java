@@ -0,0 +1,160 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import com.github.isopropylcyanide.jdbiunitofwork.JdbiCacheable;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
+import org.skife.jdbi.v2.PreparedBatchPart;
+import org.skife.jdbi.v2.SQLStatement;
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.BindBean;
+import org.skife.jdbi.v2.sqlobject.Binder;
+import org.skife.jdbi.v2.sqlobject.SqlCall;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BatchableUpdateTest {
+
+    @Test
+    public void testVoidUpdatesBindingEveryParameterByNameAreBatchable() throws NoSuchMethodException {
+        BatchableUpdate update = BatchableUpdate.of(CounterDao.class.getMethod("insert", int.class, long.class));
+        assertNotNull(update);
+        assertEquals("insert into counter (id, hits) values (:id, :hits)", update.toString());
+        assertNotNull(BatchableUpdate.of(CounterDao.class.getMethod("deleteAll")));
+    }
+
+    @Test
+    public void testUpdatesReturningTheirOutcomeAreNotBatchable() throws NoSuchMethodException {
+        assertNull(BatchableUpdate.of(CounterDao.class.getMethod("increment", int.class)));
+    }
+
+    @Test
+    public void testMethodsOtherThanUpdatesAreNotBatchable() throws NoSuchMethodException {
+        assertNull(BatchableUpdate.of(CounterDao.class.getMethod("getHits", int.class)));
+        assertNull(BatchableUpdate.of(Object.class.getMethod("notify")));
+    }
+
+    @Test
+    public void testUpdatesWithoutInlineSqlAreNotBatchable() throws NoSuchMethodException {
+        assertNull(BatchableUpdate.of(CounterDao.class.getMethod("locate")));
+    }
+
+    @Test
+    public void testUpdatesNotBindingEveryParameterByNameAreNotBatchable() throws NoSuchMethodException {
+        assertNull(BatchableUpdate.of(CounterDao.class.getMethod("delete", int.class)));
+        assertNull(BatchableUpdate.of(CounterDao.class.getMethod("reset", int.class)));
+    }
+
+    @Test
+    public void testUpdatesBindingParametersThroughOtherBindersAreNotBatchable() throws NoSuchMethodException {
+        assertNull(BatchableUpdate.of(CounterDao.class.getMethod("insertCounter", CounterDao.Counter.class)));
+        assertNull(BatchableUpdate.of(CounterDao.class.getMethod("set", int.class, long.class)));
+    }
+
+    @Test
+    public void testExecuteBindsEveryInvocationAsAPartOfOneBatch() throws NoSuchMethodException {
+        Handle handle = mock(Handle.class);
+        PreparedBatch batch = mock(PreparedBatch.class);
+        PreparedBatchPart part = mock(PreparedBatchPart.class);
+        when(handle.prepareBatch("insert into counter (id, hits) values (:id, :hits)")).thenReturn(batch);
+        when(batch.add()).thenReturn(part);
+
+        BatchableUpdate update = BatchableUpdate.of(CounterDao.class.getMethod("insert", int.class, long.class));
+        assertNotNull(update);
+        update.execute(handle, List.of(new Object[]{1, 10L}, new Object[]{2, 20L}));
+
+        InOrder inOrder = inOrder(batch, part);
+        inOrder.verify(batch).add();
+        inOrder.verify(part).bind("id", 1);
+        inOrder.verify(part).bind("hits", 10L);
+        inOrder.verify(batch).add();
+        inOrder.verify(part).bind("id", 2);
+        inOrder.verify(part).bind("hits", 20L);
+        inOrder.verify(batch).execute();
+        verify(handle, times(1)).prepareBatch("insert into counter (id, hits) values (:id, :hits)");
+    }
+
+    interface CounterDao {
+
+        @SqlUpdate("insert into counter (id, hits) values (:id, :hits)")
+        void insert(@Bind("id") int id, @Bind("hits") long hits);
+
+        @SqlUpdate("delete from counter")
+        void deleteAll();
+
+        @SqlUpdate("update counter set hits = hits + 1 where id = :id")
+        int increment(@Bind("id") int id);
+
+        @SqlUpdate("delete from counter where id = :id")
+        void delete(int id);
+
+        @SqlUpdate("update counter set hits = 0 where id = :id")
+        void reset(@Bind("identifier") int id);
+
+        @SqlUpdate
+        void locate();
+
+        @SqlUpdate("insert into counter (id, hits) values (:id, :hits)")
+        void insertCounter(@BindBean Counter counter);
+
+        @SqlUpdate("update counter set hits = :hits where id = :id")
+        void set(@Bind("id") int id, @Bind(value = "hits", binder = HitsBinder.class) long hits);
+
+        @SqlQuery("select hits from counter where id = :id")
+        long getHits(@Bind("id") int id);
+
+        @SqlQuery("select name from account where id = :id")
+        String getName(@Bind("id") int id);
+
+        @SqlQuery("select c.hits from counter c, account a where a.id = c.id and a.id = :id")
+        long getAccountHits(@Bind("id") int id);
+
+        @SqlQuery("insert into counter (id, hits) values (:id, 0) returning hits")
+        long create(@Bind("id") int id);
+
+        @SqlCall("call recount()")
+        void recount();
+
+        @JdbiCacheable(tables = "account")
+        @SqlQuery("select name from account where id = :id")
+        String getCachedName(@Bind("id") int id);
+
+        @JdbiCacheable(tables = "Public.\"Account\"")
+        @SqlQuery("select name from public.account where id = :id")
+        String getQualifiedCachedName(@Bind("id") int id);
+
+        @JdbiCacheable(tables = "counter")
+        @SqlQuery("select count(*) from counter")
+        long getCachedCount();
+
+        @SqlUpdate("update account set name = :name where id = :id")
+        void rename(@Bind("id") int id, @Bind("name") String name);
+
+        interface Counter {
+
+            int getId();
+
+            long getHits();
+        }
+
+        class HitsBinder implements Binder<Bind, Long> {
+
+            @Override
+            public void bind(SQLStatement<?> q, Bind bind, Long arg) {
+                q.bind(bind.value(), Math.max(0, arg));
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DaoClassScannerTest {
+
+    private static final String CORE_PACKAGE = "com.github.isopropylcyanide.jdbiunitofwork.core";
+    private static final String LISTENER_PACKAGE = "com.github.isopropylcyanide.jdbiunitofwork.listener";
+
+    @Test
+    public void testScanFindsClassesWithAnyJdbiAnnotatedMethod() {
+        Set<Class<?>> daoClasses = DaoClassScanner.scan(Collections.singletonList(CORE_PACKAGE), false);
+        assertEquals(Set.of(JdbiUnitOfWorkProviderTest.DaoA.class, JdbiUnitOfWorkProviderTest.DaoB.class, BatchableUpdateTest.CounterDao.class,
+                SharedQueryCachingJdbiHandleManagerTest.PurgingDao.class, SharedQueryCachingJdbiHandleManagerTest.ResettingDao.class), daoClasses);
+    }
+
+    @Test
+    public void testScanCoversAllPackagesInParallel() {
+        Set<Class<?>> daoClasses = DaoClassScanner.scan(Lists.newArrayList(LISTENER_PACKAGE, CORE_PACKAGE), true);
+        assertEquals(Set.of(JdbiUnitOfWorkProviderTest.DaoA.class, JdbiUnitOfWorkProviderTest.DaoB.class, BatchableUpdateTest.CounterDao.class,
+                SharedQueryCachingJdbiHandleManagerTest.PurgingDao.class, SharedQueryCachingJdbiHandleManagerTest.ResettingDao.class), daoClasses);
+    }
+
+    @Test
+    public void testScanOfTheSamePackagesFindsTheSameClassesWhetherParallelOrNot() {
+        Set<Class<?>> daoClasses = DaoClassScanner.scan(Lists.newArrayList(CORE_PACKAGE, LISTENER_PACKAGE), false);
+        Set<Class<?>> scannedAgain = DaoClassScanner.scan(Lists.newArrayList(LISTENER_PACKAGE, CORE_PACKAGE, CORE_PACKAGE), true);
+
+        assertNotSame(daoClasses, scannedAgain);
+        assertEquals(daoClasses, scannedAgain);
+    }
+
+    @Test
+    public void testScanFindsNothingWithoutPackages() {
+        assertTrue(DaoClassScanner.scan(Collections.emptyList(), false).isEmpty());
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DaoIndexTest {
+
+    private Path indexRoot;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.indexRoot = Files.createTempDirectory("dao-index");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(indexRoot)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testIndexIsEmptyWhenNoIndexFileIsPresent() throws IOException {
+        DaoIndex daoIndex = DaoIndex.load(classLoaderWithIndex());
+        assertTrue(daoIndex.isEmpty());
+        assertTrue(daoIndex.getDaoClasses("com.github.isopropylcyanide.jdbiunitofwork").isEmpty());
+    }
+
+    @Test
+    public void testIndexReturnsClassesWithinThePackageOnly() throws IOException {
+        DaoIndex daoIndex = DaoIndex.load(classLoaderWithIndex(
+                JdbiUnitOfWorkProviderTest.DaoA.class.getName(),
+                "",
+                "com.github.isopropylcyanide.jdbiunitofwork.coreother.Dao"
+        ));
+        assertFalse(daoIndex.isEmpty());
+        assertEquals(Set.of(JdbiUnitOfWorkProviderTest.DaoA.class), daoIndex.getDaoClasses("com.github.isopropylcyanide.jdbiunitofwork.core"));
+        assertTrue(daoIndex.getDaoClasses("com.github.isopropylcyanide.jdbiunitofwork.listener").isEmpty());
+    }
+
+    @Test
+    public void testIndexFailsWhenIndexedClassIsMissing() throws IOException {
+        DaoIndex daoIndex = DaoIndex.load(classLoaderWithIndex("com.github.isopropylcyanide.jdbiunitofwork.core.MissingDao"));
+        assertThrows(IllegalStateException.class, () -> daoIndex.getDaoClasses("com.github.isopropylcyanide.jdbiunitofwork.core"));
+    }
+
+    @Test
+    public void testPackageFoundOnlyInIndexedRootsHasNoUnindexedRoot() throws IOException {
+        Files.createDirectories(indexRoot.resolve("com/example/dao"));
+        DaoIndex daoIndex = DaoIndex.load(classLoaderWithIndex(JdbiUnitOfWorkProviderTest.DaoA.class.getName()));
+        assertTrue(daoIndex.getUnindexedRoots("com.example.dao").isEmpty());
+        assertTrue(daoIndex.getUnindexedRoots("com.example.missing").isEmpty());
+    }
+
+    @Test
+    public void testPackageAlsoFoundInAnUnindexedRootIsTold() throws IOException {
+        Path unindexedRoot = indexRoot.resolve("unindexed");
+        Files.createDirectories(indexRoot.resolve("com/example/dao"));
+        Files.createDirectories(unindexedRoot.resolve("com/example/dao"));
+        classLoaderWithIndex(JdbiUnitOfWorkProviderTest.DaoA.class.getName());
+        ClassLoader classLoader = new URLClassLoader(new URL[]{indexRoot.toUri().toURL(), unindexedRoot.toUri().toURL()}, null);
+
+        DaoIndex daoIndex = DaoIndex.load(classLoader);
+        assertEquals(Set.of(unindexedRoot.toUri().toURL().toString()), daoIndex.getUnindexedRoots("com.example.dao"));
+        assertEquals(Set.of(unindexedRoot.toUri().toURL().toString()), daoIndex.getUnindexedRoots("com.example"));
+    }
+
+    @Test
+    public void testProviderScansIndexedPackagesAlsoFoundInUnindexedRoots() throws IOException {
+        ClassLoader previous = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(classLoaderWithIndex(JdbiUnitOfWorkProviderTest.DaoA.class.getName()));
+        try {
+            JdbiUnitOfWorkProvider provider = JdbiUnitOfWorkProvider.withDefault(null);
+            Set<?> daoClasses = provider.getWrappedInstanceForDaoPackage(Arrays.asList(
+                    "com.github.isopropylcyanide.jdbiunitofwork.core"
+            )).keySet();
+            assertEquals(Set.of(JdbiUnitOfWorkProviderTest.DaoA.class, JdbiUnitOfWorkProviderTest.DaoB.class, BatchableUpdateTest.CounterDao.class,
+                    SharedQueryCachingJdbiHandleManagerTest.PurgingDao.class, SharedQueryCachingJdbiHandleManagerTest.ResettingDao.class), daoClasses);
+
+        } finally {
+            Thread.currentThread().setContextClassLoader(previous);
+        }
+    }
+
+    private ClassLoader classLoaderWithIndex(String... daoClassNames) throws IOException {
+        if (daoClassNames.length > 0) {
+            Path indexFile = indexRoot.resolve(DaoIndex.LOCATION);
+            Files.createDirectories(indexFile.getParent());
+            Files.write(indexFile, Arrays.asList(daoClassNames), StandardCharsets.UTF_8);
+        }
+        return new URLClassLoader(new URL[]{indexRoot.toUri().toURL()}, getClass().getClassLoader());
+    }
+}
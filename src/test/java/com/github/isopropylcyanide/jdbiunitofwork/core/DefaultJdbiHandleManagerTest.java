@@ -6,6 +6,9 @@ import org.mockito.stubbing.Answer;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
 
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.mock;
@@ -49,4 +52,17 @@ public class DefaultJdbiHandleManagerTest {
     public void testCreateThreadFactoryIsNotSupported() {
         assertThrows(UnsupportedOperationException.class, () -> manager.createThreadFactory());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPropagatingIsNotSupported() {
+        assertThrows(UnsupportedOperationException.class, () -> manager.propagating(Executors.newSingleThreadExecutor()));
+    }
+
+    @Test
+    public void testScopedTasksRunRightAway() throws Exception {
+        Thread caller = Thread.currentThread();
+        manager.runInScope(() -> assertEquals(caller, Thread.currentThread()));
+        assertEquals("result", manager.callInScope(() -> "result"));
+        verify(dbi, never()).open();
+    }
+}
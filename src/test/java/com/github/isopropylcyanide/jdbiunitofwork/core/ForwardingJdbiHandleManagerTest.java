@@ -0,0 +1,129 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.skife.jdbi.v2.Handle;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ForwardingJdbiHandleManagerTest {
+
+    private InternalJdbiHandleManager delegate;
+
+    private ForwardingJdbiHandleManager manager;
+
+    @BeforeEach
+    public void setUp() {
+        delegate = mock(InternalJdbiHandleManager.class);
+        this.manager = new ForwardingJdbiHandleManager(delegate) {
+        };
+    }
+
+    @Test
+    public void testEveryCallIsForwardedToDelegate() {
+        Handle handle = mock(Handle.class);
+        ThreadFactory threadFactory = mock(ThreadFactory.class);
+        ExecutorService executorService = mock(ExecutorService.class);
+        Executor executor = mock(Executor.class);
+        Consumer<Handle> begin = h -> {
+        };
+        when(delegate.get()).thenReturn(handle);
+        when(delegate.peek()).thenReturn(handle);
+        when(delegate.attach(String.class)).thenReturn("attached");
+        when(delegate.deferBegin(begin)).thenReturn(true);
+        when(delegate.discardDeferredBegin()).thenReturn(true);
+        when(delegate.createThreadFactory()).thenReturn(threadFactory);
+        when(delegate.propagating(executorService)).thenReturn(executorService);
+        when(delegate.propagating(executor)).thenReturn(executor);
+        when(delegate.getSqlObjectExecutor()).thenReturn(executor);
+        when(delegate.getConversationId()).thenReturn("conversation");
+        DetachedScope detached = Runnable::run;
+        when(delegate.detachScope()).thenReturn(detached);
+
+        assertSame(handle, manager.get());
+        assertSame(handle, manager.peek());
+        assertEquals("attached", manager.attach(String.class));
+        assertTrue(manager.deferBegin(begin));
+        assertTrue(manager.discardDeferredBegin());
+        assertSame(threadFactory, manager.createThreadFactory());
+        assertSame(executorService, manager.propagating(executorService));
+        assertSame(executor, manager.propagating(executor));
+        assertSame(executor, manager.getSqlObjectExecutor());
+        assertEquals("conversation", manager.getConversationId());
+        assertSame(detached, manager.detachScope());
+
+        manager.beforeCommit(handle);
+        manager.beforeRollback(handle);
+        manager.flushBufferedStatements(handle);
+        manager.discardBufferedStatements(handle);
+        manager.afterCommit(handle);
+        manager.enterScope();
+        manager.markReadOnly();
+        manager.closing(handle);
+        manager.clear();
+        verify(delegate).beforeCommit(handle);
+        verify(delegate).beforeRollback(handle);
+        verify(delegate).flushBufferedStatements(handle);
+        verify(delegate).discardBufferedStatements(handle);
+        verify(delegate).afterCommit(handle);
+        verify(delegate).enterScope();
+        verify(delegate).markReadOnly();
+        verify(delegate).closing(handle);
+        verify(delegate).clear();
+        assertSame(delegate, manager.delegate());
+    }
+
+    @Test
+    public void testScopedTasksAreForwardedToDelegate() throws Exception {
+        Runnable task = () -> {
+        };
+        Callable<String> callable = () -> "result";
+        when(delegate.callInScope(callable)).thenReturn("scoped");
+
+        manager.runInScope(task);
+        verify(delegate).runInScope(task);
+        assertEquals("scoped", manager.callInScope(callable));
+        when(delegate.requiresScope()).thenReturn(true);
+        assertTrue(manager.requiresScope());
+    }
+
+    @Test
+    public void testDecoratorsAreToldToTheDelegate() {
+        verify(delegate).decoratedBy(manager);
+
+        ForwardingJdbiHandleManager outer = new ForwardingJdbiHandleManager(manager) {
+        };
+        verify(delegate).decoratedBy(outer);
+    }
+
+    @Test
+    public void testDelegateImplementedElsewhereTellsNoHandle() {
+        JdbiHandleManager elsewhere = mock(JdbiHandleManager.class);
+        ForwardingJdbiHandleManager decorator = new ForwardingJdbiHandleManager(elsewhere) {
+        };
+
+        assertNull(decorator.peek());
+        assertNull(decorator.getSqlObjectExecutor());
+        assertDoesNotThrow(() -> decorator.closing(mock(Handle.class)));
+    }
+
+    @Test
+    public void testDelegateIsRequired() {
+        assertThrows(IllegalArgumentException.class, () -> new ForwardingJdbiHandleManager(null) {
+        });
+    }
+}
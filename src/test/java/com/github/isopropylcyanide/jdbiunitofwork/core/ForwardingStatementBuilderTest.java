@@ -0,0 +1,97 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.skife.jdbi.v2.DefaultStatementBuilder;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.tweak.StatementBuilder;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.withSettings;
+
+public class ForwardingStatementBuilderTest {
+
+    private StatementBuilder opened;
+
+    private Handle handle;
+
+    @BeforeEach
+    public void setUp() {
+        opened = new DefaultStatementBuilder();
+        handle = statementBuilderHandle(opened);
+    }
+
+    @Test
+    public void testStatementBuilderTheHandleWasOpenedWithIsWrapped() {
+        PlainStatementBuilder wrapping = ForwardingStatementBuilder.wrap(handle, PlainStatementBuilder::new);
+
+        assertSame(opened, wrapping.delegate());
+        assertSame(wrapping, ForwardingStatementBuilder.statementBuilderOf(handle));
+    }
+
+    @Test
+    public void testUnwrapSetsBackTheStatementBuilderItWrapped() {
+        PlainStatementBuilder inner = ForwardingStatementBuilder.wrap(handle, PlainStatementBuilder::new);
+        PlainStatementBuilder outer = ForwardingStatementBuilder.wrap(handle, PlainStatementBuilder::new);
+
+        assertSame(inner, outer.delegate());
+        assertTrue(outer.unwrap(handle));
+        assertTrue(inner.unwrap(handle));
+        assertSame(opened, ForwardingStatementBuilder.statementBuilderOf(handle));
+    }
+
+    @Test
+    public void testStatementBuilderWrappedAroundIsNotUnwrapped() {
+        PlainStatementBuilder inner = ForwardingStatementBuilder.wrap(handle, PlainStatementBuilder::new);
+        PlainStatementBuilder outer = ForwardingStatementBuilder.wrap(handle, PlainStatementBuilder::new);
+
+        assertFalse(inner.unwrap(handle));
+        assertSame(outer, ForwardingStatementBuilder.statementBuilderOf(handle));
+    }
+
+    @Test
+    public void testHandleNotTellingItsStatementBuilderIsTakenAsUsingTheDefaultOne() {
+        Handle handle = mock(Handle.class);
+        PlainStatementBuilder wrapping = ForwardingStatementBuilder.wrap(handle, PlainStatementBuilder::new);
+
+        assertNull(ForwardingStatementBuilder.statementBuilderOf(handle));
+        assertTrue(wrapping.delegate() instanceof DefaultStatementBuilder);
+        assertTrue(wrapping.unwrap(handle));
+        verify(handle, times(1)).setStatementBuilder(wrapping.delegate());
+    }
+
+    /**
+     * @return a handle holding its statement builder the way the handles a {@code DBI} opens do
+     */
+    public static Handle statementBuilderHandle(StatementBuilder statementBuilder) {
+        StatementBuilderHandle handle = mock(StatementBuilderHandle.class, withSettings().defaultAnswer(CALLS_REAL_METHODS));
+        handle.setStatementBuilder(statementBuilder);
+        clearInvocations(handle);
+        return handle;
+    }
+
+    public abstract static class StatementBuilderHandle implements Handle {
+
+        private StatementBuilder statementBuilder;
+
+        @Override
+        public void setStatementBuilder(StatementBuilder builder) {
+            this.statementBuilder = builder;
+        }
+    }
+
+    private static final class PlainStatementBuilder extends ForwardingStatementBuilder {
+
+        PlainStatementBuilder(StatementBuilder delegate) {
+            super(delegate);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class GeneratedSqlObjectProxyTest {
+
+    private JdbiHandleManager handleManager;
+
+    @BeforeEach
+    public void setUp() {
+        this.handleManager = mock(JdbiHandleManager.class);
+    }
+
+    @Test
+    public void testNameOfNestedSqlObjectIsFlattened() {
+        assertEquals("com.github.isopropylcyanide.jdbiunitofwork.core.GeneratedSqlObjectProxyTest$$GeneratedDao_JdbiUnitOfWorkProxy",
+                GeneratedSqlObjectProxy.nameOf(GeneratedDao.class));
+    }
+
+    @Test
+    public void testNewInstanceIsNullWhenNoProxyIsGenerated() {
+        assertNull(GeneratedSqlObjectProxy.newInstance(NotGeneratedDao.class, handleManager));
+    }
+
+    @Test
+    public void testNewInstanceDelegatesToAttachedSqlObject() {
+        GeneratedDao attached = mock(GeneratedDao.class);
+        when(attached.count()).thenReturn(42);
+        when(handleManager.attach(GeneratedDao.class)).thenReturn(attached);
+
+        GeneratedDao proxy = GeneratedSqlObjectProxy.newInstance(GeneratedDao.class, handleManager);
+        assertEquals(42, proxy.count());
+        assertEquals(GeneratedSqlObjectProxyTest$$GeneratedDao_JdbiUnitOfWorkProxy.class, proxy.getClass());
+    }
+
+    interface GeneratedDao {
+
+        int count();
+    }
+
+    interface NotGeneratedDao {
+
+        int count();
+    }
+}
+
+/**
+ * Stands in for the class the annotation processor would generate for {@link GeneratedSqlObjectProxyTest.GeneratedDao}
+ */
+final class GeneratedSqlObjectProxyTest$$GeneratedDao_JdbiUnitOfWorkProxy implements GeneratedSqlObjectProxyTest.GeneratedDao {
+
+    private final JdbiHandleManager handleManager;
+
+    public GeneratedSqlObjectProxyTest$$GeneratedDao_JdbiUnitOfWorkProxy(JdbiHandleManager handleManager) {
+        this.handleManager = handleManager;
+    }
+
+    @Override
+    public int count() {
+        return this.handleManager.attach(GeneratedSqlObjectProxyTest.GeneratedDao.class).count();
+    }
+}
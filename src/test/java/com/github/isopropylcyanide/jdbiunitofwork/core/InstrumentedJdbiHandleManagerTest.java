@@ -0,0 +1,139 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class InstrumentedJdbiHandleManagerTest {
+
+    private static final String ACQUISITION = "com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager.acquisition";
+    private static final String HOLD = "com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager.hold";
+    private static final String OPEN = "com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager.open";
+
+    private DBI dbi;
+
+    private MetricRegistry metricRegistry;
+
+    private InstrumentedJdbiHandleManager manager;
+
+    @BeforeEach
+    public void setUp() {
+        dbi = mock(DBI.class);
+        when(dbi.open()).thenAnswer((Answer<Handle>) invocation -> mock(Handle.class));
+        metricRegistry = new MetricRegistry();
+        this.manager = new InstrumentedJdbiHandleManager(new RequestScopedJdbiHandleManager(dbi), metricRegistry);
+    }
+
+    @Test
+    public void testAcquisitionIsRecordedOncePerOpenedHandle() {
+        Handle handle = manager.get();
+        assertSame(handle, manager.get());
+        manager.attach(DummyDao.class);
+
+        assertEquals(1, metricRegistry.timer(ACQUISITION).getCount());
+        assertEquals(1, metricRegistry.counter(OPEN).getCount());
+        assertEquals(0, metricRegistry.timer(HOLD).getCount());
+    }
+
+    @Test
+    public void testHandleManagersNamedApartAreRecordedApart() {
+        InstrumentedJdbiHandleManager orders = new InstrumentedJdbiHandleManager(new RequestScopedJdbiHandleManager(dbi), metricRegistry, "orders");
+        orders.get();
+        manager.get();
+        orders.clear();
+
+        assertEquals(1, metricRegistry.timer("orders.acquisition").getCount());
+        assertEquals(1, metricRegistry.timer("orders.hold").getCount());
+        assertEquals(0, metricRegistry.counter("orders.open").getCount());
+        assertEquals(1, metricRegistry.counter(OPEN).getCount());
+    }
+
+    @Test
+    public void testAcquisitionIsRecordedWhenAttachOpensTheHandle() {
+        manager.attach(DummyDao.class);
+        assertEquals(1, metricRegistry.timer(ACQUISITION).getCount());
+        assertEquals(1, metricRegistry.counter(OPEN).getCount());
+    }
+
+    @Test
+    public void testHoldIsRecordedWhenHandleIsCleared() {
+        manager.get();
+        manager.clear();
+        manager.clear();
+
+        assertEquals(1, metricRegistry.timer(HOLD).getCount());
+        assertEquals(0, metricRegistry.counter(OPEN).getCount());
+
+        manager.get();
+        assertEquals(2, metricRegistry.timer(ACQUISITION).getCount());
+        assertEquals(1, metricRegistry.counter(OPEN).getCount());
+    }
+
+    @Test
+    public void testHoldIsRecordedWhenLinkedHandleIsClosedRatherThanCleared() throws Exception {
+        InstrumentedJdbiHandleManager linked = new InstrumentedJdbiHandleManager(new LinkedRequestScopedJdbiHandleManager(dbi), metricRegistry);
+        linked.get();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executorService = linked.propagating(Executors.newSingleThreadExecutor());
+        Future<?> child = executorService.submit(() -> {
+            linked.get();
+            release.await();
+            return null;
+        });
+        linked.clear();
+        assertEquals(0, metricRegistry.timer(HOLD).getCount());
+        assertEquals(1, metricRegistry.counter(OPEN).getCount());
+
+        release.countDown();
+        child.get();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(1, metricRegistry.timer(HOLD).getCount());
+        assertEquals(0, metricRegistry.counter(OPEN).getCount());
+    }
+
+    @Test
+    public void testOpenHandlesAreCountedAcrossThreads() throws InterruptedException {
+        manager.get();
+        Thread otherThread = new Thread(manager::get);
+        otherThread.start();
+        otherThread.join();
+
+        assertEquals(2, metricRegistry.counter(OPEN).getCount());
+        verify(dbi, times(2)).open();
+    }
+
+    @Test
+    public void testNothingIsRecordedWhenDelegateCannotPeek() {
+        JdbiHandleManager delegate = mock(JdbiHandleManager.class);
+        when(delegate.get()).thenReturn(mock(Handle.class));
+        InstrumentedJdbiHandleManager instrumented = new InstrumentedJdbiHandleManager(delegate, metricRegistry);
+
+        instrumented.get();
+        instrumented.clear();
+        verify(delegate, times(1)).get();
+        verify(delegate, times(1)).clear();
+        assertEquals(0, metricRegistry.timer(ACQUISITION).getCount());
+        assertEquals(0, metricRegistry.timer(HOLD).getCount());
+    }
+
+    interface DummyDao {
+    }
+}
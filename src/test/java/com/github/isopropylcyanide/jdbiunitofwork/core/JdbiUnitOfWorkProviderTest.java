@@ -1,20 +1,40 @@
 package com.github.isopropylcyanide.jdbiunitofwork.core;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.Lists;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
+import org.skife.jdbi.v2.PreparedBatchPart;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 
+import java.lang.reflect.Proxy;
+import java.time.Duration;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class JdbiUnitOfWorkProviderTest {
 
@@ -42,12 +62,134 @@ public class JdbiUnitOfWorkProviderTest {
         Map<? extends Class, Object> instanceObjectMap = provider.getWrappedInstanceForDaoPackage(Lists.newArrayList(
                 "com.github.isopropylcyanide.jdbiunitofwork"
         ));
-        assertEquals(2, instanceObjectMap.size());
+        assertEquals(Set.of(DaoA.class, DaoB.class, BatchableUpdateTest.CounterDao.class,
+                SharedQueryCachingJdbiHandleManagerTest.PurgingDao.class, SharedQueryCachingJdbiHandleManagerTest.ResettingDao.class), instanceObjectMap.keySet());
         assertNotNull(instanceObjectMap.get(DaoA.class));
         assertNotNull(instanceObjectMap.get(DaoB.class));
         assertNull(instanceObjectMap.get(DaoC.class));
     }
 
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void testGetWrappedInstanceForDaoPackageScansAllPackagesOnce() {
+        Map<? extends Class, Object> instanceObjectMap = provider.getWrappedInstanceForDaoPackage(Lists.newArrayList(
+                "com.github.isopropylcyanide.jdbiunitofwork.core",
+                "com.github.isopropylcyanide.jdbiunitofwork.listener"
+        ), false);
+        assertEquals(Set.of(DaoA.class, DaoB.class, BatchableUpdateTest.CounterDao.class,
+                SharedQueryCachingJdbiHandleManagerTest.PurgingDao.class, SharedQueryCachingJdbiHandleManagerTest.ResettingDao.class), instanceObjectMap.keySet());
+        assertNotNull(instanceObjectMap.get(DaoA.class));
+        assertNotNull(instanceObjectMap.get(DaoB.class));
+    }
+
+    @Test
+    public void testWithReplicasRequiresAtLeastOneReplica() {
+        assertThrows(IllegalArgumentException.class, () -> JdbiUnitOfWorkProvider.withReplicas(dbi, null));
+        assertThrows(IllegalArgumentException.class, () -> JdbiUnitOfWorkProvider.withReplicas(dbi, Lists.newArrayList()));
+        assertNotNull(JdbiUnitOfWorkProvider.withReplicas(dbi, Lists.newArrayList(dbi)).getHandleManager());
+    }
+
+    @Test
+    public void testWithScopedValueIsNotSupportedBeforeJava25() {
+        // The test classpath only holds the base version of the multi release classes
+        assertThrows(UnsupportedOperationException.class, () -> JdbiUnitOfWorkProvider.withScopedValue(dbi));
+    }
+
+    @Test
+    public void testInstrumentedWrapsTheHandleManager() {
+        JdbiUnitOfWorkProvider instrumented = provider.instrumented(new MetricRegistry());
+        assertEquals(InstrumentedJdbiHandleManager.class, instrumented.getHandleManager().getClass());
+        assertThrows(IllegalArgumentException.class, () -> provider.instrumented(null));
+        assertThrows(IllegalArgumentException.class, () -> provider.instrumented(new MetricRegistry(), ""));
+    }
+
+    @Test
+    public void testWatchingTransactionsDecoratesTheHandleManager() {
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        JdbiUnitOfWorkProvider watching = provider.watchingTransactions(Duration.ofSeconds(30), scheduler, new MetricRegistry());
+        assertEquals(TransactionWatchdogJdbiHandleManager.class, watching.getHandleManager().getClass());
+        assertThrows(IllegalArgumentException.class, () -> provider.watchingTransactions(null, scheduler, new MetricRegistry()));
+        assertThrows(IllegalArgumentException.class, () -> provider.watchingTransactions(Duration.ofSeconds(30), null, new MetricRegistry()));
+        assertThrows(IllegalArgumentException.class, () -> provider.watchingTransactions(Duration.ofSeconds(30), scheduler, null));
+    }
+
+    @Test
+    public void testDetectingLeaksDecoratesTheHandleManager() {
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        JdbiUnitOfWorkProvider detecting = provider.detectingLeaks(Duration.ofMinutes(5), 100, scheduler, new MetricRegistry());
+        assertEquals(LeakDetectingJdbiHandleManager.class, detecting.getHandleManager().getClass());
+        assertThrows(IllegalArgumentException.class, () -> provider.detectingLeaks(null, 100, scheduler, new MetricRegistry()));
+        assertThrows(IllegalArgumentException.class, () -> provider.detectingLeaks(Duration.ofMinutes(5), 100, null, new MetricRegistry()));
+    }
+
+    @Test
+    public void testCloseStopsTheChecksOfEveryDecorator() {
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        ScheduledFuture<?> checks = mock(ScheduledFuture.class);
+        doReturn(checks).when(scheduler).scheduleWithFixedDelay(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+        provider.watchingTransactions(Duration.ofSeconds(30), scheduler, new MetricRegistry())
+                .batchingWrites(100)
+                .detectingLeaks(Duration.ofMinutes(5), 100, scheduler, new MetricRegistry())
+                .close();
+
+        verify(checks, times(2)).cancel(false);
+    }
+
+    @Test
+    public void testBatchingWritesDecoratesTheHandleManager() {
+        JdbiUnitOfWorkProvider batching = provider.batchingWrites(100);
+        assertEquals(WriteBehindJdbiHandleManager.class, batching.getHandleManager().getClass());
+        assertTrue(Proxy.isProxyClass(batching.getWrappedInstanceForDaoClass(DaoA.class).getClass()));
+        assertThrows(IllegalArgumentException.class, () -> provider.batchingWrites(0));
+    }
+
+    @Test
+    public void testCachingQueriesDecoratesTheHandleManager() {
+        JdbiUnitOfWorkProvider caching = provider.cachingQueries(new MetricRegistry());
+        assertEquals(QueryCachingJdbiHandleManager.class, caching.getHandleManager().getClass());
+        assertThrows(IllegalArgumentException.class, () -> provider.cachingQueries(null));
+    }
+
+    @Test
+    public void testCachingAnnotatedQueriesDecoratesTheHandleManager() {
+        JdbiUnitOfWorkProvider caching = provider.cachingAnnotatedQueries(new MetricRegistry());
+        assertEquals(SharedQueryCachingJdbiHandleManager.class, caching.getHandleManager().getClass());
+        assertThrows(IllegalArgumentException.class, () -> provider.cachingAnnotatedQueries(null));
+    }
+
+    @Test
+    public void testCountingStatementsDecoratesTheHandleManager() {
+        JdbiUnitOfWorkProvider counting = provider.countingStatements(100, 10, new MetricRegistry());
+        assertEquals(StatementCountingJdbiHandleManager.class, counting.getHandleManager().getClass());
+        assertTrue(Proxy.isProxyClass(counting.getWrappedInstanceForDaoClass(DaoA.class).getClass()));
+        assertThrows(IllegalArgumentException.class, () -> provider.countingStatements(100, 10, null));
+    }
+
+    @Test
+    public void testQueryCacheSeesWritesBufferedByBatchingWrites() {
+        Handle handle = mock(Handle.class);
+        BatchableUpdateTest.CounterDao attachedDao = mock(BatchableUpdateTest.CounterDao.class);
+        when(dbi.open()).thenReturn(handle);
+        when(handle.isInTransaction()).thenReturn(true);
+        when(handle.attach(BatchableUpdateTest.CounterDao.class)).thenReturn(attachedDao);
+        PreparedBatch batch = mock(PreparedBatch.class);
+        when(handle.prepareBatch(anyString())).thenReturn(batch);
+        when(batch.add()).thenReturn(mock(PreparedBatchPart.class));
+
+        JdbiUnitOfWorkProvider decorated = JdbiUnitOfWorkProvider.withDefault(dbi, false)
+                .cachingQueries(new MetricRegistry())
+                .batchingWrites(100);
+        BatchableUpdateTest.CounterDao dao = (BatchableUpdateTest.CounterDao) decorated.getWrappedInstanceForDaoClass(BatchableUpdateTest.CounterDao.class);
+        decorated.getHandleManager().get();
+        dao.getHits(1);
+        dao.insert(1, 10);
+        dao.getHits(1);
+
+        verify(attachedDao, never()).insert(1, 10);
+        verify(batch, times(1)).execute();
+        verify(attachedDao, times(2)).getHits(1);
+    }
+
     interface DaoA {
 
         @SqlUpdate
@@ -0,0 +1,176 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LeakDetectingJdbiHandleManagerTest {
+
+    private static final String LEAKED = "com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager.leaks.leaked";
+    private static final String SUSPECTED = "com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager.leaks.suspected";
+
+    private DBI dbi;
+
+    private ScheduledExecutorService scheduler;
+
+    private MetricRegistry metricRegistry;
+
+    private LeakDetectingJdbiHandleManager manager;
+
+    @BeforeEach
+    public void setUp() {
+        dbi = mock(DBI.class);
+        when(dbi.open()).thenAnswer((Answer<Handle>) invocation -> mock(Handle.class));
+        scheduler = mock(ScheduledExecutorService.class);
+        metricRegistry = new MetricRegistry();
+        manager = new LeakDetectingJdbiHandleManager(new RequestScopedJdbiHandleManager(dbi), Duration.ofMinutes(1), 1, scheduler, metricRegistry);
+    }
+
+    @Test
+    public void testChecksAreScheduledSeveralTimesPerThreshold() {
+        long period = TimeUnit.MINUTES.toNanos(1) / 4;
+        verify(scheduler, times(1)).scheduleWithFixedDelay(any(Runnable.class), eq(period), eq(period), eq(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testCloseStopsTheChecks() {
+        ScheduledFuture<?> checks = mock(ScheduledFuture.class);
+        doReturn(checks).when(scheduler).scheduleWithFixedDelay(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+        new LeakDetectingJdbiHandleManager(mock(JdbiHandleManager.class), Duration.ofSeconds(1), 1, scheduler, metricRegistry).close();
+        verify(checks, times(1)).cancel(false);
+    }
+
+    @Test
+    public void testArgumentsAreValidated() {
+        JdbiHandleManager delegate = mock(JdbiHandleManager.class);
+        assertThrows(IllegalArgumentException.class, () -> new LeakDetectingJdbiHandleManager(delegate, Duration.ZERO, 1, scheduler, metricRegistry));
+        assertThrows(IllegalArgumentException.class, () -> new LeakDetectingJdbiHandleManager(delegate, Duration.ofSeconds(1), -1, scheduler, metricRegistry));
+    }
+
+    @Test
+    public void testHandleStillOpenWhenANewScopeStartsIsRolledBackAndCleared() {
+        Handle leakedHandle = manager.get();
+        when(leakedHandle.isInTransaction()).thenReturn(true);
+        manager.enterScope();
+
+        verify(leakedHandle, times(1)).rollback();
+        verify(leakedHandle, times(1)).close();
+        assertNull(manager.peek());
+        assertNotSame(leakedHandle, manager.get());
+        assertEquals(1, metricRegistry.counter(LEAKED).getCount());
+    }
+
+    @Test
+    public void testClearedHandleIsNotLeaked() {
+        manager.get();
+        manager.clear();
+        manager.enterScope();
+        manager.check();
+
+        assertEquals(0, metricRegistry.counter(LEAKED).getCount());
+        verify(dbi, times(1)).open();
+    }
+
+    @Test
+    public void testEnterScopeIsForwardedToTheDelegate() {
+        JdbiHandleManager delegate = mock(JdbiHandleManager.class);
+        new LeakDetectingJdbiHandleManager(delegate, Duration.ofSeconds(1), 0, scheduler, metricRegistry).enterScope();
+        verify(delegate, times(1)).enterScope();
+    }
+
+    @Test
+    public void testHandleOutlivingItsThreadIsClosed() throws InterruptedException {
+        AtomicReference<Handle> leakedHandle = new AtomicReference<>();
+        Thread job = new Thread(() -> leakedHandle.set(manager.get()));
+        job.start();
+        job.join();
+
+        manager.check();
+        manager.check();
+        verify(leakedHandle.get(), times(1)).close();
+        assertEquals(1, metricRegistry.counter(LEAKED).getCount());
+    }
+
+    @Test
+    public void testOutermostDecoratorIsToldOfTheHandleOutlivingItsThread() throws InterruptedException {
+        InternalJdbiHandleManager outermost = mock(InternalJdbiHandleManager.class);
+        manager.decoratedBy(outermost);
+        AtomicReference<Handle> leakedHandle = new AtomicReference<>();
+        Thread job = new Thread(() -> leakedHandle.set(manager.get()));
+        job.start();
+        job.join();
+
+        manager.check();
+        verify(outermost, times(1)).closing(leakedHandle.get());
+        verify(leakedHandle.get(), times(1)).close();
+    }
+
+    @Test
+    public void testHandleOfALinkedScopeIsNotClosedWhenTheThreadOpeningItEnds() throws InterruptedException {
+        Handle handle = mock(Handle.class);
+        when(dbi.open()).thenReturn(handle);
+        manager = new LeakDetectingJdbiHandleManager(new LinkedRequestScopedJdbiHandleManager(dbi, true), Duration.ofMinutes(1), 1, scheduler, metricRegistry);
+        manager.deferBegin(opened -> opened.begin());
+        Thread child = manager.createThreadFactory().newThread(() -> manager.get());
+        child.start();
+        child.join();
+
+        manager.check();
+        verify(handle, never()).close();
+        assertEquals(0, metricRegistry.counter(LEAKED).getCount());
+        assertSame(handle, manager.get());
+    }
+
+    @Test
+    public void testDetachedHandleIsNotClosedWhenTheThreadOpeningItEnds() throws InterruptedException {
+        DetachedScope[] detached = new DetachedScope[1];
+        AtomicReference<Handle> handle = new AtomicReference<>();
+        Thread requestThread = new Thread(() -> {
+            handle.set(manager.get());
+            detached[0] = manager.detachScope();
+        });
+        requestThread.start();
+        requestThread.join();
+
+        manager.check();
+        verify(handle.get(), never()).close();
+        detached[0].run(() -> assertSame(handle.get(), manager.peek()));
+    }
+
+    @Test
+    public void testHandleOlderThanTheThresholdIsSuspectedOnce() throws InterruptedException {
+        manager = new LeakDetectingJdbiHandleManager(new RequestScopedJdbiHandleManager(dbi), Duration.ofNanos(1), 0, scheduler, metricRegistry);
+        Handle handle = manager.get();
+        Thread.sleep(1);
+        manager.check();
+        manager.check();
+
+        assertEquals(1, metricRegistry.counter(SUSPECTED).getCount());
+        assertEquals(0, metricRegistry.counter(LEAKED).getCount());
+        verify(handle, never()).close();
+    }
+}
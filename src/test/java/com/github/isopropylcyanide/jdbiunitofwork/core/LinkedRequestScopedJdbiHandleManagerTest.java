@@ -1,18 +1,34 @@
 package com.github.isopropylcyanide.jdbiunitofwork.core;
 
+import com.google.common.reflect.Reflection;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.stubbing.Answer;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -41,6 +57,23 @@ public class LinkedRequestScopedJdbiHandleManagerTest {
         verify(dbi, times(1)).open();
     }
 
+    @Test
+    public void testPeekReturnsParentHandleInChildThreads() throws InterruptedException {
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        assertNull(manager.peek());
+
+        manager.get();
+        Handle[] peekedInChild = new Handle[1];
+        Thread childThread = manager.createThreadFactory().newThread(() -> peekedInChild[0] = manager.peek());
+        childThread.start();
+        childThread.join();
+        assertSame(mockHandle, peekedInChild[0]);
+
+        manager.clear();
+        assertNull(manager.peek());
+    }
+
     @Test
     public void testGetSetsNewHandleForEachThread() throws InterruptedException {
         when(dbi.open()).thenAnswer((Answer<Handle>) invocation -> mock(Handle.class));
@@ -95,6 +128,228 @@ public class LinkedRequestScopedJdbiHandleManagerTest {
         verify(dbi, times(NUM_THREADS + 1)).open();
     }
 
+    @Test
+    public void testGetSetsSameHandleForChildThreadsRenamedByTheirPool() throws InterruptedException {
+        when(dbi.open()).thenAnswer((Answer<Handle>) invocation -> mock(Handle.class));
+        Handle parentHandle = manager.get();
+
+        Handle[] childHandle = new Handle[1];
+        Thread childThread = manager.createThreadFactory().newThread(() -> {
+            Thread.currentThread().setName("renamed-worker");
+            childHandle[0] = manager.get();
+        });
+        childThread.start();
+        childThread.join();
+        assertSame(parentHandle, childHandle[0]);
+        verify(dbi, times(1)).open();
+    }
+
+    @Test
+    public void testPropagatingExecutorServiceSharesTheHandleOfTheSubmitter() throws Exception {
+        when(dbi.open()).thenAnswer((Answer<Handle>) invocation -> mock(Handle.class));
+        ExecutorService service = manager.propagating(Executors.newFixedThreadPool(2));
+
+        Handle firstHandle = manager.get();
+        Future<Handle> firstChildHandle = service.submit(() -> manager.get());
+        assertSame(firstHandle, firstChildHandle.get());
+        assertEquals(manager.getConversationId(), service.submit(() -> manager.getConversationId()).get());
+        manager.clear();
+
+        Handle secondHandle = manager.get();
+        assertNotSame(firstHandle, secondHandle);
+        assertSame(secondHandle, service.submit(() -> manager.get()).get());
+        service.shutdown();
+        verify(dbi, times(2)).open();
+    }
+
+    @Test
+    public void testPropagatingExecutorRestoresTheConversationOfTheRunningThread() {
+        when(dbi.open()).thenAnswer((Answer<Handle>) invocation -> mock(Handle.class));
+        Handle ownHandle = manager.get();
+        Executor callerRuns = manager.propagating((Executor) Runnable::run);
+
+        callerRuns.execute(() -> assertSame(ownHandle, manager.get()));
+        assertSame(ownHandle, manager.get());
+        verify(dbi, times(1)).open();
+    }
+
+    @Test
+    public void testHandleIsClosedOnceTheLastChildIsDone() throws Exception {
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        ExecutorService service = manager.propagating(Executors.newSingleThreadExecutor());
+        manager.get();
+        CountDownLatch cleared = new CountDownLatch(1);
+        Future<Handle> child = service.submit(() -> {
+            cleared.await();
+            return manager.get();
+        });
+
+        manager.clear();
+        verify(mockHandle, never()).close();
+        cleared.countDown();
+        assertSame(mockHandle, child.get());
+        service.shutdown();
+        assertTrue(service.awaitTermination(1, TimeUnit.SECONDS));
+        verify(mockHandle, times(1)).close();
+    }
+
+    @Test
+    public void testThreadsOfAPoolCreatedFromTheThreadFactoryNeverKeepTheHandleOpen() throws Exception {
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        manager = new LinkedRequestScopedJdbiHandleManager(dbi, false, true);
+        ExecutorService service = Executors.newCachedThreadPool(manager.createThreadFactory());
+        manager.get();
+
+        assertSame(mockHandle, service.submit(() -> manager.get()).get());
+        assertNotNull(manager.getSqlObjectExecutor());
+        manager.beforeCommit(mockHandle);
+        manager.clear();
+        verify(mockHandle, times(1)).close();
+        assertThrows(IllegalStateException.class, () -> {
+            try {
+                service.submit(() -> manager.get()).get();
+            } catch (ExecutionException ex) {
+                throw ex.getCause();
+            }
+        });
+        service.shutdown();
+    }
+
+    @Test
+    public void testCommitWaitsUntilTheLastChildIsDone() throws Exception {
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        ExecutorService service = manager.propagating(Executors.newSingleThreadExecutor());
+        manager.get();
+        CountDownLatch childMayFinish = new CountDownLatch(1);
+        AtomicBoolean childDone = new AtomicBoolean();
+        service.submit(() -> {
+            childMayFinish.await();
+            childDone.set(manager.get() == mockHandle);
+            return null;
+        });
+
+        Thread finishingThread = new Thread(() -> {
+            Uninterruptibles.sleepUninterruptibly(50, TimeUnit.MILLISECONDS);
+            childMayFinish.countDown();
+        });
+        finishingThread.start();
+        manager.beforeCommit(mockHandle);
+        assertTrue(childDone.get());
+
+        manager.clear();
+        verify(mockHandle, times(1)).close();
+        service.shutdown();
+    }
+
+    @Test
+    public void testCommitDoesNotWaitWithoutOtherParticipants() {
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        manager.beforeCommit(mockHandle);
+
+        manager.get();
+        manager.beforeCommit(mockHandle);
+        Executor callerRuns = manager.propagating((Executor) Runnable::run);
+        callerRuns.execute(() -> manager.beforeCommit(mockHandle));
+    }
+
+    @Test
+    public void testCommitInterruptedWhileWaitingForChildrenFails() throws Exception {
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        ExecutorService service = manager.propagating(Executors.newSingleThreadExecutor());
+        manager.get();
+        CountDownLatch childMayFinish = new CountDownLatch(1);
+        service.submit(() -> {
+            childMayFinish.await();
+            return null;
+        });
+
+        Thread.currentThread().interrupt();
+        assertThrows(IllegalStateException.class, () -> manager.beforeCommit(mockHandle));
+        assertTrue(Thread.interrupted());
+        childMayFinish.countDown();
+        manager.clear();
+        service.shutdown();
+        assertTrue(service.awaitTermination(1, TimeUnit.SECONDS));
+        verify(mockHandle, times(1)).close();
+    }
+
+    @Test
+    public void testChildrenAreRefusedTheHandleOnceTheTransactionIsRolledBack() throws Exception {
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        ExecutorService service = manager.propagating(Executors.newSingleThreadExecutor());
+        manager.get();
+        CountDownLatch rolledBack = new CountDownLatch(1);
+        Future<Handle> child = service.submit(() -> {
+            rolledBack.await();
+            return manager.get();
+        });
+
+        manager.beforeRollback(mockHandle);
+        mockHandle.rollback();
+        manager.clear();
+        verify(mockHandle, never()).close();
+        rolledBack.countDown();
+        ExecutionException failure = assertThrows(ExecutionException.class, child::get);
+        assertTrue(failure.getCause() instanceof IllegalStateException);
+        service.shutdown();
+        assertTrue(service.awaitTermination(1, TimeUnit.SECONDS));
+        verify(mockHandle, times(1)).close();
+    }
+
+    @Test
+    public void testDeferredBeginIsKeptWhileChildrenMayStillOpenTheHandle() throws Exception {
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        manager = new LinkedRequestScopedJdbiHandleManager(dbi, true);
+        ExecutorService service = manager.propagating(Executors.newSingleThreadExecutor());
+        manager.deferBegin(handle -> handle.begin());
+        CountDownLatch done = new CountDownLatch(1);
+        service.submit(() -> {
+            done.await();
+            return null;
+        });
+
+        assertFalse(manager.discardDeferredBegin());
+        done.countDown();
+        service.shutdown();
+        assertTrue(service.awaitTermination(1, TimeUnit.SECONDS));
+        assertTrue(manager.discardDeferredBegin());
+        verify(dbi, never()).open();
+    }
+
+    @Test
+    public void testChildThreadFailsToGetAHandleOnceTheConversationIsClosed() throws Exception {
+        when(dbi.open()).thenAnswer((Answer<Handle>) invocation -> mock(Handle.class));
+        manager.get();
+        ThreadFactory threadFactory = manager.createThreadFactory();
+        manager.clear();
+
+        Throwable[] failure = new Throwable[1];
+        Thread childThread = threadFactory.newThread(() -> failure[0] = assertThrows(IllegalStateException.class, () -> manager.get()));
+        childThread.start();
+        childThread.join();
+        assertNotNull(failure[0]);
+    }
+
+    @Test
+    public void testClearInChildThreadDoesNotCloseTheParentHandle() throws Exception {
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        ExecutorService service = manager.propagating(Executors.newSingleThreadExecutor());
+        manager.get();
+
+        service.submit(() -> manager.clear()).get();
+        verify(mockHandle, never()).close();
+        assertSame(mockHandle, manager.peek());
+        service.shutdown();
+    }
+
     @Test
     public void testClearClosesHandleAndClearsHandle() {
         Handle mockHandle = mock(Handle.class);
@@ -106,9 +361,220 @@ public class LinkedRequestScopedJdbiHandleManagerTest {
         verify(mockHandle, times(1)).close();
     }
 
+    @Test
+    public void testAttachReusesTheSqlObjectAttachedToTheSameHandle() {
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        when(mockHandle.attach(DummyDao.class)).thenAnswer((Answer<DummyDao>) invocation -> mock(DummyDao.class));
+
+        DummyDao firstDao = manager.attach(DummyDao.class);
+        DummyDao secondDao = manager.attach(DummyDao.class);
+        assertSame(firstDao, secondDao);
+        verify(mockHandle, times(1)).attach(DummyDao.class);
+    }
+
+    @Test
+    public void testClearReleasesTheSqlObjectsAttachedToTheHandle() {
+        when(dbi.open()).thenAnswer((Answer<Handle>) invocation -> {
+            Handle handle = mock(Handle.class);
+            when(handle.attach(DummyDao.class)).thenAnswer((Answer<DummyDao>) attachInvocation -> mock(DummyDao.class));
+            return handle;
+        });
+
+        DummyDao firstDao = manager.attach(DummyDao.class);
+        manager.clear();
+        DummyDao secondDao = manager.attach(DummyDao.class);
+        assertNotSame(firstDao, secondDao);
+        verify(dbi, times(2)).open();
+    }
+
+    @Test
+    public void testDeferBeginIsNotSupportedUnlessEnabled() {
+        assertFalse(manager.deferBegin(handle -> handle.begin()));
+        assertFalse(manager.discardDeferredBegin());
+        verify(dbi, never()).open();
+    }
+
+    @Test
+    public void testDeferredBeginRunsWhenTheHandleIsFirstRequested() {
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        manager = new LinkedRequestScopedJdbiHandleManager(dbi, true);
+
+        assertTrue(manager.deferBegin(handle -> handle.begin()));
+        verify(dbi, never()).open();
+
+        manager.get();
+        manager.get();
+        verify(dbi, times(1)).open();
+        verify(mockHandle, times(1)).begin();
+        assertFalse(manager.discardDeferredBegin());
+    }
+
+    @Test
+    public void testDeferredBeginRunsWhenTheHandleIsFirstRequestedByAChildThread() throws InterruptedException {
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        manager = new LinkedRequestScopedJdbiHandleManager(dbi, true);
+        manager.deferBegin(handle -> handle.begin());
+
+        Thread childThread = manager.createThreadFactory().newThread(() -> assertEquals(mockHandle, manager.get()));
+        childThread.start();
+        childThread.join();
+
+        assertEquals(mockHandle, manager.get());
+        verify(dbi, times(1)).open();
+        verify(mockHandle, times(1)).begin();
+    }
+
+    @Test
+    public void testDeferredBeginIsNotAcceptedWhenTheHandleIsAlreadyOpen() {
+        when(dbi.open()).thenReturn(mock(Handle.class));
+        manager = new LinkedRequestScopedJdbiHandleManager(dbi, true);
+
+        manager.get();
+        assertFalse(manager.deferBegin(handle -> handle.begin()));
+    }
+
+    @Test
+    public void testDiscardedDeferredBeginNeverOpensAHandle() {
+        manager = new LinkedRequestScopedJdbiHandleManager(dbi, true);
+
+        assertTrue(manager.deferBegin(handle -> handle.begin()));
+        assertTrue(manager.discardDeferredBegin());
+        manager.clear();
+        verify(dbi, never()).open();
+    }
+
+    @Test
+    public void testFailedDeferredBeginClosesTheHandle() {
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        when(mockHandle.begin()).thenThrow(IllegalStateException.class);
+        manager = new LinkedRequestScopedJdbiHandleManager(dbi, true);
+
+        manager.deferBegin(handle -> handle.begin());
+        assertThrows(IllegalStateException.class, () -> manager.get());
+        verify(mockHandle, times(1)).close();
+    }
+
+    @Test
+    public void testDetachedConversationIsCompletedByThePropagatedThreadResumingIt() throws Exception {
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        manager.get();
+        ExecutorService executorService = manager.propagating(Executors.newSingleThreadExecutor());
+        CompletableFuture<DetachedScope> detached = new CompletableFuture<>();
+
+        Future<?> task = executorService.submit(() -> {
+            assertSame(mockHandle, manager.get());
+            detached.join().run(() -> {
+                manager.beforeCommit(mockHandle);
+                manager.get().commit();
+                manager.clear();
+            });
+        });
+        detached.complete(manager.detachScope());
+        assertNull(manager.peek());
+        task.get(30, TimeUnit.SECONDS);
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(30, TimeUnit.SECONDS));
+
+        verify(mockHandle, times(1)).commit();
+        verify(mockHandle, times(1)).close();
+    }
+
+    @Test
+    public void testDetachedConversationCanBeCompletedByAnyThread() throws InterruptedException {
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        manager.get();
+        DetachedScope detached = manager.detachScope();
+
+        Thread completingThread = new Thread(() -> detached.run(() -> {
+            assertSame(mockHandle, manager.peek());
+            manager.clear();
+        }));
+        completingThread.start();
+        completingThread.join();
+
+        verify(mockHandle, times(1)).close();
+        detached.run(() -> manager.clear());
+        verify(mockHandle, times(1)).close();
+    }
+
+    @Test
+    public void testChildThreadsCannotDetachTheConversation() throws InterruptedException {
+        manager.getConversationId();
+        DetachedScope[] detached = {mock(DetachedScope.class)};
+        Thread childThread = manager.createThreadFactory().newThread(() -> detached[0] = manager.detachScope());
+        childThread.start();
+        childThread.join();
+        assertNull(detached[0]);
+    }
+
     @Test
     public void testClearDoesNothingWhenHandleIsNull() {
         manager.clear();
         verify(dbi, never()).open();
     }
+
+    @Test
+    public void testSqlObjectInvocationsAreRunImmediatelyWithoutSerialization() {
+        assertNull(manager.getSqlObjectExecutor());
+
+        manager = new LinkedRequestScopedJdbiHandleManager(dbi, false, true);
+        assertNull(manager.getSqlObjectExecutor());
+        verify(dbi, never()).open();
+    }
+
+    @Test
+    public void testSqlObjectInvocationsOfChildrenNeverOverlapOnTheSharedHandle() throws InterruptedException {
+        final int children = 64;
+        final int invocationsPerChild = 50;
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        CounterDao counter = () -> {
+            if (running.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            completed.incrementAndGet();
+            running.decrementAndGet();
+        };
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        when(mockHandle.attach(CounterDao.class)).thenReturn(counter);
+        manager = new LinkedRequestScopedJdbiHandleManager(dbi, false, true);
+        CounterDao proxiedDao = Reflection.newProxy(CounterDao.class, new ManagedHandleInvocationHandler<>(manager, CounterDao.class));
+        manager.get();
+
+        CountDownLatch startGate = new CountDownLatch(1);
+        ExecutorService executorService = manager.propagating(Executors.newFixedThreadPool(children));
+        for (int i = 0; i < children; i++) {
+            executorService.execute(() -> {
+                Uninterruptibles.awaitUninterruptibly(startGate);
+                for (int j = 0; j < invocationsPerChild; j++) {
+                    proxiedDao.increment();
+                }
+            });
+        }
+        startGate.countDown();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(30, TimeUnit.SECONDS));
+        manager.clear();
+
+        assertEquals(0, overlaps.get());
+        assertEquals(children * invocationsPerChild, completed.get());
+        verify(dbi, times(1)).open();
+        verify(mockHandle, times(1)).close();
+    }
+
+    interface DummyDao {
+    }
+
+    interface CounterDao {
+
+        void increment();
+    }
 }
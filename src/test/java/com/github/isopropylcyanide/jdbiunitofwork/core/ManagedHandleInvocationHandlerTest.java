@@ -5,7 +5,11 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.skife.jdbi.v2.Handle;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -16,7 +20,7 @@ import static org.mockito.Mockito.when;
 @SuppressWarnings({"UnstableApiUsage"})
 public class ManagedHandleInvocationHandlerTest {
 
-    private JdbiHandleManager handleManager;
+    private InternalJdbiHandleManager handleManager;
 
     private Handle mockHandle;
 
@@ -24,9 +28,10 @@ public class ManagedHandleInvocationHandlerTest {
 
     @BeforeEach
     public void setUp() {
-        handleManager = mock(JdbiHandleManager.class);
+        handleManager = mock(InternalJdbiHandleManager.class);
         mockHandle = mock(Handle.class);
         when(handleManager.get()).thenReturn(mockHandle);
+        when(handleManager.attach(any())).thenCallRealMethod();
         Class<DummyDao> declaringClass = DummyDao.class;
         ManagedHandleInvocationHandler<DummyDao> proxy = new ManagedHandleInvocationHandler<>(handleManager, declaringClass);
         Object proxiedInstance = Reflection.newProxy(declaringClass, proxy);
@@ -41,6 +46,75 @@ public class ManagedHandleInvocationHandlerTest {
         verify(mockHandle, times(1)).attach(any());
     }
 
+    @Test
+    public void testSqlObjectIsAttachedThroughTheHandleManager() {
+        proxiedDao.query();
+        proxiedDao.query();
+        verify(handleManager, times(2)).attach(DummyDao.class);
+    }
+
+    @Test
+    public void testInvocationsRunOnTheExecutorOfTheHandleManager() {
+        List<Runnable> executed = new ArrayList<>();
+        when(handleManager.getSqlObjectExecutor()).thenReturn(task -> {
+            executed.add(task);
+            task.run();
+        });
+        proxiedDao.query();
+        assertEquals(1, executed.size());
+        verify(mockHandle, times(1)).select(any());
+        assertThrows(IllegalStateException.class, () -> proxiedDao.fail());
+    }
+
+    @Test
+    public void testInterceptorsAreChainedInOrderBeforeTheAttachedInstance() {
+        List<String> intercepted = new ArrayList<>();
+        DummyDao dao = proxyWith(
+                invocation -> {
+                    intercepted.add("first " + invocation.getMethod().getName());
+                    return invocation.proceed();
+                },
+                invocation -> {
+                    intercepted.add("second " + invocation.getSqlObjectType().getSimpleName());
+                    return invocation.proceed();
+                });
+        dao.query();
+
+        assertEquals(List.of("first query", "second DummyDao"), intercepted);
+        verify(mockHandle, times(1)).select(any());
+    }
+
+    @Test
+    public void testInterceptorMayCompleteTheInvocationWithoutTheAttachedInstance() {
+        DummyDao dao = proxyWith(invocation -> null);
+        dao.query();
+        dao.fail();
+
+        verify(handleManager, never()).attach(any());
+    }
+
+    @Test
+    public void testInterceptorsRunOnTheExecutorOfTheHandleManager() {
+        List<Runnable> executed = new ArrayList<>();
+        List<Runnable> executedWhenIntercepted = new ArrayList<>();
+        when(handleManager.getSqlObjectExecutor()).thenReturn(task -> {
+            executed.add(task);
+            task.run();
+        });
+        DummyDao dao = proxyWith(invocation -> {
+            executedWhenIntercepted.addAll(executed);
+            return invocation.proceed();
+        });
+        dao.query();
+
+        assertEquals(1, executedWhenIntercepted.size());
+    }
+
+    @Test
+    public void testExceptionThrownByTheAttachedInstanceIsNotWrapped() {
+        assertThrows(IllegalStateException.class, () -> proxiedDao.fail());
+    }
+
     @Test
     public void testToStringCallsTheInstanceMethodAndNotTheProxyMethod() {
         String str = proxiedDao.toString();
@@ -48,8 +122,15 @@ public class ManagedHandleInvocationHandlerTest {
         verify(handleManager, never()).get();
     }
 
+    private DummyDao proxyWith(SqlObjectInterceptor... interceptors) {
+        ManagedHandleInvocationHandler<DummyDao> handler = new ManagedHandleInvocationHandler<>(handleManager, DummyDao.class, SqlObjectDispatchTable.of(DummyDao.class), List.of(interceptors));
+        return Reflection.newProxy(DummyDao.class, handler);
+    }
+
     interface DummyDao {
         void query();
+
+        void fail();
     }
 
     class DummyDaoImpl implements DummyDao {
@@ -65,5 +146,10 @@ public class ManagedHandleInvocationHandlerTest {
             handle.select("select * from some_table");
             assertEquals(handle, mockHandle);
         }
+
+        @Override
+        public void fail() {
+            throw new IllegalStateException("Expected failure");
+        }
     }
 }
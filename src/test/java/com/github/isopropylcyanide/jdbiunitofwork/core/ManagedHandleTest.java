@@ -0,0 +1,80 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.stubbing.Answer;
+import org.skife.jdbi.v2.Handle;
+
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ManagedHandleTest {
+
+    private Handle handle;
+
+    private ManagedHandle managedHandle;
+
+    @BeforeEach
+    public void setUp() {
+        handle = mock(Handle.class);
+        when(handle.attach(DaoA.class)).thenAnswer((Answer<DaoA>) invocation -> mock(DaoA.class));
+        when(handle.attach(DaoB.class)).thenAnswer((Answer<DaoB>) invocation -> mock(DaoB.class));
+        this.managedHandle = new ManagedHandle(handle);
+    }
+
+    @Test
+    public void testAttachIsCachedPerSqlObjectType() {
+        DaoA firstDaoA = managedHandle.attach(DaoA.class);
+        DaoA secondDaoA = managedHandle.attach(DaoA.class);
+        DaoB daoB = managedHandle.attach(DaoB.class);
+
+        assertSame(firstDaoA, secondDaoA);
+        assertNotSame(firstDaoA, daoB);
+        verify(handle, times(1)).attach(DaoA.class);
+        verify(handle, times(1)).attach(DaoB.class);
+    }
+
+    @Test
+    public void testCloseClosesTheHandle() {
+        managedHandle.attach(DaoA.class);
+        managedHandle.close();
+        verify(handle, times(1)).close();
+    }
+
+    @Test
+    public void testClosingIsToldBeforeTheHandleIsClosed() {
+        @SuppressWarnings("unchecked")
+        Consumer<Handle> closing = mock(Consumer.class);
+        Runnable onClose = mock(Runnable.class);
+        new ManagedHandle(handle, closing, onClose).close();
+
+        InOrder inOrder = inOrder(closing, handle, onClose);
+        inOrder.verify(closing).accept(handle);
+        inOrder.verify(handle).close();
+        inOrder.verify(onClose).run();
+    }
+
+    @Test
+    public void testHandleIsClosedEvenIfClosingFails() {
+        ManagedHandle failing = new ManagedHandle(handle, h -> {
+            throw new IllegalStateException();
+        });
+        assertThrows(IllegalStateException.class, failing::close);
+        verify(handle, times(1)).close();
+    }
+
+    interface DaoA {
+    }
+
+    interface DaoB {
+    }
+}
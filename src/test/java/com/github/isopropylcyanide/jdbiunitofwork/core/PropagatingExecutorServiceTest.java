@@ -0,0 +1,80 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PropagatingExecutorServiceTest {
+
+    private ExecutorService delegate;
+
+    private List<String> calls;
+
+    private ExecutorService executorService;
+
+    @BeforeEach
+    public void setUp() {
+        delegate = mock(ExecutorService.class);
+        calls = new ArrayList<>();
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(delegate).execute(any(Runnable.class));
+        this.executorService = new PropagatingExecutorService(delegate, task -> {
+            calls.add("captured");
+            return () -> {
+                calls.add("restored");
+                task.run();
+            };
+        }, task -> calls.add("discarded"));
+    }
+
+    @Test
+    public void testEveryKindOfSubmissionIsDecorated() throws Exception {
+        executorService.execute(() -> calls.add("execute"));
+        executorService.submit(() -> calls.add("submit")).get();
+        assertEquals("call", executorService.submit(() -> "call").get());
+        assertEquals(List.of("captured", "restored", "execute", "captured", "restored", "submit", "captured", "restored"), calls);
+    }
+
+    @Test
+    public void testTasksWhichNeverRunAreDiscarded() {
+        doThrow(RejectedExecutionException.class).when(delegate).execute(any(Runnable.class));
+        assertThrows(RejectedExecutionException.class, () -> executorService.execute(() -> calls.add("execute")));
+
+        when(delegate.shutdownNow()).thenReturn(List.of(() -> {
+        }));
+        assertEquals(1, executorService.shutdownNow().size());
+        assertEquals(List.of("captured", "discarded", "discarded"), calls);
+    }
+
+    @Test
+    public void testLifecycleIsForwardedToDelegate() throws InterruptedException {
+        when(delegate.awaitTermination(1, TimeUnit.SECONDS)).thenReturn(true);
+        when(delegate.isShutdown()).thenReturn(true);
+        when(delegate.isTerminated()).thenReturn(true);
+
+        executorService.shutdown();
+        executorService.shutdownNow();
+        assertTrue(executorService.awaitTermination(1, TimeUnit.SECONDS));
+        assertTrue(executorService.isShutdown());
+        assertTrue(executorService.isTerminated());
+        verify(delegate).shutdown();
+        verify(delegate).shutdownNow();
+    }
+}
@@ -0,0 +1,152 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.isopropylcyanide.jdbiunitofwork.core.BatchableUpdateTest.CounterDao;
+import com.google.common.reflect.Reflection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings({"UnstableApiUsage"})
+public class QueryCachingJdbiHandleManagerTest {
+
+    private static final String HITS = "com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager.queryCache.hits";
+    private static final String MISSES = "com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager.queryCache.misses";
+
+    private DBI dbi;
+
+    private CounterDao attachedDao;
+
+    private MetricRegistry metricRegistry;
+
+    private QueryCachingJdbiHandleManager manager;
+
+    private CounterDao proxiedDao;
+
+    @BeforeEach
+    public void setUp() {
+        dbi = mock(DBI.class);
+        attachedDao = mock(CounterDao.class);
+        when(dbi.open()).thenAnswer((Answer<Handle>) invocation -> {
+            Handle handle = mock(Handle.class);
+            when(handle.attach(CounterDao.class)).thenReturn(attachedDao);
+            return handle;
+        });
+        when(attachedDao.getHits(1)).thenReturn(10L);
+        when(attachedDao.getName(1)).thenReturn("one");
+        metricRegistry = new MetricRegistry();
+        manager = new QueryCachingJdbiHandleManager(new RequestScopedJdbiHandleManager(dbi), metricRegistry);
+        proxiedDao = proxy(manager);
+    }
+
+    @Test
+    public void testQueryInvokedAgainWithTheSameArgumentsIsServedFromTheCache() {
+        assertEquals(10L, proxiedDao.getHits(1));
+        assertEquals(10L, proxiedDao.getHits(1));
+
+        verify(attachedDao, times(1)).getHits(1);
+        assertEquals(1, metricRegistry.counter(HITS).getCount());
+        assertEquals(1, metricRegistry.counter(MISSES).getCount());
+    }
+
+    @Test
+    public void testQueryInvokedWithOtherArgumentsIsNotServedFromTheCache() {
+        proxiedDao.getHits(1);
+        proxiedDao.getHits(2);
+
+        verify(attachedDao, times(1)).getHits(1);
+        verify(attachedDao, times(1)).getHits(2);
+        assertEquals(2, metricRegistry.counter(MISSES).getCount());
+    }
+
+    @Test
+    public void testNullResultsAreCached() {
+        assertNull(proxiedDao.getName(2));
+        assertNull(proxiedDao.getName(2));
+        verify(attachedDao, times(1)).getName(2);
+    }
+
+    @Test
+    public void testWriteInvalidatesOnlyTheQueriesOfItsTable() {
+        proxiedDao.getHits(1);
+        proxiedDao.getName(1);
+        proxiedDao.insert(1, 20);
+        proxiedDao.getHits(1);
+        proxiedDao.getName(1);
+
+        verify(attachedDao, times(2)).getHits(1);
+        verify(attachedDao, times(1)).getName(1);
+    }
+
+    @Test
+    public void testStatementOfUnknownTablesInvalidatesTheWholeCache() {
+        proxiedDao.getHits(1);
+        proxiedDao.getName(1);
+        proxiedDao.recount();
+        proxiedDao.getHits(1);
+        proxiedDao.getName(1);
+
+        verify(attachedDao, times(2)).getHits(1);
+        verify(attachedDao, times(2)).getName(1);
+    }
+
+    @Test
+    public void testQueryOfUnknownTablesIsNotCached() {
+        proxiedDao.getAccountHits(1);
+        proxiedDao.getAccountHits(1);
+
+        verify(attachedDao, times(2)).getAccountHits(1);
+        assertEquals(0, metricRegistry.counter(MISSES).getCount());
+    }
+
+    @Test
+    public void testQueryWhichWritesIsNotCachedAndInvalidatesTheQueriesOfItsTable() {
+        proxiedDao.getHits(1);
+        proxiedDao.getName(1);
+        proxiedDao.create(2);
+        proxiedDao.create(2);
+        proxiedDao.getHits(1);
+        proxiedDao.getName(1);
+
+        verify(attachedDao, times(2)).create(2);
+        verify(attachedDao, times(2)).getHits(1);
+        verify(attachedDao, times(1)).getName(1);
+    }
+
+    @Test
+    public void testCacheIsDiscardedWhenTheHandleIsCleared() {
+        proxiedDao.getHits(1);
+        manager.clear();
+        proxiedDao.getHits(1);
+
+        verify(attachedDao, times(2)).getHits(1);
+        verify(dbi, times(2)).open();
+    }
+
+    @Test
+    public void testNothingIsCachedWithoutAHandleScopedAcrossInvocations() {
+        manager = new QueryCachingJdbiHandleManager(new DefaultJdbiHandleManager(dbi), metricRegistry);
+        proxiedDao = proxy(manager);
+        proxiedDao.getHits(1);
+        proxiedDao.getHits(1);
+
+        verify(attachedDao, times(2)).getHits(1);
+        assertEquals(0, metricRegistry.counter(HITS).getCount());
+    }
+
+    private static CounterDao proxy(QueryCachingJdbiHandleManager manager) {
+        ManagedHandleInvocationHandler<CounterDao> handler = new ManagedHandleInvocationHandler<>(manager, CounterDao.class, SqlObjectDispatchTable.of(CounterDao.class), List.of(manager));
+        return Reflection.newProxy(CounterDao.class, handler);
+    }
+}
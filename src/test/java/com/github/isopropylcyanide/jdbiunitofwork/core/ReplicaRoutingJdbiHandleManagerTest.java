@@ -0,0 +1,91 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReplicaRoutingJdbiHandleManagerTest {
+
+    private DBI primary;
+
+    private DBI replica;
+
+    private Handle primaryHandle;
+
+    private Handle replicaHandle;
+
+    private ReplicaSelector replicaSelector;
+
+    private ReplicaRoutingJdbiHandleManager manager;
+
+    @BeforeEach
+    public void setUp() {
+        primary = mock(DBI.class);
+        replica = mock(DBI.class);
+        primaryHandle = mock(Handle.class);
+        replicaHandle = mock(Handle.class);
+        when(primary.open()).thenReturn(primaryHandle);
+        when(replica.open()).thenReturn(replicaHandle);
+        replicaSelector = mock(ReplicaSelector.class);
+        when(replicaSelector.select(Lists.newArrayList(replica))).thenReturn(replica);
+        this.manager = new ReplicaRoutingJdbiHandleManager(primary, Lists.newArrayList(replica), replicaSelector);
+    }
+
+    @Test
+    public void testGetOpensHandleFromPrimaryByDefault() {
+        assertEquals(primaryHandle, manager.get());
+        verify(replica, never()).open();
+        verify(replicaSelector, never()).select(Lists.newArrayList(replica));
+    }
+
+    @Test
+    public void testGetOpensHandleFromReplicaWhenMarkedReadOnly() {
+        manager.markReadOnly();
+        assertEquals(replicaHandle, manager.get());
+        assertEquals(replicaHandle, manager.get());
+        verify(primary, never()).open();
+        verify(replica, times(1)).open();
+    }
+
+    @Test
+    public void testClearReleasesTheReplicaAndResetsTheReadOnlyMark() {
+        manager.markReadOnly();
+        manager.get();
+        manager.clear();
+        verify(replicaHandle, times(1)).close();
+        verify(replicaSelector, times(1)).release(replica);
+
+        assertEquals(primaryHandle, manager.get());
+    }
+
+    @Test
+    public void testDetachedScopeKeepsTheReadOnlyMark() {
+        manager.markReadOnly();
+        DetachedScope detached = manager.detachScope();
+        assertEquals(primaryHandle, manager.get());
+
+        Handle[] detachedHandle = new Handle[1];
+        detached.run(() -> detachedHandle[0] = manager.get());
+        assertEquals(replicaHandle, detachedHandle[0]);
+        assertEquals(primaryHandle, manager.get());
+    }
+
+    @Test
+    public void testReplicaIsReleasedWhenOpeningTheHandleFails() {
+        when(replica.open()).thenThrow(IllegalStateException.class);
+        manager.markReadOnly();
+
+        assertThrows(IllegalStateException.class, () -> manager.get());
+        verify(replicaSelector, times(1)).release(replica);
+    }
+}
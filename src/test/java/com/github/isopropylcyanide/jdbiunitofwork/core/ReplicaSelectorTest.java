@@ -0,0 +1,44 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Test;
+import org.skife.jdbi.v2.DBI;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+public class ReplicaSelectorTest {
+
+    private final DBI replicaA = mock(DBI.class);
+
+    private final DBI replicaB = mock(DBI.class);
+
+    private final DBI replicaC = mock(DBI.class);
+
+    private final List<DBI> replicas = Lists.newArrayList(replicaA, replicaB, replicaC);
+
+    @Test
+    public void testRoundRobinCyclesThroughTheReplicas() {
+        ReplicaSelector selector = ReplicaSelector.roundRobin();
+        assertEquals(replicaA, selector.select(replicas));
+        assertEquals(replicaB, selector.select(replicas));
+        assertEquals(replicaC, selector.select(replicas));
+        assertEquals(replicaA, selector.select(replicas));
+    }
+
+    @Test
+    public void testLeastOutstandingHandlesPicksTheLeastLoadedReplica() {
+        LeastOutstandingHandlesReplicaSelector selector = (LeastOutstandingHandlesReplicaSelector) ReplicaSelector.leastOutstandingHandles();
+        assertEquals(replicaA, selector.select(replicas));
+        assertEquals(replicaB, selector.select(replicas));
+        assertEquals(replicaC, selector.select(replicas));
+
+        selector.release(replicaB);
+        assertEquals(replicaB, selector.select(replicas));
+        assertEquals(1, selector.getOutstandingHandles(replicaA));
+        assertEquals(1, selector.getOutstandingHandles(replicaB));
+        assertEquals(1, selector.getOutstandingHandles(replicaC));
+    }
+}
@@ -2,13 +2,20 @@ package com.github.isopropylcyanide.jdbiunitofwork.core;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.mockito.stubbing.Answer;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -37,6 +44,20 @@ public class RequestScopedJdbiHandleManagerTest {
         verify(dbi, times(1)).open();
     }
 
+    @Test
+    public void testPeekReturnsHandleOnlyOnceOpenedUntilCleared() {
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        assertNull(manager.peek());
+        verify(dbi, never()).open();
+
+        manager.get();
+        assertSame(mockHandle, manager.peek());
+
+        manager.clear();
+        assertNull(manager.peek());
+    }
+
     @Test
     public void testGetSetsNewHandleForEachThread() throws InterruptedException {
         when(dbi.open()).thenAnswer((Answer<Handle>) invocation -> mock(Handle.class));
@@ -59,6 +80,144 @@ public class RequestScopedJdbiHandleManagerTest {
         verify(mockHandle, times(1)).close();
     }
 
+    @Test
+    public void testOutermostDecoratorIsToldOfTheHandleBeforeItIsClosed() {
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        InternalJdbiHandleManager decorator = mock(InternalJdbiHandleManager.class);
+        manager.decoratedBy(decorator);
+
+        manager.get();
+        verify(decorator, never()).closing(mockHandle);
+        manager.clear();
+        InOrder inOrder = inOrder(decorator, mockHandle);
+        inOrder.verify(decorator).closing(mockHandle);
+        inOrder.verify(mockHandle).close();
+    }
+
+    @Test
+    public void testAttachReusesTheSqlObjectAttachedToTheSameHandle() {
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        when(mockHandle.attach(DummyDao.class)).thenAnswer((Answer<DummyDao>) invocation -> mock(DummyDao.class));
+
+        DummyDao firstDao = manager.attach(DummyDao.class);
+        DummyDao secondDao = manager.attach(DummyDao.class);
+        assertSame(firstDao, secondDao);
+        verify(mockHandle, times(1)).attach(DummyDao.class);
+    }
+
+    @Test
+    public void testClearReleasesTheSqlObjectsAttachedToTheHandle() {
+        when(dbi.open()).thenAnswer((Answer<Handle>) invocation -> {
+            Handle handle = mock(Handle.class);
+            when(handle.attach(DummyDao.class)).thenAnswer((Answer<DummyDao>) attachInvocation -> mock(DummyDao.class));
+            return handle;
+        });
+
+        DummyDao firstDao = manager.attach(DummyDao.class);
+        manager.clear();
+        DummyDao secondDao = manager.attach(DummyDao.class);
+        assertNotSame(firstDao, secondDao);
+        verify(dbi, times(2)).open();
+    }
+
+    @Test
+    public void testDeferBeginIsNotSupportedUnlessEnabled() {
+        assertFalse(manager.deferBegin(handle -> handle.begin()));
+        assertFalse(manager.discardDeferredBegin());
+        verify(dbi, never()).open();
+    }
+
+    @Test
+    public void testDeferredBeginRunsWhenTheHandleIsFirstRequested() {
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        manager = new RequestScopedJdbiHandleManager(dbi, true);
+
+        assertTrue(manager.deferBegin(handle -> handle.begin()));
+        verify(dbi, never()).open();
+
+        manager.get();
+        manager.get();
+        verify(dbi, times(1)).open();
+        verify(mockHandle, times(1)).begin();
+        assertFalse(manager.discardDeferredBegin());
+    }
+
+    @Test
+    public void testDeferredBeginIsNotAcceptedWhenTheHandleIsAlreadyOpen() {
+        when(dbi.open()).thenReturn(mock(Handle.class));
+        manager = new RequestScopedJdbiHandleManager(dbi, true);
+
+        manager.get();
+        assertFalse(manager.deferBegin(handle -> handle.begin()));
+    }
+
+    @Test
+    public void testDiscardedDeferredBeginNeverOpensAHandle() {
+        manager = new RequestScopedJdbiHandleManager(dbi, true);
+
+        assertTrue(manager.deferBegin(handle -> handle.begin()));
+        assertTrue(manager.discardDeferredBegin());
+        manager.clear();
+        verify(dbi, never()).open();
+    }
+
+    @Test
+    public void testFailedDeferredBeginClosesTheHandle() {
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        when(mockHandle.begin()).thenThrow(IllegalStateException.class);
+        manager = new RequestScopedJdbiHandleManager(dbi, true);
+
+        manager.deferBegin(handle -> handle.begin());
+        assertThrows(IllegalStateException.class, () -> manager.get());
+        verify(mockHandle, times(1)).close();
+    }
+
+    @Test
+    public void testDetachedScopeKeepsTheHandleUntilClearedWithinIt() throws InterruptedException {
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        manager.get();
+
+        DetachedScope detached = manager.detachScope();
+        assertNull(manager.peek());
+        verify(mockHandle, never()).close();
+
+        Handle[] peeked = new Handle[2];
+        Thread completingThread = new Thread(() -> {
+            detached.run(() -> peeked[0] = manager.peek());
+            detached.run(() -> {
+                manager.clear();
+                peeked[1] = manager.peek();
+            });
+        });
+        completingThread.start();
+        completingThread.join();
+
+        assertSame(mockHandle, peeked[0]);
+        assertNull(peeked[1]);
+        verify(mockHandle, times(1)).close();
+        verify(dbi, times(1)).open();
+    }
+
+    @Test
+    public void testDetachedScopeRunsTheDeferredBeginOnItsFirstHandle() {
+        Handle mockHandle = mock(Handle.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        manager = new RequestScopedJdbiHandleManager(dbi, true);
+        manager.deferBegin(handle -> handle.begin());
+
+        DetachedScope detached = manager.detachScope();
+        assertFalse(manager.discardDeferredBegin());
+        detached.run(() -> manager.get());
+
+        verify(mockHandle, times(1)).begin();
+        assertNull(manager.peek());
+    }
+
     @Test
     public void testClearDoesNothingWhenHandleIsNull() {
         manager.clear();
@@ -69,4 +228,7 @@ public class RequestScopedJdbiHandleManagerTest {
     public void testCreateThreadFactoryIsNotSupported() {
         assertThrows(UnsupportedOperationException.class, () -> manager.createThreadFactory());
     }
+
+    interface DummyDao {
+    }
 }
@@ -0,0 +1,267 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.isopropylcyanide.jdbiunitofwork.core.BatchableUpdateTest.CounterDao;
+import com.github.isopropylcyanide.jdbiunitofwork.JdbiCacheable;
+import com.google.common.reflect.Reflection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings({"UnstableApiUsage"})
+public class SharedQueryCachingJdbiHandleManagerTest {
+
+    private static final String HITS = "com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager.sharedQueryCache.hits";
+    private static final String MISSES = "com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager.sharedQueryCache.misses";
+
+    private DBI dbi;
+
+    private CounterDao attachedDao;
+
+    private boolean inTransaction;
+
+    private MetricRegistry metricRegistry;
+
+    private SharedQueryCachingJdbiHandleManager manager;
+
+    private CounterDao proxiedDao;
+
+    @BeforeEach
+    public void setUp() {
+        dbi = mock(DBI.class);
+        attachedDao = mock(CounterDao.class);
+        when(dbi.open()).thenAnswer((Answer<Handle>) invocation -> {
+            Handle handle = mock(Handle.class);
+            when(handle.attach(CounterDao.class)).thenReturn(attachedDao);
+            when(handle.isInTransaction()).thenAnswer(isInTransaction -> inTransaction);
+            return handle;
+        });
+        when(attachedDao.getCachedName(1)).thenReturn("one");
+        metricRegistry = new MetricRegistry();
+        manager = new SharedQueryCachingJdbiHandleManager(new RequestScopedJdbiHandleManager(dbi), metricRegistry);
+        proxiedDao = proxy(manager);
+    }
+
+    @Test
+    public void testCachedResultIsServedAcrossUnitsOfWorkWithoutAHandle() {
+        assertEquals("one", proxiedDao.getCachedName(1));
+        manager.clear();
+        assertEquals("one", proxiedDao.getCachedName(1));
+
+        verify(attachedDao, times(1)).getCachedName(1);
+        verify(dbi, times(1)).open();
+        assertNull(manager.peek());
+        assertEquals(1, metricRegistry.counter(HITS).getCount());
+        assertEquals(1, metricRegistry.counter(MISSES).getCount());
+    }
+
+    @Test
+    public void testNullResultsAreCached() {
+        assertNull(proxiedDao.getCachedName(2));
+        assertNull(proxiedDao.getCachedName(2));
+        verify(attachedDao, times(1)).getCachedName(2);
+    }
+
+    @Test
+    public void testMethodsWithoutTheAnnotationAreNotCached() {
+        proxiedDao.getName(1);
+        proxiedDao.getName(1);
+        verify(attachedDao, times(2)).getName(1);
+    }
+
+    @Test
+    public void testWriteOutsideOfATransactionInvalidatesRightAway() {
+        proxiedDao.getCachedName(1);
+        proxiedDao.rename(1, "uno");
+        proxiedDao.getCachedName(1);
+
+        verify(attachedDao, times(2)).getCachedName(1);
+    }
+
+    @Test
+    public void testWriteWithinATransactionInvalidatesOnceCommitted() throws InterruptedException {
+        proxiedDao.getCachedName(1);
+        manager.clear();
+
+        inTransaction = true;
+        Handle handle = manager.get();
+        proxiedDao.rename(1, "uno");
+        proxiedDao.getCachedName(1);
+        verify(attachedDao, times(2)).getCachedName(1);
+
+        Thread otherRequest = new Thread(() -> proxiedDao.getCachedName(1));
+        otherRequest.start();
+        otherRequest.join();
+        verify(attachedDao, times(2)).getCachedName(1);
+
+        manager.afterCommit(handle);
+        manager.clear();
+        proxiedDao.getCachedName(1);
+        verify(attachedDao, times(3)).getCachedName(1);
+    }
+
+    @Test
+    public void testWriteToOtherTablesKeepsTheCache() {
+        proxiedDao.getCachedName(1);
+        proxiedDao.insert(1, 10);
+        proxiedDao.getCachedName(1);
+
+        verify(attachedDao, times(1)).getCachedName(1);
+    }
+
+    @Test
+    public void testQueryWhichWritesInvalidatesTheCachesOfItsTable() {
+        proxiedDao.getCachedName(1);
+        proxiedDao.create(2);
+        proxiedDao.getCachedName(1);
+        verify(attachedDao, times(1)).getCachedName(1);
+
+        proxiedDao.getCachedCount();
+        proxiedDao.create(2);
+        proxiedDao.getCachedCount();
+        verify(attachedDao, times(2)).getCachedCount();
+    }
+
+    @Test
+    public void testWriteOfUnknownTablesInvalidatesEveryCache() {
+        proxiedDao.getCachedName(1);
+        proxiedDao.recount();
+        proxiedDao.getCachedName(1);
+
+        verify(attachedDao, times(2)).getCachedName(1);
+    }
+
+    @Test
+    public void testUncommittedWritesAreForgottenWhenTheHandleIsCleared() {
+        proxiedDao.getCachedName(1);
+        manager.clear();
+
+        inTransaction = true;
+        Handle handle = manager.get();
+        proxiedDao.rename(1, "uno");
+        manager.clear();
+        manager.afterCommit(handle);
+        proxiedDao.getCachedName(1);
+
+        verify(attachedDao, times(1)).getCachedName(1);
+    }
+
+    @Test
+    public void testUncommittedWritesAreForgottenOnRollback() {
+        inTransaction = true;
+        Handle handle = manager.get();
+        proxiedDao.rename(1, "uno");
+        manager.beforeRollback(handle);
+        proxiedDao.getCachedName(1);
+        proxiedDao.getCachedName(1);
+
+        verify(attachedDao, times(1)).getCachedName(1);
+    }
+
+    @Test
+    public void testWritesAreKeptUntilCommittedWhileChildrenStillShareTheHandle() throws Exception {
+        manager = new SharedQueryCachingJdbiHandleManager(new LinkedRequestScopedJdbiHandleManager(dbi), metricRegistry);
+        proxiedDao = proxy(manager);
+        ExecutorService executorService = manager.propagating(Executors.newSingleThreadExecutor());
+        proxiedDao.getCachedName(1);
+        manager.clear();
+
+        inTransaction = true;
+        Handle handle = manager.get();
+        CountDownLatch childMayFinish = new CountDownLatch(1);
+        executorService.submit(() -> {
+            childMayFinish.await();
+            return null;
+        });
+        proxiedDao.rename(1, "uno");
+        manager.clear();
+        manager.afterCommit(handle);
+        childMayFinish.countDown();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(1, TimeUnit.SECONDS));
+
+        proxiedDao.getCachedName(1);
+        verify(attachedDao, times(2)).getCachedName(1);
+    }
+
+    @Test
+    public void testResultReadBeforeAnInvalidationIsNotCached() {
+        when(attachedDao.getCachedName(1)).thenAnswer(invocation -> {
+            proxiedDao.rename(1, "uno");
+            return "one";
+        });
+        proxiedDao.getCachedName(1);
+        proxiedDao.getCachedName(1);
+
+        verify(attachedDao, times(2)).getCachedName(1);
+    }
+
+    @Test
+    public void testSchemaQualifiedTablesAreInvalidatedByWritesToTheirName() {
+        when(attachedDao.getQualifiedCachedName(1)).thenReturn("one");
+        proxiedDao.getQualifiedCachedName(1);
+        proxiedDao.getQualifiedCachedName(1);
+        proxiedDao.rename(1, "uno");
+        proxiedDao.getQualifiedCachedName(1);
+
+        verify(attachedDao, times(2)).getQualifiedCachedName(1);
+    }
+
+    @Test
+    public void testProxyOfAnAnnotatedMethodWhichIsNotAQueryIsRefused() {
+        assertThrows(IllegalStateException.class, () -> new ManagedHandleInvocationHandler<>(manager, PurgingDao.class,
+                SqlObjectDispatchTable.of(PurgingDao.class), List.of(manager)));
+    }
+
+    @Test
+    public void testProxyOfAnAnnotatedQueryWhichWritesIsRefused() {
+        assertThrows(IllegalStateException.class, () -> new ManagedHandleInvocationHandler<>(manager, ResettingDao.class,
+                SqlObjectDispatchTable.of(ResettingDao.class), List.of(manager)));
+    }
+
+    @Test
+    public void testAfterCommitIsForwardedToTheDelegate() {
+        JdbiHandleManager delegate = mock(JdbiHandleManager.class);
+        Handle handle = mock(Handle.class);
+        new SharedQueryCachingJdbiHandleManager(delegate, metricRegistry).afterCommit(handle);
+        verify(delegate, times(1)).afterCommit(handle);
+    }
+
+    private static CounterDao proxy(SharedQueryCachingJdbiHandleManager manager) {
+        ManagedHandleInvocationHandler<CounterDao> handler = new ManagedHandleInvocationHandler<>(manager, CounterDao.class, SqlObjectDispatchTable.of(CounterDao.class), List.of(manager));
+        return Reflection.newProxy(CounterDao.class, handler);
+    }
+
+    interface PurgingDao {
+
+        @JdbiCacheable(tables = "counter")
+        @SqlUpdate("delete from counter where hits = 0")
+        void purge();
+    }
+
+    interface ResettingDao {
+
+        @JdbiCacheable(tables = "counter")
+        @SqlQuery("update counter set hits = 0 returning id")
+        int resetAll();
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SingleWriterExecutorTest {
+
+    private final SingleWriterExecutor executor = new SingleWriterExecutor();
+
+    @Test
+    public void testTasksRunOnTheSubmittingThreadWhenIdle() {
+        Thread[] ranOn = new Thread[1];
+        executor.execute(() -> ranOn[0] = Thread.currentThread());
+        assertEquals(Thread.currentThread(), ranOn[0]);
+    }
+
+    @Test
+    public void testTasksSubmittedWhileWritingRunInOrderAfterTheCurrentOne() {
+        List<Integer> order = new ArrayList<>();
+        executor.execute(() -> {
+            executor.execute(() -> order.add(2));
+            executor.execute(() -> order.add(3));
+            order.add(1);
+        });
+        assertEquals(List.of(1, 2, 3), order);
+    }
+
+    @Test
+    public void testFailingTaskDoesNotStopTheOthers() {
+        List<Integer> order = new ArrayList<>();
+        executor.execute(() -> {
+            executor.execute(() -> {
+                throw new IllegalStateException("failed");
+            });
+            executor.execute(() -> order.add(2));
+            order.add(1);
+        });
+        assertEquals(List.of(1, 2), order);
+    }
+
+    @Test
+    public void testTasksOfConcurrentSubmittersNeverOverlap() throws InterruptedException {
+        final int submitters = 16;
+        final int tasksPerSubmitter = 500;
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        CountDownLatch startGate = new CountDownLatch(1);
+        ExecutorService service = Executors.newFixedThreadPool(submitters);
+
+        for (int i = 0; i < submitters; i++) {
+            service.submit(() -> {
+                startGate.await();
+                for (int j = 0; j < tasksPerSubmitter; j++) {
+                    executor.execute(() -> {
+                        if (running.incrementAndGet() > 1) {
+                            overlaps.incrementAndGet();
+                        }
+                        completed.incrementAndGet();
+                        running.decrementAndGet();
+                    });
+                }
+                return null;
+            });
+        }
+        startGate.countDown();
+        service.shutdown();
+        assertTrue(service.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(0, overlaps.get());
+        assertEquals(submitters * tasksPerSubmitter, completed.get());
+    }
+}
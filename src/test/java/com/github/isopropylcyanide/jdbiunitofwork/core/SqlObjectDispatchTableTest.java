@@ -0,0 +1,97 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SqlObjectDispatchTableTest {
+
+    private SqlObjectDispatchTable dispatchTable;
+
+    private DummyDao dao;
+
+    @BeforeEach
+    public void setUp() {
+        this.dispatchTable = SqlObjectDispatchTable.of(DummyDao.class);
+        this.dao = new DummyDaoImpl();
+    }
+
+    @Test
+    public void testInvokeDispatchesToTheTargetWithArguments() throws Throwable {
+        Object result = dispatchTable.invoke(dao, DummyDao.class.getMethod("find", String.class, int.class), new Object[]{"id", 3});
+        assertEquals("id-3", result);
+    }
+
+    @Test
+    public void testInvokeBoxesPrimitiveReturnValues() throws Throwable {
+        Object result = dispatchTable.invoke(dao, DummyDao.class.getMethod("count"), new Object[]{});
+        assertEquals(42, result);
+    }
+
+    @Test
+    public void testInvokeReturnsNullForVoidMethods() throws Throwable {
+        assertNull(dispatchTable.invoke(dao, DummyDao.class.getMethod("update"), new Object[]{}));
+    }
+
+    @Test
+    public void testInvokePropagatesTheExceptionThrownByTheTarget() throws NoSuchMethodException {
+        assertThrows(IllegalStateException.class, () -> dispatchTable.invoke(dao, DummyDao.class.getMethod("fail"), new Object[]{}));
+    }
+
+    @Test
+    public void testInvokeFallsBackToReflectionForMethodsOutsideTheTable() throws Throwable {
+        Object result = dispatchTable.invoke(dao, Object.class.getMethod("toString"), new Object[]{});
+        assertEquals("DummyDaoImpl", result);
+    }
+
+    @Test
+    public void testInvokePropagatesTheExceptionThrownByTheTargetOnReflectiveFallback() throws NoSuchMethodException {
+        assertThrows(UnsupportedOperationException.class, () -> dispatchTable.invoke(dao, Object.class.getMethod("hashCode"), new Object[]{}));
+    }
+
+    interface DummyDao {
+
+        String find(String id, int version);
+
+        int count();
+
+        void update();
+
+        void fail();
+    }
+
+    static class DummyDaoImpl implements DummyDao {
+
+        @Override
+        public String find(String id, int version) {
+            return id + "-" + version;
+        }
+
+        @Override
+        public int count() {
+            return 42;
+        }
+
+        @Override
+        public void update() {
+        }
+
+        @Override
+        public void fail() {
+            throw new IllegalStateException("Expected failure");
+        }
+
+        @Override
+        public int hashCode() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String toString() {
+            return "DummyDaoImpl";
+        }
+    }
+}
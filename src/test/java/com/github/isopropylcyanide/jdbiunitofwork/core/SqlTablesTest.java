@@ -0,0 +1,65 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SqlTablesTest {
+
+    @Test
+    public void testReadByFindsEveryTableAfterFromOrJoin() {
+        assertEquals(Set.of("counter"), SqlTables.readBy("select hits from counter where id = :id"));
+        assertEquals(Set.of("account", "counter"), SqlTables.readBy("SELECT a.name FROM account a JOIN counter c ON c.id = a.id"));
+        assertEquals(Set.of("account", "counter"), SqlTables.readBy("select * from account where id in (select id from counter)"));
+    }
+
+    @Test
+    public void testTablesAreNamedWithoutSchemaOrQuotes() {
+        assertEquals(Set.of("account"), SqlTables.readBy("select * from public.\"Account\""));
+        assertEquals("account", SqlTables.writtenBy("update `app`.`account` set name = :name"));
+    }
+
+    @Test
+    public void testReadByIsUnknownWithoutTables() {
+        assertNull(SqlTables.readBy("select 1"));
+        assertNull(SqlTables.readBy(""));
+    }
+
+    @Test
+    public void testReadByIsUnknownForWhatItCannotFullyTell() {
+        assertNull(SqlTables.readBy("select * from account, counter where account.id = counter.id"));
+        assertNull(SqlTables.readBy("select * from account a, counter c where a.id = c.id"));
+        assertNull(SqlTables.readBy("select * from generate_series(1, 10)"));
+        assertNull(SqlTables.readBy("select * from account a cross join lateral (select 1) l"));
+        assertEquals(Set.of("counter"), SqlTables.readBy("select * from (select hits from counter) c where c.hits in (1, 2)"));
+    }
+
+    @Test
+    public void testReadByIsUnknownForQueriesWhichWrite() {
+        assertNull(SqlTables.readBy("insert into counter (id, hits) values (:id, 0) returning hits"));
+        assertNull(SqlTables.readBy("with stale as (delete from counter where hits = 0 returning id) select count(*) from stale"));
+        assertNull(SqlTables.readBy("select hits from counter where id = :id for update"));
+        assertTrue(SqlTables.writes("update counter set hits = 0 returning id"));
+        assertFalse(SqlTables.writes("select hits from counter"));
+    }
+
+    @Test
+    public void testWrittenByFindsTheTableOfEveryKindOfWrite() {
+        assertEquals("counter", SqlTables.writtenBy("insert into counter (id, hits) values (:id, :hits)"));
+        assertEquals("counter", SqlTables.writtenBy("  UPDATE counter SET hits = hits + 1"));
+        assertEquals("counter", SqlTables.writtenBy("delete from counter where id = :id"));
+        assertEquals("counter", SqlTables.writtenBy("merge into counter key (id) values (:id, :hits)"));
+    }
+
+    @Test
+    public void testWrittenByIsUnknownForOtherStatements() {
+        assertNull(SqlTables.writtenBy("with stale as (select id from counter) delete from counter where id in (select id from stale)"));
+        assertNull(SqlTables.writtenBy("call recount()"));
+        assertNull(SqlTables.writtenBy(""));
+    }
+}
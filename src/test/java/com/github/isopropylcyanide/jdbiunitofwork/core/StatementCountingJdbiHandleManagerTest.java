@@ -0,0 +1,170 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.isopropylcyanide.jdbiunitofwork.core.BatchableUpdateTest.CounterDao;
+import com.google.common.reflect.Reflection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.DefaultStatementBuilder;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.StatementContext;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEFAULTS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings({"UnstableApiUsage"})
+public class StatementCountingJdbiHandleManagerTest {
+
+    private static final String BUDGET_EXCEEDED = "com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager.statements.budgetExceeded";
+    private static final String REPEATED_QUERIES = "com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager.statements.repeatedQueries";
+
+    private DBI dbi;
+
+    private Connection connection;
+
+    private Handle handle;
+
+    private CounterDao attachedDao;
+
+    private MetricRegistry metricRegistry;
+
+    private StatementCountingJdbiHandleManager manager;
+
+    private CounterDao proxiedDao;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        dbi = mock(DBI.class);
+        connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenReturn(mock(PreparedStatement.class));
+        attachedDao = mock(CounterDao.class, invocation -> {
+            runStatement();
+            return RETURNS_DEFAULTS.answer(invocation);
+        });
+        when(dbi.open()).thenAnswer((Answer<Handle>) invocation -> {
+            handle = ForwardingStatementBuilderTest.statementBuilderHandle(new DefaultStatementBuilder());
+            when(handle.attach(CounterDao.class)).thenReturn(attachedDao);
+            return handle;
+        });
+        metricRegistry = new MetricRegistry();
+        manager = new StatementCountingJdbiHandleManager(new RequestScopedJdbiHandleManager(dbi), 5, 3, metricRegistry);
+        proxiedDao = proxy(manager);
+    }
+
+    @Test
+    public void testUnitOfWorkWithinItsBudgetIsNotWarnedOf() {
+        for (int i = 0; i < 5; i++) {
+            proxiedDao.insert(i, 1);
+        }
+        assertEquals(0, metricRegistry.counter(BUDGET_EXCEEDED).getCount());
+        verify(attachedDao, times(5)).insert(anyInt(), anyLong());
+    }
+
+    @Test
+    public void testUnitOfWorkOverItsBudgetIsWarnedOfOnce() {
+        for (int i = 0; i < 10; i++) {
+            proxiedDao.deleteAll();
+        }
+        assertEquals(1, metricRegistry.counter(BUDGET_EXCEEDED).getCount());
+    }
+
+    @Test
+    public void testStatementsRunDirectlyOnTheHandleAreCounted() throws SQLException {
+        proxiedDao.deleteAll();
+        for (int i = 0; i < 5; i++) {
+            runStatement();
+        }
+        assertEquals(1, metricRegistry.counter(BUDGET_EXCEEDED).getCount());
+    }
+
+    @Test
+    public void testDaoCallsRunningNoStatementAreNotCounted() {
+        for (int i = 0; i < 5; i++) {
+            proxiedDao.deleteAll();
+        }
+        doAnswer(invocation -> 0L).when(attachedDao).getHits(1);
+        for (int i = 0; i < 5; i++) {
+            proxiedDao.getHits(1);
+        }
+        assertEquals(0, metricRegistry.counter(BUDGET_EXCEEDED).getCount());
+    }
+
+    @Test
+    public void testQueryRepeatedWithVaryingArgumentsIsWarnedOfOncePerMethod() {
+        for (int i = 0; i < 4; i++) {
+            proxiedDao.getName(i);
+        }
+        assertEquals(1, metricRegistry.counter(REPEATED_QUERIES).getCount());
+
+        proxiedDao.getName(5);
+        assertEquals(1, metricRegistry.counter(REPEATED_QUERIES).getCount());
+    }
+
+    @Test
+    public void testQueryRepeatedWithTheSameArgumentsIsNotAnNPlusOne() {
+        for (int i = 0; i < 5; i++) {
+            proxiedDao.getHits(1);
+        }
+        assertEquals(0, metricRegistry.counter(REPEATED_QUERIES).getCount());
+        assertEquals(0, metricRegistry.counter(BUDGET_EXCEEDED).getCount());
+    }
+
+    @Test
+    public void testCountsStartOverForEveryUnitOfWork() {
+        for (int i = 0; i < 3; i++) {
+            proxiedDao.getName(i);
+        }
+        proxiedDao.deleteAll();
+        manager.clear();
+        for (int i = 0; i < 3; i++) {
+            proxiedDao.getName(i);
+        }
+        proxiedDao.deleteAll();
+        assertEquals(0, metricRegistry.counter(REPEATED_QUERIES).getCount());
+        assertEquals(0, metricRegistry.counter(BUDGET_EXCEEDED).getCount());
+    }
+
+    @Test
+    public void testFailedStatementsAreCounted() {
+        doAnswer(invocation -> {
+            runStatement();
+            throw new IllegalStateException();
+        }).when(attachedDao).getHits(1);
+        for (int i = 0; i < 6; i++) {
+            assertThrows(IllegalStateException.class, () -> proxiedDao.getHits(1));
+        }
+        assertEquals(1, metricRegistry.counter(BUDGET_EXCEEDED).getCount());
+    }
+
+    @Test
+    public void testBudgetAndThresholdMustBePositive() {
+        JdbiHandleManager delegate = mock(JdbiHandleManager.class);
+        assertThrows(IllegalArgumentException.class, () -> new StatementCountingJdbiHandleManager(delegate, 0, 3, metricRegistry));
+        assertThrows(IllegalArgumentException.class, () -> new StatementCountingJdbiHandleManager(delegate, 5, 0, metricRegistry));
+    }
+
+    private void runStatement() throws SQLException {
+        ForwardingStatementBuilder.statementBuilderOf(handle).create(connection, "select 1", mock(StatementContext.class));
+    }
+
+    private static CounterDao proxy(StatementCountingJdbiHandleManager manager) {
+        ManagedHandleInvocationHandler<CounterDao> handler = new ManagedHandleInvocationHandler<>(manager, CounterDao.class, SqlObjectDispatchTable.of(CounterDao.class), List.of(manager));
+        return Reflection.newProxy(CounterDao.class, handler);
+    }
+}
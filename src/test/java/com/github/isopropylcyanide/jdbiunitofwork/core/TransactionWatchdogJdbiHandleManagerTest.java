@@ -0,0 +1,213 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.stubbing.Answer;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.DefaultStatementBuilder;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.StatementBuilder;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TransactionWatchdogJdbiHandleManagerTest {
+
+    private static final String EXCEEDED = "com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager.watchdog.exceeded";
+
+    private ScheduledExecutorService scheduler;
+
+    private MetricRegistry metricRegistry;
+
+    private Connection connection;
+
+    private PreparedStatement statement;
+
+    private TransactionWatchdogJdbiHandleManager manager;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        DBI dbi = mock(DBI.class);
+        when(dbi.open()).thenAnswer((Answer<Handle>) invocation -> mock(Handle.class));
+        scheduler = mock(ScheduledExecutorService.class);
+        metricRegistry = new MetricRegistry();
+        connection = mock(Connection.class);
+        statement = mock(PreparedStatement.class);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(connection.getAutoCommit()).thenReturn(false);
+        manager = new TransactionWatchdogJdbiHandleManager(new RequestScopedJdbiHandleManager(dbi), Duration.ofNanos(1), scheduler, metricRegistry);
+    }
+
+    @Test
+    public void testChecksAreScheduledSeveralTimesPerBudget() {
+        new TransactionWatchdogJdbiHandleManager(mock(JdbiHandleManager.class), Duration.ofSeconds(4), scheduler, metricRegistry);
+        long period = TimeUnit.SECONDS.toNanos(1);
+        verify(scheduler, times(1)).scheduleWithFixedDelay(any(Runnable.class), eq(period), eq(period), eq(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testBudgetMustBePositive() {
+        JdbiHandleManager delegate = mock(JdbiHandleManager.class);
+        assertThrows(IllegalArgumentException.class, () -> new TransactionWatchdogJdbiHandleManager(delegate, Duration.ZERO, scheduler, metricRegistry));
+    }
+
+    @Test
+    public void testUnitOfWorkWithinItsBudgetIsLeftAlone() throws SQLException {
+        manager = new TransactionWatchdogJdbiHandleManager(manager.delegate(), Duration.ofMinutes(1), scheduler, metricRegistry);
+        Handle handle = manager.get();
+        statementBuilder(handle).create(connection, "select 1", mock(StatementContext.class));
+        manager.check();
+
+        verify(statement, never()).cancel();
+        assertDoesNotThrow(() -> manager.beforeCommit(handle));
+        assertEquals(0, metricRegistry.counter(EXCEEDED).getCount());
+    }
+
+    @Test
+    public void testUnitOfWorkOverItsBudgetHasItsStatementCancelledAndIsMarkedRollbackOnly() throws Exception {
+        Handle handle = manager.get();
+        StatementBuilder statementBuilder = statementBuilder(handle);
+        statementBuilder.create(connection, "select pg_sleep(600)", mock(StatementContext.class));
+        Thread.sleep(1);
+        manager.check();
+        manager.check();
+
+        verify(statement, times(1)).cancel();
+        assertEquals(1, metricRegistry.counter(EXCEEDED).getCount());
+        assertThrows(IllegalStateException.class, () -> manager.beforeCommit(handle));
+        assertThrows(SQLException.class, () -> statementBuilder.create(connection, "select 1", mock(StatementContext.class)));
+    }
+
+    @Test
+    public void testClosedStatementIsNotCancelled() throws Exception {
+        Handle handle = manager.get();
+        StatementBuilder statementBuilder = statementBuilder(handle);
+        statementBuilder.close(connection, "select 1", statementBuilder.create(connection, "select 1", mock(StatementContext.class)));
+        Thread.sleep(1);
+        manager.check();
+
+        verify(statement, never()).cancel();
+        assertEquals(1, metricRegistry.counter(EXCEEDED).getCount());
+    }
+
+    @Test
+    public void testHandleUsedOutsideOfATransactionIsLeftAlone() throws Exception {
+        when(connection.getAutoCommit()).thenReturn(true);
+        Handle handle = manager.get();
+        statementBuilder(handle).create(connection, "select pg_sleep(600)", mock(StatementContext.class));
+        Thread.sleep(1);
+        manager.check();
+
+        verify(statement, never()).cancel();
+        assertEquals(0, metricRegistry.counter(EXCEEDED).getCount());
+        assertDoesNotThrow(() -> manager.beforeCommit(handle));
+    }
+
+    @Test
+    public void testTransactionIsClockedFromTheCheckFindingItBegun() throws Exception {
+        Handle handle = manager.get();
+        when(handle.isInTransaction()).thenReturn(true);
+        manager.check();
+        assertEquals(0, metricRegistry.counter(EXCEEDED).getCount());
+
+        Thread.sleep(1);
+        manager.check();
+        assertEquals(1, metricRegistry.counter(EXCEEDED).getCount());
+        assertThrows(IllegalStateException.class, () -> manager.beforeCommit(handle));
+    }
+
+    @Test
+    public void testCommittedTransactionIsNoLongerClocked() throws Exception {
+        Handle handle = manager.get();
+        statementBuilder(handle).create(connection, "select 1", mock(StatementContext.class));
+        manager.afterCommit(handle);
+        Thread.sleep(1);
+        manager.check();
+
+        assertEquals(0, metricRegistry.counter(EXCEEDED).getCount());
+    }
+
+    @Test
+    public void testClearedHandleIsNoLongerWatched() throws InterruptedException {
+        Handle handle = manager.get();
+        manager.clear();
+        Thread.sleep(1);
+        manager.check();
+
+        assertEquals(0, metricRegistry.counter(EXCEEDED).getCount());
+        assertDoesNotThrow(() -> manager.beforeCommit(handle));
+    }
+
+    @Test
+    public void testStatementBuilderTheHandleWasOpenedWithIsWrappedRatherThanReplaced() throws Exception {
+        DBI dbi = mock(DBI.class);
+        when(dbi.open()).thenAnswer((Answer<Handle>) invocation ->
+                ForwardingStatementBuilderTest.statementBuilderHandle(new TimedStatementBuilder(new DefaultStatementBuilder())));
+        manager = new TransactionWatchdogJdbiHandleManager(new RequestScopedJdbiHandleManager(dbi), Duration.ofNanos(1), scheduler, metricRegistry);
+        Handle handle = manager.get();
+        statementBuilder(handle).create(connection, "select pg_sleep(600)", mock(StatementContext.class));
+        Thread.sleep(1);
+        manager.check();
+
+        verify(statement, times(1)).setQueryTimeout(5);
+        verify(statement, times(1)).cancel();
+    }
+
+    @Test
+    public void testCloseStopsTheChecks() {
+        ScheduledFuture<?> checks = mock(ScheduledFuture.class);
+        doReturn(checks).when(scheduler).scheduleWithFixedDelay(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+        new TransactionWatchdogJdbiHandleManager(mock(JdbiHandleManager.class), Duration.ofSeconds(1), scheduler, metricRegistry).close();
+        verify(checks, times(1)).cancel(false);
+    }
+
+    @Test
+    public void testBeforeCommitIsForwardedToTheDelegate() {
+        JdbiHandleManager delegate = mock(JdbiHandleManager.class);
+        Handle handle = mock(Handle.class);
+        new TransactionWatchdogJdbiHandleManager(delegate, Duration.ofSeconds(1), scheduler, metricRegistry).beforeCommit(handle);
+        verify(delegate, times(1)).beforeCommit(handle);
+    }
+
+    private static StatementBuilder statementBuilder(Handle handle) {
+        ArgumentCaptor<StatementBuilder> captor = ArgumentCaptor.forClass(StatementBuilder.class);
+        verify(handle, times(1)).setStatementBuilder(captor.capture());
+        return captor.getValue();
+    }
+
+    private static final class TimedStatementBuilder extends ForwardingStatementBuilder {
+
+        TimedStatementBuilder(StatementBuilder delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public PreparedStatement create(Connection conn, String sql, StatementContext ctx) throws SQLException {
+            PreparedStatement statement = super.create(conn, sql, ctx);
+            statement.setQueryTimeout(5);
+            return statement;
+        }
+    }
+}
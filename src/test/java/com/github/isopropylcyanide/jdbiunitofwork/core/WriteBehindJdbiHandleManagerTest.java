@@ -0,0 +1,220 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import com.github.isopropylcyanide.jdbiunitofwork.core.BatchableUpdateTest.CounterDao;
+import com.google.common.reflect.Reflection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
+import org.skife.jdbi.v2.PreparedBatchPart;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings({"UnstableApiUsage"})
+public class WriteBehindJdbiHandleManagerTest {
+
+    private static final String INSERT = "insert into counter (id, hits) values (:id, :hits)";
+    private static final String DELETE_ALL = "delete from counter";
+
+    private Handle mockHandle;
+
+    private CounterDao attachedDao;
+
+    private PreparedBatch insertBatch;
+
+    private PreparedBatch deleteAllBatch;
+
+    private WriteBehindJdbiHandleManager manager;
+
+    private CounterDao proxiedDao;
+
+    @BeforeEach
+    public void setUp() {
+        DBI dbi = mock(DBI.class);
+        mockHandle = mock(Handle.class);
+        attachedDao = mock(CounterDao.class);
+        insertBatch = mock(PreparedBatch.class);
+        deleteAllBatch = mock(PreparedBatch.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        when(mockHandle.attach(CounterDao.class)).thenReturn(attachedDao);
+        when(mockHandle.isInTransaction()).thenReturn(true);
+        when(mockHandle.prepareBatch(INSERT)).thenReturn(insertBatch);
+        when(mockHandle.prepareBatch(DELETE_ALL)).thenReturn(deleteAllBatch);
+        when(insertBatch.add()).thenReturn(mock(PreparedBatchPart.class));
+        when(deleteAllBatch.add()).thenReturn(mock(PreparedBatchPart.class));
+
+        manager = new WriteBehindJdbiHandleManager(new RequestScopedJdbiHandleManager(dbi), 3);
+        proxiedDao = proxy(manager);
+    }
+
+    @Test
+    public void testUpdatesWithinATransactionAreBufferedUntilFlushed() {
+        manager.get();
+        proxiedDao.insert(1, 10);
+        proxiedDao.insert(2, 20);
+
+        verify(attachedDao, never()).insert(1, 10);
+        verify(mockHandle, never()).prepareBatch(anyString());
+
+        manager.flushBufferedStatements(mockHandle);
+        verify(mockHandle, times(1)).prepareBatch(INSERT);
+        verify(insertBatch, times(2)).add();
+        verify(insertBatch, times(1)).execute();
+
+        manager.flushBufferedStatements(mockHandle);
+        verify(insertBatch, times(1)).execute();
+    }
+
+    @Test
+    public void testUpdatesAreFlushedOnceTheBatchSizeIsReached() {
+        manager.get();
+        proxiedDao.insert(1, 10);
+        proxiedDao.insert(2, 20);
+        proxiedDao.insert(3, 30);
+
+        verify(insertBatch, times(3)).add();
+        verify(insertBatch, times(1)).execute();
+    }
+
+    @Test
+    public void testOtherInvocationsFlushTheBufferFirst() {
+        manager.get();
+        proxiedDao.insert(1, 10);
+        proxiedDao.getHits(1);
+
+        InOrder inOrder = inOrder(insertBatch, attachedDao);
+        inOrder.verify(insertBatch).execute();
+        inOrder.verify(attachedDao).getHits(1);
+    }
+
+    @Test
+    public void testConsecutiveInvocationsOfTheSameUpdateAreBatchedTogetherInOrder() {
+        manager.get();
+        proxiedDao.insert(1, 10);
+        proxiedDao.deleteAll();
+        proxiedDao.insert(2, 20);
+        manager.flushBufferedStatements(mockHandle);
+
+        InOrder inOrder = inOrder(insertBatch, deleteAllBatch);
+        inOrder.verify(insertBatch).execute();
+        inOrder.verify(deleteAllBatch).execute();
+        inOrder.verify(insertBatch).execute();
+    }
+
+    @Test
+    public void testUpdatesOutsideOfATransactionRunRightAway() {
+        when(mockHandle.isInTransaction()).thenReturn(false);
+        manager.get();
+        proxiedDao.insert(1, 10);
+
+        verify(attachedDao, times(1)).insert(1, 10);
+        verify(mockHandle, never()).prepareBatch(anyString());
+    }
+
+    @Test
+    public void testUpdatesRunRightAwayWhenNoHandleIsOpen() {
+        proxiedDao.insert(1, 10);
+        verify(attachedDao, times(1)).insert(1, 10);
+
+        proxiedDao.insert(2, 20);
+        verify(attachedDao, never()).insert(2, 20);
+    }
+
+    @Test
+    public void testUpdatesNotBatchableRunRightAway() {
+        manager.get();
+        proxiedDao.increment(1);
+        verify(attachedDao, times(1)).increment(1);
+    }
+
+    @Test
+    public void testDiscardedUpdatesAreNeverRun() {
+        manager.get();
+        proxiedDao.insert(1, 10);
+        manager.discardBufferedStatements(mockHandle);
+        manager.flushBufferedStatements(mockHandle);
+        proxiedDao.getHits(1);
+
+        verify(mockHandle, never()).prepareBatch(anyString());
+    }
+
+    @Test
+    public void testClearedHandleDropsItsBuffer() {
+        manager.get();
+        proxiedDao.insert(1, 10);
+        manager.clear();
+        manager.flushBufferedStatements(mockHandle);
+
+        verify(mockHandle, never()).prepareBatch(anyString());
+        verify(mockHandle, times(1)).close();
+    }
+
+    @Test
+    public void testBufferIsKeptUntilTheHandleSharedWithChildrenIsClosed() throws Exception {
+        DBI dbi = mock(DBI.class);
+        when(dbi.open()).thenReturn(mockHandle);
+        manager = new WriteBehindJdbiHandleManager(new LinkedRequestScopedJdbiHandleManager(dbi), 3);
+        proxiedDao = proxy(manager);
+        ExecutorService executorService = manager.propagating(Executors.newSingleThreadExecutor());
+        manager.get();
+        CountDownLatch childMayFinish = new CountDownLatch(1);
+        executorService.submit(() -> {
+            childMayFinish.await();
+            return null;
+        });
+
+        proxiedDao.insert(1, 10);
+        manager.clear();
+        verify(mockHandle, never()).close();
+        manager.flushBufferedStatements(mockHandle);
+        verify(insertBatch, times(1)).execute();
+
+        proxiedDao.insert(2, 20);
+        childMayFinish.countDown();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(1, TimeUnit.SECONDS));
+        verify(mockHandle, times(1)).close();
+        manager.flushBufferedStatements(mockHandle);
+        verify(insertBatch, times(1)).execute();
+    }
+
+    @Test
+    public void testFlushAndDiscardAreForwardedToTheDelegate() {
+        JdbiHandleManager delegate = mock(JdbiHandleManager.class);
+        manager = new WriteBehindJdbiHandleManager(delegate, 3);
+        manager.flushBufferedStatements(mockHandle);
+        manager.discardBufferedStatements(mockHandle);
+
+        verify(delegate, times(1)).flushBufferedStatements(mockHandle);
+        verify(delegate, times(1)).discardBufferedStatements(mockHandle);
+        verify(delegate, never()).get();
+        verify(mockHandle, never()).prepareBatch(any());
+    }
+
+    @Test
+    public void testBatchSizeMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new WriteBehindJdbiHandleManager(mock(JdbiHandleManager.class), 0));
+    }
+
+    private static CounterDao proxy(WriteBehindJdbiHandleManager manager) {
+        ManagedHandleInvocationHandler<CounterDao> handler = new ManagedHandleInvocationHandler<>(manager, CounterDao.class, SqlObjectDispatchTable.of(CounterDao.class), List.of(manager));
+        return Reflection.newProxy(CounterDao.class, handler);
+    }
+}
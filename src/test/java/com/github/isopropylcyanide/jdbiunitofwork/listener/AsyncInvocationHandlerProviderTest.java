@@ -0,0 +1,383 @@
+package com.github.isopropylcyanide.jdbiunitofwork.listener;
+
+import com.github.isopropylcyanide.jdbiunitofwork.JdbiUnitOfWork;
+import com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager;
+import com.github.isopropylcyanide.jdbiunitofwork.core.JdbiUnitOfWorkProvider;
+import org.glassfish.jersey.server.model.Invocable;
+import org.glassfish.jersey.server.model.Resource;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.MediaType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AsyncInvocationHandlerProviderTest {
+
+    private JdbiHandleManager handleManager;
+
+    private Handle handle;
+
+    private AsyncResponse asyncResponse;
+
+    private List<Thread> detachedScopeThreads;
+
+    private UnitOfWorkPolicies policies;
+
+    private AsyncInvocationHandlerProvider provider;
+
+    private ResourceStub resource;
+
+    @BeforeEach
+    public void setUp() {
+        handleManager = mock(JdbiHandleManager.class);
+        handle = mock(Handle.class);
+        when(handleManager.get()).thenReturn(handle);
+        detachedScopeThreads = new CopyOnWriteArrayList<>();
+        when(handleManager.detachScope()).thenReturn(task -> {
+            detachedScopeThreads.add(Thread.currentThread());
+            task.run();
+        });
+        asyncResponse = mock(AsyncResponse.class);
+        when(asyncResponse.resume(any(Object.class))).thenReturn(true);
+        policies = new UnitOfWorkPolicies();
+        provider = new AsyncInvocationHandlerProvider(new JdbiTransactionAspect(handleManager), policies);
+        resource = new ResourceStub();
+    }
+
+    @Test
+    public void testSynchronousMethodsAreLeftToOtherHandlers() throws NoSuchMethodException {
+        assertNull(provider.create(invocable("synchronous")));
+        assertFalse(policies.get(resourceMethod("synchronous")).isHandledOnInvocation());
+    }
+
+    @Test
+    public void testAsyncMethodsAreHandledOnInvocationUnlessServingGetRequests() throws NoSuchMethodException {
+        assertNotNull(provider.create(invocable("suspended")));
+        assertNotNull(provider.create(invocable("staged")));
+        assertNotNull(provider.create(invocable("get")));
+        assertTrue(policies.get(resourceMethod("suspended")).isHandledOnInvocation());
+        assertTrue(policies.get(resourceMethod("staged")).isHandledOnInvocation());
+        assertFalse(policies.get(resourceMethod("get")).isHandledOnInvocation());
+        assertTrue(AsyncInvocationHandlerProvider.isAsync(ResourceStub.class.getMethod("staged")));
+        assertFalse(AsyncInvocationHandlerProvider.isAsync(ResourceStub.class.getMethod("synchronous")));
+    }
+
+    @Test
+    public void testResumedResponseIsCommittedOnTheCompletingThreadBeforeBeingResumed() throws Throwable {
+        invoke("suspended");
+        verify(handle).begin();
+        verify(handle, never()).commit();
+        verify(handleManager, never()).clear();
+
+        Thread completingThread = new Thread(() -> assertTrue(resource.asyncResponse.resume("done")));
+        completingThread.start();
+        completingThread.join();
+
+        InOrder inOrder = inOrder(handle, handleManager, asyncResponse);
+        inOrder.verify(handle).commit();
+        inOrder.verify(handleManager).clear();
+        inOrder.verify(asyncResponse).resume("done");
+        assertEquals(List.of(completingThread), detachedScopeThreads);
+    }
+
+    @Test
+    public void testResponseResumedWithAFailureIsRolledBack() throws Throwable {
+        invoke("suspended");
+        IllegalStateException failure = new IllegalStateException();
+        resource.asyncResponse.resume(failure);
+
+        verify(handle).rollback();
+        verify(handle, never()).commit();
+        verify(asyncResponse).resume(failure);
+    }
+
+    @Test
+    public void testCancelledResponseIsRolledBack() throws Throwable {
+        when(asyncResponse.cancel(30)).thenReturn(true);
+        invoke("suspended");
+
+        assertTrue(resource.asyncResponse.cancel(30));
+        verify(handle).rollback();
+        verify(asyncResponse).cancel(30);
+    }
+
+    @Test
+    public void testFailedCommitIsResumedInsteadOfTheResponse() throws Throwable {
+        IllegalStateException failure = new IllegalStateException("connection lost");
+        doThrow(failure).when(handle).commit();
+        invoke("suspended");
+
+        resource.asyncResponse.resume("done");
+        verify(asyncResponse).resume(failure);
+        verify(asyncResponse, never()).resume("done");
+    }
+
+    @Test
+    public void testResponseCompletedWithoutBeingResumedIsRolledBack() throws Throwable {
+        invoke("suspended");
+        ArgumentCaptor<Object> callback = ArgumentCaptor.forClass(Object.class);
+        verify(asyncResponse).register(callback.capture());
+
+        ((CompletionCallback) callback.getValue()).onComplete(null);
+        verify(handle).rollback();
+        verify(handleManager).clear();
+
+        resource.asyncResponse.resume("done");
+        verify(handle, never()).commit();
+        verify(asyncResponse).resume("done");
+    }
+
+    @Test
+    public void testResponseResumedBeforeTheMethodReturnsIsCompletedOnTheRequestThread() throws Throwable {
+        invoke("resumedRightAway");
+        invoke("resumedByAnotherThread");
+
+        verify(handle, times(2)).commit();
+        verify(asyncResponse, times(2)).resume("done");
+        verify(handleManager, never()).detachScope();
+        assertTrue(detachedScopeThreads.isEmpty());
+    }
+
+    @Test
+    public void testStageIsCommittedBeforeTheReturnedStageCompletes() throws Throwable {
+        CompletableFuture<String> returned = this.<CompletionStage<String>>invoke("staged").toCompletableFuture();
+        verify(handle, never()).commit();
+        assertFalse(returned.isDone());
+
+        resource.stage.complete("done");
+        verify(handle).commit();
+        assertEquals("done", returned.get());
+        assertEquals(1, detachedScopeThreads.size());
+    }
+
+    @Test
+    public void testFailedStageIsRolledBack() throws Throwable {
+        CompletableFuture<String> returned = this.<CompletionStage<String>>invoke("staged").toCompletableFuture();
+        IllegalStateException failure = new IllegalStateException();
+
+        resource.stage.completeExceptionally(failure);
+        verify(handle).rollback();
+        ExecutionException ex = assertThrows(ExecutionException.class, returned::get);
+        assertSame(failure, ex.getCause());
+    }
+
+    @Test
+    public void testFailingMethodIsRolledBackAndRethrown() throws NoSuchMethodException {
+        assertThrows(InvocationTargetException.class, () -> invoke("failing"));
+        verify(handle).rollback();
+        verify(handleManager).clear();
+        verify(handleManager, never()).detachScope();
+    }
+
+    @Test
+    public void testNonTransactionalUnitOfWorkIsOnlyTerminated() throws Throwable {
+        invoke("notTransactional");
+        resource.asyncResponse.resume("done");
+
+        verify(handle, never()).begin();
+        verify(handle, never()).commit();
+        verify(handleManager).clear();
+        assertEquals(1, detachedScopeThreads.size());
+    }
+
+    @Test
+    public void testUnitOfWorkIsCompletedOnReturnWhenItCannotBeDetached() throws Throwable {
+        when(handleManager.detachScope()).thenReturn(null);
+        invoke("suspended");
+        verify(handle).commit();
+        verify(handleManager).clear();
+
+        resource.asyncResponse.resume("done");
+        verify(handle, times(1)).commit();
+        verify(asyncResponse).resume("done");
+    }
+
+    @Test
+    public void testWritesOfAPropagatingExecutorAreCommittedWithTheUnitOfWork() throws Throwable {
+        ExecutorService executorService = linked();
+        resource.work = response -> executorService.execute(() -> {
+            handleManager.get().execute("update counter set hits = 0");
+            response.resume("done");
+        });
+        invoke("handedOver");
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(1, TimeUnit.SECONDS));
+
+        InOrder inOrder = inOrder(handle, asyncResponse);
+        inOrder.verify(handle).begin();
+        inOrder.verify(handle).execute("update counter set hits = 0");
+        inOrder.verify(handle).commit();
+        inOrder.verify(asyncResponse).resume("done");
+        verify(handle, times(1)).close();
+    }
+
+    @Test
+    public void testWritesOfAPropagatingExecutorAreRolledBackWithTheUnitOfWork() throws Throwable {
+        ExecutorService executorService = linked();
+        IllegalStateException failure = new IllegalStateException();
+        resource.work = response -> executorService.execute(() -> {
+            handleManager.get().execute("update counter set hits = 0");
+            response.resume(failure);
+        });
+        invoke("handedOver");
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(1, TimeUnit.SECONDS));
+
+        InOrder inOrder = inOrder(handle, asyncResponse);
+        inOrder.verify(handle).execute("update counter set hits = 0");
+        inOrder.verify(handle).rollback();
+        inOrder.verify(asyncResponse).resume(failure);
+        verify(handle, never()).commit();
+        verify(handle, times(1)).close();
+    }
+
+    @Test
+    public void testUnitOfWorkOfTheDefaultHandleManagerIsCommittedByTheResumingThread() throws Throwable {
+        DBI dbi = mock(DBI.class);
+        Handle reopened = mock(Handle.class);
+        when(dbi.open()).thenReturn(handle, reopened);
+        handleManager = JdbiUnitOfWorkProvider.withDefault(dbi).getHandleManager();
+        provider = new AsyncInvocationHandlerProvider(new JdbiTransactionAspect(handleManager), policies);
+        invoke("suspended");
+
+        verify(handle).begin();
+        verify(handle, never()).commit();
+        assertSame(reopened, handleManager.get());
+        handleManager.clear();
+
+        Thread resumingThread = new Thread(() -> resource.asyncResponse.resume("done"));
+        resumingThread.start();
+        resumingThread.join();
+
+        InOrder inOrder = inOrder(handle, asyncResponse);
+        inOrder.verify(handle).commit();
+        inOrder.verify(handle).close();
+        inOrder.verify(asyncResponse).resume("done");
+    }
+
+    private ExecutorService linked() {
+        DBI dbi = mock(DBI.class);
+        when(dbi.open()).thenReturn(handle);
+        handleManager = JdbiUnitOfWorkProvider.withLinked(dbi).getHandleManager();
+        provider = new AsyncInvocationHandlerProvider(new JdbiTransactionAspect(handleManager), policies);
+        return handleManager.propagating(Executors.newSingleThreadExecutor());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T invoke(String name) throws Throwable {
+        Method method = method(name);
+        Object[] args = method.getParameterCount() == 0 ? new Object[0] : new Object[]{asyncResponse};
+        return (T) provider.create(invocable(name)).invoke(resource, method, args);
+    }
+
+    private static Invocable invocable(String name) throws NoSuchMethodException {
+        return Invocable.create(ResourceStub.class, method(name));
+    }
+
+    private static ResourceMethod resourceMethod(String name) throws NoSuchMethodException {
+        return Resource.builder("/").addMethod("POST")
+                .produces(MediaType.TEXT_PLAIN_TYPE)
+                .handledBy(ResourceStub.class, method(name))
+                .build();
+    }
+
+    private static Method method(String name) throws NoSuchMethodException {
+        for (Method method : ResourceStub.class.getMethods()) {
+            if (method.getName().equals(name)) {
+                return method;
+            }
+        }
+        throw new NoSuchMethodException(name);
+    }
+
+    public static class ResourceStub {
+
+        private AsyncResponse asyncResponse;
+
+        private Consumer<AsyncResponse> work;
+
+        private final CompletableFuture<String> stage = new CompletableFuture<>();
+
+        @JdbiUnitOfWork
+        public void suspended(@Suspended AsyncResponse asyncResponse) {
+            this.asyncResponse = asyncResponse;
+        }
+
+        @JdbiUnitOfWork
+        public void handedOver(@Suspended AsyncResponse asyncResponse) {
+            work.accept(asyncResponse);
+        }
+
+        @JdbiUnitOfWork
+        public CompletionStage<String> staged() {
+            return stage;
+        }
+
+        @JdbiUnitOfWork
+        public void resumedRightAway(@Suspended AsyncResponse asyncResponse) {
+            asyncResponse.resume("done");
+        }
+
+        @JdbiUnitOfWork
+        public void resumedByAnotherThread(@Suspended AsyncResponse asyncResponse) throws InterruptedException {
+            Thread completingThread = new Thread(() -> asyncResponse.resume("done"));
+            completingThread.start();
+            completingThread.join();
+        }
+
+        @JdbiUnitOfWork
+        public void failing(@Suspended AsyncResponse asyncResponse) {
+            throw new IllegalStateException();
+        }
+
+        public void notTransactional(@Suspended AsyncResponse asyncResponse) {
+            this.asyncResponse = asyncResponse;
+        }
+
+        @GET
+        @JdbiUnitOfWork
+        public CompletionStage<String> get() {
+            return stage;
+        }
+
+        @JdbiUnitOfWork
+        public String synchronous() {
+            return "";
+        }
+    }
+}
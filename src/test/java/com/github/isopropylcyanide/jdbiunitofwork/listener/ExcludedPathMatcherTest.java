@@ -0,0 +1,161 @@
+package com.github.isopropylcyanide.jdbiunitofwork.listener;
+
+import com.google.common.collect.Sets;
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class ExcludedPathMatcherTest {
+
+    @Test
+    public void testNothingMatchesWhenNoPathIsExcluded() {
+        ExcludedPathMatcher matcher = ExcludedPathMatcher.compile(Collections.emptySet());
+        assertFalse(matcher.matches(""));
+        assertFalse(matcher.matches("healthcheck"));
+    }
+
+    @Test
+    public void testUnqualifiedPathMatchesAnyPathContainingIt() {
+        ExcludedPathMatcher matcher = ExcludedPathMatcher.compile(Sets.newHashSet("health", "ping", "hers"));
+        assertTrue(matcher.matches("health"));
+        assertTrue(matcher.matches("api/healthcheck"));
+        assertTrue(matcher.matches("elb/ping"));
+        assertTrue(matcher.matches("ushers"));
+        assertFalse(matcher.matches("heal"));
+        assertFalse(matcher.matches("api/users"));
+    }
+
+    @Test
+    public void testUnqualifiedPathMatchesWhenFoundThroughFailureLinks() {
+        ExcludedPathMatcher matcher = ExcludedPathMatcher.compile(Sets.newHashSet("abcd", "bce", "c"));
+        assertTrue(matcher.matches("xabce"));
+        assertTrue(matcher.matches("abx c"));
+        assertFalse(matcher.matches("abd"));
+
+        matcher = ExcludedPathMatcher.compile(Sets.newHashSet("abcd", "bc"));
+        assertTrue(matcher.matches("abcx"));
+    }
+
+    @Test
+    public void testEmptyUnqualifiedPathMatchesEveryPath() {
+        ExcludedPathMatcher matcher = ExcludedPathMatcher.compile(Collections.singleton(""));
+        assertTrue(matcher.matches(""));
+        assertTrue(matcher.matches("users"));
+    }
+
+    @Test
+    public void testExactPathMatchesOnlyItself() {
+        ExcludedPathMatcher matcher = ExcludedPathMatcher.compile(Sets.newHashSet("exact:health", "exact:health/deep"));
+        assertTrue(matcher.matches("health"));
+        assertTrue(matcher.matches("health/deep"));
+        assertFalse(matcher.matches("healthcheck"));
+        assertFalse(matcher.matches("api/health"));
+        assertFalse(matcher.matches("health/"));
+    }
+
+    @Test
+    public void testPrefixPathMatchesPathsStartingWithIt() {
+        ExcludedPathMatcher matcher = ExcludedPathMatcher.compile(Sets.newHashSet("prefix:admin/", "prefix:metrics"));
+        assertTrue(matcher.matches("admin/"));
+        assertTrue(matcher.matches("admin/tasks/gc"));
+        assertTrue(matcher.matches("metrics.json"));
+        assertFalse(matcher.matches("admin"));
+        assertFalse(matcher.matches("api/admin/tasks"));
+    }
+
+    @Test
+    public void testGlobPathMatchesWildcardsWithinAndAcrossSegments() {
+        Set<String> excludedPaths = Sets.newHashSet("glob:api/*/ping", "glob:static/**", "glob:v?/status");
+        ExcludedPathMatcher matcher = ExcludedPathMatcher.compile(excludedPaths);
+        assertTrue(matcher.matches("api/users/ping"));
+        assertTrue(matcher.matches("api//ping"));
+        assertFalse(matcher.matches("api/users/42/ping"));
+
+        assertTrue(matcher.matches("static/"));
+        assertTrue(matcher.matches("static/css/app.css"));
+        assertFalse(matcher.matches("static"));
+
+        assertTrue(matcher.matches("v1/status"));
+        assertFalse(matcher.matches("v10/status"));
+        assertFalse(matcher.matches("v//status"));
+    }
+
+    @Test
+    public void testGlobWithoutLiteralPrefixIsEvaluatedForEveryPath() {
+        ExcludedPathMatcher matcher = ExcludedPathMatcher.compile(Sets.newHashSet("glob:**/ping", "glob:*.ico"));
+        assertTrue(matcher.matches("a/b/c/ping"));
+        assertTrue(matcher.matches("favicon.ico"));
+        assertFalse(matcher.matches("assets/favicon.ico"));
+        assertFalse(matcher.matches("ping/pong"));
+    }
+
+    @Test
+    public void testLeadingSlashOfQualifiedEntriesIsIgnored() {
+        Set<String> excludedPaths = Sets.newHashSet("exact:/health", "prefix:/admin/", "glob:/api/*/ping", "/elb");
+        ExcludedPathMatcher matcher = ExcludedPathMatcher.compile(excludedPaths);
+        assertTrue(matcher.matches("health"));
+        assertTrue(matcher.matches("admin/tasks"));
+        assertTrue(matcher.matches("api/users/ping"));
+        assertFalse(matcher.matches("elb"));
+        assertTrue(matcher.matches("api/elb"));
+    }
+
+    @Test
+    public void testGlobWithManyWildcardsDoesNotBacktrack() {
+        ExcludedPathMatcher matcher = ExcludedPathMatcher.compile(Collections.singleton("glob:**a**a**a**a**a**a**a**a**a**a**b"));
+        String path = "a/".repeat(200);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> assertFalse(matcher.matches(path)));
+        assertTrue(matcher.matches(path + "b"));
+    }
+
+    @Test
+    public void testGlobTooLongPastItsLiteralPrefixIsRefused() {
+        assertThrows(IllegalArgumentException.class, () -> ExcludedPathMatcher.compile(Collections.singleton("glob:*" + "x".repeat(63))));
+    }
+
+    @Test
+    public void testMixedKindsDoNotInterfere() {
+        Set<String> excludedPaths = Sets.newHashSet("exact:a", "prefix:ab", "glob:abc*d", "zz");
+        ExcludedPathMatcher matcher = ExcludedPathMatcher.compile(excludedPaths);
+        assertTrue(matcher.matches("a"));
+        assertTrue(matcher.matches("abx"));
+        assertTrue(matcher.matches("xzzx"));
+        assertFalse(matcher.matches("ax"));
+        assertFalse(matcher.matches("xab"));
+    }
+
+    @Test
+    public void testMatchingDoesNotAllocate() {
+        ThreadMXBean threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled());
+
+        Set<String> excludedPaths = Sets.newHashSet("health", "exact:ping", "prefix:admin/", "glob:api/*/status");
+        ExcludedPathMatcher matcher = ExcludedPathMatcher.compile(excludedPaths);
+        String[] paths = {"api/users/42", "admin/tasks", "ping", "api/users/status", "elb/healthcheck"};
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        int matches = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (matcher.matches(paths[i % paths.length])) {
+                matches++;
+            }
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        assertEquals(8_000, matches);
+        assertTrue(allocated < 1024, "Matching allocated " + allocated + " bytes");
+    }
+}
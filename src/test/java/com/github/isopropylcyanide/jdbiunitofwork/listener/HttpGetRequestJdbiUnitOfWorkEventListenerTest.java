@@ -7,7 +7,9 @@ import org.junit.jupiter.api.Test;
 import org.skife.jdbi.v2.Handle;
 
 import static org.glassfish.jersey.server.monitoring.RequestEvent.Type.FINISHED;
+import static org.glassfish.jersey.server.monitoring.RequestEvent.Type.MATCHING_START;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -28,6 +30,16 @@ public class HttpGetRequestJdbiUnitOfWorkEventListenerTest {
         this.listener = new HttpGetRequestJdbiUnitOfWorkEventListener(handleManager);
     }
 
+    @Test
+    public void testScopeIsMarkedReadOnlyWhenEventTypeIsMatchingStart() {
+        when(requestEvent.getType()).thenReturn(MATCHING_START);
+
+        listener.onEvent(requestEvent);
+        verify(handleManager, times(1)).enterScope();
+        verify(handleManager, times(1)).markReadOnly();
+        verify(handleManager, never()).get();
+    }
+
     @Test
     public void testHandleIsClosedWhenEventTypeIsFinished() {
         when(requestEvent.getType()).thenReturn(FINISHED);
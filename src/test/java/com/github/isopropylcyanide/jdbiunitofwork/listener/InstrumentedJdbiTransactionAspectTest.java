@@ -0,0 +1,118 @@
+package com.github.isopropylcyanide.jdbiunitofwork.listener;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.isopropylcyanide.jdbiunitofwork.JdbiUnitOfWork;
+import com.github.isopropylcyanide.jdbiunitofwork.core.DetachedScope;
+import com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager;
+import org.glassfish.jersey.server.model.Resource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.skife.jdbi.v2.Handle;
+
+import javax.ws.rs.core.MediaType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class InstrumentedJdbiTransactionAspectTest {
+
+    private static final String PREFIX = "com.github.isopropylcyanide.jdbiunitofwork.listener.JdbiTransactionAspect.ResourceStub.update.";
+
+    private Handle handle;
+
+    private MetricRegistry metricRegistry;
+
+    private UnitOfWorkPolicy policy;
+
+    private InstrumentedJdbiTransactionAspect aspect;
+
+    @BeforeEach
+    public void setUp() throws NoSuchMethodException {
+        JdbiHandleManager handleManager = mock(JdbiHandleManager.class);
+        handle = mock(Handle.class);
+        when(handleManager.get()).thenReturn(handle);
+        metricRegistry = new MetricRegistry();
+        policy = UnitOfWorkPolicy.of(Resource.builder("/").addMethod("PUT")
+                .produces(MediaType.TEXT_PLAIN_TYPE)
+                .handledBy(ResourceStub.class, ResourceStub.class.getMethod("update"))
+                .build());
+        this.aspect = new InstrumentedJdbiTransactionAspect(handleManager, metricRegistry);
+    }
+
+    @Test
+    public void testCommitIsRecordedForTheResourceMethod() {
+        aspect.begin(policy);
+        aspect.commit(policy);
+
+        verify(handle).begin();
+        verify(handle).commit();
+        assertEquals(1, metricRegistry.timer(PREFIX + "transaction").getCount());
+        assertEquals(1, metricRegistry.timer(PREFIX + "commit").getCount());
+        assertEquals(0, metricRegistry.timer(PREFIX + "rollback").getCount());
+    }
+
+    @Test
+    public void testRollbackIsRecordedForTheResourceMethod() {
+        aspect.begin(policy);
+        aspect.rollback(policy);
+
+        verify(handle).rollback();
+        assertEquals(1, metricRegistry.timer(PREFIX + "transaction").getCount());
+        assertEquals(0, metricRegistry.timer(PREFIX + "commit").getCount());
+        assertEquals(1, metricRegistry.timer(PREFIX + "rollback").getCount());
+    }
+
+    @Test
+    public void testFailedCommitIsStillRecorded() {
+        doThrow(new IllegalStateException()).when(handle).commit();
+        aspect.begin(policy);
+
+        assertThrows(IllegalStateException.class, () -> aspect.commit(policy));
+        assertEquals(1, metricRegistry.timer(PREFIX + "commit").getCount());
+        assertEquals(1, metricRegistry.timer(PREFIX + "transaction").getCount());
+    }
+
+    @Test
+    public void testDetachedTransactionIsRecordedOnTheThreadCompletingIt() throws InterruptedException {
+        JdbiHandleManager handleManager = mock(JdbiHandleManager.class);
+        when(handleManager.get()).thenReturn(handle);
+        when(handleManager.detachScope()).thenReturn(Runnable::run);
+        aspect = new InstrumentedJdbiTransactionAspect(handleManager, metricRegistry);
+
+        aspect.begin(policy);
+        DetachedScope detached = aspect.detachScope();
+        aspect.commit(policy);
+        assertEquals(0, metricRegistry.timer(PREFIX + "transaction").getCount());
+
+        Thread completingThread = new Thread(() -> detached.run(() -> aspect.commit(policy)));
+        completingThread.start();
+        completingThread.join();
+        assertEquals(1, metricRegistry.timer(PREFIX + "transaction").getCount());
+        assertEquals(2, metricRegistry.timer(PREFIX + "commit").getCount());
+    }
+
+    @Test
+    public void testNothingIsDetachedWhenTheHandleManagerCannotDetach() {
+        assertNull(aspect.detachScope());
+    }
+
+    @Test
+    public void testTransactionIsNotRecordedWithoutBegin() {
+        aspect.commit(policy);
+        assertEquals(1, metricRegistry.timer(PREFIX + "commit").getCount());
+        assertEquals(0, metricRegistry.timer(PREFIX + "transaction").getCount());
+    }
+
+    static class ResourceStub {
+
+        @JdbiUnitOfWork
+        public String update() {
+            return "";
+        }
+    }
+}
@@ -1,19 +1,34 @@
 package com.github.isopropylcyanide.jdbiunitofwork.listener;
 
+import com.github.isopropylcyanide.jdbiunitofwork.JdbiUnitOfWork;
 import com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.skife.jdbi.v2.DefaultStatementBuilder;
 import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+@SuppressWarnings("unchecked")
 public class JdbiTransactionAspectTest {
 
     private JdbiHandleManager handleManager;
@@ -49,6 +64,57 @@ public class JdbiTransactionAspectTest {
         verify(mockHandle, never()).commit();
     }
 
+    @Test
+    public void testBeginIsDeferredWhenTheHandleManagerSupportsIt() {
+        when(handleManager.deferBegin(any())).thenReturn(true);
+        aspect.begin();
+
+        verify(handleManager, never()).get();
+        verify(mockHandle, never()).begin();
+    }
+
+    @Test
+    public void testDeferredBeginBeginsTheHandleItIsRunWith() {
+        ArgumentCaptor<Consumer<Handle>> captor = ArgumentCaptor.forClass(Consumer.class);
+        when(handleManager.deferBegin(captor.capture())).thenReturn(true);
+        aspect.begin();
+
+        captor.getValue().accept(mockHandle);
+        verify(mockHandle, times(1)).begin();
+    }
+
+    @Test
+    public void testCommitIsSkippedWhenTheDeferredBeginWasNeverRun() {
+        when(handleManager.discardDeferredBegin()).thenReturn(true);
+        aspect.commit();
+
+        verify(handleManager, never()).get();
+        verify(mockHandle, never()).commit();
+    }
+
+    @Test
+    public void testRollbackIsSkippedWhenTheDeferredBeginWasNeverRun() {
+        when(handleManager.discardDeferredBegin()).thenReturn(true);
+        aspect.rollback();
+
+        verify(handleManager, never()).get();
+        verify(mockHandle, never()).rollback();
+        verify(handleManager, times(1)).clear();
+    }
+
+    @Test
+    public void testHandleManagerIsToldBeforeEveryRollback() {
+        aspect.rollback();
+        InOrder inOrder = inOrder(handleManager, mockHandle);
+        inOrder.verify(handleManager).beforeRollback(mockHandle);
+        inOrder.verify(mockHandle).rollback();
+
+        when(mockHandle.commit()).thenThrow(IllegalStateException.class);
+        assertThrows(IllegalStateException.class, () -> aspect.commit());
+        inOrder.verify(handleManager).beforeRollback(mockHandle);
+        inOrder.verify(mockHandle).rollback();
+    }
+
     @Test
     public void testCommitDoesNothingWhenHandleIsNull() {
         assertDoesNotThrow(() -> aspect.commit());
@@ -70,6 +136,62 @@ public class JdbiTransactionAspectTest {
         verify(mockHandle, never()).rollback();
     }
 
+    @Test
+    public void testBufferedStatementsAreFlushedBeforeCommit() {
+        aspect.commit();
+
+        InOrder inOrder = inOrder(handleManager, mockHandle);
+        inOrder.verify(handleManager).flushBufferedStatements(mockHandle);
+        inOrder.verify(mockHandle).commit();
+    }
+
+    @Test
+    public void testHandleManagerIsToldOnceTheCommitSucceeded() {
+        aspect.commit();
+
+        InOrder inOrder = inOrder(handleManager, mockHandle);
+        inOrder.verify(mockHandle).commit();
+        inOrder.verify(handleManager).afterCommit(mockHandle);
+    }
+
+    @Test
+    public void testHandleManagerIsNotToldWhenTheCommitFailed() {
+        when(mockHandle.commit()).thenThrow(IllegalArgumentException.class);
+        assertThrows(IllegalArgumentException.class, () -> aspect.commit());
+        verify(handleManager, never()).afterCommit(any());
+    }
+
+    @Test
+    public void testCommitVetoedByTheHandleManagerRollsBack() {
+        doThrow(IllegalStateException.class).when(handleManager).beforeCommit(mockHandle);
+        assertThrows(IllegalStateException.class, () -> aspect.commit());
+
+        verify(handleManager, never()).flushBufferedStatements(mockHandle);
+        verify(mockHandle, never()).commit();
+        verify(mockHandle, times(1)).rollback();
+        verify(handleManager, never()).afterCommit(mockHandle);
+    }
+
+    @Test
+    public void testFailedFlushOfBufferedStatementsRollsBack() {
+        doThrow(IllegalStateException.class).when(handleManager).flushBufferedStatements(mockHandle);
+        assertThrows(IllegalStateException.class, () -> aspect.commit());
+
+        verify(mockHandle, never()).commit();
+        verify(handleManager, times(1)).discardBufferedStatements(mockHandle);
+        verify(mockHandle, times(1)).rollback();
+    }
+
+    @Test
+    public void testBufferedStatementsAreDiscardedBeforeRollback() {
+        aspect.rollback();
+
+        InOrder inOrder = inOrder(handleManager, mockHandle);
+        inOrder.verify(handleManager).discardBufferedStatements(mockHandle);
+        inOrder.verify(mockHandle).rollback();
+        verify(handleManager, never()).flushBufferedStatements(any());
+    }
+
     @Test
     public void testRollbackDoesNothingWhenHandleIsNull() {
         assertDoesNotThrow(() -> aspect.rollback());
@@ -101,4 +223,91 @@ public class JdbiTransactionAspectTest {
         aspect.terminateHandle();
         verify(handleManager, times(1)).clear();
     }
+
+    @Test
+    public void testPolicyWithoutSettingsLeavesTheHandleAlone() throws NoSuchMethodException {
+        aspect.begin(policy("plain"));
+        aspect.commit(policy("plain"));
+
+        verify(mockHandle, never()).setTransactionIsolation(any(TransactionIsolationLevel.class));
+        verify(mockHandle, never()).getConnection();
+        verify(handleManager, never()).markReadOnly();
+    }
+
+    @Test
+    public void testSettingsOfThePolicyAreAppliedBeforeBeginAndRestoredAfterCommit() throws NoSuchMethodException, SQLException {
+        Connection connection = mock(Connection.class);
+        when(mockHandle.getConnection()).thenReturn(connection);
+        when(mockHandle.getTransactionIsolationLevel()).thenReturn(TransactionIsolationLevel.READ_COMMITTED);
+
+        aspect.begin(policy("readOnlySerializable"));
+        aspect.commit(policy("readOnlySerializable"));
+
+        InOrder inOrder = inOrder(mockHandle, connection);
+        inOrder.verify(mockHandle).setTransactionIsolation(TransactionIsolationLevel.SERIALIZABLE);
+        inOrder.verify(connection).setReadOnly(true);
+        inOrder.verify(mockHandle).begin();
+        inOrder.verify(mockHandle).commit();
+        inOrder.verify(connection).setReadOnly(false);
+        inOrder.verify(mockHandle).setTransactionIsolation(TransactionIsolationLevel.READ_COMMITTED);
+        verify(handleManager, never()).markReadOnly();
+    }
+
+    @Test
+    public void testSettingsOfThePolicyAreRestoredAfterRollback() throws NoSuchMethodException {
+        when(mockHandle.getTransactionIsolationLevel()).thenReturn(TransactionIsolationLevel.READ_COMMITTED);
+        aspect.begin(policy("timed"));
+        aspect.rollback(policy("timed"));
+
+        InOrder inOrder = inOrder(mockHandle, handleManager);
+        inOrder.verify(mockHandle).setStatementBuilder(isA(TransactionSettings.TimeoutStatementBuilder.class));
+        inOrder.verify(mockHandle).begin();
+        inOrder.verify(mockHandle).rollback();
+        inOrder.verify(mockHandle).setStatementBuilder(argThat(statementBuilder -> statementBuilder.getClass() == DefaultStatementBuilder.class));
+        inOrder.verify(handleManager).clear();
+        verify(mockHandle, never()).setTransactionIsolation(any(TransactionIsolationLevel.class));
+    }
+
+    @Test
+    public void testSettingsOfThePolicyAreAppliedToADeferredBegin() throws NoSuchMethodException {
+        ArgumentCaptor<Consumer<Handle>> captor = ArgumentCaptor.forClass(Consumer.class);
+        when(handleManager.deferBegin(captor.capture())).thenReturn(true);
+        when(mockHandle.getConnection()).thenReturn(mock(Connection.class));
+        aspect.begin(policy("readOnlySerializable"));
+        verify(mockHandle, never()).setTransactionIsolation(any(TransactionIsolationLevel.class));
+
+        captor.getValue().accept(mockHandle);
+        InOrder inOrder = inOrder(mockHandle);
+        inOrder.verify(mockHandle).setTransactionIsolation(TransactionIsolationLevel.SERIALIZABLE);
+        inOrder.verify(mockHandle).begin();
+    }
+
+    @Test
+    public void testSettingsOfThePolicyAreRestoredWhenBeginFails() throws NoSuchMethodException {
+        when(mockHandle.getTransactionIsolationLevel()).thenReturn(TransactionIsolationLevel.READ_COMMITTED);
+        when(mockHandle.begin()).thenThrow(IllegalStateException.class);
+        assertThrows(IllegalStateException.class, () -> aspect.begin(policy("timed")));
+
+        verify(mockHandle, times(1)).setStatementBuilder(argThat(statementBuilder -> statementBuilder.getClass() == DefaultStatementBuilder.class));
+        verify(handleManager, times(1)).clear();
+    }
+
+    private static UnitOfWorkPolicy policy(String name) throws NoSuchMethodException {
+        return UnitOfWorkPolicy.of(ResourceStub.class.getMethod(name));
+    }
+
+    static class ResourceStub {
+
+        @JdbiUnitOfWork
+        public void plain() {
+        }
+
+        @JdbiUnitOfWork(isolation = TransactionIsolationLevel.SERIALIZABLE, readOnly = true)
+        public void readOnlySerializable() {
+        }
+
+        @JdbiUnitOfWork(timeoutSeconds = 5)
+        public void timed() {
+        }
+    }
 }
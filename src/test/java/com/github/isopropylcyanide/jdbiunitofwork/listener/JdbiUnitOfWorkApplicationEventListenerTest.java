@@ -1,11 +1,15 @@
 package com.github.isopropylcyanide.jdbiunitofwork.listener;
 
+import com.github.isopropylcyanide.jdbiunitofwork.JdbiUnitOfWork;
 import com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager;
 import com.github.isopropylcyanide.jdbiunitofwork.core.JdbiUnitOfWorkProvider;
 import com.google.common.collect.Sets;
+import org.glassfish.jersey.server.model.Invocable;
+import org.glassfish.jersey.server.model.ResourceModel;
 import org.glassfish.jersey.server.monitoring.ApplicationEvent;
 import org.glassfish.jersey.server.monitoring.RequestEvent;
 import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.glassfish.jersey.server.spi.internal.ResourceMethodInvocationHandlerProvider;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -13,10 +17,15 @@ import org.skife.jdbi.v2.Handle;
 
 import javax.ws.rs.HttpMethod;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -47,6 +56,17 @@ public class JdbiUnitOfWorkApplicationEventListenerTest {
         verify(applicationEvent, times(1)).getType();
     }
 
+    @Test
+    public void testOnEventResolvesPoliciesWhenInitializationFinished() {
+        ApplicationEvent applicationEvent = mock(ApplicationEvent.class);
+        ResourceModel resourceModel = mock(ResourceModel.class);
+        when(applicationEvent.getType()).thenReturn(ApplicationEvent.Type.INITIALIZATION_FINISHED);
+        when(applicationEvent.getResourceModel()).thenReturn(resourceModel);
+
+        applicationListener.onEvent(applicationEvent);
+        verify(resourceModel, times(1)).getResources();
+    }
+
     @Test
     public void testOnRequestDoesNothingWhenRequestEventPathIsExcluded() {
         when(requestEvent.getUriInfo().getPath()).thenReturn("excluded");
@@ -72,4 +92,65 @@ public class JdbiUnitOfWorkApplicationEventListenerTest {
         assertNotNull(eventListener);
         assertEquals(NonHttpGetRequestJdbiUnitOfWorkEventListener.class, eventListener.getClass());
     }
+
+    @Test
+    public void testOnRequestReusesEventListenersAcrossRequests() {
+        when(requestEvent.getUriInfo().getPath()).thenReturn("exclude-me-not");
+        when(requestEvent.getContainerRequest().getMethod()).thenReturn(HttpMethod.GET);
+        RequestEventListener getListener = applicationListener.onRequest(requestEvent);
+        assertSame(getListener, applicationListener.onRequest(requestEvent));
+
+        when(requestEvent.getContainerRequest().getMethod()).thenReturn(HttpMethod.POST);
+        RequestEventListener postListener = applicationListener.onRequest(requestEvent);
+        assertSame(postListener, applicationListener.onRequest(requestEvent));
+        assertNotSame(getListener, postListener);
+    }
+
+    @Test
+    public void testInvocationHandlerProviderIsSharedAcrossCalls() {
+        assertNotNull(applicationListener.getInvocationHandlerProvider());
+        assertSame(applicationListener.getInvocationHandlerProvider(), applicationListener.getInvocationHandlerProvider());
+    }
+
+    @Test
+    public void testInvocationHandlerProviderHandlesRetriedAndAsyncMethods() throws NoSuchMethodException {
+        ResourceMethodInvocationHandlerProvider provider = applicationListener.getInvocationHandlerProvider();
+        assertNotNull(provider.create(Invocable.create(ResourceStub.class, ResourceStub.class.getMethod("retried"))));
+        assertNotNull(provider.create(Invocable.create(ResourceStub.class, ResourceStub.class.getMethod("async"))));
+        assertNull(provider.create(Invocable.create(ResourceStub.class, ResourceStub.class.getMethod("update"))));
+    }
+
+    @Test
+    public void testHandleManagerRequiringAScopeIsServedByTheInvocationHandlerProviderAlone() throws NoSuchMethodException {
+        JdbiHandleManager handleManager = mock(JdbiHandleManager.class);
+        when(handleManager.requiresScope()).thenReturn(true);
+        JdbiUnitOfWorkProvider unitOfWorkProvider = mock(JdbiUnitOfWorkProvider.class);
+        when(unitOfWorkProvider.getHandleManager()).thenReturn(handleManager);
+        JdbiUnitOfWorkApplicationEventListener scopedListener = new JdbiUnitOfWorkApplicationEventListener(unitOfWorkProvider, Sets.newHashSet());
+        when(requestEvent.getUriInfo().getPath()).thenReturn("exclude-me-not");
+        when(requestEvent.getContainerRequest().getMethod()).thenReturn(HttpMethod.PUT);
+
+        assertNull(scopedListener.onRequest(requestEvent));
+        ResourceMethodInvocationHandlerProvider provider = scopedListener.getInvocationHandlerProvider();
+        assertTrue(provider instanceof ScopingInvocationHandlerProvider);
+        assertNotNull(provider.create(Invocable.create(ResourceStub.class, ResourceStub.class.getMethod("update"))));
+    }
+
+    public static class ResourceStub {
+
+        @JdbiUnitOfWork(maxAttempts = 3)
+        public String retried() {
+            return "";
+        }
+
+        @JdbiUnitOfWork
+        public CompletionStage<String> async() {
+            return CompletableFuture.completedFuture("");
+        }
+
+        @JdbiUnitOfWork
+        public String update() {
+            return "";
+        }
+    }
 }
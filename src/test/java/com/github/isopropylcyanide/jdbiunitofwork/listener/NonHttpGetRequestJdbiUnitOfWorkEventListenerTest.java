@@ -13,6 +13,7 @@ import org.skife.jdbi.v2.Handle;
 import javax.ws.rs.core.MediaType;
 
 import static org.glassfish.jersey.server.monitoring.RequestEvent.Type.FINISHED;
+import static org.glassfish.jersey.server.monitoring.RequestEvent.Type.MATCHING_START;
 import static org.glassfish.jersey.server.monitoring.RequestEvent.Type.ON_EXCEPTION;
 import static org.glassfish.jersey.server.monitoring.RequestEvent.Type.RESOURCE_METHOD_START;
 import static org.glassfish.jersey.server.monitoring.RequestEvent.Type.RESP_FILTERS_START;
@@ -81,6 +82,15 @@ public class NonHttpGetRequestJdbiUnitOfWorkEventListenerTest {
         verify(handleManager, times(1)).clear();
     }
 
+    @Test
+    public void testScopeIsEnteredWhenEventTypeIsMatchingStart() {
+        when(requestEvent.getType()).thenReturn(MATCHING_START);
+        listener.onEvent(requestEvent);
+
+        verify(handleManager, times(1)).enterScope();
+        verify(handleManager, never()).get();
+    }
+
     @Test
     public void testHandleIsClosedWhenEventTypeIsFinished() {
         when(requestEvent.getType()).thenReturn(FINISHED);
@@ -122,6 +132,21 @@ public class NonHttpGetRequestJdbiUnitOfWorkEventListenerTest {
         verify(handle, times(1)).rollback();
     }
 
+    @Test
+    public void testTransactionIsLeftToTheInvocationHandlerWhenHandledOnInvocation() throws NoSuchMethodException {
+        UnitOfWorkPolicies policies = new UnitOfWorkPolicies();
+        policies.handleOnInvocation(ResourceMethodStub.class.getMethod("apply"));
+        listener = new NonHttpGetRequestJdbiUnitOfWorkEventListener(handleManager, policies);
+        when(requestEvent.getType()).thenReturn(RESOURCE_METHOD_START, RESP_FILTERS_START, ON_EXCEPTION, FINISHED);
+        when(requestEvent.getUriInfo().getMatchedResourceMethod()).thenReturn(getMockResourceMethod());
+
+        for (int i = 0; i < 4; i++) {
+            listener.onEvent(requestEvent);
+        }
+        verify(handleManager, never()).get();
+        verify(handleManager, times(1)).clear();
+    }
+
     private ResourceMethod getMockResourceMethod() throws NoSuchMethodException {
         return Resource
                 .builder()
@@ -0,0 +1,228 @@
+package com.github.isopropylcyanide.jdbiunitofwork.listener;
+
+import com.github.isopropylcyanide.jdbiunitofwork.JdbiUnitOfWork;
+import com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager;
+import org.glassfish.jersey.server.model.Invocable;
+import org.glassfish.jersey.server.model.Resource;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.skife.jdbi.v2.Handle;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.core.MediaType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RetryingInvocationHandlerProviderTest {
+
+    private JdbiHandleManager handleManager;
+
+    private Handle handle;
+
+    private UnitOfWorkPolicies policies;
+
+    private RetryingInvocationHandlerProvider provider;
+
+    private ResourceStub resource;
+
+    @BeforeEach
+    public void setUp() {
+        handleManager = mock(JdbiHandleManager.class);
+        handle = mock(Handle.class);
+        when(handleManager.get()).thenReturn(handle);
+        policies = new UnitOfWorkPolicies();
+        provider = new RetryingInvocationHandlerProvider(new JdbiTransactionAspect(handleManager), policies);
+        resource = new ResourceStub();
+    }
+
+    @Test
+    public void testMethodsWhichAreNotRetriedAreLeftToTheDefaultHandler() throws NoSuchMethodException {
+        assertNull(provider.create(invocable("update")));
+        assertNull(provider.create(invocable("read")));
+        assertNull(provider.create(invocable("get")));
+        assertFalse(policies.get(resourceMethod("update")).isHandledOnInvocation());
+    }
+
+    @Test
+    public void testAsyncMethodsAreNeverRetried() throws NoSuchMethodException {
+        assertNull(provider.create(invocable("retriedAsync")));
+        assertFalse(policies.get(resourceMethod("retriedAsync")).isHandledOnInvocation());
+    }
+
+    @Test
+    public void testRetriedMethodIsRecordedInThePolicies() throws NoSuchMethodException {
+        assertNotNull(provider.create(invocable("retried")));
+        assertTrue(policies.get(resourceMethod("retried")).isHandledOnInvocation());
+    }
+
+    @Test
+    public void testSuccessfulInvocationIsCommittedOnce() throws Throwable {
+        Method method = ResourceStub.class.getMethod("retried");
+        assertEquals("done", provider.create(invocable("retried")).invoke(resource, method, new Object[0]));
+
+        InOrder inOrder = inOrder(handle);
+        inOrder.verify(handle).begin();
+        inOrder.verify(handle).commit();
+        verify(handle, never()).rollback();
+        assertEquals(1, resource.invocations);
+    }
+
+    @Test
+    public void testRetryableFailureIsRolledBackAndInvokedAgainOnANewHandle() throws Throwable {
+        resource.failures = 2;
+        Method method = ResourceStub.class.getMethod("retried");
+        assertEquals("done", provider.create(invocable("retried")).invoke(resource, method, new Object[0]));
+
+        assertEquals(3, resource.invocations);
+        verify(handle, times(3)).begin();
+        verify(handle, times(2)).rollback();
+        verify(handle, times(1)).commit();
+        verify(handleManager, times(2)).clear();
+    }
+
+    @Test
+    public void testLastRetryableFailureIsRethrownAsIs() throws Throwable {
+        resource.failures = 5;
+        Method method = ResourceStub.class.getMethod("retried");
+        InvocationHandler handler = provider.create(invocable("retried"));
+
+        InvocationTargetException ex = assertThrows(InvocationTargetException.class, () -> handler.invoke(resource, method, new Object[0]));
+        assertTrue(ex.getCause().getCause() instanceof SQLException);
+        assertEquals(3, resource.invocations);
+        verify(handle, times(3)).rollback();
+        verify(handle, never()).commit();
+    }
+
+    @Test
+    public void testNonRetryableFailureIsNotRetried() throws Throwable {
+        resource.sqlState = "23505";
+        resource.failures = 1;
+        Method method = ResourceStub.class.getMethod("retried");
+        InvocationHandler handler = provider.create(invocable("retried"));
+
+        assertThrows(InvocationTargetException.class, () -> handler.invoke(resource, method, new Object[0]));
+        assertEquals(1, resource.invocations);
+        verify(handle, times(1)).rollback();
+    }
+
+    @Test
+    public void testRetryableCommitFailureIsInvokedAgain() throws Throwable {
+        doThrow(new IllegalStateException(new SQLException("could not serialize access", "40001")))
+                .doReturn(handle)
+                .when(handle).commit();
+        Method method = ResourceStub.class.getMethod("retried");
+        assertEquals("done", provider.create(invocable("retried")).invoke(resource, method, new Object[0]));
+
+        assertEquals(2, resource.invocations);
+        verify(handle, times(2)).commit();
+        verify(handle, times(1)).rollback();
+    }
+
+    @Test
+    public void testCommitFailureIsRethrownToBeMapped() throws Throwable {
+        IllegalStateException failure = new IllegalStateException("connection lost");
+        doThrow(failure).when(handle).commit();
+        Method method = ResourceStub.class.getMethod("retried");
+        InvocationHandler handler = provider.create(invocable("retried"));
+
+        InvocationTargetException ex = assertThrows(InvocationTargetException.class, () -> handler.invoke(resource, method, new Object[0]));
+        assertSame(failure, ex.getCause());
+        assertEquals(1, resource.invocations);
+    }
+
+    @Test
+    public void testPolicyMatchesRetryableSqlStatesAndTheirClasses() throws NoSuchMethodException {
+        UnitOfWorkPolicy policy = UnitOfWorkPolicy.of(ResourceStub.class.getMethod("retriedByClass"));
+        assertTrue(policy.isRetryable(new RuntimeException(new SQLException("deadlock", "40P01"))));
+        assertTrue(policy.isRetryable(new SQLException("rollback", "40002")));
+        assertFalse(policy.isRetryable(new SQLException("unique violation", "23505")));
+        assertFalse(policy.isRetryable(new SQLException("no state")));
+        assertFalse(policy.isRetryable(new RuntimeException()));
+    }
+
+    @Test
+    public void testPolicyBackoffIsJitteredAndCapped() throws NoSuchMethodException {
+        UnitOfWorkPolicy policy = UnitOfWorkPolicy.of(ResourceStub.class.getMethod("retriedByClass"));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(policy.getBackoffMillis(1) <= 10);
+            assertTrue(policy.getBackoffMillis(2) <= 20);
+            assertTrue(policy.getBackoffMillis(10) <= 30);
+        }
+        assertEquals(0, UnitOfWorkPolicy.of(ResourceStub.class.getMethod("retried")).getBackoffMillis(3));
+    }
+
+    private static Invocable invocable(String name) throws NoSuchMethodException {
+        return Invocable.create(ResourceStub.class, ResourceStub.class.getMethod(name));
+    }
+
+    private static ResourceMethod resourceMethod(String name) throws NoSuchMethodException {
+        return Resource.builder("/").addMethod("POST")
+                .produces(MediaType.TEXT_PLAIN_TYPE)
+                .handledBy(ResourceStub.class, ResourceStub.class.getMethod(name))
+                .build();
+    }
+
+    public static class ResourceStub {
+
+        private int invocations;
+
+        private int failures;
+
+        private String sqlState = "40001";
+
+        @JdbiUnitOfWork(maxAttempts = 3, backoffMillis = 0)
+        public String retried() {
+            invocations++;
+            if (invocations <= failures) {
+                throw new IllegalStateException(new SQLException("conflict", sqlState));
+            }
+            return "done";
+        }
+
+        @JdbiUnitOfWork(maxAttempts = 3, backoffMillis = 10, maxBackoffMillis = 30, retryableSqlStates = "40")
+        public String retriedByClass() {
+            return "";
+        }
+
+        @JdbiUnitOfWork(maxAttempts = 3)
+        public CompletionStage<String> retriedAsync() {
+            return CompletableFuture.completedFuture("");
+        }
+
+        @JdbiUnitOfWork
+        public String update() {
+            return "";
+        }
+
+        public String read() {
+            return "";
+        }
+
+        @GET
+        @JdbiUnitOfWork(maxAttempts = 3)
+        public String get() {
+            return "";
+        }
+    }
+}
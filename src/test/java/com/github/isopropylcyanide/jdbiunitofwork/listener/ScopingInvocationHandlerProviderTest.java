@@ -0,0 +1,179 @@
+package com.github.isopropylcyanide.jdbiunitofwork.listener;
+
+import com.github.isopropylcyanide.jdbiunitofwork.JdbiUnitOfWork;
+import com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager;
+import org.glassfish.jersey.server.model.Invocable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.skife.jdbi.v2.Handle;
+
+import javax.ws.rs.GET;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ScopingInvocationHandlerProviderTest {
+
+    private JdbiHandleManager handleManager;
+
+    private Handle handle;
+
+    private List<String> calls;
+
+    private boolean inScope;
+
+    private ScopingInvocationHandlerProvider provider;
+
+    private ResourceStub resource;
+
+    @BeforeEach
+    public void setUp() {
+        handleManager = mock(JdbiHandleManager.class);
+        handle = mock(Handle.class);
+        calls = new ArrayList<>();
+        when(handleManager.get()).thenReturn(handle);
+        doAnswer(invocation -> {
+            inScope = true;
+            try {
+                invocation.<Runnable>getArgument(0).run();
+            } finally {
+                inScope = false;
+            }
+            return null;
+        }).when(handleManager).runInScope(any());
+        doAnswer(invocation -> record("begin")).when(handle).begin();
+        doAnswer(invocation -> record("commit")).when(handle).commit();
+        doAnswer(invocation -> record("rollback")).when(handle).rollback();
+        doAnswer(invocation -> record("clear")).when(handleManager).clear();
+        provider = new ScopingInvocationHandlerProvider(handleManager, new JdbiTransactionAspect(handleManager), invocable -> null);
+        resource = new ResourceStub();
+    }
+
+    @Test
+    public void testUnitOfWorkIsRunWithinTheScope() throws Throwable {
+        assertEquals("done", invoke("update"));
+
+        assertEquals(List.of("begin in scope", "invoke in scope", "commit in scope", "clear in scope"), calls);
+        InOrder inOrder = inOrder(handleManager);
+        inOrder.verify(handleManager).runInScope(any());
+        inOrder.verify(handleManager).enterScope();
+        verify(handleManager, never()).markReadOnly();
+    }
+
+    @Test
+    public void testGetIsMarkedReadOnlyAndNotTransactional() throws Throwable {
+        assertEquals("done", invoke("get"));
+
+        assertEquals(List.of("invoke in scope", "clear in scope"), calls);
+        verify(handleManager).markReadOnly();
+        verify(handle, never()).begin();
+    }
+
+    @Test
+    public void testMethodWithoutUnitOfWorkIsNotTransactional() throws Throwable {
+        assertEquals("done", invoke("read"));
+
+        assertEquals(List.of("invoke in scope", "clear in scope"), calls);
+        verify(handle, never()).begin();
+    }
+
+    @Test
+    public void testFailureIsRolledBackAndRethrown() throws NoSuchMethodException {
+        resource.failure = new IllegalArgumentException("bad request");
+
+        InvocationTargetException ex = assertThrows(InvocationTargetException.class, () -> invoke("update"));
+        assertSame(resource.failure, ex.getCause());
+        assertTrue(calls.contains("rollback in scope"));
+        verify(handle, never()).commit();
+        assertEquals("clear in scope", calls.get(calls.size() - 1));
+    }
+
+    @Test
+    public void testRollbackFailureIsSuppressed() throws NoSuchMethodException {
+        resource.failure = new IllegalArgumentException("bad request");
+        IllegalStateException rollbackFailure = new IllegalStateException("connection lost");
+        doThrow(rollbackFailure).when(handle).rollback();
+
+        InvocationTargetException ex = assertThrows(InvocationTargetException.class, () -> invoke("update"));
+        assertSame(rollbackFailure, ex.getCause().getSuppressed()[0]);
+    }
+
+    @Test
+    public void testCommitFailureIsRethrownToBeMapped() throws NoSuchMethodException {
+        IllegalStateException failure = new IllegalStateException("connection lost");
+        doThrow(failure).when(handle).commit();
+
+        InvocationTargetException ex = assertThrows(InvocationTargetException.class, () -> invoke("update"));
+        assertSame(failure, ex.getCause());
+    }
+
+    @Test
+    public void testInvocationIsHandedOverToTheHandlerOfTheDelegate() throws Throwable {
+        InvocationHandler handler = (target, method, args) -> {
+            record("delegate");
+            return "delegated";
+        };
+        provider = new ScopingInvocationHandlerProvider(handleManager, new JdbiTransactionAspect(handleManager), invocable -> handler);
+
+        assertEquals("delegated", invoke("update"));
+        assertEquals(List.of("delegate in scope", "clear in scope"), calls);
+        assertEquals(0, resource.invocations);
+    }
+
+    private Object invoke(String name) throws Throwable {
+        Method method = ResourceStub.class.getMethod(name);
+        return provider.create(Invocable.create(ResourceStub.class, method)).invoke(resource, method, new Object[0]);
+    }
+
+    private Object record(String call) {
+        calls.add(call + (inScope ? " in scope" : " out of scope"));
+        return null;
+    }
+
+    public class ResourceStub {
+
+        private int invocations;
+
+        private RuntimeException failure;
+
+        @JdbiUnitOfWork
+        public String update() {
+            return invoked();
+        }
+
+        public String read() {
+            return invoked();
+        }
+
+        @GET
+        @JdbiUnitOfWork
+        public String get() {
+            return invoked();
+        }
+
+        private String invoked() {
+            invocations++;
+            record("invoke");
+            if (failure != null) {
+                throw failure;
+            }
+            return "done";
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.github.isopropylcyanide.jdbiunitofwork.listener;
+
+import com.github.isopropylcyanide.jdbiunitofwork.JdbiUnitOfWork;
+import com.github.isopropylcyanide.jdbiunitofwork.core.ForwardingStatementBuilder;
+import com.github.isopropylcyanide.jdbiunitofwork.core.ForwardingStatementBuilderTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.skife.jdbi.v2.DefaultStatementBuilder;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+import org.skife.jdbi.v2.tweak.StatementBuilder;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TransactionSettingsTest {
+
+    private Handle handle;
+
+    private Connection connection;
+
+    @BeforeEach
+    public void setUp() {
+        handle = ForwardingStatementBuilderTest.statementBuilderHandle(new DefaultStatementBuilder());
+        connection = mock(Connection.class);
+        when(handle.getConnection()).thenReturn(connection);
+        when(handle.getTransactionIsolationLevel()).thenReturn(TransactionIsolationLevel.READ_COMMITTED);
+    }
+
+    @Test
+    public void testStatementsAreGivenTheTimeLeftAsTheirQueryTimeout() throws Exception {
+        PreparedStatement statement = mock(PreparedStatement.class);
+        CallableStatement call = mock(CallableStatement.class);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(connection.prepareCall(anyString())).thenReturn(call);
+
+        StatementBuilder statementBuilder = appliedStatementBuilder("timed");
+        statementBuilder.create(connection, "select 1", mock(StatementContext.class));
+        statementBuilder.createCall(connection, "call recount()", mock(StatementContext.class));
+
+        verify(statement, times(1)).setQueryTimeout(5);
+        verify(call, times(1)).setQueryTimeout(5);
+    }
+
+    @Test
+    public void testNoStatementIsCreatedOnceTheTransactionTimedOut() throws Exception {
+        StatementBuilder statementBuilder = new TransactionSettings.TimeoutStatementBuilder(new DefaultStatementBuilder(), "ResourceStub.timed", 5, System.nanoTime() - 1);
+        assertThrows(SQLTimeoutException.class, () -> statementBuilder.create(connection, "select 1", mock(StatementContext.class)));
+        verify(connection, never()).prepareStatement(anyString());
+    }
+
+    @Test
+    public void testReadOnlyIsRevertedWhenTheConnectionCannotBeMarkedReadOnly() throws Exception {
+        doThrow(SQLException.class).when(connection).setReadOnly(true);
+        IllegalStateException ex = assertThrows(IllegalStateException.class, () -> TransactionSettings.apply(handle, policy("readOnlySerializable")));
+
+        assertTrue(ex.getCause() instanceof SQLException);
+        verify(handle, times(1)).setTransactionIsolation(TransactionIsolationLevel.READ_COMMITTED);
+    }
+
+    @Test
+    public void testFailureToRestoreIsNotThrown() throws Exception {
+        TransactionSettings settings = TransactionSettings.apply(handle, policy("readOnlySerializable"));
+        doThrow(SQLException.class).when(connection).setReadOnly(false);
+
+        assertDoesNotThrow(() -> settings.restore(handle));
+    }
+
+    @Test
+    public void testRestoreSetsBackTheStatementBuilderItWrapped() throws Exception {
+        StatementBuilder replaced = ForwardingStatementBuilder.wrap(handle, PlainStatementBuilder::new);
+        TransactionSettings settings = TransactionSettings.apply(handle, policy("timed"));
+        settings.restore(handle);
+
+        InOrder inOrder = inOrder(handle);
+        inOrder.verify(handle).setStatementBuilder(replaced);
+        inOrder.verify(handle).setStatementBuilder(argThat(statementBuilder -> statementBuilder instanceof TransactionSettings.TimeoutStatementBuilder));
+        inOrder.verify(handle).setStatementBuilder(replaced);
+    }
+
+    @Test
+    public void testStatementBuilderWrappedAroundItIsLeftInPlaceOnRestore() throws Exception {
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        TransactionSettings settings = TransactionSettings.apply(handle, policy("timed"));
+        StatementBuilder wrapping = ForwardingStatementBuilder.wrap(handle, PlainStatementBuilder::new);
+        settings.restore(handle);
+
+        verify(handle, times(2)).setStatementBuilder(any(StatementBuilder.class));
+        wrapping.create(connection, "select 1", mock(StatementContext.class));
+        verify(statement, never()).setQueryTimeout(anyInt());
+    }
+
+    private StatementBuilder appliedStatementBuilder(String name) throws NoSuchMethodException {
+        TransactionSettings.apply(handle, policy(name));
+        ArgumentCaptor<StatementBuilder> captor = ArgumentCaptor.forClass(StatementBuilder.class);
+        verify(handle).setStatementBuilder(captor.capture());
+        return captor.getValue();
+    }
+
+    private static UnitOfWorkPolicy policy(String name) throws NoSuchMethodException {
+        return UnitOfWorkPolicy.of(ResourceStub.class.getMethod(name));
+    }
+
+    static class ResourceStub {
+
+        @JdbiUnitOfWork(timeoutSeconds = 5)
+        public void timed() {
+        }
+
+        @JdbiUnitOfWork(isolation = TransactionIsolationLevel.SERIALIZABLE, readOnly = true)
+        public void readOnlySerializable() {
+        }
+    }
+
+    private static final class PlainStatementBuilder extends ForwardingStatementBuilder {
+
+        PlainStatementBuilder(StatementBuilder delegate) {
+            super(delegate);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.isopropylcyanide.jdbiunitofwork.listener;
+
+import com.github.isopropylcyanide.jdbiunitofwork.JdbiUnitOfWork;
+import com.google.common.collect.Lists;
+import org.glassfish.jersey.server.model.Resource;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.server.model.ResourceModel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.core.MediaType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class UnitOfWorkPoliciesTest {
+
+    private ResourceMethod transactionalMethod;
+
+    private ResourceMethod nonTransactionalMethod;
+
+    private ResourceModel resourceModel;
+
+    private UnitOfWorkPolicies policies;
+
+    @BeforeEach
+    public void setUp() throws NoSuchMethodException {
+        Resource.Builder childBuilder = Resource.builder("child");
+        transactionalMethod = childBuilder.addMethod("PUT")
+                .produces(MediaType.TEXT_PLAIN_TYPE)
+                .handledBy(ResourceStub.class, ResourceStub.class.getMethod("update"))
+                .build();
+
+        Resource.Builder rootBuilder = Resource.builder("/");
+        nonTransactionalMethod = rootBuilder.addMethod("POST")
+                .produces(MediaType.TEXT_PLAIN_TYPE)
+                .handledBy(ResourceStub.class, ResourceStub.class.getMethod("read"))
+                .build();
+        Resource root = rootBuilder.addChildResource(childBuilder.build()).build();
+
+        resourceModel = mock(ResourceModel.class);
+        when(resourceModel.getResources()).thenReturn(Lists.newArrayList(root));
+        this.policies = new UnitOfWorkPolicies();
+        policies.register(resourceModel);
+    }
+
+    @Test
+    public void testPolicyIsResolvedForEveryMethodOfTheResourceModel() {
+        UnitOfWorkPolicy transactionalPolicy = policies.get(transactionalMethod);
+        assertTrue(transactionalPolicy.isTransactional());
+        assertEquals("ResourceStub.update", transactionalPolicy.getName());
+        assertSame(transactionalPolicy, policies.get(transactionalMethod));
+
+        UnitOfWorkPolicy nonTransactionalPolicy = policies.get(nonTransactionalMethod);
+        assertFalse(nonTransactionalPolicy.isTransactional());
+        assertSame(nonTransactionalPolicy, policies.get(nonTransactionalMethod));
+    }
+
+    @Test
+    public void testPolicyIsResolvedForMethodsOutsideTheResourceModel() throws NoSuchMethodException {
+        ResourceMethod locatedMethod = Resource.builder("located").addMethod("PUT")
+                .produces(MediaType.TEXT_PLAIN_TYPE)
+                .handledBy(ResourceStub.class, ResourceStub.class.getMethod("update"))
+                .build();
+
+        assertTrue(policies.get(locatedMethod).isTransactional());
+        assertNotSame(policies.get(locatedMethod), policies.get(locatedMethod));
+    }
+
+    @Test
+    public void testPolicyIsMarkedHandledOnInvocationWhetherToldBeforeOrAfterTheResourceModel() throws NoSuchMethodException {
+        UnitOfWorkPolicy transactionalPolicy = policies.get(transactionalMethod);
+        assertFalse(transactionalPolicy.isHandledOnInvocation());
+
+        policies.handleOnInvocation(ResourceStub.class.getMethod("update"));
+        UnitOfWorkPolicy handledPolicy = policies.get(transactionalMethod);
+        assertTrue(handledPolicy.isHandledOnInvocation());
+        assertEquals(transactionalPolicy.getName(), handledPolicy.getName());
+        assertTrue(handledPolicy.isTransactional());
+        assertFalse(policies.get(nonTransactionalMethod).isHandledOnInvocation());
+
+        UnitOfWorkPolicies toldBefore = new UnitOfWorkPolicies();
+        toldBefore.handleOnInvocation(ResourceStub.class.getMethod("update"));
+        toldBefore.register(resourceModel);
+        assertTrue(toldBefore.get(transactionalMethod).isHandledOnInvocation());
+        assertSame(toldBefore.get(transactionalMethod), toldBefore.get(transactionalMethod));
+    }
+
+    @Test
+    public void testPolicyIsNonTransactionalWhenNoMethodWasMatched() {
+        assertSame(UnitOfWorkPolicy.NON_TRANSACTIONAL, policies.get(null));
+    }
+
+    static class ResourceStub {
+
+        @JdbiUnitOfWork
+        public String update() {
+            return "";
+        }
+
+        public String read() {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.github.isopropylcyanide.jdbiunitofwork.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs against the versioned section of the multi release jar, which only the {@code java25}
+ * profile builds
+ */
+public class ScopedValueJdbiHandleManagerIT {
+
+    private DBI dbi;
+
+    private JdbiHandleManager manager;
+
+    @BeforeEach
+    public void setUp() {
+        dbi = mock(DBI.class);
+        when(dbi.open()).thenAnswer((Answer<Handle>) invocation -> mock(Handle.class));
+        manager = JdbiUnitOfWorkProvider.withScopedValue(dbi).getHandleManager();
+    }
+
+    @Test
+    public void testEveryUnitOfWorkRequiresAScope() {
+        assertTrue(manager.requiresScope());
+    }
+
+    @Test
+    public void testGetOutsideOfAScopeFails() {
+        assertThrows(IllegalStateException.class, manager::get);
+        assertNull(manager.peek());
+        verify(dbi, never()).open();
+    }
+
+    @Test
+    public void testGetSetsSameHandleWithinAScope() {
+        manager.runInScope(() -> {
+            assertNull(manager.peek());
+            Handle handle = manager.get();
+            assertSame(handle, manager.get());
+            assertSame(handle, manager.peek());
+        });
+        verify(dbi, times(1)).open();
+    }
+
+    @Test
+    public void testNestedScopeSharesTheHandleOfTheOuterOne() {
+        manager.runInScope(() -> {
+            Handle handle = manager.get();
+            manager.runInScope(() -> assertSame(handle, manager.get()));
+        });
+        verify(dbi, times(1)).open();
+    }
+
+    @Test
+    public void testEveryScopeGetsAHandleOfItsOwn() throws Exception {
+        Handle first = manager.callInScope(manager::get);
+        Handle second = manager.callInScope(manager::get);
+        assertNotSame(first, second);
+    }
+
+    @Test
+    public void testClearClosesTheHandleOfTheScope() {
+        AtomicReference<Handle> handle = new AtomicReference<>();
+        manager.runInScope(() -> {
+            handle.set(manager.get());
+            manager.clear();
+            assertNull(manager.peek());
+            assertNotSame(handle.get(), manager.get());
+        });
+        verify(handle.get(), times(1)).close();
+    }
+
+    @Test
+    public void testDeferredBeginRunsOnTheFirstHandleOfTheScope() {
+        JdbiHandleManager deferring = JdbiUnitOfWorkProvider.withScopedValue(dbi, true).getHandleManager();
+        deferring.runInScope(() -> {
+            assertTrue(deferring.deferBegin(Handle::begin));
+            verify(dbi, never()).open();
+            verify(deferring.get(), times(1)).begin();
+            assertFalse(deferring.deferBegin(Handle::begin));
+        });
+    }
+
+    @Test
+    public void testDeferredBeginIsDiscardedWithoutOpeningAHandle() {
+        JdbiHandleManager deferring = JdbiUnitOfWorkProvider.withScopedValue(dbi, true).getHandleManager();
+        deferring.runInScope(() -> {
+            assertTrue(deferring.deferBegin(Handle::begin));
+            assertTrue(deferring.discardDeferredBegin());
+            assertFalse(deferring.discardDeferredBegin());
+        });
+        verify(dbi, never()).open();
+    }
+
+    @Test
+    public void testDecoratorIsToldOfTheClosingHandle() {
+        AtomicReference<Handle> closing = new AtomicReference<>();
+        JdbiHandleManager decorated = new ForwardingJdbiHandleManager(manager) {
+            @Override
+            public void closing(Handle handle) {
+                closing.set(handle);
+            }
+        };
+        decorated.runInScope(() -> {
+            Handle handle = decorated.get();
+            decorated.clear();
+            assertEquals(handle, closing.get());
+        });
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.isopropylcyanide.jdbiunitofwork.listener;
+
+import com.github.isopropylcyanide.jdbiunitofwork.JdbiUnitOfWork;
+import com.github.isopropylcyanide.jdbiunitofwork.core.JdbiHandleManager;
+import com.github.isopropylcyanide.jdbiunitofwork.core.JdbiUnitOfWorkProvider;
+import org.glassfish.jersey.server.model.Invocable;
+import org.glassfish.jersey.server.spi.internal.ResourceMethodInvocationHandlerProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import javax.ws.rs.GET;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Serves resource methods through the invocation handler provider of the application event listener
+ * with a handle manager binding its handles through a {@code ScopedValue}, which only the
+ * {@code java25} profile builds
+ */
+public class ScopingInvocationHandlerProviderIT {
+
+    private Handle handle;
+
+    private JdbiHandleManager handleManager;
+
+    private ResourceMethodInvocationHandlerProvider provider;
+
+    @BeforeEach
+    public void setUp() {
+        DBI dbi = mock(DBI.class);
+        handle = mock(Handle.class);
+        when(dbi.open()).thenReturn(handle);
+        JdbiUnitOfWorkProvider unitOfWorkProvider = JdbiUnitOfWorkProvider.withScopedValue(dbi);
+        handleManager = unitOfWorkProvider.getHandleManager();
+        provider = new JdbiUnitOfWorkApplicationEventListener(unitOfWorkProvider, Collections.emptySet()).getInvocationHandlerProvider();
+    }
+
+    @Test
+    public void testResourceMethodIsProvidedWithTheHandleOfItsScope() throws Throwable {
+        ResourceStub resource = new ResourceStub();
+        assertSame(handle, invoke(resource, "update"));
+
+        InOrder inOrder = inOrder(handle);
+        inOrder.verify(handle).begin();
+        inOrder.verify(handle).commit();
+        inOrder.verify(handle).close();
+        assertThrows(IllegalStateException.class, handleManager::get);
+    }
+
+    @Test
+    public void testGetIsServedOutsideOfATransaction() throws Throwable {
+        assertSame(handle, invoke(new ResourceStub(), "get"));
+
+        verify(handle, never()).begin();
+        verify(handle).close();
+    }
+
+    @Test
+    public void testFailedResourceMethodIsRolledBack() throws NoSuchMethodException {
+        ResourceStub resource = new ResourceStub();
+        resource.failure = new IllegalStateException("conflict");
+
+        InvocationTargetException ex = assertThrows(InvocationTargetException.class, () -> invoke(resource, "update"));
+        assertSame(resource.failure, ex.getCause());
+        verify(handle).rollback();
+        verify(handle, never()).commit();
+        verify(handle).close();
+    }
+
+    private Object invoke(ResourceStub resource, String name) throws Throwable {
+        Method method = ResourceStub.class.getMethod(name);
+        return provider.create(Invocable.create(ResourceStub.class, method)).invoke(resource, method, new Object[0]);
+    }
+
+    public class ResourceStub {
+
+        private RuntimeException failure;
+
+        @JdbiUnitOfWork
+        public Handle update() {
+            Handle current = handleManager.get();
+            if (failure != null) {
+                throw failure;
+            }
+            return current;
+        }
+
+        @GET
+        public Handle get() {
+            return handleManager.get();
+        }
+    }
+}